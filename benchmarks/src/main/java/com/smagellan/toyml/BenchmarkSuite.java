@@ -0,0 +1,149 @@
+package com.smagellan.toyml;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+import pl.project13.scala.jmh.extras.profiler.AsyncProfiler;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/*
+ * Runs every *PerfTest (or the ones matched by the include regexps) in one go. Arguments are the usual
+ * JMH command line (-f, -wi, -i, -p name=v1,v2, -prof gc, ...) plus:
+ *   -json <file>          results in JMH JSON format
+ *   -saveBaseline <file>  primary scores, to compare later runs against
+ *   -baseline <file>      compare with a saved baseline; exit code 1 if anything regressed
+ *   -threshold <ratio>    tolerated slowdown, 0.1 by default
+ *   -async <dir>          attach async-profiler installed in dir
+ * Profilers are off unless asked for.
+ */
+public class BenchmarkSuite {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(BenchmarkSuite.class);
+
+    public static final double DEFAULT_THRESHOLD = 0.1;
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        List<String> jmhArgs = new ArrayList<>();
+        File json = null;
+        File saveBaseline = null;
+        File baseline = null;
+        double threshold = DEFAULT_THRESHOLD;
+        String asyncProfilerDir = null;
+        for (int argIdx = 0; argIdx < args.length; ++argIdx) {
+            switch (args[argIdx]) {
+                case "-json":
+                    json = new File(args[++argIdx]);
+                    break;
+                case "-saveBaseline":
+                    saveBaseline = new File(args[++argIdx]);
+                    break;
+                case "-baseline":
+                    baseline = new File(args[++argIdx]);
+                    break;
+                case "-threshold":
+                    threshold = Double.parseDouble(args[++argIdx]);
+                    break;
+                case "-async":
+                    asyncProfilerDir = args[++argIdx];
+                    break;
+                default:
+                    jmhArgs.add(args[argIdx]);
+            }
+        }
+
+        CommandLineOptions commandLine = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .shouldFailOnError(true)
+                .jvmArgs("-server");
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(".*PerfTest.*");
+        }
+        if (json != null) {
+            options.resultFormat(ResultFormatType.JSON).result(json.getPath());
+        }
+        if (asyncProfilerDir != null) {
+            options.addProfiler(AsyncProfiler.class, "asyncProfilerDir=" + asyncProfilerDir);
+        }
+
+        Collection<RunResult> results = new Runner(options.build()).run();
+        if (saveBaseline != null) {
+            saveBaseline(results, saveBaseline);
+        }
+        if (baseline != null && regressions(results, loadBaseline(baseline), threshold) > 0) {
+            System.exit(1);
+        }
+    }
+
+    static void saveBaseline(Collection<RunResult> results, File file) throws IOException {
+        Properties scores = new Properties();
+        for (RunResult result : results) {
+            scores.setProperty(key(result.getParams()), Double.toString(result.getPrimaryResult().getScore()));
+        }
+        try (Writer writer = new FileWriter(file)) {
+            scores.store(writer, "primary scores");
+        }
+        logger.info("baseline of {} benchmarks saved to {}", scores.size(), file);
+    }
+
+    static Properties loadBaseline(File file) throws IOException {
+        Properties scores = new Properties();
+        try (Reader reader = new FileReader(file)) {
+            scores.load(reader);
+        }
+        return scores;
+    }
+
+    //logs every benchmark that got slower than baseline by more than threshold, returns their count
+    static int regressions(Collection<RunResult> results, Properties baseline, double threshold) {
+        int regressions = 0;
+        for (RunResult result : results) {
+            String key = key(result.getParams());
+            String baselineScore = baseline.getProperty(key);
+            if (baselineScore == null) {
+                logger.info("{}: no baseline", key);
+                continue;
+            }
+            Result<?> primary = result.getPrimaryResult();
+            double expected = Double.parseDouble(baselineScore);
+            double slowdown = result.getParams().getMode() == Mode.Throughput ?
+                    (expected - primary.getScore()) / expected :
+                    (primary.getScore() - expected) / expected;
+            if (slowdown > threshold) {
+                ++regressions;
+                logger.warn("REGRESSION {}: {} {}, baseline {}, {}% slower", key, primary.getScore(), primary.getScoreUnit(),
+                        expected, Math.round(slowdown * 100));
+            } else {
+                logger.info("{}: {} {}, baseline {}", key, primary.getScore(), primary.getScoreUnit(), expected);
+            }
+        }
+        return regressions;
+    }
+
+    private static String key(BenchmarkParams params) {
+        StringBuilder key = new StringBuilder(params.getBenchmark()).append(':').append(params.getMode().shortLabel());
+        for (String param : new TreeSet<>(params.getParamsKeys())) {
+            key.append(':').append(param).append('=').append(params.getParam(param));
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+public class CostFunctionPerfTest {
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CostFunctionPerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-server")
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public OptimizedFunctionResult costFunction(Ex4SizedExamples examples) {
+        return examples.costFunction.compute(examples.nnParams);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double workspaceCostFunction(Ex4SizedExamples examples) {
+        return examples.workspaceCostFunction.compute(examples.nnParams.getDDRM(), examples.unrolledGrad);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double floatCostFunction(Ex4SizedExamples examples) {
+        return examples.floatCostFunction.compute(examples.nnParamsF, examples.unrolledGradF);
+    }
+
+    @State(Scope.Thread)
+    public static class Ex4SizedExamples {
+        private static final int INPUT_LAYER_SIZE  = 400;
+        private static final int NUM_LABELS        = 10;
+
+        @Param({"1000", "5000"})
+        private int trainExamples;
+
+        @Param({"25", "100"})
+        private int hiddenLayerSize;
+
+        private CostFunction costFunction;
+        private WorkspaceCostFunction workspaceCostFunction;
+        private SimpleMatrix nnParams;
+        private DMatrixRMaj unrolledGrad;
+        private FloatCostFunction floatCostFunction;
+        private FMatrixRMaj nnParamsF;
+        private FMatrixRMaj unrolledGradF;
+
+        @Setup
+        public void setUp() {
+            DMatrixRMaj featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(trainExamples, INPUT_LAYER_SIZE, 100);
+            int[] labels = Main.createLabels(SyntheticData.yMatrix(trainExamples, NUM_LABELS, 100));
+
+            costFunction = new CostFunction(INPUT_LAYER_SIZE, hiddenLayerSize, NUM_LABELS,
+                    SimpleMatrix.wrap(featuresMatrixWithOnes), labels, 1);
+            workspaceCostFunction = new WorkspaceCostFunction(INPUT_LAYER_SIZE, hiddenLayerSize, NUM_LABELS,
+                    featuresMatrixWithOnes, labels, 1);
+
+            nnParams = SimpleMatrix.wrap(SyntheticData.nnParams(INPUT_LAYER_SIZE, hiddenLayerSize, NUM_LABELS, 100));
+            unrolledGrad = new DMatrixRMaj(nnParams.getNumElements(), 1);
+
+            floatCostFunction = new FloatCostFunction(INPUT_LAYER_SIZE, hiddenLayerSize, NUM_LABELS,
+                    EjmlHelpers.toFloat(featuresMatrixWithOnes), labels, 1);
+            nnParamsF = EjmlHelpers.toFloat(nnParams.getDDRM());
+            unrolledGradF = new FMatrixRMaj(nnParams.getNumElements(), 1);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.smagellan.toyml;
+
+import org.apache.commons.lang3.tuple.Triple;
+import org.ejml.data.DMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+//cold start: every measurement is the first load in a fresh JVM
+public class DatasetLoadPerfTest {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(DatasetLoadPerfTest.class);
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(DatasetLoadPerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(10)
+                .warmupIterations(0)
+                .measurementIterations(1)
+                .shouldFailOnError(true)
+                .jvmArgs("-server")
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double mat5Load(RssReporter reporter) throws IOException {
+        Triple<DMatrix, DMatrix, Long> params = Main.loadParams(100);
+        DMatrix featuresMatrix = params.getLeft();
+        double sum = 0;
+        for (int rowIdx = 0; rowIdx < featuresMatrix.getNumRows(); ++rowIdx) {
+            for (int colIdx = 0; colIdx < featuresMatrix.getNumCols(); ++colIdx) {
+                sum += featuresMatrix.get(rowIdx, colIdx);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double mappedLoad(MappedFile mappedFile, RssReporter reporter) throws IOException {
+        try (MappedDataset dataset = MappedDataset.open(Main.EX4_DATA1_MAPPED)) {
+            double[] block = new double[StreamingCostFunction.DEFAULT_CHUNK_SIZE * dataset.getNumCols()];
+            double sum = 0;
+            for (int fromRow = 0; fromRow < dataset.getNumRows(); fromRow += StreamingCostFunction.DEFAULT_CHUNK_SIZE) {
+                int toRow = Math.min(fromRow + StreamingCostFunction.DEFAULT_CHUNK_SIZE, dataset.getNumRows());
+                dataset.readRows(fromRow, toRow, block);
+                for (int i = 0; i < (toRow - fromRow) * dataset.getNumCols(); ++i) {
+                    sum += block[i];
+                }
+            }
+            return sum;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class MappedFile {
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            if (!Main.EX4_DATA1_MAPPED.exists()) {
+                DatasetConverter.convert(Main.EX4_DATA1, Main.EX4_DATA1_MAPPED, 10);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RssReporter {
+        @TearDown(Level.Trial)
+        public void report() throws IOException {
+            Runtime runtime = Runtime.getRuntime();
+            String rss = Files.readAllLines(Paths.get("/proc/self/status")).stream()
+                    .filter(line -> line.startsWith("VmRSS"))
+                    .findFirst()
+                    .orElse("VmRSS: n/a");
+            logger.info("{}, heap used: {} bytes", rss, runtime.totalMemory() - runtime.freeMemory());
+        }
+    }
+}
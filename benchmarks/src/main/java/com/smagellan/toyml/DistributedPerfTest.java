@@ -0,0 +1,107 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+//one cost evaluation spread over 1..4 local worker JVMs, against the same evaluation in process
+public class DistributedPerfTest {
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(DistributedPerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-server")
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double distributed(Workers workers) {
+        return workers.costFunction.compute(workers.nnParams, workers.unrolledGrad);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double inProcess(Problem problem) {
+        return problem.costFunction.compute(problem.nnParams, problem.unrolledGrad);
+    }
+
+    @State(Scope.Thread)
+    public static class Problem {
+        private static final int INPUT_LAYER_SIZE  = 400;
+        private static final int HIDDEN_LAYER_SIZE = 25;
+        private static final int NUM_LABELS        = 10;
+        //divisible by every worker count, so shards match ShardedCostFunction blocks
+        private static final int TRAIN_EXAMPLES    = 6000;
+
+        private DMatrixRMaj featuresMatrixWithOnes;
+        private int[] labels;
+        private WorkspaceCostFunction costFunction;
+        private DMatrixRMaj nnParams;
+        private DMatrixRMaj unrolledGrad;
+
+        @Setup
+        public void setUp() {
+            featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(TRAIN_EXAMPLES, INPUT_LAYER_SIZE, 100);
+            labels = Main.createLabels(SyntheticData.yMatrix(TRAIN_EXAMPLES, NUM_LABELS, 100));
+            costFunction = new WorkspaceCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, featuresMatrixWithOnes, labels, 1);
+            nnParams = SyntheticData.nnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100);
+            unrolledGrad = new DMatrixRMaj(nnParams.getNumElements(), 1);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Workers {
+        @Param({"1", "2", "3", "4"})
+        private int workers;
+
+        private LocalWorkerPool pool;
+        private DistributedCostFunction costFunction;
+        private DMatrixRMaj nnParams;
+        private DMatrixRMaj unrolledGrad;
+
+        @Setup
+        public void setUp(Problem problem) throws IOException {
+            pool = LocalWorkerPool.start(workers, "-server");
+            costFunction = new DistributedCostFunction(Problem.INPUT_LAYER_SIZE, Problem.HIDDEN_LAYER_SIZE, Problem.NUM_LABELS,
+                    problem.featuresMatrixWithOnes, problem.labels, 1, pool.getAddresses());
+            nnParams = problem.nnParams;
+            unrolledGrad = new DMatrixRMaj(nnParams.getNumElements(), 1);
+            checkEquivalence(problem);
+        }
+
+        @TearDown
+        public void tearDown() {
+            costFunction.close();
+            pool.close();
+        }
+
+        private void checkEquivalence(Problem problem) {
+            try (ShardedCostFunction sharded = new ShardedCostFunction(Problem.INPUT_LAYER_SIZE, Problem.HIDDEN_LAYER_SIZE, Problem.NUM_LABELS,
+                    problem.featuresMatrixWithOnes, problem.labels, 1, Problem.TRAIN_EXAMPLES / workers, 1)) {
+                DMatrixRMaj expectedGrad = new DMatrixRMaj(nnParams.getNumElements(), 1);
+                double expected = sharded.compute(nnParams, expectedGrad);
+                double actual = costFunction.compute(nnParams, unrolledGrad);
+                if (expected != actual || !SimpleMatrix.wrap(expectedGrad).isIdentical(SimpleMatrix.wrap(unrolledGrad), 0)) {
+                    throw new IllegalStateException("distributed cost function differs from sharded");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Fixed number of fmincg iterations, so the score is comparable across cost function changes.
+ * gc.alloc.rate.norm divided by the iterations param is the allocation per iteration.
+ */
+public class FmincgPerfTest {
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FmincgPerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(5)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-server")
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public OptimizationResult fmincg(Problem problem) {
+        return OptimizationFunctions.fmincg(problem.costFunction, problem.nnParams, problem.iterations);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public OptimizationResult fmincgInPlace(Problem problem) {
+        return OptimizationFunctions.fmincgInPlace(problem.costFunction, problem.nnParams, problem.iterations, 1);
+    }
+
+    @State(Scope.Thread)
+    public static class Problem {
+        private static final int INPUT_LAYER_SIZE = 400;
+        private static final int NUM_LABELS       = 10;
+
+        @Param({"1000", "5000"})
+        private int trainExamples;
+
+        @Param({"25", "100"})
+        private int hiddenLayerSize;
+
+        @Param({"10"})
+        private int iterations;
+
+        private WorkspaceCostFunction costFunction;
+        private SimpleMatrix nnParams;
+
+        @Setup
+        public void setUp() {
+            DMatrixRMaj featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(trainExamples, INPUT_LAYER_SIZE, 100);
+            DMatrixRMaj yVec = Main.createYVec(SyntheticData.yMatrix(trainExamples, NUM_LABELS, 100), NUM_LABELS).getDDRM();
+            costFunction = new WorkspaceCostFunction(INPUT_LAYER_SIZE, hiddenLayerSize, NUM_LABELS, featuresMatrixWithOnes, yVec, 1);
+            nnParams = SimpleMatrix.wrap(SyntheticData.nnParams(INPUT_LAYER_SIZE, hiddenLayerSize, NUM_LABELS, 100));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+//one forward/backward pass: row-tiled fused kernel vs the whole-matrix EJML products, ex4 and wider inputs
+public class FusedKernelPerfTest {
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FusedKernelPerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-server")
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double fused(Pass pass) {
+        return pass.workspace.accumulate(pass.featuresMatrixWithOnes, pass.labels, pass.theta1, pass.theta2);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double gemm(Pass pass) {
+        return pass.workspace.accumulateGemm(pass.featuresMatrixWithOnes, pass.labels, pass.theta1, pass.theta2);
+    }
+
+    @State(Scope.Thread)
+    public static class Pass {
+        private static final int NUM_LABELS = 10;
+
+        @Param({"5000"})
+        private int trainExamples;
+
+        @Param({"400", "2000"})
+        private int inputLayerSize;
+
+        @Param({"25", "100"})
+        private int hiddenLayerSize;
+
+        private BackpropWorkspace workspace;
+        private DMatrixRMaj featuresMatrixWithOnes;
+        private int[] labels;
+        private DMatrixRMaj theta1;
+        private DMatrixRMaj theta2;
+
+        @Setup
+        public void setUp() {
+            featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(trainExamples, inputLayerSize, 100);
+            labels = Main.createLabels(SyntheticData.yMatrix(trainExamples, NUM_LABELS, 100));
+            DMatrixRMaj nnParams = SyntheticData.nnParams(inputLayerSize, hiddenLayerSize, NUM_LABELS, 100);
+            theta1 = new DMatrixRMaj(hiddenLayerSize, inputLayerSize + 1);
+            theta2 = new DMatrixRMaj(NUM_LABELS, hiddenLayerSize + 1);
+            System.arraycopy(nnParams.data, 0, theta1.data, 0, theta1.getNumElements());
+            System.arraycopy(nnParams.data, theta1.getNumElements(), theta2.data, 0, theta2.getNumElements());
+            workspace = new BackpropWorkspace(inputLayerSize, hiddenLayerSize, NUM_LABELS, trainExamples);
+            checkEquivalence();
+        }
+
+        private void checkEquivalence() {
+            double expected = workspace.accumulateGemm(featuresMatrixWithOnes, labels, theta1, theta2);
+            double[] expectedDelta1 = workspace.getDelta1().data.clone();
+            double[] expectedDelta2 = workspace.getDelta2().data.clone();
+            double actual = workspace.accumulate(featuresMatrixWithOnes, labels, theta1, theta2);
+            if (expected != actual || !Arrays.equals(expectedDelta1, workspace.getDelta1().data)
+                    || !Arrays.equals(expectedDelta2, workspace.getDelta2().data)) {
+                throw new IllegalStateException("fused kernel differs from EJML products");
+            }
+        }
+    }
+}
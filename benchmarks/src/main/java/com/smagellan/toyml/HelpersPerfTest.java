@@ -0,0 +1,59 @@
+package com.smagellan.toyml;
+
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class HelpersPerfTest {
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(HelpersPerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-server")
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public SimpleMatrix mul(Matrices matrices) {
+        return EjmlHelpers.mul(matrices.matrix, 0.5);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public SimpleMatrix maxPerRow(Matrices matrices) {
+        return EjmlHelpers.maxPerRow(matrices.matrix);
+    }
+
+    @State(Scope.Thread)
+    public static class Matrices {
+        @Param({"1000", "5000"})
+        private int rows;
+
+        //10 is the output layer, 401 the input layer with bias
+        @Param({"10", "401"})
+        private int cols;
+
+        private SimpleMatrix matrix;
+
+        @Setup
+        public void setUp() {
+            matrix = SimpleMatrix.random_DDRM(rows, cols, -1, 1, new Random(100));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+public class InferencePerfTest {
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(InferencePerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-server")
+                .build();
+
+        new Runner(options).run();
+    }
+
+    //SampleTime reports p50/p99/p99.9 per batch
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int[] engineLatency(Batch batch) {
+        batch.engine.predict(batch.features, batch.batchSize, batch.classes);
+        return batch.classes;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public SimpleMatrix predictorLatency(Batch batch) {
+        return Predictor.predict(batch.theta1, batch.theta2, batch.featuresMatrixWithOnes);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int[] engineThroughput(Batch batch, RowCounter counter) {
+        batch.engine.predict(batch.features, batch.batchSize, batch.classes);
+        counter.rows += batch.batchSize;
+        return batch.classes;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public SimpleMatrix predictorThroughput(Batch batch, RowCounter counter) {
+        counter.rows += batch.batchSize;
+        return Predictor.predict(batch.theta1, batch.theta2, batch.featuresMatrixWithOnes);
+    }
+
+    //rows per second shows up as the "rows" secondary result
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RowCounter {
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Batch {
+        private static final int INPUT_LAYER_SIZE  = 400;
+        private static final int NUM_LABELS        = 10;
+
+        @Param({"1", "16", "256", "4096"})
+        private int batchSize;
+
+        @Param({"25", "100"})
+        private int hiddenLayerSize;
+
+        private InferenceEngine engine;
+        private SimpleMatrix theta1;
+        private SimpleMatrix theta2;
+        private SimpleMatrix featuresMatrixWithOnes;
+        private double[] features;
+        private int[] classes;
+
+        @Setup
+        public void setUp() {
+            DMatrixRMaj nnParams = SyntheticData.nnParams(INPUT_LAYER_SIZE, hiddenLayerSize, NUM_LABELS, 100);
+            int theta1NumElements = hiddenLayerSize * (INPUT_LAYER_SIZE + 1);
+            theta1 = SimpleMatrix.wrap(CommonOps_DDRM.extract(nnParams, 0, theta1NumElements, 0, 1));
+            theta1.reshape(hiddenLayerSize, INPUT_LAYER_SIZE + 1);
+            theta2 = SimpleMatrix.wrap(CommonOps_DDRM.extract(nnParams, theta1NumElements, nnParams.numRows, 0, 1));
+            theta2.reshape(NUM_LABELS, hiddenLayerSize + 1);
+
+            DMatrixRMaj withOnes = SyntheticData.featuresMatrixWithOnes(batchSize, INPUT_LAYER_SIZE, 100);
+            featuresMatrixWithOnes = SimpleMatrix.wrap(withOnes);
+            features = CommonOps_DDRM.extract(withOnes, 0, batchSize, 1, INPUT_LAYER_SIZE + 1).data;
+            classes = new int[batchSize];
+            engine = new InferenceEngine(theta1, theta2);
+
+            if (!engine.predict(featuresMatrixWithOnes).isIdentical(Predictor.predict(theta1, theta2, featuresMatrixWithOnes), 0)) {
+                throw new IllegalStateException("InferenceEngine disagrees with Predictor");
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import us.hebi.matlab.mat.ejml.Mat5Ejml;
+import us.hebi.matlab.mat.format.Mat5;
+import us.hebi.matlab.mat.format.Mat5File;
+import us.hebi.matlab.mat.types.Source;
+import us.hebi.matlab.mat.types.Sources;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+//cold start to first prediction: every measurement is the first load in a fresh JVM, same as DatasetLoadPerfTest
+public class ModelLoadPerfTest {
+    private static final int INPUT_LAYER_SIZE  = 400;
+    private static final int HIDDEN_LAYER_SIZE = 25;
+    private static final int NUM_LABELS        = 10;
+    private static final int TRAIN_EXAMPLES    = 5000;
+    private static final int TRAIN_ITERATIONS  = 50;
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ModelLoadPerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(10)
+                .warmupIterations(0)
+                .measurementIterations(1)
+                .shouldFailOnError(true)
+                .jvmArgs("-server")
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int mappedModel(ModelFiles files) throws IOException {
+        SavedModel model = ModelFile.read(files.modelFile);
+        return model.newInferenceEngine().predict(files.features);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int matModel(ModelFiles files) throws IOException {
+        DMatrixRMaj theta1;
+        DMatrixRMaj theta2;
+        try (Source source = Sources.openFile(files.matFile); Mat5File file = Mat5.newReader(source).readMat()) {
+            theta1 = Main.loadMatrix(file, "Theta1");
+            theta2 = Main.loadMatrix(file, "Theta2");
+        }
+        return new InferenceEngine(theta1, theta2).predict(files.features);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int retrain(ModelFiles files) {
+        SimpleMatrix params = train(files.network);
+        return new InferenceEngine(files.network.theta(params, 0), files.network.theta(params, 1)).predict(files.features);
+    }
+
+    private static SimpleMatrix train(Network network) {
+        DMatrixRMaj featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(TRAIN_EXAMPLES, INPUT_LAYER_SIZE, 100);
+        DMatrixRMaj yVec = Main.createYVec(SyntheticData.yMatrix(TRAIN_EXAMPLES, NUM_LABELS, 100), NUM_LABELS).getDDRM();
+        WorkspaceCostFunction cf = new WorkspaceCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                featuresMatrixWithOnes, yVec, 1);
+        return new FmincgOptimizer(TRAIN_ITERATIONS).minimize(cf, network.initialParams(100)).getxVal();
+    }
+
+    @State(Scope.Benchmark)
+    public static class ModelFiles {
+        private Network network;
+        private File dir;
+        private File modelFile;
+        private File matFile;
+        private double[] features;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            network = Network.ex4(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS);
+            SimpleMatrix params = train(network);
+            dir = Files.createTempDirectory("model-load").toFile();
+            modelFile = new File(dir, "model.tmlm");
+            ModelFile.write(modelFile, network, params);
+
+            matFile = new File(dir, "model.mat");
+            Mat5File mat = Mat5.newMatFile()
+                    .addArray("Theta1", Mat5Ejml.asArray(network.theta(params, 0).getDDRM()))
+                    .addArray("Theta2", Mat5Ejml.asArray(network.theta(params, 1).getDDRM()));
+            Mat5.writeToFile(mat, matFile);
+
+            features = SyntheticData.featuresMatrix(1, INPUT_LAYER_SIZE, 200).data;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            modelFile.delete();
+            matFile.delete();
+            dir.delete();
+        }
+    }
+}
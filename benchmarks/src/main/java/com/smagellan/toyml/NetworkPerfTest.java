@@ -0,0 +1,99 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+//layer API against the hand-written 2-layer workspace on the ex4 shape, plus a deeper network for scale
+public class NetworkPerfTest {
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(NetworkPerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-server")
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double workspaceCostFunction(Ex4SizedExamples examples) {
+        return examples.workspaceCostFunction.compute(examples.nnParams.getDDRM(), examples.unrolledGrad);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double networkCostFunction(Ex4SizedExamples examples) {
+        return examples.networkCostFunction.compute(examples.nnParams.getDDRM(), examples.unrolledGrad);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double deepNetworkCostFunction(Ex4SizedExamples examples) {
+        return examples.deepCostFunction.compute(examples.deepParams.getDDRM(), examples.deepGrad);
+    }
+
+    @State(Scope.Thread)
+    public static class Ex4SizedExamples {
+        private static final int INPUT_LAYER_SIZE  = 400;
+        private static final int HIDDEN_LAYER_SIZE = 25;
+        private static final int NUM_LABELS        = 10;
+        private static final int TRAIN_EXAMPLES    = 5000;
+
+        private WorkspaceCostFunction workspaceCostFunction;
+        private NetworkCostFunction networkCostFunction;
+        private SimpleMatrix nnParams;
+        private DMatrixRMaj unrolledGrad;
+
+        private NetworkCostFunction deepCostFunction;
+        private SimpleMatrix deepParams;
+        private DMatrixRMaj deepGrad;
+
+        @Setup
+        public void setUp() {
+            DMatrixRMaj featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(TRAIN_EXAMPLES, INPUT_LAYER_SIZE, 100);
+            int[] labels = Main.createLabels(SyntheticData.yMatrix(TRAIN_EXAMPLES, NUM_LABELS, 100));
+
+            workspaceCostFunction = new WorkspaceCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                    featuresMatrixWithOnes, labels, 1);
+            networkCostFunction = new NetworkCostFunction(Network.ex4(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS),
+                    featuresMatrixWithOnes, labels, 1);
+            nnParams = SimpleMatrix.wrap(SyntheticData.nnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100));
+            unrolledGrad = new DMatrixRMaj(nnParams.getNumElements(), 1);
+
+            Network deep = new Network(INPUT_LAYER_SIZE, new DenseLayer(HIDDEN_LAYER_SIZE, Activation.RELU),
+                    new DenseLayer(HIDDEN_LAYER_SIZE, Activation.TANH), new DenseLayer(NUM_LABELS, Activation.SOFTMAX));
+            deepCostFunction = new NetworkCostFunction(deep, featuresMatrixWithOnes, labels, 1);
+            deepParams = deep.initialParams(100);
+            deepGrad = new DMatrixRMaj(deep.getNumParams(), 1);
+            checkEquivalence();
+        }
+
+        //the layer API must reproduce the 2-layer code exactly, otherwise the timings compare different work
+        private void checkEquivalence() {
+            DMatrixRMaj expectedGrad = new DMatrixRMaj(unrolledGrad.numRows, 1);
+            double expected = workspaceCostFunction.compute(nnParams.getDDRM(), expectedGrad);
+            double actual = networkCostFunction.compute(nnParams.getDDRM(), unrolledGrad);
+            if (expected != actual || !SimpleMatrix.wrap(expectedGrad).isIdentical(SimpleMatrix.wrap(unrolledGrad), 0)) {
+                throw new IllegalStateException("NetworkCostFunction differs from WorkspaceCostFunction");
+            }
+        }
+    }
+}
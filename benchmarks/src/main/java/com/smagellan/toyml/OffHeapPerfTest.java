@@ -0,0 +1,139 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * On-heap vs off-heap dataset: cost and predict time, plus the price the heap copy pays in the collector.
+ * fullGc times a full collection with the dataset live, which grows with the heap copy and not with the
+ * direct one; the teardown logs heap used after a collection next to the direct memory in use.
+ */
+public class OffHeapPerfTest {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(OffHeapPerfTest.class);
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(OffHeapPerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .shouldFailOnError(true)
+                .addProfiler(GCProfiler.class)
+                .jvmArgs("-server")
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double cost(Problem problem) {
+        return problem.costFunction.compute(problem.nnParams, problem.grad);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SimpleMatrix predict(Problem problem) {
+        return problem.predict();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void fullGc(Problem problem) {
+        System.gc();
+    }
+
+    @State(Scope.Thread)
+    public static class Problem {
+        private static final int INPUT_LAYER_SIZE = 400;
+        private static final int NUM_LABELS       = 10;
+        private static final int HIDDEN_LAYER_SIZE = 25;
+        private static final int PREDICT_BLOCK_SIZE = 1024;
+
+        @Param({"20000"})
+        private int trainExamples;
+
+        @Param({"heap", "offHeap"})
+        private String storage;
+
+        private DifferentiableFunction costFunction;
+        private DMatrixRMaj nnParams;
+        private DMatrixRMaj grad;
+        private SimpleMatrix theta1;
+        private SimpleMatrix theta2;
+        private SimpleMatrix featuresMatrixWithOnes;
+        private OffHeapDataset dataset;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            DMatrixRMaj features = SyntheticData.featuresMatrix(trainExamples, INPUT_LAYER_SIZE, 100);
+            DMatrixRMaj yMatrix = SyntheticData.yMatrix(trainExamples, NUM_LABELS, 100);
+            nnParams = SyntheticData.nnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100);
+            grad = new DMatrixRMaj(nnParams.numRows, 1);
+            Network network = Network.ex4(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS);
+            theta1 = network.theta(SimpleMatrix.wrap(nnParams), 0);
+            theta2 = network.theta(SimpleMatrix.wrap(nnParams), 1);
+
+            DMatrixRMaj withOnes = SyntheticData.featuresMatrixWithOnes(trainExamples, INPUT_LAYER_SIZE, 100);
+            DMatrixRMaj yVec = Main.createYVec(yMatrix, NUM_LABELS).getDDRM();
+            WorkspaceCostFunction heapCost = new WorkspaceCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, withOnes, null, yVec, 1);
+            OffHeapDataset offHeap = OffHeapDataset.copyOf(features, yMatrix, NUM_LABELS);
+            OffHeapCostFunction offHeapCost = new OffHeapCostFunction(HIDDEN_LAYER_SIZE, offHeap, 1);
+            checkEquivalence(heapCost, offHeapCost, SimpleMatrix.wrap(withOnes), offHeap);
+
+            //keep only the storage under test reachable
+            if ("heap".equals(storage)) {
+                costFunction = heapCost;
+                featuresMatrixWithOnes = SimpleMatrix.wrap(withOnes);
+            } else {
+                costFunction = offHeapCost;
+                dataset = offHeap;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void report() {
+            System.gc();
+            long direct = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                    .filter(pool -> "direct".equals(pool.getName()))
+                    .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                    .sum();
+            logger.info("{} storage: heap used {} bytes, direct memory used {} bytes", storage,
+                    ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), direct);
+        }
+
+        private SimpleMatrix predict() {
+            return dataset != null ?
+                    Predictor.predict(theta1, theta2, dataset, PREDICT_BLOCK_SIZE) :
+                    Predictor.predict(theta1, theta2, featuresMatrixWithOnes);
+        }
+
+        private void checkEquivalence(WorkspaceCostFunction heapCost, OffHeapCostFunction offHeapCost,
+                                      SimpleMatrix withOnes, OffHeapDataset offHeap) {
+            DMatrixRMaj heapGrad = new DMatrixRMaj(nnParams.numRows, 1);
+            double heapValue = heapCost.compute(nnParams, heapGrad);
+            double offHeapValue = offHeapCost.compute(nnParams, grad);
+            if (heapValue != offHeapValue || !SimpleMatrix.wrap(heapGrad).isIdentical(SimpleMatrix.wrap(grad), 0)) {
+                throw new IllegalStateException("off-heap cost function differs from on-heap");
+            }
+            if (!Predictor.predict(theta1, theta2, withOnes).isIdentical(Predictor.predict(theta1, theta2, offHeap, PREDICT_BLOCK_SIZE), 0)) {
+                throw new IllegalStateException("off-heap predictions differ from on-heap");
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import pl.project13.scala.jmh.extras.profiler.AsyncProfiler;
+
+//end-to-end training on synthetic data; -DasyncProfilerDir=... attaches async-profiler
+public class PerfTest {
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(PerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(1)
+                .warmupForks(1)
+                .warmupIterations(1)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-server");
+        String asyncProfilerDir = System.getProperty("asyncProfilerDir");
+        if (asyncProfilerDir != null) {
+            options.addProfiler(AsyncProfiler.class, "asyncProfilerDir=" + asyncProfilerDir);
+        }
+
+        new Runner(options.build()).run();
+    }
+
+    @Fork(value = 1, warmups = 2)
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public double benchmark(TrainingExamples examples) {
+        return new Main().doFit(examples.featuresMatrix, examples.yMatrix, 100,
+                Network.ex4(TrainingExamples.INPUT_LAYER_SIZE, examples.hiddenLayerSize, TrainingExamples.NUM_LABELS),
+                new FmincgOptimizer(50));
+    }
+
+    @State(Scope.Benchmark)
+    public static class TrainingExamples {
+        private static final int INPUT_LAYER_SIZE = 400;
+        private static final int NUM_LABELS       = 10;
+
+        @Param({"5000"})
+        private int trainExamples;
+
+        @Param({"25"})
+        private int hiddenLayerSize;
+
+        private DMatrix featuresMatrix;
+        private DMatrix yMatrix;
+
+        @Setup
+        public void setUp() {
+            featuresMatrix = SyntheticData.featuresMatrix(trainExamples, INPUT_LAYER_SIZE, 100);
+            yMatrix = SyntheticData.yMatrix(trainExamples, NUM_LABELS, 100);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+//one scoring pass over a dataset well past the caches: double Predictor and InferenceEngine against the int8 engine
+public class QuantizedInferencePerfTest {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(QuantizedInferencePerfTest.class);
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(QuantizedInferencePerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-server")
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SimpleMatrix predictor(Scoring scoring) {
+        return Predictor.predict(scoring.theta1, scoring.theta2, scoring.featuresMatrixWithOnes);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int[] doubleEngine(Scoring scoring) {
+        scoring.engine.predict(scoring.features, Scoring.SCORED_ROWS, scoring.classes);
+        return scoring.classes;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int[] int8(Scoring scoring) {
+        scoring.quantized.predict(scoring.int8Features, scoring.classes);
+        return scoring.classes;
+    }
+
+    //double rows quantized while scoring: no bandwidth saved, shows the kernel alone
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int[] int8OnTheFly(Scoring scoring) {
+        scoring.quantized.predict(scoring.features, Scoring.SCORED_ROWS, scoring.classes);
+        return scoring.classes;
+    }
+
+    @State(Scope.Thread)
+    public static class Scoring {
+        private static final int INPUT_LAYER_SIZE  = 400;
+        private static final int HIDDEN_LAYER_SIZE = 25;
+        private static final int NUM_LABELS        = 10;
+        private static final int TRAIN_EXAMPLES    = 5000;
+        //100MB of double features, 12.5MB quantized
+        private static final int SCORED_ROWS       = 32768;
+        //points of accuracy the int8 engine may lose against Predictor
+        private static final double MAX_ACCURACY_LOSS = 1.0;
+
+        private SimpleMatrix theta1;
+        private SimpleMatrix theta2;
+        private SimpleMatrix featuresMatrixWithOnes;
+        private double[] features;
+        private InferenceEngine engine;
+        private QuantizedInferenceEngine quantized;
+        private Int8Features int8Features;
+        private int[] classes;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            //trained weights: random ones leave the classes too close for the accuracy numbers to mean anything
+            DMatrixRMaj yMatrix = SyntheticData.yMatrix(TRAIN_EXAMPLES + SCORED_ROWS, NUM_LABELS, 100);
+            DMatrixRMaj featuresMatrix = SyntheticData.clusteredFeaturesMatrix(yMatrix, NUM_LABELS, INPUT_LAYER_SIZE, 2.5, 100);
+            PreparedDataset dataset = new FeaturePipeline(FeaturePipeline.Normalization.NONE, 1).load(featuresMatrix, yMatrix);
+            DMatrixRMaj all = dataset.getFeaturesMatrixWithOnes();
+            DMatrixRMaj train = CommonOps_DDRM.extract(all, 0, TRAIN_EXAMPLES, 0, all.numCols);
+            int[] trainLabels = Arrays.copyOf(dataset.getLabels(), TRAIN_EXAMPLES);
+            WorkspaceCostFunction cf = new WorkspaceCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, train, trainLabels, 1);
+            SimpleMatrix nnParams = new FmincgOptimizer(50)
+                    .minimize(cf, Main.initialNnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100)).getxVal();
+            int theta1NumElements = HIDDEN_LAYER_SIZE * (INPUT_LAYER_SIZE + 1);
+            theta1 = nnParams.rows(0, theta1NumElements);
+            theta1.reshape(HIDDEN_LAYER_SIZE, INPUT_LAYER_SIZE + 1);
+            theta2 = nnParams.rows(theta1NumElements, nnParams.numRows());
+            theta2.reshape(NUM_LABELS, HIDDEN_LAYER_SIZE + 1);
+
+            DMatrixRMaj scored = CommonOps_DDRM.extract(all, TRAIN_EXAMPLES, all.numRows, 0, all.numCols);
+            int[] scoredLabels = Arrays.copyOfRange(dataset.getLabels(), TRAIN_EXAMPLES, all.numRows);
+            featuresMatrixWithOnes = SimpleMatrix.wrap(scored);
+            features = CommonOps_DDRM.extract(scored, 0, SCORED_ROWS, 1, INPUT_LAYER_SIZE + 1).data;
+            engine = new InferenceEngine(theta1, theta2);
+            quantized = new QuantizedInferenceEngine(theta1, theta2);
+            int8Features = Int8Features.quantizeWithOnes(scored);
+            classes = new int[SCORED_ROWS];
+            checkAccuracy(scoredLabels);
+        }
+
+        private void checkAccuracy(int[] labels) {
+            SimpleMatrix expected = Predictor.predict(theta1, theta2, featuresMatrixWithOnes);
+            quantized.predict(int8Features, classes);
+            int[] onTheFly = new int[SCORED_ROWS];
+            quantized.predict(features, SCORED_ROWS, onTheFly);
+            int agreed = 0;
+            int doubleMatched = 0;
+            int int8Matched = 0;
+            for (int row = 0; row < SCORED_ROWS; ++row) {
+                if (classes[row] != onTheFly[row]) {
+                    throw new IllegalStateException("on the fly quantization differs at row " + row);
+                }
+                agreed += (int) expected.get(row, 0) == classes[row] ? 1 : 0;
+                doubleMatched += (int) expected.get(row, 0) == labels[row] ? 1 : 0;
+                int8Matched += classes[row] == labels[row] ? 1 : 0;
+            }
+            double doubleAccuracy = ((double) doubleMatched) * 100 / SCORED_ROWS;
+            double int8Accuracy = ((double) int8Matched) * 100 / SCORED_ROWS;
+            logger.info("held-out accuracy: double {}, int8 {}; agreement with Predictor {}%", doubleAccuracy, int8Accuracy,
+                    ((double) agreed) * 100 / SCORED_ROWS);
+            logger.info("weights: double {} bytes, int8 {} bytes; features: double {} bytes, int8 {} bytes",
+                    (long) (theta1.getNumElements() + theta2.getNumElements()) * Double.BYTES, quantized.getWeightBytes(),
+                    (long) features.length * Double.BYTES, int8Features.getBytes());
+            if (doubleAccuracy - int8Accuracy > MAX_ACCURACY_LOSS) {
+                throw new IllegalStateException("int8 accuracy " + int8Accuracy + " is too far below double " + doubleAccuracy);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+public class ShardedCostFunctionPerfTest {
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ShardedCostFunctionPerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-server")
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double shardedCostFunction(ShardedExamples examples) {
+        return examples.costFunction.compute(examples.nnParams, examples.unrolledGrad);
+    }
+
+    @State(Scope.Thread)
+    public static class ShardedExamples {
+        private static final int INPUT_LAYER_SIZE  = 400;
+        private static final int HIDDEN_LAYER_SIZE = 25;
+        private static final int NUM_LABELS        = 10;
+        private static final int TRAIN_EXAMPLES    = 5000;
+
+        //"N" stands for all available cores
+        @Param({"1", "2", "4", "8", "N"})
+        private String threads;
+
+        @Param({"256", "1024"})
+        private int blockSize;
+
+        private ShardedCostFunction costFunction;
+        private DMatrixRMaj nnParams;
+        private DMatrixRMaj unrolledGrad;
+
+        @Setup
+        public void setUp() {
+            int parallelism = "N".equals(threads) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+            DMatrixRMaj featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(TRAIN_EXAMPLES, INPUT_LAYER_SIZE, 100);
+            DMatrixRMaj yVec = Main.createYVec(SyntheticData.yMatrix(TRAIN_EXAMPLES, NUM_LABELS, 100), NUM_LABELS).getDDRM();
+
+            costFunction = new ShardedCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                    featuresMatrixWithOnes, yVec, 1, blockSize, parallelism);
+            nnParams = SyntheticData.nnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100);
+            unrolledGrad = new DMatrixRMaj(nnParams.getNumElements(), 1);
+        }
+
+        @TearDown
+        public void tearDown() {
+            costFunction.close();
+        }
+    }
+}
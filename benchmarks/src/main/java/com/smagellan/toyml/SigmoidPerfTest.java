@@ -0,0 +1,140 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixIterator;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class SigmoidPerfTest {
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SigmoidPerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-server")
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public SimpleMatrix iteratorSigmoid(Activations activations) {
+        return iteratorSigmoid(activations.z);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double[] rawSigmoid(Activations activations) {
+        System.arraycopy(activations.z.getDDRM().data, 0, activations.scratch.data, 0, activations.scratch.getNumElements());
+        MlFunctions.sigmoid(activations.scratch.data, 0, activations.scratch.getNumElements());
+        return activations.scratch.data;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double[] rawFastSigmoid(Activations activations) {
+        System.arraycopy(activations.z.getDDRM().data, 0, activations.scratch.data, 0, activations.scratch.getNumElements());
+        MlFunctions.fastSigmoid(activations.scratch.data, 0, activations.scratch.getNumElements());
+        return activations.scratch.data;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public SimpleMatrix concatSigmoidWithOnes(Activations activations) {
+        return EjmlHelpers.ones(activations.z.numRows(), 1).concatColumns(MlFunctions.sigmoid(activations.z));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public DMatrixRMaj fusedSigmoidWithOnes(Activations activations) {
+        MlFunctions.sigmoidWithOnes(activations.z.getDDRM(), activations.withOnes);
+        return activations.withOnes;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public DMatrixRMaj fusedFastSigmoidWithOnes(Activations activations) {
+        MlFunctions.fastSigmoidWithOnes(activations.z.getDDRM(), activations.withOnes);
+        return activations.withOnes;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public SimpleMatrix iteratorSigmoidGradient(Activations activations) {
+        return iteratorSigmoidGradient(activations.z);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double[] sigmoidGradientFromActivation(Activations activations) {
+        MlFunctions.sigmoidGradientFromActivation(activations.act.data, 0, activations.act.getNumElements(), activations.scratch.data, 0);
+        return activations.scratch.data;
+    }
+
+    //DMatrixIterator based kernels the raw ones replaced; kept as the speed reference, accuracy is covered by MlFunctionsTest
+    static SimpleMatrix iteratorSigmoid(SimpleMatrix zMatrix) {
+        SimpleMatrix result = zMatrix.copy();
+        DMatrixIterator iter = EjmlHelpers.iterator(result);
+        while (iter.hasNext()) {
+            Double val = iter.next();
+            iter.set(MlFunctions.sigmoid(val));
+        }
+        return result;
+    }
+
+    static SimpleMatrix iteratorSigmoidGradient(SimpleMatrix zMatrix) {
+        SimpleMatrix result = zMatrix.copy();
+        DMatrixIterator iter = EjmlHelpers.iterator(result);
+        while (iter.hasNext()) {
+            Double val = iter.next();
+            iter.set(MlFunctions.sigmoidGradient(val));
+        }
+        return result;
+    }
+
+    @State(Scope.Thread)
+    public static class Activations {
+        @Param({"5000"})
+        private int rows;
+
+        @Param({"25", "400"})
+        private int cols;
+
+        private SimpleMatrix z;
+        private DMatrixRMaj act;
+        private DMatrixRMaj scratch;
+        private DMatrixRMaj withOnes;
+
+        @Setup
+        public void setUp() {
+            Random r = new Random(100);
+            z = new SimpleMatrix(rows, cols);
+            for (int i = 0; i < z.getNumElements(); ++i) {
+                z.set(i, r.nextGaussian() * 8);
+            }
+            act = MlFunctions.sigmoid(z).getDDRM();
+            scratch = new DMatrixRMaj(rows, cols);
+            withOnes = new DMatrixRMaj(rows, cols + 1);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+//dense vs CSR first layer across feature densities; the crossover is CsrMatrix.MAX_SPARSE_DENSITY
+public class SparsePerfTest {
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SparsePerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-server")
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double denseCost(Problem problem) {
+        return problem.dense.compute(problem.nnParams, problem.grad);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double sparseCost(Problem problem) {
+        return problem.sparse.compute(problem.nnParams, problem.grad);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SimpleMatrix densePredict(Problem problem) {
+        return problem.densePredict();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SimpleMatrix sparsePredict(Problem problem) {
+        return Predictor.predict(problem.theta1, problem.theta2, problem.csr);
+    }
+
+    @State(Scope.Thread)
+    public static class Problem {
+        private static final int INPUT_LAYER_SIZE = 400;
+        private static final int NUM_LABELS       = 10;
+
+        @Param({"5000"})
+        private int trainExamples;
+
+        @Param({"25"})
+        private int hiddenLayerSize;
+
+        @Param({"0.05", "0.1", "0.2", "0.3", "0.5"})
+        private double density;
+
+        private WorkspaceCostFunction dense;
+        private WorkspaceCostFunction sparse;
+        private DMatrixRMaj nnParams;
+        private DMatrixRMaj grad;
+        private SimpleMatrix featuresMatrixWithOnes;
+        private CsrMatrix csr;
+        private SimpleMatrix theta1;
+        private SimpleMatrix theta2;
+
+        @Setup
+        public void setUp() {
+            DMatrixRMaj features = SyntheticData.sparseFeaturesMatrixWithOnes(trainExamples, INPUT_LAYER_SIZE, density, 100);
+            DMatrixRMaj yVec = Main.createYVec(SyntheticData.yMatrix(trainExamples, NUM_LABELS, 100), NUM_LABELS).getDDRM();
+            featuresMatrixWithOnes = SimpleMatrix.wrap(features);
+            csr = CsrMatrix.fromDense(features, 1);
+            dense = new WorkspaceCostFunction(INPUT_LAYER_SIZE, hiddenLayerSize, NUM_LABELS, features, null, yVec, 1);
+            sparse = new WorkspaceCostFunction(INPUT_LAYER_SIZE, hiddenLayerSize, NUM_LABELS, csr, yVec, 1);
+            nnParams = SyntheticData.nnParams(INPUT_LAYER_SIZE, hiddenLayerSize, NUM_LABELS, 100);
+            grad = new DMatrixRMaj(nnParams.numRows, 1);
+            Network network = Network.ex4(INPUT_LAYER_SIZE, hiddenLayerSize, NUM_LABELS);
+            theta1 = network.theta(SimpleMatrix.wrap(nnParams), 0);
+            theta2 = network.theta(SimpleMatrix.wrap(nnParams), 1);
+            checkEquivalence();
+        }
+
+        private SimpleMatrix densePredict() {
+            return Predictor.predictDense(theta1, theta2, featuresMatrixWithOnes);
+        }
+
+        private void checkEquivalence() {
+            DMatrixRMaj denseGrad = new DMatrixRMaj(nnParams.numRows, 1);
+            double denseCost = dense.compute(nnParams, denseGrad);
+            double sparseCost = sparse.compute(nnParams, grad);
+            if (denseCost != sparseCost || !SimpleMatrix.wrap(denseGrad).isIdentical(SimpleMatrix.wrap(grad), 0)) {
+                throw new IllegalStateException("sparse cost function differs from dense");
+            }
+            if (!densePredict().isIdentical(Predictor.predict(theta1, theta2, csr), 0)) {
+                throw new IllegalStateException("sparse predictions differ from dense");
+            }
+        }
+    }
+}
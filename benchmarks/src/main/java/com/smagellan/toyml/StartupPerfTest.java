@@ -0,0 +1,142 @@
+package com.smagellan.toyml;
+
+import org.apache.commons.lang3.tuple.Triple;
+import org.ejml.data.DMatrix;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.equation.Equation;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+//cold start: time from raw features to [ones, X] and initial params, in a fresh JVM, Equation path against FeaturePipeline
+public class StartupPerfTest {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(StartupPerfTest.class);
+
+    private static final int INPUT_LAYER_SIZE  = 400;
+    private static final int HIDDEN_LAYER_SIZE = 25;
+    private static final int NUM_LABELS        = 10;
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(StartupPerfTest.class.getSimpleName())
+                .threads(1)
+                .forks(10)
+                .warmupIterations(0)
+                .measurementIterations(1)
+                .shouldFailOnError(true)
+                .jvmArgs("-server")
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double equation(RawFeatures raw) {
+        SimpleMatrix featuresMatrixWithOnes = equationWithOnes(raw.featuresMatrix);
+        SimpleMatrix nnParams = equationNnParams(100);
+        return featuresMatrixWithOnes.get(0, 1) + nnParams.get(0);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double pipeline(RawFeatures raw) {
+        PreparedDataset prepared = new FeaturePipeline(raw.normalization, Runtime.getRuntime().availableProcessors())
+                .load(raw.featuresMatrix, raw.yMatrix);
+        SimpleMatrix nnParams = Main.initialNnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100);
+        return prepared.getFeaturesMatrixWithOnes().get(0, 1) + nnParams.get(0);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double equationMat5() throws IOException {
+        Triple<DMatrix, DMatrix, Long> params = Main.loadParams(100);
+        SimpleMatrix featuresMatrixWithOnes = equationWithOnes(params.getLeft());
+        int[] labels = Main.createLabels(params.getMiddle());
+        SimpleMatrix nnParams = equationNnParams(100);
+        return featuresMatrixWithOnes.get(0, 1) + labels[0] + nnParams.get(0);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double pipelineMat5() throws IOException {
+        PreparedDataset prepared = new FeaturePipeline(FeaturePipeline.Normalization.NONE, Runtime.getRuntime().availableProcessors())
+                .load(Main.EX4_DATA1);
+        SimpleMatrix nnParams = Main.initialNnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100);
+        return prepared.getFeaturesMatrixWithOnes().get(0, 1) + prepared.getLabels()[0] + nnParams.get(0);
+    }
+
+    //what Main.doFit did before FeaturePipeline
+    private static SimpleMatrix equationWithOnes(DMatrix featuresMatrix) {
+        Equation featuresMatrixEnricher    = new Equation();
+        SimpleMatrix featuresMatrixWithOnes = new SimpleMatrix(featuresMatrix.getNumRows(), featuresMatrix.getNumCols() + 1);
+        featuresMatrixEnricher.alias(featuresMatrix, "X");
+        featuresMatrixEnricher.alias(featuresMatrixWithOnes, "Xw1");
+        featuresMatrixEnricher.alias(featuresMatrix.getNumRows(), "m");
+        featuresMatrixEnricher.process("Xw1 = [ones(m, 1), X]");
+        return featuresMatrixWithOnes;
+    }
+
+    //what Main.initialNnParams did before
+    private static SimpleMatrix equationNnParams(long seed) {
+        SimpleMatrix theta1 = EjmlHelpers.randInitializeWeights(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, seed);
+        SimpleMatrix theta2 = EjmlHelpers.randInitializeWeights(HIDDEN_LAYER_SIZE, NUM_LABELS, 2 * seed);
+        Equation nnParamsUnroller = new Equation();
+        nnParamsUnroller.alias(theta1, "Theta1");
+        nnParamsUnroller.alias(theta2, "Theta2");
+        SimpleMatrix nnParams = new SimpleMatrix(theta1.getNumElements() + theta2.getNumElements(), 1);
+        nnParamsUnroller.alias(nnParams, "nn_params");
+        nnParamsUnroller.process("nn_params = [Theta1(:), Theta2(:)]");
+        return nnParams.transpose();
+    }
+
+    @State(Scope.Benchmark)
+    public static class RawFeatures {
+        private static final int TRAIN_EXAMPLES = 5000;
+
+        @Param({"NONE", "STANDARD"})
+        private FeaturePipeline.Normalization normalization;
+
+        private DMatrixRMaj featuresMatrix;
+        private DMatrixRMaj yMatrix;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            featuresMatrix = SyntheticData.featuresMatrix(TRAIN_EXAMPLES, INPUT_LAYER_SIZE, 100);
+            yMatrix = SyntheticData.yMatrix(TRAIN_EXAMPLES, NUM_LABELS, 100);
+            //logging is up before any training starts, its configuration should not count against either path
+            logger.debug("{} x {} raw features", TRAIN_EXAMPLES, INPUT_LAYER_SIZE);
+        }
+
+        //after the single shot, a check in setUp would warm up the very code being measured
+        @TearDown(Level.Trial)
+        public void checkEquivalence() {
+            SimpleMatrix expectedParams = equationNnParams(100);
+            SimpleMatrix actualParams = Main.initialNnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100);
+            if (!expectedParams.isIdentical(actualParams, 0)) {
+                throw new IllegalStateException("unrolled params differ from the Equation ones");
+            }
+            SimpleMatrix expected = equationWithOnes(featuresMatrix);
+            PreparedDataset plain = new FeaturePipeline(FeaturePipeline.Normalization.NONE, 4).load(featuresMatrix, yMatrix);
+            if (!expected.isIdentical(SimpleMatrix.wrap(plain.getFeaturesMatrixWithOnes()), 0)) {
+                throw new IllegalStateException("[ones, X] differs from the Equation one");
+            }
+            PreparedDataset sequential = new FeaturePipeline(normalization, 1).load(featuresMatrix, yMatrix);
+            PreparedDataset parallel = new FeaturePipeline(normalization, 4).load(featuresMatrix, yMatrix);
+            if (!SimpleMatrix.wrap(sequential.getFeaturesMatrixWithOnes()).isIdentical(SimpleMatrix.wrap(parallel.getFeaturesMatrixWithOnes()), 0)) {
+                throw new IllegalStateException("normalized features depend on parallelism");
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.smagellan.toyml;
+
+/*
+ * Element-wise (softmax: row-wise) layer activations, the forward pass only. The backward pass lives in
+ * HiddenActivation for the ones a hidden layer may use, the loss in OutputActivation for the ones that
+ * can close a network; SOFTMAX has no hidden form, TANH and RELU no output one.
+ */
+public enum Activation {
+    SIGMOID(HiddenActivation.SIGMOID, OutputActivation.SIGMOID) {
+        @Override
+        void apply(double[] data, int rows, int cols, int stride, int colOffset) {
+            for (int row = 0; row < rows; ++row) {
+                MlFunctions.sigmoid(data, row * stride + colOffset, cols);
+            }
+        }
+    },
+    TANH(HiddenActivation.TANH, null) {
+        @Override
+        void apply(double[] data, int rows, int cols, int stride, int colOffset) {
+            for (int row = 0; row < rows; ++row) {
+                int offset = row * stride + colOffset;
+                for (int i = offset; i < offset + cols; ++i) {
+                    data[i] = Math.tanh(data[i]);
+                }
+            }
+        }
+    },
+    RELU(HiddenActivation.RELU, null) {
+        @Override
+        void apply(double[] data, int rows, int cols, int stride, int colOffset) {
+            for (int row = 0; row < rows; ++row) {
+                int offset = row * stride + colOffset;
+                for (int i = offset; i < offset + cols; ++i) {
+                    data[i] = Math.max(data[i], 0);
+                }
+            }
+        }
+    },
+    SOFTMAX(null, OutputActivation.SOFTMAX) {
+        @Override
+        void apply(double[] data, int rows, int cols, int stride, int colOffset) {
+            for (int row = 0; row < rows; ++row) {
+                int offset = row * stride + colOffset;
+                double max = data[offset];
+                for (int i = offset + 1; i < offset + cols; ++i) {
+                    max = Math.max(max, data[i]);
+                }
+                double sum = 0;
+                for (int i = offset; i < offset + cols; ++i) {
+                    data[i] = Math.exp(data[i] - max);
+                    sum += data[i];
+                }
+                for (int i = offset; i < offset + cols; ++i) {
+                    data[i] /= sum;
+                }
+            }
+        }
+    };
+
+    private final HiddenActivation hidden;
+    private final OutputActivation output;
+
+    Activation(HiddenActivation hidden, OutputActivation output) {
+        this.hidden = hidden;
+        this.output = output;
+    }
+
+    //activates cols columns, starting at colOffset, of a row-major block with the given row stride
+    abstract void apply(double[] data, int rows, int cols, int stride, int colOffset);
+
+    //null if this can't be a hidden activation
+    HiddenActivation hidden() {
+        return hidden;
+    }
+
+    //null if this can't be an output activation
+    OutputActivation output() {
+        return output;
+    }
+
+    public boolean isOutputActivation() {
+        return output != null;
+    }
+
+    public boolean isHiddenActivation() {
+        return hidden != null;
+    }
+}
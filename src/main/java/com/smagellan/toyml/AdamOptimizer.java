@@ -0,0 +1,29 @@
+package com.smagellan.toyml;
+
+public class AdamOptimizer extends MiniBatchOptimizer {
+    public static final double BETA1 = 0.9;
+    public static final double BETA2 = 0.999;
+    public static final double EPSILON = 1e-8;
+
+    private final double learningRate;
+
+    public AdamOptimizer(MiniBatchOptions options, double learningRate) {
+        super(options);
+        this.learningRate = learningRate;
+    }
+
+    @Override
+    protected StepRule newStepRule(int numParams) {
+        double[] firstMoment = new double[numParams];
+        double[] secondMoment = new double[numParams];
+        return (params, grad, step) -> {
+            double bias1 = 1 - Math.pow(BETA1, step);
+            double bias2 = 1 - Math.pow(BETA2, step);
+            for (int i = 0; i < params.length; ++i) {
+                firstMoment[i] = BETA1 * firstMoment[i] + (1 - BETA1) * grad[i];
+                secondMoment[i] = BETA2 * secondMoment[i] + (1 - BETA2) * grad[i] * grad[i];
+                params[i] -= learningRate * (firstMoment[i] / bias1) / (Math.sqrt(secondMoment[i] / bias2) + EPSILON);
+            }
+        };
+    }
+}
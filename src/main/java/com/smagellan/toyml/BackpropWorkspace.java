@@ -0,0 +1,399 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+
+import java.util.Arrays;
+
+/*
+ * Forward and backward pass over a block of rows, without regularization and without dividing by m.
+ * Results are left in delta1/delta2; the returned value is the raw cross-entropy sum.
+ */
+class BackpropWorkspace {
+    //a tile of 401 features is ~50KB: stays in L2 between the forward pass and the delta1 update
+    static final int TILE_ROWS = 16;
+
+    private final DMatrixRMaj z2;
+    private final DMatrixRMaj act2w1;
+    private final DMatrixRMaj act3;
+    private final DMatrixRMaj sigma2P1;
+    private final DMatrixRMaj delta1;
+    private final DMatrixRMaj delta2;
+    //theta1 and delta1 transposed for the sparse pass, allocated on first use
+    private DMatrixRMaj theta1T;
+    private DMatrixRMaj delta1T;
+    //per-tile intermediates of the fused pass
+    private final double[] zTile;
+    private final double[] act2Tile;
+    private final double[] sigma3Tile;
+    private final double[] sigma2P1Row;
+    //heap staging for off-heap tiles, allocated on first use
+    private double[] xTile;
+    private int[] labelsTile;
+    private long tileForwardNanos;
+    private long tileBackwardNanos;
+    private boolean phaseTimingEnabled;
+    private long forwardNanos;
+    private long backwardNanos;
+
+    BackpropWorkspace(int inputLayerSize, int hiddenLayerSize, int numLabels, int numRows) {
+        this.z2       = new DMatrixRMaj(numRows, hiddenLayerSize);
+        this.act2w1   = new DMatrixRMaj(numRows, hiddenLayerSize + 1);
+        this.act3     = new DMatrixRMaj(numRows, numLabels);
+        this.sigma2P1 = new DMatrixRMaj(numRows, hiddenLayerSize + 1);
+        this.delta1   = new DMatrixRMaj(hiddenLayerSize, inputLayerSize + 1);
+        this.delta2   = new DMatrixRMaj(numLabels, hiddenLayerSize + 1);
+        this.zTile       = new double[TILE_ROWS * hiddenLayerSize];
+        this.act2Tile    = new double[TILE_ROWS * (hiddenLayerSize + 1)];
+        this.sigma3Tile  = new double[TILE_ROWS * numLabels];
+        this.sigma2P1Row = new double[hiddenLayerSize + 1];
+    }
+
+    /*
+     * Fused, row-tiled pass: each tile of TILE_ROWS rows goes through forward, error backprop and the delta
+     * updates while it is still in cache, so X is read from memory once per call instead of once per hidden
+     * unit in multTransA. The long loops run along the feature rows of X, theta1 and delta1: dot products
+     * forward, rank-1 updates backward, each theta1/delta1 row reused across the tile. Sums are taken in the
+     * same order as the EJML products in accumulateGemm, so the results are identical.
+     */
+    double accumulate(DMatrixRMaj featuresMatrixWithOnes, int[] labels, DMatrixRMaj theta1, DMatrixRMaj theta2) {
+        return accumulate(featuresMatrixWithOnes, labels, 0, featuresMatrixWithOnes.numRows, theta1, theta2);
+    }
+
+    //same pass over rows [fromRow, toRow) of a matrix shared with other workspaces, without copying them out
+    double accumulate(DMatrixRMaj featuresMatrixWithOnes, int[] labels, int fromRow, int toRow, DMatrixRMaj theta1, DMatrixRMaj theta2) {
+        int cols = featuresMatrixWithOnes.numCols;
+        startTiles(cols);
+        double jSum = 0;
+        for (int tileStart = fromRow; tileStart < toRow; tileStart += TILE_ROWS) {
+            int tileRows = Math.min(TILE_ROWS, toRow - tileStart);
+            jSum = accumulateTile(featuresMatrixWithOnes.data, tileStart * cols, labels, tileStart, tileRows, cols,
+                    theta1.data, theta2.data, jSum);
+        }
+        finishTiles();
+        return jSum;
+    }
+
+    //the fused pass over an off-heap dataset: each tile is copied into heap scratch, then processed as above
+    double accumulate(OffHeapDataset dataset, DMatrixRMaj theta1, DMatrixRMaj theta2) {
+        int numRows = dataset.getNumRows();
+        int cols = dataset.getNumCols() + 1;
+        if (xTile == null) {
+            xTile = new double[TILE_ROWS * cols];
+            labelsTile = new int[TILE_ROWS];
+        }
+        startTiles(cols);
+        double jSum = 0;
+        for (int tileStart = 0; tileStart < numRows; tileStart += TILE_ROWS) {
+            int tileRows = Math.min(TILE_ROWS, numRows - tileStart);
+            dataset.readTile(tileStart, tileStart + tileRows, xTile, labelsTile);
+            jSum = accumulateTile(xTile, 0, labelsTile, 0, tileRows, cols, theta1.data, theta2.data, jSum);
+        }
+        finishTiles();
+        return jSum;
+    }
+
+    private void startTiles(int cols) {
+        Arrays.fill(delta1.data, 0, delta1.numRows * cols, 0);
+        Arrays.fill(delta2.data, 0, delta2.getNumElements(), 0);
+        tileForwardNanos = 0;
+        tileBackwardNanos = 0;
+    }
+
+    private void finishTiles() {
+        if (phaseTimingEnabled) {
+            forwardNanos = tileForwardNanos;
+            backwardNanos = tileBackwardNanos;
+        }
+    }
+
+    //rows of the tile start at xBase in x and labelsBase in rowLabels; returns jSum plus the tile's cross-entropy terms, added in row order
+    private double accumulateTile(double[] x, int xBase, int[] rowLabels, int labelsBase, int tileRows, int cols,
+                                  double[] t1, double[] t2, double jSum) {
+        int hidden = z2.numCols;
+        int labels = act3.numCols;
+        double[] d1 = delta1.data;
+        double[] d2 = delta2.data;
+        double[] z = zTile;
+        double[] a2 = act2Tile;
+        double[] s3 = sigma3Tile;
+        double[] sp = sigma2P1Row;
+        long start = phaseTimingEnabled ? System.nanoTime() : 0;
+
+        //z = X * theta1', four rows at a time: independent sums hide the add latency, each in its own order
+        for (int j = 0; j < hidden; ++j) {
+            int tOffset = j * cols;
+            int r = 0;
+            for (; r + 4 <= tileRows; r += 4) {
+                int x0 = xBase + r * cols;
+                int x1 = x0 + cols;
+                int x2 = x1 + cols;
+                int x3 = x2 + cols;
+                double total0 = 0;
+                double total1 = 0;
+                double total2 = 0;
+                double total3 = 0;
+                for (int k = 0; k < cols; ++k) {
+                    double t = t1[tOffset + k];
+                    total0 += x[x0 + k] * t;
+                    total1 += x[x1 + k] * t;
+                    total2 += x[x2 + k] * t;
+                    total3 += x[x3 + k] * t;
+                }
+                z[r * hidden + j] = total0;
+                z[(r + 1) * hidden + j] = total1;
+                z[(r + 2) * hidden + j] = total2;
+                z[(r + 3) * hidden + j] = total3;
+            }
+            for (; r < tileRows; ++r) {
+                int xOffset = xBase + r * cols;
+                double total = 0;
+                for (int k = 0; k < cols; ++k) {
+                    total += x[xOffset + k] * t1[tOffset + k];
+                }
+                z[r * hidden + j] = total;
+            }
+        }
+        for (int r = 0; r < tileRows; ++r) {
+            int zOffset = r * hidden;
+            int aOffset = r * (hidden + 1);
+            a2[aOffset] = 1;
+            for (int j = 0; j < hidden; ++j) {
+                a2[aOffset + 1 + j] = MlFunctions.sigmoid(z[zOffset + j]);
+            }
+            int label = rowLabels[labelsBase + r];
+            for (int c = 0; c < labels; ++c) {
+                double total = 0;
+                int tOffset = c * (hidden + 1);
+                for (int j = 0; j <= hidden; ++j) {
+                    total += a2[aOffset + j] * t2[tOffset + j];
+                }
+                double a = MlFunctions.sigmoid(total);
+                //one-hot y by index: only the label's own term has y = 1
+                if (c == label) {
+                    jSum -= Math.log(a);
+                    s3[r * labels + c] = a - 1;
+                } else {
+                    jSum -= Math.log(-a + 1);
+                    s3[r * labels + c] = a;
+                }
+            }
+        }
+        long forwardEnd = phaseTimingEnabled ? System.nanoTime() : 0;
+
+        for (int r = 0; r < tileRows; ++r) {
+            int aOffset = r * (hidden + 1);
+            int sOffset = r * labels;
+            //sigma2P1 = sigma3 * theta2, then z becomes sigma2
+            for (int j = 0; j <= hidden; ++j) {
+                sp[j] = s3[sOffset] * t2[j];
+            }
+            for (int c = 1; c < labels; ++c) {
+                double sVal = s3[sOffset + c];
+                int tOffset = c * (hidden + 1);
+                for (int j = 0; j <= hidden; ++j) {
+                    sp[j] += sVal * t2[tOffset + j];
+                }
+            }
+            int zOffset = r * hidden;
+            for (int j = 0; j < hidden; ++j) {
+                z[zOffset + j] = sp[j + 1] * MlFunctions.sigmoidGradientFromActivation(a2[aOffset + 1 + j]);
+            }
+            //delta2 += sigma3' * act2w1
+            for (int c = 0; c < labels; ++c) {
+                double sVal = s3[sOffset + c];
+                int dOffset = c * (hidden + 1);
+                for (int j = 0; j <= hidden; ++j) {
+                    d2[dOffset + j] += sVal * a2[aOffset + j];
+                }
+            }
+        }
+        //delta1 += sigma2' * X, two rows per pass over the delta1 row, added in row order
+        for (int j = 0; j < hidden; ++j) {
+            int dOffset = j * cols;
+            int r = 0;
+            for (; r + 2 <= tileRows; r += 2) {
+                double s0 = z[r * hidden + j];
+                double s1 = z[(r + 1) * hidden + j];
+                int x0 = xBase + r * cols;
+                int x1 = x0 + cols;
+                for (int k = 0; k < cols; ++k) {
+                    d1[dOffset + k] = (d1[dOffset + k] + s0 * x[x0 + k]) + s1 * x[x1 + k];
+                }
+            }
+            for (; r < tileRows; ++r) {
+                double sVal = z[r * hidden + j];
+                int xOffset = xBase + r * cols;
+                for (int k = 0; k < cols; ++k) {
+                    d1[dOffset + k] += sVal * x[xOffset + k];
+                }
+            }
+        }
+        if (phaseTimingEnabled) {
+            tileForwardNanos += forwardEnd - start;
+            tileBackwardNanos += System.nanoTime() - forwardEnd;
+        }
+        return jSum;
+    }
+
+    //whole-matrix EJML products, each a full pass over its operands; kept as the reference for the fused pass
+    double accumulateGemm(DMatrixRMaj featuresMatrixWithOnes, int[] labels, DMatrixRMaj theta1, DMatrixRMaj theta2) {
+        reshape(featuresMatrixWithOnes.numRows);
+
+        long start = phaseTimingEnabled ? System.nanoTime() : 0;
+        CommonOps_DDRM.multTransB(featuresMatrixWithOnes, theta1, z2);
+        double jSum = forwardFromZ2(labels, theta2);
+        long forwardEnd = phaseTimingEnabled ? System.nanoTime() : 0;
+
+        backwardToSigma2(labels, theta2);
+        CommonOps_DDRM.multTransA(z2, featuresMatrixWithOnes, delta1);
+        if (phaseTimingEnabled) {
+            forwardNanos = forwardEnd - start;
+            backwardNanos = System.nanoTime() - forwardEnd;
+        }
+        return jSum;
+    }
+
+    //same pass with the first layer on CSR features; the bias column stays implicit
+    double accumulate(CsrMatrix features, int[] labels, DMatrixRMaj theta1, DMatrixRMaj theta2) {
+        reshape(features.getNumRows());
+
+        if (theta1T == null) {
+            theta1T = new DMatrixRMaj(delta1.numCols, delta1.numRows);
+            delta1T = new DMatrixRMaj(delta1.numCols, delta1.numRows);
+        }
+
+        long start = phaseTimingEnabled ? System.nanoTime() : 0;
+        CommonOps_DDRM.transpose(theta1, theta1T);
+        features.multWithOnes(theta1T, z2);
+        double jSum = forwardFromZ2(labels, theta2);
+        long forwardEnd = phaseTimingEnabled ? System.nanoTime() : 0;
+
+        backwardToSigma2(labels, theta2);
+        features.multTransAWithOnes(z2, delta1T);
+        CommonOps_DDRM.transpose(delta1T, delta1);
+        if (phaseTimingEnabled) {
+            forwardNanos = forwardEnd - start;
+            backwardNanos = System.nanoTime() - forwardEnd;
+        }
+        return jSum;
+    }
+
+    //shrinking keeps the backing arrays, so batches up to the initial row count never allocate
+    private void reshape(int numRows) {
+        z2.reshape(numRows, z2.numCols);
+        act2w1.reshape(numRows, act2w1.numCols);
+        act3.reshape(numRows, act3.numCols);
+        sigma2P1.reshape(numRows, sigma2P1.numCols);
+    }
+
+    private double forwardFromZ2(int[] labels, DMatrixRMaj theta2) {
+        MlFunctions.sigmoidWithOnes(z2, act2w1);
+        CommonOps_DDRM.multTransB(act2w1, theta2, act3);
+        MlFunctions.sigmoid(act3.data, 0, act3.getNumElements());
+        return crossEntropySum(act3, labels);
+    }
+
+    //leaves sigma3 in act3, sigma2 in z2 and delta2; delta1 is up to the caller
+    private void backwardToSigma2(int[] labels, DMatrixRMaj theta2) {
+        for (int row = 0; row < act3.numRows; ++row) {
+            act3.data[row * act3.numCols + labels[row]] -= 1;
+        }
+        CommonOps_DDRM.mult(act3, theta2, sigma2P1);
+        sigma2(sigma2P1, act2w1, z2);
+        CommonOps_DDRM.multTransA(act3, act2w1, delta2);
+    }
+
+    void setPhaseTimingEnabled(boolean phaseTimingEnabled) {
+        this.phaseTimingEnabled = phaseTimingEnabled;
+    }
+
+    long getForwardNanos() {
+        return forwardNanos;
+    }
+
+    long getBackwardNanos() {
+        return backwardNanos;
+    }
+
+    DMatrixRMaj getDelta1() {
+        return delta1;
+    }
+
+    DMatrixRMaj getDelta2() {
+        return delta2;
+    }
+
+    static double regularizedSquaresSum(DMatrixRMaj theta) {
+        double sum = 0;
+        for (int row = 0; row < theta.numRows; ++row) {
+            int offset = row * theta.numCols;
+            for (int col = 1; col < theta.numCols; ++col) {
+                double val = theta.data[offset + col];
+                sum += val * val;
+            }
+        }
+        return sum;
+    }
+
+    static void regularizedGrad(DMatrixRMaj delta, DMatrixRMaj theta, double lambda, int trainExamplesCount, double[] dst, int dstOffset) {
+        for (int row = 0; row < delta.numRows; ++row) {
+            int offset = row * delta.numCols;
+            dst[dstOffset + offset] = (delta.data[offset] + 0.0) / trainExamplesCount;
+            for (int col = 1; col < delta.numCols; ++col) {
+                int idx = offset + col;
+                dst[dstOffset + idx] = (delta.data[idx] + theta.data[idx] * lambda) / trainExamplesCount;
+            }
+        }
+    }
+
+    //mini-batch variant: delta holds the sums of batchSize rows, the penalty is that of the whole numExamples training set
+    static void regularizedGrad(DMatrixRMaj delta, DMatrixRMaj theta, double lambda, int batchSize, int numExamples, double[] dst, int dstOffset) {
+        for (int row = 0; row < delta.numRows; ++row) {
+            int offset = row * delta.numCols;
+            dst[dstOffset + offset] = delta.data[offset] / batchSize;
+            for (int col = 1; col < delta.numCols; ++col) {
+                int idx = offset + col;
+                dst[dstOffset + idx] = delta.data[idx] / batchSize + theta.data[idx] * lambda / numExamples;
+            }
+        }
+    }
+
+    static double crossEntropySum(DMatrixRMaj act3, int[] labels) {
+        double[] a = act3.data;
+        int cols = act3.numCols;
+        double sum = 0;
+        for (int row = 0; row < act3.numRows; ++row) {
+            int offset = row * cols;
+            int labelIdx = offset + labels[row];
+            for (int i = offset; i < offset + cols; ++i) {
+                sum -= i == labelIdx ? Math.log(a[i]) : Math.log(-a[i] + 1);
+            }
+        }
+        return sum;
+    }
+
+    //labels are 0-based class indices, one per row
+    static void checkLabels(int[] labels, int numRows, int numLabels) {
+        if (labels.length != numRows) {
+            throw new IllegalArgumentException(labels.length + " labels for " + numRows + " rows");
+        }
+        for (int row = 0; row < numRows; ++row) {
+            if (labels[row] < 0 || labels[row] >= numLabels) {
+                throw new IllegalArgumentException("label " + labels[row] + " of row " + row + " is out of [0, " + numLabels + ")");
+            }
+        }
+    }
+
+    private static void sigma2(DMatrixRMaj sigma2P1, DMatrixRMaj act2w1, DMatrixRMaj result) {
+        int cols = result.numCols;
+        for (int row = 0; row < result.numRows; ++row) {
+            int srcOffset = row * (cols + 1) + 1;
+            int dstOffset = row * cols;
+            for (int col = 0; col < cols; ++col) {
+                result.data[dstOffset + col] = sigma2P1.data[srcOffset + col]
+                        * MlFunctions.sigmoidGradientFromActivation(act2w1.data[srcOffset + col]);
+            }
+        }
+    }
+}
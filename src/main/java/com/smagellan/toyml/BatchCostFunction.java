@@ -0,0 +1,16 @@
+package com.smagellan.toyml;
+
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.function.Function;
+
+/*
+ * Cost function that can also be evaluated on a subset of the training rows:
+ * rowIndices[from, to) select the rows of the batch. A batch averages the data term over its own rows but keeps
+ * the regularization of the full training set, so a batch covering every row gives the full-batch cost.
+ */
+public interface BatchCostFunction extends Function<SimpleMatrix, OptimizedFunctionResult> {
+    int getNumExamples();
+
+    OptimizedFunctionResult compute(SimpleMatrix nnParams, int[] rowIndices, int from, int to);
+}
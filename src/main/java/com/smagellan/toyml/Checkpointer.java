@@ -0,0 +1,8 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+
+//called by fmincg after every successful line search; params and state are only valid during the call
+public interface Checkpointer {
+    void checkpoint(DMatrixRMaj params, FmincgState state);
+}
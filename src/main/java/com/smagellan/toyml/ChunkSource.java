@@ -0,0 +1,21 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+
+import java.io.IOException;
+
+/*
+ * Sequential source of training rows for StreamingCostFunction. Every pass starts with reset();
+ * nextChunk fills up to labels.length rows and returns how many it wrote, 0 once the pass is over.
+ * Calls of one pass come from a single thread, one after another.
+ */
+public interface ChunkSource {
+    int getNumFeatures();
+
+    int getNumLabels();
+
+    void reset() throws IOException;
+
+    //featuresWithOnes is reshaped to [rows, numFeatures + 1] with the bias column set; labels are 0-based
+    int nextChunk(DMatrixRMaj featuresWithOnes, int[] labels) throws IOException;
+}
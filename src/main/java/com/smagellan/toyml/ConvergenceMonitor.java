@@ -0,0 +1,90 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One optimizer run's view of ConvergenceOptions: counts evaluations, watches the clock and keeps the
+ * best validated params. Every check is skipped when its option is off, so a run without options pays
+ * one counter increment per evaluation.
+ */
+class ConvergenceMonitor {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(ConvergenceMonitor.class);
+
+    private final ConvergenceOptions options;
+    private final long deadlineNanos;
+    private int evaluations;
+    private int acceptedIterations;
+    private double bestScore = Double.NEGATIVE_INFINITY;
+    private double[] bestParams;
+    private int validationsWithoutImprovement;
+
+    ConvergenceMonitor(ConvergenceOptions options) {
+        this.options = options != null ? options : new ConvergenceOptions();
+        this.deadlineNanos = this.options.getTimeBudgetMillis() == Long.MAX_VALUE ?
+                Long.MAX_VALUE : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.options.getTimeBudgetMillis());
+    }
+
+    void evaluated() {
+        ++evaluations;
+    }
+
+    int getEvaluations() {
+        return evaluations;
+    }
+
+    //after an accepted step from cost previous to cost; gradient and params belong to the new point
+    OptimizationResult.StopReason accepted(double previous, double cost, double[] gradient, DMatrixRMaj params) {
+        ++acceptedIterations;
+        if (options.getGradientTolerance() > 0) {
+            double norm = 0;
+            for (double g : gradient) {
+                norm += g * g;
+            }
+            if (Math.sqrt(norm) <= options.getGradientTolerance()) {
+                return OptimizationResult.StopReason.GRADIENT_TOLERANCE;
+            }
+        }
+        if (options.getCostTolerance() > 0) {
+            double scale = Math.max(Math.max(Math.abs(previous), Math.abs(cost)), 1);
+            if ((previous - cost) / scale <= options.getCostTolerance()) {
+                return OptimizationResult.StopReason.COST_TOLERANCE;
+            }
+        }
+        if (options.getValidator() != null && acceptedIterations % options.getValidationInterval() == 0) {
+            double score = options.getValidator().score(params);
+            logger.debug("Iteration {} | validation score: {}", acceptedIterations, score);
+            if (score > bestScore + options.getMinImprovement()) {
+                bestScore = score;
+                bestParams = Arrays.copyOf(params.data, params.getNumElements());
+                validationsWithoutImprovement = 0;
+            } else if (++validationsWithoutImprovement >= options.getPatience()) {
+                return OptimizationResult.StopReason.VALIDATION_PATIENCE;
+            }
+        }
+        return budgetExceeded();
+    }
+
+    //between iterations, after a failed line search as well
+    OptimizationResult.StopReason budgetExceeded() {
+        if (evaluations >= options.getMaxEvaluations()) {
+            return OptimizationResult.StopReason.EVALUATION_BUDGET;
+        }
+        if (deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos >= 0) {
+            return OptimizationResult.StopReason.TIME_BUDGET;
+        }
+        return null;
+    }
+
+    //with validation on, the run hands back the best scored params, same as MiniBatchOptimizer with patience
+    DMatrixRMaj resultParams(DMatrixRMaj last) {
+        if (bestParams == null) {
+            return last;
+        }
+        logger.debug("returning params with validation score {}", bestScore);
+        return DMatrixRMaj.wrap(bestParams.length, 1, bestParams);
+    }
+}
@@ -0,0 +1,94 @@
+package com.smagellan.toyml;
+
+/*
+ * Stopping rules checked after every iteration, on top of the optimizer's own iteration limit.
+ * Everything is off by default, which leaves a run exactly as it was. Budgets are checked between
+ * iterations, so a run may overshoot them by one line search. FmincgState keeps neither evaluations
+ * nor elapsed time, so FmincgOptimizer.resume starts both budgets (and the validation history) afresh.
+ */
+public class ConvergenceOptions {
+    private double costTolerance;
+    private double gradientTolerance;
+    private long timeBudgetMillis = Long.MAX_VALUE;
+    private int maxEvaluations = Integer.MAX_VALUE;
+    private Validator validator;
+    private int validationInterval = 1;
+    private int patience = Integer.MAX_VALUE;
+    private double minImprovement;
+
+    //stop once (f_prev - f) / max(|f_prev|, |f|, 1) <= costTolerance for an accepted step
+    public ConvergenceOptions costTolerance(double costTolerance) {
+        this.costTolerance = costTolerance;
+        return this;
+    }
+
+    //stop once the Euclidean norm of the gradient at the accepted point is <= gradientTolerance
+    public ConvergenceOptions gradientTolerance(double gradientTolerance) {
+        this.gradientTolerance = gradientTolerance;
+        return this;
+    }
+
+    public ConvergenceOptions timeBudget(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("time budget: " + millis + "; expect positive");
+        }
+        this.timeBudgetMillis = millis;
+        return this;
+    }
+
+    //cost function evaluations, line search probes included
+    public ConvergenceOptions evaluationBudget(int maxEvaluations) {
+        if (maxEvaluations <= 0) {
+            throw new IllegalArgumentException("evaluation budget: " + maxEvaluations + "; expect positive");
+        }
+        this.maxEvaluations = maxEvaluations;
+        return this;
+    }
+
+    /*
+     * Scores the params every interval accepted iterations and stops after patience scores in a row that didn't
+     * beat the best one by more than minImprovement. The run then returns the best scored params, not the last ones.
+     */
+    public ConvergenceOptions validation(Validator validator, int interval, int patience, double minImprovement) {
+        if (interval <= 0 || patience <= 0) {
+            throw new IllegalArgumentException("interval: " + interval + ", patience: " + patience + "; expect positive");
+        }
+        this.validator = validator;
+        this.validationInterval = interval;
+        this.patience = patience;
+        this.minImprovement = minImprovement;
+        return this;
+    }
+
+    public double getCostTolerance() {
+        return costTolerance;
+    }
+
+    public double getGradientTolerance() {
+        return gradientTolerance;
+    }
+
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+
+    public int getMaxEvaluations() {
+        return maxEvaluations;
+    }
+
+    public Validator getValidator() {
+        return validator;
+    }
+
+    public int getValidationInterval() {
+        return validationInterval;
+    }
+
+    public int getPatience() {
+        return patience;
+    }
+
+    public double getMinImprovement() {
+        return minImprovement;
+    }
+}
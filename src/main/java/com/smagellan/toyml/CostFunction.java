@@ -13,15 +13,21 @@ public class CostFunction implements Function<SimpleMatrix, OptimizedFunctionRes
     private final int hiddenLayerSize;
     private final int numLabels;
     private final SimpleMatrix featuresMatrixWithOnes;
-    private final SimpleMatrix yVec;
+    private final int[] labels;
     private final double lambda;
 
     public CostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, SimpleMatrix featuresMatrixWithOnes, SimpleMatrix yVec, double lambda) {
+        this(inputLayerSize, hiddenLayerSize, numLabels, featuresMatrixWithOnes, Main.labelsOf(yVec.getDDRM()), lambda);
+    }
+
+    //labels are 0-based class indices; y is never expanded to m x numLabels
+    public CostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, SimpleMatrix featuresMatrixWithOnes, int[] labels, double lambda) {
+        BackpropWorkspace.checkLabels(labels, featuresMatrixWithOnes.numRows(), numLabels);
         this.inputLayerSize = inputLayerSize;
         this.hiddenLayerSize = hiddenLayerSize;
         this.numLabels = numLabels;
         this.featuresMatrixWithOnes = featuresMatrixWithOnes;
-        this.yVec = yVec;
+        this.labels = labels;
         this.lambda = lambda;
     }
 
@@ -42,8 +48,8 @@ public class CostFunction implements Function<SimpleMatrix, OptimizedFunctionRes
         SimpleMatrix z3     = act2w1.mult(theta2.transpose());
         SimpleMatrix act3   = MlFunctions.sigmoid(z3);
 
-        SimpleMatrix tmp    = yVec.negative().plus(1).elementMult(act3.negative().plus(1).elementLog());
-        double jValue = yVec.negative().elementMult(act3.elementLog()).minus(tmp).elementSum() / trainExamplesCount;
+        //-log(act3) at the label, -log(1 - act3) elsewhere
+        double jValue = BackpropWorkspace.crossEntropySum(act3.getDDRM(), labels) / trainExamplesCount;
         //logger.debug("non-regularized J: {}", jValue);
 
         SimpleMatrix theta1C = theta1.copy();
@@ -57,7 +63,10 @@ public class CostFunction implements Function<SimpleMatrix, OptimizedFunctionRes
         jValue += jValueReg;
         //logger.debug("regularized J: {}", jValue);
 
-        SimpleMatrix sigma3   = act3.minus(yVec);
+        SimpleMatrix sigma3   = act3.copy();
+        for (int rowIdx = 0; rowIdx < trainExamplesCount; ++rowIdx) {
+            sigma3.set(rowIdx, labels[rowIdx], sigma3.get(rowIdx, labels[rowIdx]) - 1);
+        }
         SimpleMatrix sigma2P1 = theta2.transpose().mult(sigma3.transpose());
         sigma2P1              = sigma2P1.rows(1, sigma2P1.numRows());
         SimpleMatrix sigma2   = sigma2P1.transpose().elementMult(MlFunctions.sigmoidGradient(z2));
@@ -0,0 +1,143 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/*
+ * Worker side of DistributedCostFunction: holds one shard of the training rows and answers EVALUATE
+ * requests with the unnormalized J and deltas of that shard (see WorkerConnection for the protocol).
+ * Serves one coordinator at a time; the shard lives as long as the connection.
+ * Usage: CostWorker [port [bindAddress]]; port 0 picks a free one. The first line on stdout is
+ * "listening on <port>", which LocalWorkerPool waits for.
+ */
+public class CostWorker {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(CostWorker.class);
+
+    public static final String LISTENING_PREFIX = "listening on ";
+
+    private final ServerSocket serverSocket;
+
+    public CostWorker(ServerSocket serverSocket) {
+        this.serverSocket = serverSocket;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        InetAddress bindAddress = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+        ServerSocket serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(bindAddress, port));
+        System.out.println(LISTENING_PREFIX + serverSocket.getLocalPort());
+        System.out.flush();
+        new CostWorker(serverSocket).serve();
+    }
+
+    //accepts coordinators one after another until the server socket is closed
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            try (WorkerConnection connection = new WorkerConnection(serverSocket.accept())) {
+                handle(connection);
+            } catch (EOFException e) {
+                logger.debug("coordinator went away");
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                logger.warn("connection failed", e);
+            }
+        }
+    }
+
+    private void handle(WorkerConnection connection) throws IOException {
+        int magic = connection.in().readInt();
+        int version = connection.in().readInt();
+        if (magic != WorkerConnection.MAGIC || version != WorkerConnection.VERSION) {
+            logger.warn("bad handshake {}/{}", Integer.toHexString(magic), version);
+            return;
+        }
+        Shard shard = null;
+        while (true) {
+            byte op = connection.in().readByte();
+            if (op == WorkerConnection.CLOSE) {
+                return;
+            }
+            try {
+                if (op == WorkerConnection.LOAD) {
+                    shard = Shard.read(connection);
+                    connection.out().writeByte(WorkerConnection.OK);
+                } else if (op == WorkerConnection.EVALUATE) {
+                    if (shard == null) {
+                        throw new IllegalStateException("EVALUATE before LOAD");
+                    }
+                    connection.readDoubles(shard.params, 0, shard.params.length);
+                    double jSum = shard.evaluate();
+                    connection.out().writeByte(WorkerConnection.OK);
+                    connection.out().writeDouble(jSum);
+                    DMatrixRMaj delta1 = shard.workspace.getDelta1();
+                    DMatrixRMaj delta2 = shard.workspace.getDelta2();
+                    connection.writeDoubles(delta1.data, 0, delta1.getNumElements());
+                    connection.writeDoubles(delta2.data, 0, delta2.getNumElements());
+                } else {
+                    throw new IllegalStateException("unknown op " + op);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("op {} failed", op, e);
+                connection.out().writeByte(WorkerConnection.ERROR);
+                connection.out().writeUTF(String.valueOf(e.getMessage()));
+                connection.out().flush();
+                return;
+            }
+            connection.out().flush();
+        }
+    }
+
+    private static class Shard {
+        private final DMatrixRMaj featuresMatrixWithOnes;
+        private final int[] labels;
+        private final BackpropWorkspace workspace;
+        private final DMatrixRMaj theta1;
+        private final DMatrixRMaj theta2;
+        private final double[] params;
+
+        private Shard(int hiddenLayerSize, int numLabels, DMatrixRMaj featuresMatrixWithOnes, int[] labels) {
+            int inputLayerSize = featuresMatrixWithOnes.numCols - 1;
+            BackpropWorkspace.checkLabels(labels, featuresMatrixWithOnes.numRows, numLabels);
+            this.featuresMatrixWithOnes = featuresMatrixWithOnes;
+            this.labels = labels;
+            this.workspace = new BackpropWorkspace(inputLayerSize, hiddenLayerSize, numLabels, featuresMatrixWithOnes.numRows);
+            this.theta1 = new DMatrixRMaj(hiddenLayerSize, inputLayerSize + 1);
+            this.theta2 = new DMatrixRMaj(numLabels, hiddenLayerSize + 1);
+            this.params = new double[theta1.getNumElements() + theta2.getNumElements()];
+        }
+
+        private static Shard read(WorkerConnection connection) throws IOException {
+            int hiddenLayerSize = connection.in().readInt();
+            int numLabels = connection.in().readInt();
+            int numRows = connection.in().readInt();
+            int numCols = connection.in().readInt();
+            if (hiddenLayerSize <= 0 || numLabels <= 0 || numRows <= 0 || numCols <= 1
+                    || (long) numRows * numCols > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("bad shard: hiddenLayerSize " + hiddenLayerSize + ", numLabels " + numLabels
+                        + ", " + numRows + " x " + numCols);
+            }
+            DMatrixRMaj featuresMatrixWithOnes = new DMatrixRMaj(numRows, numCols);
+            connection.readDoubles(featuresMatrixWithOnes.data, 0, numRows * numCols);
+            int[] labels = new int[numRows];
+            connection.readInts(labels, 0, numRows);
+            logger.debug("loaded {} x {} shard", numRows, numCols);
+            return new Shard(hiddenLayerSize, numLabels, featuresMatrixWithOnes, labels);
+        }
+
+        private double evaluate() {
+            System.arraycopy(params, 0, theta1.data, 0, theta1.getNumElements());
+            System.arraycopy(params, theta1.getNumElements(), theta2.data, 0, theta2.getNumElements());
+            return workspace.accumulate(featuresMatrixWithOnes, labels, theta1, theta2);
+        }
+    }
+}
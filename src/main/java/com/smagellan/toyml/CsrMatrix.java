@@ -0,0 +1,165 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+
+import java.util.Arrays;
+
+/*
+ * Compressed sparse row feature matrix without the bias column; the bias is added implicitly by the kernels.
+ * Column indices ascend within a row. The kernels visit non-zeros in the order the dense products visit
+ * columns and only skip zero terms, so results match BackpropWorkspace/Predictor on [ones, X].
+ */
+public class CsrMatrix {
+    //SparsePerfTest on the ex4 shapes breaks even around 0.8; the margin covers the extra copy and index memory
+    public static final double MAX_SPARSE_DENSITY = 0.5;
+
+    private final int numRows;
+    private final int numCols;
+    private final int[] rowPointers;
+    private final int[] columnIndices;
+    private final double[] values;
+
+    public CsrMatrix(int numRows, int numCols, int[] rowPointers, int[] columnIndices, double[] values) {
+        if (numRows < 0 || numCols < 0 || rowPointers.length != numRows + 1 || rowPointers[0] != 0
+                || columnIndices.length < rowPointers[numRows] || values.length < rowPointers[numRows]) {
+            throw new IllegalArgumentException("arrays don't match a " + numRows + " x " + numCols + " matrix with "
+                    + (rowPointers.length > 0 ? rowPointers[rowPointers.length - 1] : 0) + " non-zeros");
+        }
+        //the kernels index theta rows by column and trust the row ranges, so a bad index reads another row's weights
+        for (int row = 0; row < numRows; ++row) {
+            if (rowPointers[row + 1] < rowPointers[row]) {
+                throw new IllegalArgumentException("rowPointers decrease at row " + row);
+            }
+            for (int idx = rowPointers[row]; idx < rowPointers[row + 1]; ++idx) {
+                int col = columnIndices[idx];
+                if (col < 0 || col >= numCols || (idx > rowPointers[row] && col <= columnIndices[idx - 1])) {
+                    throw new IllegalArgumentException("column index " + col + " at row " + row
+                            + " is out of [0, " + numCols + ") or not ascending");
+                }
+            }
+        }
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.rowPointers = rowPointers;
+        this.columnIndices = columnIndices;
+        this.values = values;
+    }
+
+    //firstCol = 1 drops the bias column of a [ones, X] matrix
+    public static CsrMatrix fromDense(DMatrixRMaj matrix, int firstCol) {
+        return fromDense(matrix, firstCol, countNonZeros(matrix, firstCol));
+    }
+
+    private static CsrMatrix fromDense(DMatrixRMaj matrix, int firstCol, int nonZeros) {
+        int numCols = matrix.numCols - firstCol;
+        int[] rowPointers = new int[matrix.numRows + 1];
+        int[] columnIndices = new int[nonZeros];
+        double[] values = new double[nonZeros];
+        int idx = 0;
+        for (int row = 0; row < matrix.numRows; ++row) {
+            int offset = row * matrix.numCols + firstCol;
+            for (int col = 0; col < numCols; ++col) {
+                double val = matrix.data[offset + col];
+                if (val != 0) {
+                    columnIndices[idx] = col;
+                    values[idx++] = val;
+                }
+            }
+            rowPointers[row + 1] = idx;
+        }
+        return new CsrMatrix(matrix.numRows, numCols, rowPointers, columnIndices, values);
+    }
+
+    //fraction of non-zeros in columns [firstCol, numCols)
+    public static double density(DMatrixRMaj matrix, int firstCol) {
+        long size = (long) matrix.numRows * (matrix.numCols - firstCol);
+        return size == 0 ? 1 : (double) countNonZeros(matrix, firstCol) / size;
+    }
+
+    //the automatic choice: a CSR copy of [ones, X] when it is sparse enough to pay off, null otherwise
+    public static CsrMatrix sparseOrNull(DMatrixRMaj featuresMatrixWithOnes) {
+        long size = (long) featuresMatrixWithOnes.numRows * (featuresMatrixWithOnes.numCols - 1);
+        int nonZeros = countNonZeros(featuresMatrixWithOnes, 1);
+        return size != 0 && (double) nonZeros / size <= MAX_SPARSE_DENSITY ? fromDense(featuresMatrixWithOnes, 1, nonZeros) : null;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public int getNumNonZeros() {
+        return rowPointers[numRows];
+    }
+
+    public double getDensity() {
+        return numRows == 0 || numCols == 0 ? 1 : (double) getNumNonZeros() / ((long) numRows * numCols);
+    }
+
+    public DMatrixRMaj toDenseWithOnes() {
+        DMatrixRMaj result = new DMatrixRMaj(numRows, numCols + 1);
+        for (int row = 0; row < numRows; ++row) {
+            int offset = row * (numCols + 1);
+            result.data[offset] = 1;
+            for (int idx = rowPointers[row]; idx < rowPointers[row + 1]; ++idx) {
+                result.data[offset + 1 + columnIndices[idx]] = values[idx];
+            }
+        }
+        return result;
+    }
+
+    //dst = [ones, this] * thetaT, thetaT is (numCols + 1) x dst.numCols, bias row first
+    void multWithOnes(DMatrixRMaj thetaT, DMatrixRMaj dst) {
+        int cols = thetaT.numCols;
+        double[] t = thetaT.data;
+        double[] c = dst.data;
+        for (int row = 0; row < numRows; ++row) {
+            int cOffset = row * cols;
+            System.arraycopy(t, 0, c, cOffset, cols);
+            for (int idx = rowPointers[row]; idx < rowPointers[row + 1]; ++idx) {
+                double val = values[idx];
+                int tOffset = (columnIndices[idx] + 1) * cols;
+                for (int j = 0; j < cols; ++j) {
+                    c[cOffset + j] += val * t[tOffset + j];
+                }
+            }
+        }
+    }
+
+    //dstT = ([ones, this]' * a), a is numRows x dstT.numCols, dstT is (numCols + 1) x a.numCols
+    void multTransAWithOnes(DMatrixRMaj a, DMatrixRMaj dstT) {
+        int cols = a.numCols;
+        double[] src = a.data;
+        double[] c = dstT.data;
+        Arrays.fill(c, 0, dstT.getNumElements(), 0);
+        for (int row = 0; row < numRows; ++row) {
+            int aOffset = row * cols;
+            for (int j = 0; j < cols; ++j) {
+                c[j] += src[aOffset + j];
+            }
+            for (int idx = rowPointers[row]; idx < rowPointers[row + 1]; ++idx) {
+                double val = values[idx];
+                int cOffset = (columnIndices[idx] + 1) * cols;
+                for (int j = 0; j < cols; ++j) {
+                    c[cOffset + j] += val * src[aOffset + j];
+                }
+            }
+        }
+    }
+
+    private static int countNonZeros(DMatrixRMaj matrix, int firstCol) {
+        int count = 0;
+        for (int row = 0; row < matrix.numRows; ++row) {
+            int offset = row * matrix.numCols;
+            for (int col = firstCol; col < matrix.numCols; ++col) {
+                if (matrix.data[offset + col] != 0) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+}
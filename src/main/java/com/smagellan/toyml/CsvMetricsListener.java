@@ -0,0 +1,50 @@
+package com.smagellan.toyml;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Locale;
+
+//one CSV row per line search; allocated bytes are left empty where the JVM can't measure them
+public class CsvMetricsListener implements OptimizerListener {
+    public static final String HEADER = "iteration,success,cost,gradient_norm,step_size,evaluations,"
+            + "evaluation_ms,forward_ms,backward_ms,optimizer_ms,allocated_bytes_per_evaluation";
+
+    private final Writer out;
+
+    public CsvMetricsListener(Writer out) {
+        this.out = out;
+        write(HEADER);
+    }
+
+    @Override
+    public void onIteration(IterationStats stats) {
+        long allocated = stats.getAllocatedBytesPerEvaluation();
+        write(String.format(Locale.ROOT, "%d,%b,%.17g,%.17g,%.17g,%d,%.3f,%.3f,%.3f,%.3f,%s",
+                stats.getIteration(), stats.isSuccess(), stats.getCost(), stats.getGradientNorm(), stats.getStepSize(),
+                stats.getEvaluations(), millis(stats.getEvaluationNanos()), millis(stats.getForwardNanos()),
+                millis(stats.getBackwardNanos()), millis(stats.getOptimizerNanos()), allocated < 0 ? "" : Long.toString(allocated)));
+    }
+
+    @Override
+    public void onFinish(OptimizationResult result) {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(String line) {
+        try {
+            out.write(line);
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
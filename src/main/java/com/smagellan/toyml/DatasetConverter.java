@@ -0,0 +1,29 @@
+package com.smagellan.toyml;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.apache.commons.lang3.tuple.Triple;
+import org.ejml.data.DMatrix;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+//converts a Coursera style .mat file (X, y with 1-based labels) into the MappedDataset format
+public class DatasetConverter {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(DatasetConverter.class);
+
+    public static void main(String[] args) throws IOException {
+        File matFile = args.length > 0 ? new File(args[0]) : Main.EX4_DATA1;
+        File mappedFile = args.length > 1 ? new File(args[1]) : Main.EX4_DATA1_MAPPED;
+        int numLabels = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        convert(matFile, mappedFile, numLabels);
+    }
+
+    public static void convert(File matFile, File mappedFile, int numLabels) throws IOException {
+        StopWatch sw = StopWatch.createStarted();
+        Triple<DMatrix, DMatrix, Long> params = Main.loadParams(matFile, 0);
+        MappedDataset.write(mappedFile, params.getLeft(), params.getMiddle(), numLabels);
+        logger.debug("converted {} into {} in {} millis", matFile, mappedFile, sw.getTime(TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,27 @@
+package com.smagellan.toyml;
+
+public class DenseLayer {
+    private final int size;
+    private final Activation activation;
+
+    public DenseLayer(int size, Activation activation) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("layer size: " + size + "; expect positive");
+        }
+        this.size = size;
+        this.activation = activation;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Activation getActivation() {
+        return activation;
+    }
+
+    @Override
+    public String toString() {
+        return activation + "(" + size + ")";
+    }
+}
@@ -0,0 +1,14 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+
+/*
+ * Cost function that writes its gradient into a buffer owned by the caller, so an optimizer
+ * can evaluate it again and again without a single allocation per call.
+ */
+public interface DifferentiableFunction {
+    int getNumParams();
+
+    //params and grad are getNumParams() x 1; returns the cost
+    double compute(DMatrixRMaj params, DMatrixRMaj grad);
+}
@@ -0,0 +1,179 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/*
+ * Coordinator of data-parallel training over CostWorker processes. The rows are split into one contiguous
+ * shard per worker and shipped once, in the constructor; every evaluation then sends the parameters to all
+ * workers before reading any reply, so the shards are computed concurrently, and reduces the partial J and
+ * deltas in shard order. With m divisible by the number of workers the result is identical to
+ * ShardedCostFunction with blockSize m / workers. Not thread-safe: one optimizer per instance.
+ * A failed evaluation leaves unread replies on the wire, so it closes every connection and the instance
+ * refuses further evaluations.
+ */
+public class DistributedCostFunction implements Function<SimpleMatrix, OptimizedFunctionResult>, DifferentiableFunction, AutoCloseable {
+    public static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+
+    private final int trainExamplesCount;
+    private final double lambda;
+
+    private final int theta1NumElements;
+    private final int theta2NumElements;
+
+    private final DMatrixRMaj theta1;
+    private final DMatrixRMaj theta2;
+    private final DMatrixRMaj delta1;
+    private final DMatrixRMaj delta2;
+    private final DMatrixRMaj partialDelta1;
+    private final DMatrixRMaj partialDelta2;
+    private final List<WorkerConnection> workers;
+    private IOException failure;
+
+    public DistributedCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, DMatrixRMaj featuresMatrixWithOnes, int[] labels,
+                                   double lambda, List<InetSocketAddress> workerAddresses) throws IOException {
+        if (workerAddresses.isEmpty() || workerAddresses.size() > featuresMatrixWithOnes.numRows) {
+            throw new IllegalArgumentException(workerAddresses.size() + " workers for " + featuresMatrixWithOnes.numRows + " rows");
+        }
+        BackpropWorkspace.checkLabels(labels, featuresMatrixWithOnes.numRows, numLabels);
+        this.trainExamplesCount = featuresMatrixWithOnes.numRows;
+        this.lambda = lambda;
+
+        this.theta1NumElements = hiddenLayerSize * (inputLayerSize + 1);
+        this.theta2NumElements = numLabels * (hiddenLayerSize + 1);
+
+        this.theta1 = new DMatrixRMaj(hiddenLayerSize, inputLayerSize + 1);
+        this.theta2 = new DMatrixRMaj(numLabels, hiddenLayerSize + 1);
+        this.delta1 = new DMatrixRMaj(hiddenLayerSize, inputLayerSize + 1);
+        this.delta2 = new DMatrixRMaj(numLabels, hiddenLayerSize + 1);
+        this.partialDelta1 = new DMatrixRMaj(hiddenLayerSize, inputLayerSize + 1);
+        this.partialDelta2 = new DMatrixRMaj(numLabels, hiddenLayerSize + 1);
+
+        this.workers = new ArrayList<>();
+        try {
+            int numShards = workerAddresses.size();
+            int cols = featuresMatrixWithOnes.numCols;
+            for (int shardIdx = 0; shardIdx < numShards; ++shardIdx) {
+                Socket socket = new Socket();
+                socket.connect(workerAddresses.get(shardIdx), CONNECT_TIMEOUT_MILLIS);
+                WorkerConnection connection = new WorkerConnection(socket);
+                workers.add(connection);
+
+                int rowStart = (int) ((long) shardIdx * trainExamplesCount / numShards);
+                int rowEnd = (int) ((long) (shardIdx + 1) * trainExamplesCount / numShards);
+                connection.out().writeInt(WorkerConnection.MAGIC);
+                connection.out().writeInt(WorkerConnection.VERSION);
+                connection.out().writeByte(WorkerConnection.LOAD);
+                connection.out().writeInt(hiddenLayerSize);
+                connection.out().writeInt(numLabels);
+                connection.out().writeInt(rowEnd - rowStart);
+                connection.out().writeInt(cols);
+                connection.writeDoubles(featuresMatrixWithOnes.data, rowStart * cols, (rowEnd - rowStart) * cols);
+                connection.writeInts(labels, rowStart, rowEnd - rowStart);
+                connection.out().flush();
+            }
+            for (WorkerConnection connection : workers) {
+                connection.readStatus();
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public int getNumWorkers() {
+        return workers.size();
+    }
+
+    @Override
+    public int getNumParams() {
+        return theta1NumElements + theta2NumElements;
+    }
+
+    @Override
+    public double compute(DMatrixRMaj nnParams, DMatrixRMaj unrolledGrad) {
+        if (nnParams.getNumElements() != getNumParams() || unrolledGrad.getNumElements() != getNumParams()) {
+            throw new IllegalArgumentException("expect " + getNumParams() + " params and gradient elements; got "
+                    + nnParams.getNumElements() + " and " + unrolledGrad.getNumElements());
+        }
+        if (failure != null) {
+            throw new IllegalStateException("workers disconnected after: " + failure.getMessage(), failure);
+        }
+        if (workers.isEmpty()) {
+            throw new IllegalStateException("closed");
+        }
+        System.arraycopy(nnParams.data, 0, theta1.data, 0, theta1NumElements);
+        System.arraycopy(nnParams.data, theta1NumElements, theta2.data, 0, theta2NumElements);
+
+        double jSum = 0;
+        delta1.zero();
+        delta2.zero();
+        try {
+            for (WorkerConnection connection : workers) {
+                connection.out().writeByte(WorkerConnection.EVALUATE);
+                connection.writeDoubles(nnParams.data, 0, getNumParams());
+                connection.out().flush();
+            }
+            for (WorkerConnection connection : workers) {
+                connection.readStatus();
+                jSum += connection.in().readDouble();
+                connection.readDoubles(partialDelta1.data, 0, theta1NumElements);
+                connection.readDoubles(partialDelta2.data, 0, theta2NumElements);
+                CommonOps_DDRM.addEquals(delta1, partialDelta1);
+                CommonOps_DDRM.addEquals(delta2, partialDelta2);
+            }
+        } catch (IOException e) {
+            failure = e;
+            close();
+            throw new UncheckedIOException(e);
+        }
+
+        double jValue = jSum / trainExamplesCount;
+        double jValueReg = (BackpropWorkspace.regularizedSquaresSum(theta1) + BackpropWorkspace.regularizedSquaresSum(theta2))
+                * lambda / (2 * trainExamplesCount);
+        jValue += jValueReg;
+
+        BackpropWorkspace.regularizedGrad(delta1, theta1, lambda, trainExamplesCount, unrolledGrad.data, 0);
+        BackpropWorkspace.regularizedGrad(delta2, theta2, lambda, trainExamplesCount, unrolledGrad.data, theta1NumElements);
+        return jValue;
+    }
+
+    public OptimizedFunctionResult compute(SimpleMatrix nnParams) {
+        DMatrixRMaj unrolledGrad = new DMatrixRMaj(getNumParams(), 1);
+        double jValue = compute(nnParams.getDDRM(), unrolledGrad);
+        return new OptimizedFunctionResult(jValue, SimpleMatrix.wrap(unrolledGrad));
+    }
+
+    @Override
+    public OptimizedFunctionResult apply(SimpleMatrix simpleMatrix) {
+        return compute(simpleMatrix);
+    }
+
+    //workers drop their shard and wait for the next coordinator
+    @Override
+    public void close() {
+        for (WorkerConnection connection : workers) {
+            try {
+                connection.out().writeByte(WorkerConnection.CLOSE);
+                connection.out().flush();
+            } catch (IOException e) {
+                //the worker is gone already
+            }
+            try {
+                connection.close();
+            } catch (IOException e) {
+                //nothing left to release
+            }
+        }
+        workers.clear();
+    }
+}
@@ -1,6 +1,10 @@
 package com.smagellan.toyml;
 
+import org.ejml.data.DMatrix;
 import org.ejml.data.DMatrixIterator;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.ops.ConvertMatrixData;
 import org.ejml.simple.SimpleMatrix;
 
 import java.util.Random;
@@ -76,4 +80,24 @@ public class EjmlHelpers {
         }
         return result;
     }
+
+    public static FMatrixRMaj toFloat(DMatrixRMaj src) {
+        FMatrixRMaj result = new FMatrixRMaj(src.numRows, src.numCols);
+        ConvertMatrixData.convert(src, result);
+        return result;
+    }
+
+    //[ones, src] in single precision, without a double intermediate
+    public static FMatrixRMaj toFloatWithOnes(DMatrix src) {
+        int cols = src.getNumCols();
+        FMatrixRMaj result = new FMatrixRMaj(src.getNumRows(), cols + 1);
+        for (int row = 0; row < src.getNumRows(); ++row) {
+            int offset = row * (cols + 1);
+            result.data[offset] = 1;
+            for (int col = 0; col < cols; ++col) {
+                result.data[offset + col + 1] = (float) src.unsafe_get(row, col);
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,208 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+ * Memoizes a cost function on its parameter vector. Entries are found by a hash of the parameter bits and
+ * returned only if the stored vector is bit-for-bit equal, so a hit gives exactly what the function would.
+ * The least recently used entries are evicted once the stored vectors and gradients exceed maxBytes.
+ * Instances built with the sharing constructor use one store, so runs that evaluate the same function
+ * (e.g. the same model trained for different iteration counts) reuse each other's passes. Thread-safe as
+ * far as the store goes; the wrapped function is called from the caller's thread only.
+ */
+public class EvaluationCache implements Function<SimpleMatrix, OptimizedFunctionResult>, DifferentiableFunction {
+    //key, value and map node overhead per entry, on top of the two arrays
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+
+    private final DifferentiableFunction fn;
+    private final Store store;
+
+    public EvaluationCache(Function<SimpleMatrix, OptimizedFunctionResult> fn, int numParams, long maxBytes) {
+        this.fn = OptimizationFunctions.differentiable(fn, numParams);
+        this.store = new Store(numParams, maxBytes);
+    }
+
+    //fn must compute the same function as the one behind shared, typically a separate instance for another thread
+    public EvaluationCache(Function<SimpleMatrix, OptimizedFunctionResult> fn, EvaluationCache shared) {
+        this.fn = OptimizationFunctions.differentiable(fn, shared.getNumParams());
+        this.store = shared.store;
+    }
+
+    @Override
+    public int getNumParams() {
+        return store.numParams;
+    }
+
+    @Override
+    public double compute(DMatrixRMaj params, DMatrixRMaj grad) {
+        int numParams = store.numParams;
+        Key probe = new Key(params.data, numParams, Key.hash(params.data, numParams));
+        Entry hit = store.get(probe);
+        if (hit != null) {
+            System.arraycopy(hit.grad, 0, grad.data, 0, numParams);
+            return hit.fnValue;
+        }
+        double fnValue = fn.compute(params, grad);
+        store.put(new Key(Arrays.copyOf(params.data, numParams), numParams, probe.hash),
+                new Entry(fnValue, Arrays.copyOf(grad.data, numParams)));
+        return fnValue;
+    }
+
+    public OptimizedFunctionResult compute(SimpleMatrix params) {
+        DMatrixRMaj grad = new DMatrixRMaj(getNumParams(), 1);
+        double fnValue = compute(params.getDDRM(), grad);
+        return new OptimizedFunctionResult(fnValue, SimpleMatrix.wrap(grad));
+    }
+
+    @Override
+    public OptimizedFunctionResult apply(SimpleMatrix params) {
+        return compute(params);
+    }
+
+    //counters cover every instance sharing the store
+    public long getHits() {
+        return store.hits();
+    }
+
+    public long getMisses() {
+        return store.misses();
+    }
+
+    public long getEvictions() {
+        return store.evictions();
+    }
+
+    public long getBytes() {
+        return store.bytes();
+    }
+
+    public int getSize() {
+        return store.size();
+    }
+
+    @Override
+    public String toString() {
+        return "EvaluationCache{hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions()
+                + ", entries=" + getSize() + ", bytes=" + getBytes() + '}';
+    }
+
+    private static class Store {
+        private final int numParams;
+        private final long maxBytes;
+        private final long entryBytes;
+        //access order, so iteration starts at the least recently used entry
+        private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        private Store(int numParams, long maxBytes) {
+            this.numParams = numParams;
+            this.maxBytes = maxBytes;
+            this.entryBytes = 2L * numParams * Double.BYTES + ENTRY_OVERHEAD_BYTES;
+        }
+
+        private synchronized Entry get(Key key) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                ++hits;
+            } else {
+                ++misses;
+            }
+            return entry;
+        }
+
+        private synchronized void put(Key key, Entry entry) {
+            if (entryBytes > maxBytes) {
+                return;
+            }
+            entries.put(key, entry);
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (bytes() > maxBytes) {
+                eldest.next();
+                eldest.remove();
+                ++evictions;
+            }
+        }
+
+        private synchronized long hits() {
+            return hits;
+        }
+
+        private synchronized long misses() {
+            return misses;
+        }
+
+        private synchronized long evictions() {
+            return evictions;
+        }
+
+        private synchronized long bytes() {
+            return entries.size() * entryBytes;
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    private static class Key {
+        private final double[] params;
+        private final int length;
+        private final long hash;
+
+        private Key(double[] params, int length, long hash) {
+            this.params = params;
+            this.length = length;
+            this.hash = hash;
+        }
+
+        //one multiply-xor per element; collisions only cost an array compare
+        private static long hash(double[] params, int length) {
+            long h = length;
+            for (int i = 0; i < length; ++i) {
+                h = (h ^ Double.doubleToRawLongBits(params[i])) * 0x9E3779B97F4A7C15L;
+            }
+            return h ^ (h >>> 32);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            if (hash != other.hash || length != other.length) {
+                return false;
+            }
+            for (int i = 0; i < length; ++i) {
+                if (Double.doubleToRawLongBits(params[i]) != Double.doubleToRawLongBits(other.params[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Entry {
+        private final double fnValue;
+        private final double[] grad;
+
+        private Entry(double fnValue, double[] grad) {
+            this.fnValue = fnValue;
+            this.grad = grad;
+        }
+    }
+}
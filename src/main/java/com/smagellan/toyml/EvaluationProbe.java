@@ -0,0 +1,76 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/*
+ * Times evaluations, reports each to the listener and sums them up per line search.
+ * Optimizers create it only when a listener is attached.
+ */
+class EvaluationProbe {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final DifferentiableFunction fn;
+    private final OptimizerListener listener;
+    private final PhaseTimings phases;
+    private final com.sun.management.ThreadMXBean allocations;
+
+    private long evaluationNanos;
+    private long forwardNanos;
+    private long backwardNanos;
+    private long allocatedBytes;
+
+    EvaluationProbe(DifferentiableFunction fn, OptimizerListener listener) {
+        this.fn = fn;
+        this.listener = listener;
+        this.phases = fn instanceof PhaseTimings ? (PhaseTimings) fn : null;
+        if (phases != null) {
+            phases.setPhaseTimingEnabled(true);
+        }
+        this.allocations = THREADS instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemoryEnabled() ?
+                (com.sun.management.ThreadMXBean) THREADS : null;
+    }
+
+    double compute(DMatrixRMaj params, DMatrixRMaj grad) {
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = allocations != null ? allocations.getThreadAllocatedBytes(threadId) : 0;
+        long start = System.nanoTime();
+        double cost = fn.compute(params, grad);
+        long nanos = System.nanoTime() - start;
+        long bytes = allocations != null ? allocations.getThreadAllocatedBytes(threadId) - bytesBefore : -1;
+        long forward = phases != null ? phases.getForwardNanos() : 0;
+        long backward = phases != null ? phases.getBackwardNanos() : 0;
+
+        evaluationNanos += nanos;
+        forwardNanos += forward;
+        backwardNanos += backward;
+        allocatedBytes += allocations != null ? bytes : 0;
+        listener.onEvaluation(new EvaluationStats(cost, nanos, forward, backward, bytes));
+        return cost;
+    }
+
+    //sums since the previous call go into the stats and start over
+    void iterationDone(int iteration, boolean success, double cost, double gradientNorm, double stepSize, int evaluations,
+                       long iterationNanos) {
+        listener.onIteration(new IterationStats(iteration, success, cost, gradientNorm, stepSize, evaluations,
+                evaluationNanos, iterationNanos - evaluationNanos, forwardNanos, backwardNanos, allocations != null ? allocatedBytes : -1));
+        reset();
+    }
+
+    void reset() {
+        evaluationNanos = 0;
+        forwardNanos = 0;
+        backwardNanos = 0;
+        allocatedBytes = 0;
+    }
+
+    void finish(OptimizationResult result) {
+        if (phases != null) {
+            phases.setPhaseTimingEnabled(false);
+        }
+        listener.onFinish(result);
+    }
+}
@@ -0,0 +1,39 @@
+package com.smagellan.toyml;
+
+//one cost function evaluation; phase times are 0 when the function doesn't implement PhaseTimings
+public class EvaluationStats {
+    private final double cost;
+    private final long totalNanos;
+    private final long forwardNanos;
+    private final long backwardNanos;
+    private final long allocatedBytes;
+
+    public EvaluationStats(double cost, long totalNanos, long forwardNanos, long backwardNanos, long allocatedBytes) {
+        this.cost = cost;
+        this.totalNanos = totalNanos;
+        this.forwardNanos = forwardNanos;
+        this.backwardNanos = backwardNanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public double getCost() {
+        return cost;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getForwardNanos() {
+        return forwardNanos;
+    }
+
+    public long getBackwardNanos() {
+        return backwardNanos;
+    }
+
+    //allocated by the calling thread only, -1 if the JVM can't tell
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+}
@@ -0,0 +1,280 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrix;
+import org.ejml.data.DMatrixRMaj;
+import org.slf4j.LoggerFactory;
+import us.hebi.matlab.mat.format.Mat5;
+import us.hebi.matlab.mat.format.Mat5File;
+import us.hebi.matlab.mat.types.Matrix;
+import us.hebi.matlab.mat.types.Source;
+import us.hebi.matlab.mat.types.Sources;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/*
+ * Turns raw feature rows into the [ones, X] matrix the cost functions take, without the intermediate X copy
+ * and the runtime-compiled Equation of the old path. The buffer is allocated once; fixed blocks of blockRows
+ * rows are copied into it in parallel straight from the source, and each block computes its column sums,
+ * squared deviations, min and max while it is still in cache. Block statistics are combined in block order,
+ * so the result depends on blockRows only, never on the number of threads. Normalization then rescales the
+ * buffer in place, again block by block.
+ */
+public class FeaturePipeline {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(FeaturePipeline.class);
+
+    public static final int DEFAULT_BLOCK_ROWS = 512;
+
+    public enum Normalization {
+        NONE,
+        //(x - mean) / std, with the n - 1 std of Matlab's featureNormalize
+        STANDARD,
+        //(x - min) / (max - min)
+        MIN_MAX
+    }
+
+    //copies rows [fromRow, toRow) without bias column into dst, row r at dstOffset + (r - fromRow) * dstStride
+    interface RowReader {
+        void read(int fromRow, int toRow, double[] dst, int dstOffset, int dstStride);
+    }
+
+    private final Normalization normalization;
+    private final int parallelism;
+    private final int blockRows;
+
+    public FeaturePipeline(Normalization normalization, int parallelism) {
+        this(normalization, parallelism, DEFAULT_BLOCK_ROWS);
+    }
+
+    public FeaturePipeline(Normalization normalization, int parallelism, int blockRows) {
+        if (parallelism < 1 || blockRows < 1) {
+            throw new IllegalArgumentException("parallelism and blockRows must be positive; got " + parallelism + " and " + blockRows);
+        }
+        this.normalization = normalization;
+        this.parallelism = parallelism;
+        this.blockRows = blockRows;
+    }
+
+    //Coursera style .mat file: X and y with 1-based labels; the zlib inflate of the variables runs on the pool too
+    public PreparedDataset load(File matFile) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (Source source = Sources.openFile(matFile);
+             Mat5File file = Mat5.newReader(source).enableConcurrentDecompression(pool).readMat()) {
+            Matrix features = file.getMatrix("X");
+            Matrix y = file.getMatrix("y");
+            int[] labels = new int[y.getNumRows()];
+            for (int rowIdx = 0; rowIdx < labels.length; ++rowIdx) {
+                double label = y.getDouble(rowIdx, 0);
+                //the cast would silently turn 0, 2.5 or NaN into a class index
+                if (!(label >= 1 && label <= Integer.MAX_VALUE && label == Math.rint(label))) {
+                    throw new IllegalArgumentException("y of row " + rowIdx + " is " + label + "; expect a 1-based class label");
+                }
+                labels[rowIdx] = (int) label - 1;
+            }
+            return run(features.getNumRows(), features.getNumCols(), matrixReader(features), labels, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    //yMatrix holds 1-based Matlab labels, same as Main.createLabels expects
+    public PreparedDataset load(DMatrix featuresMatrix, DMatrix yMatrix) {
+        RowReader reader = featuresMatrix instanceof DMatrixRMaj ? rowMajorReader((DMatrixRMaj) featuresMatrix) : matrixReader(featuresMatrix);
+        return run(featuresMatrix.getNumRows(), featuresMatrix.getNumCols(), reader, Main.createLabels(yMatrix));
+    }
+
+    public PreparedDataset load(MappedDataset dataset) {
+        int[] labels = new int[dataset.getNumRows()];
+        dataset.readLabels(0, labels.length, labels);
+        return run(dataset.getNumRows(), dataset.getNumCols(), dataset::readRows, labels);
+    }
+
+    PreparedDataset run(int numRows, int numCols, RowReader reader, int[] labels) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return run(numRows, numCols, reader, labels, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private PreparedDataset run(int numRows, int numCols, RowReader reader, int[] labels, ExecutorService executor) {
+        if (labels.length != numRows) {
+            throw new IllegalArgumentException(labels.length + " labels for " + numRows + " rows");
+        }
+        long startNanos = System.nanoTime();
+        DMatrixRMaj featuresMatrixWithOnes = new DMatrixRMaj(numRows, numCols + 1);
+        boolean withStats = normalization != Normalization.NONE;
+
+        List<Future<BlockStats>> blocks = new ArrayList<>();
+        for (int fromRow = 0; fromRow < numRows; fromRow += blockRows) {
+            int from = fromRow;
+            int to = Math.min(fromRow + blockRows, numRows);
+            blocks.add(executor.submit(() -> copyBlock(reader, from, to, featuresMatrixWithOnes, withStats)));
+        }
+        BlockStats total = null;
+        for (Future<BlockStats> block : blocks) {
+            BlockStats stats = await(block);
+            total = total == null ? stats : total.merge(stats);
+        }
+
+        double[] shift = new double[numCols];
+        double[] scale = new double[numCols];
+        Arrays.fill(scale, 1);
+        if (withStats && total != null) {
+            for (int colIdx = 0; colIdx < numCols; ++colIdx) {
+                if (normalization == Normalization.STANDARD) {
+                    shift[colIdx] = total.mean[colIdx];
+                    double std = total.rows > 1 ? Math.sqrt(total.m2[colIdx] / (total.rows - 1)) : 0;
+                    //constant columns, e.g. the always blank border pixels of ex4, stay centered but unscaled
+                    scale[colIdx] = std > 0 ? std : 1;
+                } else {
+                    shift[colIdx] = total.min[colIdx];
+                    double range = total.max[colIdx] - total.min[colIdx];
+                    scale[colIdx] = range > 0 ? range : 1;
+                }
+            }
+            List<Future<?>> normalized = new ArrayList<>();
+            for (int fromRow = 0; fromRow < numRows; fromRow += blockRows) {
+                int from = fromRow;
+                int to = Math.min(fromRow + blockRows, numRows);
+                normalized.add(executor.submit(() -> normalizeRows(featuresMatrixWithOnes.data, from, to, numCols, shift, scale)));
+            }
+            for (Future<?> block : normalized) {
+                await(block);
+            }
+        }
+        logger.debug("prepared {} x {} features, {} normalization, in {} micros", numRows, numCols, normalization,
+                (System.nanoTime() - startNanos) / 1000);
+        return new PreparedDataset(featuresMatrixWithOnes, labels, shift, scale);
+    }
+
+    //x = (x - shift) / scale on rows [fromRow, toRow) of an [ones, X] buffer; the bias column is left alone
+    static void normalizeRows(double[] data, int fromRow, int toRow, int numCols, double[] shift, double[] scale) {
+        int stride = numCols + 1;
+        for (int row = fromRow; row < toRow; ++row) {
+            int base = row * stride + 1;
+            for (int colIdx = 0; colIdx < numCols; ++colIdx) {
+                data[base + colIdx] = (data[base + colIdx] - shift[colIdx]) / scale[colIdx];
+            }
+        }
+    }
+
+    private static BlockStats copyBlock(RowReader reader, int fromRow, int toRow, DMatrixRMaj featuresMatrixWithOnes, boolean withStats) {
+        double[] data = featuresMatrixWithOnes.data;
+        int stride = featuresMatrixWithOnes.numCols;
+        int numCols = stride - 1;
+        reader.read(fromRow, toRow, data, fromRow * stride + 1, stride);
+        for (int row = fromRow; row < toRow; ++row) {
+            data[row * stride] = 1;
+        }
+        if (!withStats) {
+            return null;
+        }
+
+        BlockStats stats = new BlockStats(numCols, toRow - fromRow);
+        for (int row = fromRow; row < toRow; ++row) {
+            int base = row * stride + 1;
+            for (int colIdx = 0; colIdx < numCols; ++colIdx) {
+                double val = data[base + colIdx];
+                stats.mean[colIdx] += val;
+                stats.min[colIdx] = Math.min(stats.min[colIdx], val);
+                stats.max[colIdx] = Math.max(stats.max[colIdx], val);
+            }
+        }
+        for (int colIdx = 0; colIdx < numCols; ++colIdx) {
+            stats.mean[colIdx] /= stats.rows;
+        }
+        //second sweep over the block while it is hot, deviations from the block mean keep m2 accurate
+        for (int row = fromRow; row < toRow; ++row) {
+            int base = row * stride + 1;
+            for (int colIdx = 0; colIdx < numCols; ++colIdx) {
+                double dev = data[base + colIdx] - stats.mean[colIdx];
+                stats.m2[colIdx] += dev * dev;
+            }
+        }
+        return stats;
+    }
+
+    private static RowReader rowMajorReader(DMatrixRMaj featuresMatrix) {
+        int numCols = featuresMatrix.numCols;
+        return (fromRow, toRow, dst, dstOffset, dstStride) -> {
+            for (int row = fromRow; row < toRow; ++row) {
+                System.arraycopy(featuresMatrix.data, row * numCols, dst, dstOffset + (row - fromRow) * dstStride, numCols);
+            }
+        };
+    }
+
+    //column-outer order, .mat variables are column-major
+    private static RowReader matrixReader(Matrix features) {
+        int numCols = features.getNumCols();
+        return (fromRow, toRow, dst, dstOffset, dstStride) -> {
+            for (int colIdx = 0; colIdx < numCols; ++colIdx) {
+                for (int row = fromRow; row < toRow; ++row) {
+                    dst[dstOffset + (row - fromRow) * dstStride + colIdx] = features.getDouble(row, colIdx);
+                }
+            }
+        };
+    }
+
+    private static RowReader matrixReader(DMatrix features) {
+        int numCols = features.getNumCols();
+        return (fromRow, toRow, dst, dstOffset, dstStride) -> {
+            for (int row = fromRow; row < toRow; ++row) {
+                for (int colIdx = 0; colIdx < numCols; ++colIdx) {
+                    dst[dstOffset + (row - fromRow) * dstStride + colIdx] = features.get(row, colIdx);
+                }
+            }
+        };
+    }
+
+    private static <T> T await(Future<T> block) {
+        try {
+            return block.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for block", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("block preparation failed", e.getCause());
+        }
+    }
+
+    //per-column moments of a block of rows, merged pairwise (Chan et al.)
+    private static class BlockStats {
+        private long rows;
+        private final double[] mean;
+        private final double[] m2;
+        private final double[] min;
+        private final double[] max;
+
+        private BlockStats(int numCols, long rows) {
+            this.rows = rows;
+            this.mean = new double[numCols];
+            this.m2 = new double[numCols];
+            this.min = new double[numCols];
+            this.max = new double[numCols];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+
+        private BlockStats merge(BlockStats other) {
+            long totalRows = rows + other.rows;
+            for (int colIdx = 0; colIdx < mean.length; ++colIdx) {
+                double delta = other.mean[colIdx] - mean[colIdx];
+                mean[colIdx] += delta * other.rows / totalRows;
+                m2[colIdx] += other.m2[colIdx] + delta * delta * rows * other.rows / totalRows;
+                min[colIdx] = Math.min(min[colIdx], other.min[colIdx]);
+                max[colIdx] = Math.max(max[colIdx], other.max[colIdx]);
+            }
+            rows = totalRows;
+            return this;
+        }
+    }
+}
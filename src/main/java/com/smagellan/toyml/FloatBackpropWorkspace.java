@@ -0,0 +1,143 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.dense.row.CommonOps_FDRM;
+
+/*
+ * Single precision twin of BackpropWorkspace. The cross-entropy sum is still accumulated in double,
+ * it is one scalar and summing thousands of float logs would lose most of its digits.
+ */
+class FloatBackpropWorkspace {
+    private final FMatrixRMaj z2;
+    private final FMatrixRMaj act2w1;
+    private final FMatrixRMaj act3;
+    private final FMatrixRMaj sigma2P1;
+    private final FMatrixRMaj delta1;
+    private final FMatrixRMaj delta2;
+
+    FloatBackpropWorkspace(int inputLayerSize, int hiddenLayerSize, int numLabels, int numRows) {
+        this.z2       = new FMatrixRMaj(numRows, hiddenLayerSize);
+        this.act2w1   = new FMatrixRMaj(numRows, hiddenLayerSize + 1);
+        this.act3     = new FMatrixRMaj(numRows, numLabels);
+        this.sigma2P1 = new FMatrixRMaj(numRows, hiddenLayerSize + 1);
+        this.delta1   = new FMatrixRMaj(hiddenLayerSize, inputLayerSize + 1);
+        this.delta2   = new FMatrixRMaj(numLabels, hiddenLayerSize + 1);
+    }
+
+    //labels are 0-based class indices, one per row
+    double accumulate(FMatrixRMaj featuresMatrixWithOnes, int[] labels, FMatrixRMaj theta1, FMatrixRMaj theta2) {
+        int numRows = featuresMatrixWithOnes.numRows;
+        z2.reshape(numRows, z2.numCols);
+        act2w1.reshape(numRows, act2w1.numCols);
+        act3.reshape(numRows, act3.numCols);
+        sigma2P1.reshape(numRows, sigma2P1.numCols);
+
+        CommonOps_FDRM.multTransB(featuresMatrixWithOnes, theta1, z2);
+        sigmoidWithOnes(z2, act2w1);
+        CommonOps_FDRM.multTransB(act2w1, theta2, act3);
+        //from z3, before the float sigmoid rounds to exactly 0 or 1 and the logs turn into 0 * -Infinity
+        double jSum = crossEntropySum(act3, labels);
+        sigmoid(act3);
+
+        //act3 becomes sigma3 = act3 - y from here on
+        int numLabels = act3.numCols;
+        for (int row = 0; row < numRows; ++row) {
+            act3.data[row * numLabels + labels[row]] -= 1;
+        }
+        CommonOps_FDRM.mult(act3, theta2, sigma2P1);
+        //z2 becomes sigma2 from here on
+        sigma2(sigma2P1, act2w1, z2);
+
+        CommonOps_FDRM.multTransA(act3, act2w1, delta2);
+        CommonOps_FDRM.multTransA(z2, featuresMatrixWithOnes, delta1);
+        return jSum;
+    }
+
+    FMatrixRMaj getDelta1() {
+        return delta1;
+    }
+
+    FMatrixRMaj getDelta2() {
+        return delta2;
+    }
+
+    static double regularizedSquaresSum(FMatrixRMaj theta) {
+        double sum = 0;
+        for (int row = 0; row < theta.numRows; ++row) {
+            int offset = row * theta.numCols;
+            for (int col = 1; col < theta.numCols; ++col) {
+                double val = theta.data[offset + col];
+                sum += val * val;
+            }
+        }
+        return sum;
+    }
+
+    static void regularizedGrad(FMatrixRMaj delta, FMatrixRMaj theta, float lambda, int trainExamplesCount, float[] dst, int dstOffset) {
+        for (int row = 0; row < delta.numRows; ++row) {
+            int offset = row * delta.numCols;
+            dst[dstOffset + offset] = delta.data[offset] / trainExamplesCount;
+            for (int col = 1; col < delta.numCols; ++col) {
+                int idx = offset + col;
+                dst[dstOffset + idx] = (delta.data[idx] + theta.data[idx] * lambda) / trainExamplesCount;
+            }
+        }
+    }
+
+    static float sigmoid(float z) {
+        return 1.0f / (1.0f + (float) Math.exp(-z));
+    }
+
+    static void sigmoid(FMatrixRMaj src) {
+        float[] data = src.data;
+        int size = src.getNumElements();
+        for (int i = 0; i < size; ++i) {
+            data[i] = sigmoid(data[i]);
+        }
+    }
+
+    static void sigmoidWithOnes(FMatrixRMaj z, FMatrixRMaj result) {
+        int cols = z.numCols;
+        for (int row = 0; row < z.numRows; ++row) {
+            int srcOffset = row * cols;
+            int dstOffset = row * (cols + 1);
+            result.data[dstOffset] = 1;
+            for (int col = 0; col < cols; ++col) {
+                result.data[dstOffset + col + 1] = sigmoid(z.data[srcOffset + col]);
+            }
+        }
+    }
+
+    //-log(sigmoid(z)) at the label and -log(1 - sigmoid(z)) elsewhere, as softplus(-z) and softplus(z) in double
+    private static double crossEntropySum(FMatrixRMaj z3, int[] labels) {
+        float[] z = z3.data;
+        int cols = z3.numCols;
+        double sum = 0;
+        for (int row = 0; row < z3.numRows; ++row) {
+            int offset = row * cols;
+            int labelIdx = offset + labels[row];
+            for (int i = offset; i < offset + cols; ++i) {
+                double zVal = z[i];
+                sum += i == labelIdx ? softplus(-zVal) : softplus(zVal);
+            }
+        }
+        return sum;
+    }
+
+    //log(1 + exp(x)) without overflow for large x
+    private static double softplus(double x) {
+        return Math.max(x, 0) + Math.log1p(Math.exp(-Math.abs(x)));
+    }
+
+    private static void sigma2(FMatrixRMaj sigma2P1, FMatrixRMaj act2w1, FMatrixRMaj result) {
+        int cols = result.numCols;
+        for (int row = 0; row < result.numRows; ++row) {
+            int srcOffset = row * (cols + 1) + 1;
+            int dstOffset = row * cols;
+            for (int col = 0; col < cols; ++col) {
+                float g = act2w1.data[srcOffset + col];
+                result.data[dstOffset + col] = sigma2P1.data[srcOffset + col] * (g * (1 - g));
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.function.Function;
+
+/*
+ * Single precision cost function: the training data and every per-row intermediate are float.
+ * The Function adapter converts the parameter vector and gradient at the boundary, so fmincg and the
+ * other optimizers keep their double line search on a vector that is tiny compared to the data.
+ */
+public class FloatCostFunction implements Function<SimpleMatrix, OptimizedFunctionResult> {
+    private final int inputLayerSize;
+    private final int hiddenLayerSize;
+    private final int numLabels;
+    private final FMatrixRMaj featuresMatrixWithOnes;
+    //0-based class index per row
+    private final int[] labels;
+    private final float lambda;
+
+    private final int theta1NumElements;
+    private final int theta2NumElements;
+
+    private final FMatrixRMaj theta1;
+    private final FMatrixRMaj theta2;
+    private final FMatrixRMaj unrolledGrad;
+    private final FloatBackpropWorkspace workspace;
+
+    public FloatCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, FMatrixRMaj featuresMatrixWithOnes, FMatrixRMaj yVec, double lambda) {
+        this(inputLayerSize, hiddenLayerSize, numLabels, featuresMatrixWithOnes, Main.labelsOf(toDouble(yVec)), lambda);
+    }
+
+    public FloatCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, FMatrixRMaj featuresMatrixWithOnes, int[] labels, double lambda) {
+        BackpropWorkspace.checkLabels(labels, featuresMatrixWithOnes.numRows, numLabels);
+        this.inputLayerSize = inputLayerSize;
+        this.hiddenLayerSize = hiddenLayerSize;
+        this.numLabels = numLabels;
+        this.featuresMatrixWithOnes = featuresMatrixWithOnes;
+        this.labels = labels;
+        this.lambda = (float) lambda;
+
+        this.theta1NumElements = hiddenLayerSize * (inputLayerSize + 1);
+        this.theta2NumElements = numLabels * (hiddenLayerSize + 1);
+
+        this.theta1       = new FMatrixRMaj(hiddenLayerSize, inputLayerSize + 1);
+        this.theta2       = new FMatrixRMaj(numLabels, hiddenLayerSize + 1);
+        this.unrolledGrad = new FMatrixRMaj(theta1NumElements + theta2NumElements, 1);
+        this.workspace    = new FloatBackpropWorkspace(inputLayerSize, hiddenLayerSize, numLabels, featuresMatrixWithOnes.numRows);
+    }
+
+    public int getNumParams() {
+        return theta1NumElements + theta2NumElements;
+    }
+
+    public double compute(FMatrixRMaj nnParams, FMatrixRMaj unrolledGrad) {
+        if (nnParams.getNumElements() != getNumParams() || unrolledGrad.getNumElements() != getNumParams()) {
+            throw new IllegalArgumentException("expect " + getNumParams() + " params and gradient elements; got "
+                    + nnParams.getNumElements() + " and " + unrolledGrad.getNumElements());
+        }
+        System.arraycopy(nnParams.data, 0, theta1.data, 0, theta1NumElements);
+        System.arraycopy(nnParams.data, theta1NumElements, theta2.data, 0, theta2NumElements);
+        return computeLoaded(unrolledGrad);
+    }
+
+    public OptimizedFunctionResult compute(SimpleMatrix nnParams) {
+        double[] params = nnParams.getDDRM().data;
+        for (int i = 0; i < theta1NumElements; ++i) {
+            theta1.data[i] = (float) params[i];
+        }
+        for (int i = 0; i < theta2NumElements; ++i) {
+            theta2.data[i] = (float) params[theta1NumElements + i];
+        }
+        double jValue = computeLoaded(unrolledGrad);
+
+        DMatrixRMaj result = new DMatrixRMaj(getNumParams(), 1);
+        for (int i = 0; i < result.data.length; ++i) {
+            result.data[i] = unrolledGrad.data[i];
+        }
+        return new OptimizedFunctionResult(jValue, SimpleMatrix.wrap(result));
+    }
+
+    @Override
+    public OptimizedFunctionResult apply(SimpleMatrix simpleMatrix) {
+        return compute(simpleMatrix);
+    }
+
+    private double computeLoaded(FMatrixRMaj unrolledGrad) {
+        int trainExamplesCount = featuresMatrixWithOnes.numRows;
+
+        double jValue = workspace.accumulate(featuresMatrixWithOnes, labels, theta1, theta2) / trainExamplesCount;
+        double jValueReg = (FloatBackpropWorkspace.regularizedSquaresSum(theta1) + FloatBackpropWorkspace.regularizedSquaresSum(theta2))
+                * lambda / (2 * trainExamplesCount);
+        jValue += jValueReg;
+
+        FloatBackpropWorkspace.regularizedGrad(workspace.getDelta1(), theta1, lambda, trainExamplesCount, unrolledGrad.data, 0);
+        FloatBackpropWorkspace.regularizedGrad(workspace.getDelta2(), theta2, lambda, trainExamplesCount, unrolledGrad.data, theta1NumElements);
+        return jValue;
+    }
+
+    private static DMatrixRMaj toDouble(FMatrixRMaj src) {
+        DMatrixRMaj result = new DMatrixRMaj(src.numRows, src.numCols);
+        for (int i = 0; i < result.data.length; ++i) {
+            result.data[i] = src.data[i];
+        }
+        return result;
+    }
+}
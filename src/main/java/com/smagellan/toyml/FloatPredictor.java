@@ -0,0 +1,33 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.dense.row.CommonOps_FDRM;
+import org.ejml.simple.SimpleMatrix;
+
+public class FloatPredictor {
+    public static SimpleMatrix predict(FMatrixRMaj theta1, FMatrixRMaj theta2, FMatrixRMaj featuresMatrixWithOnes) {
+        int m = featuresMatrixWithOnes.numRows;
+
+        FMatrixRMaj z1   = new FMatrixRMaj(m, theta1.numRows);
+        FMatrixRMaj h1w1 = new FMatrixRMaj(m, theta1.numRows + 1);
+        FMatrixRMaj h2   = new FMatrixRMaj(m, theta2.numRows);
+        CommonOps_FDRM.multTransB(featuresMatrixWithOnes, theta1, z1);
+        FloatBackpropWorkspace.sigmoidWithOnes(z1, h1w1);
+        CommonOps_FDRM.multTransB(h1w1, theta2, h2);
+
+        SimpleMatrix result = new SimpleMatrix(m, 1);
+        for (int rowNum = 0; rowNum < m; ++rowNum) {
+            int offset = rowNum * h2.numCols;
+            float max = h2.data[offset];
+            int index = 0;
+            for (int colNum = 1; colNum < h2.numCols; ++colNum) {
+                if (h2.data[offset + colNum] > max) {
+                    max = h2.data[offset + colNum];
+                    index = colNum;
+                }
+            }
+            result.set(rowNum, 0, index);
+        }
+        return result;
+    }
+}
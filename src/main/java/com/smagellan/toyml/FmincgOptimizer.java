@@ -0,0 +1,53 @@
+package com.smagellan.toyml;
+
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.function.Function;
+
+public class FmincgOptimizer implements Optimizer {
+    private final int length;
+    private final int red;
+    private final OptimizerListener listener;
+    private final Checkpointer checkpointer;
+    private final ConvergenceOptions convergence;
+
+    public FmincgOptimizer(int length) {
+        this(length, 1);
+    }
+
+    public FmincgOptimizer(int length, int red) {
+        this(length, red, null);
+    }
+
+    public FmincgOptimizer(int length, int red, OptimizerListener listener) {
+        this(length, red, listener, null);
+    }
+
+    public FmincgOptimizer(int length, int red, OptimizerListener listener, Checkpointer checkpointer) {
+        this(length, red, listener, checkpointer, null);
+    }
+
+    //length becomes an upper bound, convergence decides when to stop before it
+    public FmincgOptimizer(int length, int red, OptimizerListener listener, Checkpointer checkpointer, ConvergenceOptions convergence) {
+        this.length = length;
+        this.red = red;
+        this.listener = listener;
+        this.checkpointer = checkpointer;
+        this.convergence = convergence;
+    }
+
+    @Override
+    public OptimizationResult minimize(Function<SimpleMatrix, OptimizedFunctionResult> fn, SimpleMatrix fnParams) {
+        return OptimizationFunctions.fmincgInPlace(OptimizationFunctions.differentiable(fn, fnParams.getNumElements()), fnParams, length, red, listener, checkpointer, null, convergence);
+    }
+
+    //continues from a ModelFile checkpoint; length still counts from the start of the original run, convergence budgets don't
+    public OptimizationResult resume(Function<SimpleMatrix, OptimizedFunctionResult> fn, SavedModel checkpoint) {
+        if (checkpoint.getFmincgState() == null) {
+            throw new IllegalArgumentException("model has no fmincg state to resume from");
+        }
+        SimpleMatrix fnParams = checkpoint.getParams();
+        return OptimizationFunctions.fmincgInPlace(OptimizationFunctions.differentiable(fn, fnParams.getNumElements()), fnParams,
+                length, red, listener, checkpointer, checkpoint.getFmincgState(), convergence);
+    }
+}
@@ -0,0 +1,40 @@
+package com.smagellan.toyml;
+
+/*
+ * What fmincg carries from one line search to the next, besides X, f1 and df1 (those are recomputed
+ * from X on resume). Taken right after a successful line search; resuming from it continues the run
+ * exactly as if it had never stopped.
+ */
+public class FmincgState {
+    private final int iteration;
+    private final double z1;
+    private final double d1;
+    private final double[] direction;
+
+    public FmincgState(int iteration, double z1, double d1, double[] direction) {
+        this.iteration = iteration;
+        this.z1 = z1;
+        this.d1 = d1;
+        this.direction = direction;
+    }
+
+    //line searches (or evaluations, for a negative length) done so far
+    public int getIteration() {
+        return iteration;
+    }
+
+    //initial step size of the next line search
+    public double getZ1() {
+        return z1;
+    }
+
+    //slope along the direction
+    public double getD1() {
+        return d1;
+    }
+
+    //search direction s; handed out by reference during checkpointing, copy it to keep it
+    public double[] getDirection() {
+        return direction;
+    }
+}
@@ -0,0 +1,52 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+
+//rows produced by a generator instead of read from storage; the generator must return the same row for the same index
+public class GeneratedChunkSource implements ChunkSource {
+    public interface RowGenerator {
+        //fills features[offset, offset + numFeatures) and returns the 0-based label of row rowIdx
+        int generate(long rowIdx, double[] features, int offset);
+    }
+
+    private final long numRows;
+    private final int numFeatures;
+    private final int numLabels;
+    private final RowGenerator generator;
+    private long nextRow;
+
+    public GeneratedChunkSource(long numRows, int numFeatures, int numLabels, RowGenerator generator) {
+        this.numRows = numRows;
+        this.numFeatures = numFeatures;
+        this.numLabels = numLabels;
+        this.generator = generator;
+    }
+
+    @Override
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    @Override
+    public int getNumLabels() {
+        return numLabels;
+    }
+
+    @Override
+    public void reset() {
+        nextRow = 0;
+    }
+
+    @Override
+    public int nextChunk(DMatrixRMaj featuresWithOnes, int[] labels) {
+        int rows = (int) Math.min(labels.length, numRows - nextRow);
+        featuresWithOnes.reshape(rows, numFeatures + 1);
+        for (int row = 0; row < rows; ++row) {
+            int offset = row * (numFeatures + 1);
+            featuresWithOnes.data[offset] = 1;
+            labels[row] = generator.generate(nextRow + row, featuresWithOnes.data, offset + 1);
+        }
+        nextRow += rows;
+        return rows;
+    }
+}
@@ -0,0 +1,73 @@
+package com.smagellan.toyml;
+
+import java.util.Arrays;
+
+//per block (layer) worst finite-difference mismatch, see GradientChecker
+public class GradientCheckReport {
+    private final String[] blockNames;
+    private final int[] probed;
+    private final double[] maxRelativeErrors;
+    private final double[] maxAbsoluteErrors;
+    private final int[] worstIndices;
+
+    GradientCheckReport(String[] blockNames, int[] probed, double[] maxRelativeErrors, double[] maxAbsoluteErrors, int[] worstIndices) {
+        this.blockNames = blockNames;
+        this.probed = probed;
+        this.maxRelativeErrors = maxRelativeErrors;
+        this.maxAbsoluteErrors = maxAbsoluteErrors;
+        this.worstIndices = worstIndices;
+    }
+
+    public int getNumBlocks() {
+        return blockNames.length;
+    }
+
+    public String getBlockName(int block) {
+        return blockNames[block];
+    }
+
+    public int getProbed(int block) {
+        return probed[block];
+    }
+
+    public double getMaxRelativeError(int block) {
+        return maxRelativeErrors[block];
+    }
+
+    public double getMaxAbsoluteError(int block) {
+        return maxAbsoluteErrors[block];
+    }
+
+    //index into the unrolled params of the worst relative error, -1 if nothing was probed
+    public int getWorstIndex(int block) {
+        return worstIndices[block];
+    }
+
+    public double getMaxRelativeError() {
+        return Arrays.stream(maxRelativeErrors).max().orElse(0);
+    }
+
+    //for guarding cost function changes: throws IllegalStateException naming the first block above tolerance
+    public void assertMaxRelativeError(double tolerance) {
+        for (int block = 0; block < blockNames.length; ++block) {
+            if (!(maxRelativeErrors[block] <= tolerance)) {
+                throw new IllegalStateException(blockNames[block] + ": relative error " + maxRelativeErrors[block]
+                        + " at param " + worstIndices[block] + " exceeds " + tolerance);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int block = 0; block < blockNames.length; ++block) {
+            if (block > 0) {
+                sb.append("; ");
+            }
+            sb.append(blockNames[block]).append(": ").append(probed[block]).append(" probed, max relative error ")
+                    .append(maxRelativeErrors[block]).append(" at ").append(worstIndices[block])
+                    .append(", max absolute error ").append(maxAbsoluteErrors[block]);
+        }
+        return sb.toString();
+    }
+}
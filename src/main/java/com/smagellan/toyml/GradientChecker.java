@@ -0,0 +1,191 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/*
+ * checkgrad for the cost functions: central differences (f(x + e) - f(x - e)) / 2e against the analytical gradient.
+ * Every coordinate costs two evaluations, so probes run in parallel and can be limited to a random subset per layer.
+ * Cost functions keep workspaces, so each worker gets its own instance from the supplier.
+ * Relative error is |numeric - analytical| / max(|numeric|, |analytical|, MIN_SCALE); the floor keeps
+ * near-zero gradients from turning rounding noise into large relative errors.
+ */
+public class GradientChecker {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(GradientChecker.class);
+
+    public static final double DEFAULT_EPSILON = 1e-4;
+    public static final double MIN_SCALE = 1e-4;
+    //correct gradients stay below 3e-6 up to the ex4 shapes with DEFAULT_EPSILON; a 0.1% gradient bug shows up as 1e-3
+    public static final double TOLERANCE = 1e-5;
+
+    private final Supplier<? extends Function<SimpleMatrix, OptimizedFunctionResult>> functions;
+    private final double epsilon;
+    private final int parallelism;
+
+    public GradientChecker(Supplier<? extends Function<SimpleMatrix, OptimizedFunctionResult>> functions, int parallelism) {
+        this(functions, DEFAULT_EPSILON, parallelism);
+    }
+
+    public GradientChecker(Supplier<? extends Function<SimpleMatrix, OptimizedFunctionResult>> functions, double epsilon, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism: " + parallelism + "; expect positive");
+        }
+        this.functions = functions;
+        this.epsilon = epsilon;
+        this.parallelism = parallelism;
+    }
+
+    //every coordinate, reported as a single block
+    public GradientCheckReport check(SimpleMatrix params) {
+        return check(params, new int[] {0, params.getNumElements()}, new String[] {"params"}, 0, 0);
+    }
+
+    //samplesPerLayer random coordinates of every layer's theta, all of them if samplesPerLayer <= 0
+    public GradientCheckReport check(SimpleMatrix params, Network network, int samplesPerLayer, long seed) {
+        int numLayers = network.getNumLayers();
+        int[] offsets = new int[numLayers + 1];
+        String[] names = new String[numLayers];
+        for (int layerIdx = 0; layerIdx < numLayers; ++layerIdx) {
+            offsets[layerIdx] = network.getParamsOffset(layerIdx);
+            names[layerIdx] = "Theta" + (layerIdx + 1);
+        }
+        offsets[numLayers] = network.getNumParams();
+        return check(params, offsets, names, samplesPerLayer, seed);
+    }
+
+    private GradientCheckReport check(SimpleMatrix params, int[] offsets, String[] names, int samplesPerBlock, long seed) {
+        if (offsets[offsets.length - 1] != params.getNumElements()) {
+            throw new IllegalArgumentException("blocks cover " + offsets[offsets.length - 1] + " params; got " + params.getNumElements());
+        }
+        Function<SimpleMatrix, OptimizedFunctionResult> reference = functions.get();
+        DMatrixRMaj analytical = reference.apply(params).getGradientValue().getDDRM();
+        close(reference);
+
+        Random random = new Random(seed);
+        int numBlocks = names.length;
+        int[][] indices = new int[numBlocks][];
+        for (int block = 0; block < numBlocks; ++block) {
+            indices[block] = sample(offsets[block], offsets[block + 1], samplesPerBlock, random);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<double[]>> futures = new ArrayList<>();
+            for (int block = 0; block < numBlocks; ++block) {
+                int[] blockIndices = indices[block];
+                int sliceSize = (blockIndices.length + parallelism - 1) / parallelism;
+                for (int from = 0; from < blockIndices.length; from += sliceSize) {
+                    int sliceFrom = from;
+                    int sliceTo = Math.min(from + sliceSize, blockIndices.length);
+                    futures.add(pool.submit(() -> numericalGradient(params, blockIndices, sliceFrom, sliceTo)));
+                }
+            }
+
+            int[] probed = new int[numBlocks];
+            double[] maxRelativeErrors = new double[numBlocks];
+            double[] maxAbsoluteErrors = new double[numBlocks];
+            int[] worstIndices = new int[numBlocks];
+            int futureIdx = 0;
+            for (int block = 0; block < numBlocks; ++block) {
+                int[] blockIndices = indices[block];
+                worstIndices[block] = -1;
+                int sliceSize = (blockIndices.length + parallelism - 1) / parallelism;
+                for (int from = 0; from < blockIndices.length; from += sliceSize) {
+                    double[] numerical = await(futures.get(futureIdx++));
+                    for (int k = 0; k < numerical.length; ++k) {
+                        int idx = blockIndices[from + k];
+                        double expected = analytical.data[idx];
+                        double absoluteError = Math.abs(numerical[k] - expected);
+                        double relativeError = absoluteError / Math.max(Math.max(Math.abs(numerical[k]), Math.abs(expected)), MIN_SCALE);
+                        maxAbsoluteErrors[block] = Math.max(maxAbsoluteErrors[block], absoluteError);
+                        //NaN counts as the worst error
+                        if (worstIndices[block] < 0 || !(relativeError <= maxRelativeErrors[block])) {
+                            maxRelativeErrors[block] = relativeError;
+                            worstIndices[block] = idx;
+                        }
+                    }
+                }
+                probed[block] = blockIndices.length;
+            }
+            GradientCheckReport report = new GradientCheckReport(names, probed, maxRelativeErrors, maxAbsoluteErrors, worstIndices);
+            logger.debug("{}", report);
+            return report;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private double[] numericalGradient(SimpleMatrix params, int[] indices, int from, int to) {
+        Function<SimpleMatrix, OptimizedFunctionResult> fn = functions.get();
+        SimpleMatrix probe = params.copy();
+        double[] data = probe.getDDRM().data;
+        double[] result = new double[to - from];
+        for (int k = from; k < to; ++k) {
+            int idx = indices[k];
+            double saved = data[idx];
+            data[idx] = saved + epsilon;
+            double plus = fn.apply(probe).getFnValue();
+            data[idx] = saved - epsilon;
+            double minus = fn.apply(probe).getFnValue();
+            data[idx] = saved;
+            result[k - from] = (plus - minus) / (2 * epsilon);
+        }
+        close(fn);
+        return result;
+    }
+
+    //StreamingCostFunction and friends own threads
+    private static void close(Function<SimpleMatrix, OptimizedFunctionResult> fn) {
+        if (fn instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) fn).close();
+            } catch (Exception e) {
+                throw new IllegalStateException("failed to close " + fn, e);
+            }
+        }
+    }
+
+    //ascending indices in [from, to): all of them, or count distinct ones by a partial shuffle
+    private static int[] sample(int from, int to, int count, Random random) {
+        int size = to - from;
+        int[] all = new int[size];
+        for (int i = 0; i < size; ++i) {
+            all[i] = from + i;
+        }
+        if (count <= 0 || count >= size) {
+            return all;
+        }
+        for (int i = 0; i < count; ++i) {
+            int j = i + random.nextInt(size - i);
+            int tmp = all[i];
+            all[i] = all[j];
+            all[j] = tmp;
+        }
+        int[] result = Arrays.copyOf(all, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static double[] await(Future<double[]> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for gradient probes", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("gradient probe failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.smagellan.toyml;
+
+/*
+ * Backward pass of the activations a hidden layer may use. Derivatives are taken from the activation value,
+ * so the backward pass never needs z.
+ */
+enum HiddenActivation {
+    SIGMOID {
+        @Override
+        double derivativeFromActivation(double a) {
+            return MlFunctions.sigmoidGradientFromActivation(a);
+        }
+
+        @Override
+        void multiplyByDerivative(double[] data, int offset, double[] act, int actOffset, int length) {
+            for (int i = 0; i < length; ++i) {
+                double a = act[actOffset + i];
+                data[offset + i] *= a * (1 - a);
+            }
+        }
+    },
+    TANH {
+        @Override
+        double derivativeFromActivation(double a) {
+            return 1 - a * a;
+        }
+
+        @Override
+        void multiplyByDerivative(double[] data, int offset, double[] act, int actOffset, int length) {
+            for (int i = 0; i < length; ++i) {
+                double a = act[actOffset + i];
+                data[offset + i] *= 1 - a * a;
+            }
+        }
+    },
+    RELU {
+        @Override
+        double derivativeFromActivation(double a) {
+            return a > 0 ? 1 : 0;
+        }
+
+        @Override
+        void multiplyByDerivative(double[] data, int offset, double[] act, int actOffset, int length) {
+            for (int i = 0; i < length; ++i) {
+                data[offset + i] *= act[actOffset + i] > 0 ? 1 : 0;
+            }
+        }
+    };
+
+    abstract double derivativeFromActivation(double a);
+
+    //data[offset + i] *= f'(act[actOffset + i]): one call per row, the loop itself stays free of dispatch
+    abstract void multiplyByDerivative(double[] data, int offset, double[] act, int actOffset, int length);
+}
@@ -0,0 +1,36 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+
+//accuracy in percent of the ex4 network on a held-out split, e.g. the right side of PreparedDataset.split
+public class HoldOutValidator implements Validator {
+    private final DMatrixRMaj theta1;
+    private final DMatrixRMaj theta2;
+    private final DMatrixRMaj featuresMatrixWithOnes;
+    private final int[] labels;
+
+    public HoldOutValidator(int hiddenLayerSize, int numLabels, PreparedDataset holdOut) {
+        this.theta1 = new DMatrixRMaj(hiddenLayerSize, holdOut.getNumFeatures() + 1);
+        this.theta2 = new DMatrixRMaj(numLabels, hiddenLayerSize + 1);
+        this.featuresMatrixWithOnes = holdOut.getFeaturesMatrixWithOnes();
+        this.labels = holdOut.getLabels();
+    }
+
+    @Override
+    public double score(DMatrixRMaj params) {
+        if (params.getNumElements() != theta1.getNumElements() + theta2.getNumElements()) {
+            throw new IllegalArgumentException("expect " + (theta1.getNumElements() + theta2.getNumElements())
+                    + " params; got " + params.getNumElements());
+        }
+        System.arraycopy(params.data, 0, theta1.data, 0, theta1.getNumElements());
+        System.arraycopy(params.data, theta1.getNumElements(), theta2.data, 0, theta2.getNumElements());
+        InferenceEngine engine = new InferenceEngine(theta1, theta2);
+        int matched = 0;
+        for (int row = 0; row < labels.length; ++row) {
+            if (engine.predictWithOnes(featuresMatrixWithOnes, row) == labels[row]) {
+                ++matched;
+            }
+        }
+        return ((double) matched) * 100 / labels.length;
+    }
+}
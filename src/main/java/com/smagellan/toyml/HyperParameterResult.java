@@ -0,0 +1,39 @@
+package com.smagellan.toyml;
+
+public class HyperParameterResult {
+    private final HyperParameters params;
+    private final double accuracy;
+    private final double cost;
+    private final long millis;
+
+    public HyperParameterResult(HyperParameters params, double accuracy, double cost, long millis) {
+        this.params = params;
+        this.accuracy = accuracy;
+        this.cost = cost;
+        this.millis = millis;
+    }
+
+    public HyperParameters getParams() {
+        return params;
+    }
+
+    //percent; mean held-out accuracy over the folds, training accuracy without folds
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    //final training cost, mean over the folds
+    public double getCost() {
+        return cost;
+    }
+
+    //training and scoring time summed over the folds
+    public long getMillis() {
+        return millis;
+    }
+
+    @Override
+    public String toString() {
+        return params + ": accuracy " + accuracy + ", cost " + cost + ", " + millis + " millis";
+    }
+}
@@ -0,0 +1,250 @@
+package com.smagellan.toyml;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.apache.commons.lang3.tuple.Triple;
+import org.ejml.data.DMatrix;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/*
+ * Trains one ex4-shaped model per (hyperparameters, fold) pair on a bounded thread pool. Every task reads the same
+ * [ones, X] matrix, built once. Without folds a task trains on it directly. With k folds the training rows stream
+ * out of it chunk by chunk (RowSubsetChunkSource) and the held-out rows are scored in place, so no fold copies the features.
+ * Candidates that differ only in the iteration count follow the same fmincg path, so their tasks share an EvaluationCache
+ * per fold and the longer runs replay the shorter runs' evaluations. A group's tasks are queued back to back and its
+ * caches are dropped when its last task finishes, so only the groups in flight hold cache memory.
+ */
+public class HyperParameterSearch {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(HyperParameterSearch.class);
+
+    public static final long CACHE_BYTES_PER_GROUP = 64L * 1024 * 1024;
+
+    private final DMatrixRMaj featuresMatrixWithOnes;
+    private final int[] labels;
+    private final int numLabels;
+    private final int numFolds;
+    private final int[][] heldOutRows;
+    private final int[][] trainRows;
+
+    //numFolds == 1 trains on all rows and reports training accuracy; rows are dealt to folds in a foldSeed shuffle
+    public HyperParameterSearch(DMatrix featuresMatrix, DMatrix yMatrix, int numLabels, int numFolds, long foldSeed) {
+        int m = featuresMatrix.getNumRows();
+        if (numFolds < 1 || numFolds > m) {
+            throw new IllegalArgumentException("numFolds: " + numFolds + "; expect 1.." + m);
+        }
+        this.featuresMatrixWithOnes = new DMatrixRMaj(m, featuresMatrix.getNumCols() + 1);
+        CommonOps_DDRM.insert(featuresMatrix, featuresMatrixWithOnes, 0, 1);
+        for (int rowIdx = 0; rowIdx < m; ++rowIdx) {
+            featuresMatrixWithOnes.set(rowIdx, 0, 1);
+        }
+        this.numLabels = numLabels;
+        this.numFolds = numFolds;
+        this.labels = Main.createLabels(yMatrix);
+
+        int[] order = new int[m];
+        for (int rowIdx = 0; rowIdx < m; ++rowIdx) {
+            order[rowIdx] = rowIdx;
+        }
+        Random r = new Random(foldSeed);
+        for (int idx = m - 1; idx > 0; --idx) {
+            int other = r.nextInt(idx + 1);
+            int tmp = order[idx];
+            order[idx] = order[other];
+            order[other] = tmp;
+        }
+        this.heldOutRows = new int[numFolds][];
+        this.trainRows = new int[numFolds][];
+        for (int fold = 0; fold < numFolds && numFolds > 1; ++fold) {
+            int from = (int) ((long) fold * m / numFolds);
+            int to = (int) ((long) (fold + 1) * m / numFolds);
+            heldOutRows[fold] = Arrays.copyOfRange(order, from, to);
+            trainRows[fold] = new int[m - (to - from)];
+            System.arraycopy(order, 0, trainRows[fold], 0, from);
+            System.arraycopy(order, to, trainRows[fold], from, m - to);
+        }
+    }
+
+    //results come back in the order of candidates
+    public List<HyperParameterResult> run(List<HyperParameters> candidates, int parallelism) {
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int idx = 0; idx < candidates.size(); ++idx) {
+            groups.computeIfAbsent(cacheGroup(candidates.get(idx)), group -> new ArrayList<>()).add(idx);
+        }
+        SharedCaches caches = new SharedCaches();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            //a group's tasks go in back to back, so its caches are dropped before most other groups start
+            List<List<Future<FoldResult>>> futures = new ArrayList<>(Collections.nCopies(candidates.size(), null));
+            for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+                boolean shared = group.getValue().size() > 1;
+                for (int fold = 0; fold < numFolds && shared; ++fold) {
+                    caches.expect(cacheKey(group.getKey(), fold), group.getValue().size());
+                }
+                for (int idx : group.getValue()) {
+                    HyperParameters params = candidates.get(idx);
+                    List<Future<FoldResult>> folds = new ArrayList<>(numFolds);
+                    for (int fold = 0; fold < numFolds; ++fold) {
+                        int foldIdx = fold;
+                        folds.add(pool.submit(() -> train(params, foldIdx, shared ? caches : null)));
+                    }
+                    futures.set(idx, folds);
+                }
+            }
+
+            List<HyperParameterResult> results = new ArrayList<>(candidates.size());
+            for (int idx = 0; idx < candidates.size(); ++idx) {
+                double accuracy = 0;
+                double cost = 0;
+                long millis = 0;
+                for (Future<FoldResult> future : futures.get(idx)) {
+                    FoldResult foldResult = await(future);
+                    accuracy += foldResult.accuracy;
+                    cost += foldResult.cost;
+                    millis += foldResult.millis;
+                }
+                HyperParameterResult result = new HyperParameterResult(candidates.get(idx), accuracy / numFolds, cost / numFolds, millis);
+                logger.debug("{}", result);
+                results.add(result);
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    //caches is null when no other candidate shares the cost function
+    private FoldResult train(HyperParameters params, int fold, SharedCaches caches) {
+        StopWatch sw = StopWatch.createStarted();
+        int inputLayerSize = featuresMatrixWithOnes.numCols - 1;
+        int hiddenLayerSize = params.getHiddenLayerSize();
+        SimpleMatrix nnParams = Main.initialNnParams(inputLayerSize, hiddenLayerSize, numLabels, params.getSeed());
+        FmincgOptimizer optimizer = new FmincgOptimizer(params.getIterations());
+
+        String cacheKey = cacheKey(cacheGroup(params), fold);
+        OptimizationResult optimizationResult;
+        try {
+            if (numFolds == 1) {
+                optimizationResult = optimizer.minimize(cached(new WorkspaceCostFunction(inputLayerSize, hiddenLayerSize, numLabels,
+                        featuresMatrixWithOnes, labels, params.getLambda()), nnParams.getNumElements(), cacheKey, caches), nnParams);
+            } else {
+                ChunkSource source = new RowSubsetChunkSource(featuresMatrixWithOnes, labels, numLabels, trainRows[fold]);
+                try (StreamingCostFunction cf = new StreamingCostFunction(hiddenLayerSize, source, params.getLambda(),
+                        StreamingCostFunction.DEFAULT_CHUNK_SIZE)) {
+                    optimizationResult = optimizer.minimize(cached(cf, nnParams.getNumElements(), cacheKey, caches), nnParams);
+                }
+            }
+        } finally {
+            if (caches != null) {
+                caches.release(cacheKey);
+            }
+        }
+
+        Network network = Network.ex4(inputLayerSize, hiddenLayerSize, numLabels);
+        InferenceEngine engine = new InferenceEngine(network.theta(optimizationResult.getxVal(), 0).getDDRM(),
+                network.theta(optimizationResult.getxVal(), 1).getDDRM());
+        int scored = numFolds == 1 ? labels.length : heldOutRows[fold].length;
+        int matched = 0;
+        for (int idx = 0; idx < scored; ++idx) {
+            int row = numFolds == 1 ? idx : heldOutRows[fold][idx];
+            if (engine.predictWithOnes(featuresMatrixWithOnes, row) == labels[row]) {
+                ++matched;
+            }
+        }
+        SimpleMatrix fX = optimizationResult.getfXVal();
+        double cost = fX.getNumElements() > 0 ? fX.get(fX.getNumElements() - 1) : Double.NaN;
+        return new FoldResult(matched * 100.0 / scored, cost, sw.getTime(TimeUnit.MILLISECONDS));
+    }
+
+    private static Function<SimpleMatrix, OptimizedFunctionResult> cached(Function<SimpleMatrix, OptimizedFunctionResult> cf, int numParams,
+                                                                         String cacheKey, SharedCaches caches) {
+        return caches == null ? cf : caches.get(cacheKey, cf, numParams);
+    }
+
+    //everything but the iteration count: same group, same cost function and starting point
+    private static String cacheGroup(HyperParameters params) {
+        return "lambda " + params.getLambda() + ", hidden " + params.getHiddenLayerSize() + ", seed " + params.getSeed();
+    }
+
+    private static String cacheKey(String group, int fold) {
+        return group + ", fold " + fold;
+    }
+
+    private static FoldResult await(Future<FoldResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for training", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("training failed", e.getCause());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Triple<DMatrix, DMatrix, Long> params = Main.loadParams(100);
+        List<HyperParameters> candidates = HyperParameters.grid(new double[] {0.3, 1, 3}, new int[] {25, 50},
+                new int[] {50}, new long[] {100, 200});
+        HyperParameterSearch search = new HyperParameterSearch(params.getLeft(), params.getMiddle(), 10, 5, 100);
+        List<HyperParameterResult> results = search.run(candidates, Runtime.getRuntime().availableProcessors());
+        results.sort(Comparator.comparingDouble(HyperParameterResult::getAccuracy).reversed());
+        for (HyperParameterResult result : results) {
+            logger.info("{}", result);
+        }
+    }
+
+    //one EvaluationCache per group and fold, dropped as soon as the last task using it is done
+    private static class SharedCaches {
+        private final ConcurrentMap<String, EvaluationCache> caches = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, AtomicInteger> pendingTasks = new ConcurrentHashMap<>();
+
+        private void expect(String cacheKey, int numTasks) {
+            pendingTasks.put(cacheKey, new AtomicInteger(numTasks));
+        }
+
+        private EvaluationCache get(String cacheKey, Function<SimpleMatrix, OptimizedFunctionResult> cf, int numParams) {
+            return caches.compute(cacheKey, (key, shared) -> shared == null ?
+                    new EvaluationCache(cf, numParams, CACHE_BYTES_PER_GROUP) : new EvaluationCache(cf, shared));
+        }
+
+        private void release(String cacheKey) {
+            if (pendingTasks.get(cacheKey).decrementAndGet() == 0) {
+                pendingTasks.remove(cacheKey);
+                EvaluationCache cache = caches.remove(cacheKey);
+                logger.debug("{}: {}", cacheKey, cache);
+            }
+        }
+    }
+
+    private static class FoldResult {
+        private final double accuracy;
+        private final double cost;
+        private final long millis;
+
+        private FoldResult(double accuracy, double cost, long millis) {
+            this.accuracy = accuracy;
+            this.cost = cost;
+            this.millis = millis;
+        }
+    }
+}
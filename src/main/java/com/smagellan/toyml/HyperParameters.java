@@ -0,0 +1,69 @@
+package com.smagellan.toyml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class HyperParameters {
+    private final double lambda;
+    private final int hiddenLayerSize;
+    private final int iterations;
+    private final long seed;
+
+    public HyperParameters(double lambda, int hiddenLayerSize, int iterations, long seed) {
+        this.lambda = lambda;
+        this.hiddenLayerSize = hiddenLayerSize;
+        this.iterations = iterations;
+        this.seed = seed;
+    }
+
+    //every combination, seeds varying fastest
+    public static List<HyperParameters> grid(double[] lambdas, int[] hiddenLayerSizes, int[] iterations, long[] seeds) {
+        List<HyperParameters> result = new ArrayList<>();
+        for (double lambda : lambdas) {
+            for (int hiddenLayerSize : hiddenLayerSizes) {
+                for (int iterationCount : iterations) {
+                    for (long seed : seeds) {
+                        result.add(new HyperParameters(lambda, hiddenLayerSize, iterationCount, seed));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    //lambda log-uniform in [minLambda, maxLambda], hidden size uniform in [minHidden, maxHidden], iterations picked from the list
+    public static List<HyperParameters> random(int count, double minLambda, double maxLambda, int minHidden, int maxHidden,
+                                               int[] iterations, long searchSeed) {
+        Random r = new Random(searchSeed);
+        List<HyperParameters> result = new ArrayList<>(count);
+        for (int idx = 0; idx < count; ++idx) {
+            double lambda = Math.exp(Math.log(minLambda) + r.nextDouble() * (Math.log(maxLambda) - Math.log(minLambda)));
+            int hiddenLayerSize = minHidden + r.nextInt(maxHidden - minHidden + 1);
+            int iterationCount = iterations[r.nextInt(iterations.length)];
+            result.add(new HyperParameters(lambda, hiddenLayerSize, iterationCount, 1 + r.nextInt(Integer.MAX_VALUE)));
+        }
+        return result;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public int getHiddenLayerSize() {
+        return hiddenLayerSize;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public String toString() {
+        return "lambda=" + lambda + ", hidden=" + hiddenLayerSize + ", iterations=" + iterations + ", seed=" + seed;
+    }
+}
@@ -0,0 +1,168 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+
+/*
+ * Reusable, thread-safe replacement for Predictor.predict. Weights are transposed once so that every input
+ * feature scales one contiguous row of Theta1', and the scratch vectors live in a ThreadLocal, so the
+ * predict calls don't allocate. Features are passed without the bias column, rows one after another.
+ * Summation order is the same as in Predictor, so the predicted classes are identical.
+ */
+public class InferenceEngine {
+    private final int inputLayerSize;
+    private final int hiddenLayerSize;
+    private final int numLabels;
+    private final double[] theta1T;
+    private final double[] theta2T;
+    private final ThreadLocal<Scratch> scratch;
+
+    public InferenceEngine(SimpleMatrix theta1, SimpleMatrix theta2) {
+        this(theta1.getDDRM(), theta2.getDDRM());
+    }
+
+    public InferenceEngine(DMatrixRMaj theta1, DMatrixRMaj theta2) {
+        if (theta2.numCols != theta1.numRows + 1) {
+            throw new IllegalArgumentException("theta2 has " + theta2.numCols + " columns; expect " + (theta1.numRows + 1));
+        }
+        this.inputLayerSize = theta1.numCols - 1;
+        this.hiddenLayerSize = theta1.numRows;
+        this.numLabels = theta2.numRows;
+        this.theta1T = CommonOps_DDRM.transpose(theta1, null).data;
+        this.theta2T = CommonOps_DDRM.transpose(theta2, null).data;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(hiddenLayerSize, numLabels));
+    }
+
+    public int getInputLayerSize() {
+        return inputLayerSize;
+    }
+
+    public int getNumLabels() {
+        return numLabels;
+    }
+
+    public int predict(double[] features) {
+        return predictRow(features, 0, scratch.get(), null, 0);
+    }
+
+    public void predict(double[] features, int numRows, int[] classes) {
+        predict(features, numRows, classes, null);
+    }
+
+    //probabilities, if not null, receives numRows x numLabels sigmoid outputs
+    public void predict(double[] features, int numRows, int[] classes, double[] probabilities) {
+        if (features.length < numRows * inputLayerSize || classes.length < numRows
+                || (probabilities != null && probabilities.length < numRows * numLabels)) {
+            throw new IllegalArgumentException("buffers too small for " + numRows + " rows");
+        }
+        Scratch s = scratch.get();
+        for (int row = 0; row < numRows; ++row) {
+            classes[row] = predictRow(features, row * inputLayerSize, s, probabilities, row * numLabels);
+        }
+    }
+
+    //drop-in for Predictor.predict; allocates the input copy and the result
+    public SimpleMatrix predict(SimpleMatrix featuresMatrixWithOnes) {
+        int m = featuresMatrixWithOnes.numRows();
+        double[] features = CommonOps_DDRM.extract(featuresMatrixWithOnes.getDDRM(), 0, m, 1, inputLayerSize + 1).data;
+        int[] classes = new int[m];
+        predict(features, m, classes);
+        SimpleMatrix result = new SimpleMatrix(m, 1);
+        for (int row = 0; row < m; ++row) {
+            result.set(row, 0, classes[row]);
+        }
+        return result;
+    }
+
+    //one row of an in-memory [ones, X] matrix, read in place
+    public int predictWithOnes(DMatrixRMaj featuresMatrixWithOnes, int row) {
+        if (featuresMatrixWithOnes.numCols != inputLayerSize + 1) {
+            throw new IllegalArgumentException("matrix has " + featuresMatrixWithOnes.numCols + " columns; expect " + (inputLayerSize + 1));
+        }
+        return predictRow(featuresMatrixWithOnes.data, row * featuresMatrixWithOnes.numCols + 1, scratch.get(), null, 0);
+    }
+
+    //predicts every row of the mapped dataset, copying blockSize rows at a time out of the mapping
+    public void predict(MappedDataset dataset, int blockSize, int[] classes) {
+        if (dataset.getNumCols() != inputLayerSize) {
+            throw new IllegalArgumentException("dataset has " + dataset.getNumCols() + " features; expect " + inputLayerSize);
+        }
+        double[] block = new double[blockSize * inputLayerSize];
+        Scratch s = scratch.get();
+        for (int fromRow = 0; fromRow < dataset.getNumRows(); fromRow += blockSize) {
+            int toRow = Math.min(fromRow + blockSize, dataset.getNumRows());
+            dataset.readRows(fromRow, toRow, block);
+            for (int row = fromRow; row < toRow; ++row) {
+                classes[row] = predictRow(block, (row - fromRow) * inputLayerSize, s, null, 0);
+            }
+        }
+    }
+
+    //same, for a dataset held in direct memory
+    public void predict(OffHeapDataset dataset, int blockSize, int[] classes) {
+        if (dataset.getNumCols() != inputLayerSize) {
+            throw new IllegalArgumentException("dataset has " + dataset.getNumCols() + " features; expect " + inputLayerSize);
+        }
+        double[] block = new double[blockSize * inputLayerSize];
+        Scratch s = scratch.get();
+        for (int fromRow = 0; fromRow < dataset.getNumRows(); fromRow += blockSize) {
+            int toRow = Math.min(fromRow + blockSize, dataset.getNumRows());
+            dataset.readRows(fromRow, toRow, block);
+            for (int row = fromRow; row < toRow; ++row) {
+                classes[row] = predictRow(block, (row - fromRow) * inputLayerSize, s, null, 0);
+            }
+        }
+    }
+
+    private int predictRow(double[] features, int offset, Scratch s, double[] probabilities, int probabilitiesOffset) {
+        double[] hidden = s.hidden;
+        double[] output = s.output;
+
+        //bias row first, then features in order: same summation order as the matrix product in Predictor
+        System.arraycopy(theta1T, 0, hidden, 0, hiddenLayerSize);
+        for (int k = 0; k < inputLayerSize; ++k) {
+            double x = features[offset + k];
+            if (x != 0) {
+                int wOffset = (k + 1) * hiddenLayerSize;
+                for (int j = 0; j < hiddenLayerSize; ++j) {
+                    hidden[j] += x * theta1T[wOffset + j];
+                }
+            }
+        }
+
+        System.arraycopy(theta2T, 0, output, 0, numLabels);
+        for (int j = 0; j < hiddenLayerSize; ++j) {
+            double h = MlFunctions.sigmoid(hidden[j]);
+            int wOffset = (j + 1) * numLabels;
+            for (int c = 0; c < numLabels; ++c) {
+                output[c] += h * theta2T[wOffset + c];
+            }
+        }
+
+        int index = 0;
+        double max = output[0];
+        for (int c = 1; c < numLabels; ++c) {
+            if (output[c] > max) {
+                max = output[c];
+                index = c;
+            }
+        }
+        if (probabilities != null) {
+            for (int c = 0; c < numLabels; ++c) {
+                probabilities[probabilitiesOffset + c] = MlFunctions.sigmoid(output[c]);
+            }
+        }
+        return index;
+    }
+
+    private static class Scratch {
+        private final double[] hidden;
+        private final double[] output;
+
+        private Scratch(int hiddenLayerSize, int numLabels) {
+            this.hidden = new double[hiddenLayerSize];
+            this.output = new double[numLabels];
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+
+/*
+ * Feature rows quantized for QuantizedInferenceEngine: one byte per value plus one float scale per row,
+ * x ~= values[k] * scale, with the row's largest magnitude mapped to 127. About 1/8 of the double rows,
+ * which is what the scoring loop streams through. No bias column.
+ */
+public class Int8Features {
+    private final int numRows;
+    private final int numCols;
+    private final byte[] values;
+    private final float[] scales;
+
+    private Int8Features(int numRows, int numCols, byte[] values, float[] scales) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.values = values;
+        this.scales = scales;
+    }
+
+    //rows one after another, numCols values each, as InferenceEngine.predict takes them
+    public static Int8Features quantize(double[] features, int numRows, int numCols) {
+        if (features.length < numRows * numCols) {
+            throw new IllegalArgumentException(features.length + " values for " + numRows + " x " + numCols);
+        }
+        byte[] values = new byte[numRows * numCols];
+        float[] scales = new float[numRows];
+        for (int row = 0; row < numRows; ++row) {
+            scales[row] = quantizeRow(features, row * numCols, numCols, values, row * numCols);
+        }
+        return new Int8Features(numRows, numCols, values, scales);
+    }
+
+    public static Int8Features quantizeWithOnes(DMatrixRMaj featuresMatrixWithOnes) {
+        int numRows = featuresMatrixWithOnes.numRows;
+        int numCols = featuresMatrixWithOnes.numCols - 1;
+        byte[] values = new byte[numRows * numCols];
+        float[] scales = new float[numRows];
+        for (int row = 0; row < numRows; ++row) {
+            scales[row] = quantizeRow(featuresMatrixWithOnes.data, row * (numCols + 1) + 1, numCols, values, row * numCols);
+        }
+        return new Int8Features(numRows, numCols, values, scales);
+    }
+
+    //symmetric, round to nearest; returns the scale, 0 for an all-zero row
+    static float quantizeRow(double[] src, int srcOffset, int numCols, byte[] dst, int dstOffset) {
+        double maxAbs = 0;
+        for (int k = 0; k < numCols; ++k) {
+            maxAbs = Math.max(maxAbs, Math.abs(src[srcOffset + k]));
+        }
+        float scale = (float) (maxAbs / 127);
+        double inverse = scale > 0 ? 1 / (double) scale : 0;
+        for (int k = 0; k < numCols; ++k) {
+            long q = Math.round(src[srcOffset + k] * inverse);
+            dst[dstOffset + k] = (byte) Math.max(-127, Math.min(127, q));
+        }
+        return scale;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    byte[] getValues() {
+        return values;
+    }
+
+    float[] getScales() {
+        return scales;
+    }
+
+    public long getBytes() {
+        return (long) values.length + (long) scales.length * Float.BYTES;
+    }
+}
@@ -0,0 +1,84 @@
+package com.smagellan.toyml;
+
+public class IterationStats {
+    private final int iteration;
+    private final boolean success;
+    private final double cost;
+    private final double gradientNorm;
+    private final double stepSize;
+    private final int evaluations;
+    private final long evaluationNanos;
+    private final long optimizerNanos;
+    private final long forwardNanos;
+    private final long backwardNanos;
+    private final long allocatedBytes;
+
+    public IterationStats(int iteration, boolean success, double cost, double gradientNorm, double stepSize, int evaluations,
+                          long evaluationNanos, long optimizerNanos, long forwardNanos, long backwardNanos, long allocatedBytes) {
+        this.iteration = iteration;
+        this.success = success;
+        this.cost = cost;
+        this.gradientNorm = gradientNorm;
+        this.stepSize = stepSize;
+        this.evaluations = evaluations;
+        this.evaluationNanos = evaluationNanos;
+        this.optimizerNanos = optimizerNanos;
+        this.forwardNanos = forwardNanos;
+        this.backwardNanos = backwardNanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public int getIteration() {
+        return iteration;
+    }
+
+    //false when the line search failed and the optimizer went back to the previous point
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public double getCost() {
+        return cost;
+    }
+
+    public double getGradientNorm() {
+        return gradientNorm;
+    }
+
+    //distance moved along the search direction, in units of the direction
+    public double getStepSize() {
+        return stepSize;
+    }
+
+    //function evaluations spent in this line search
+    public int getEvaluations() {
+        return evaluations;
+    }
+
+    public long getEvaluationNanos() {
+        return evaluationNanos;
+    }
+
+    //wall time of the iteration not spent in the cost function
+    public long getOptimizerNanos() {
+        return optimizerNanos;
+    }
+
+    //phase times and allocations below are summed over the evaluations of this line search
+    public long getForwardNanos() {
+        return forwardNanos;
+    }
+
+    public long getBackwardNanos() {
+        return backwardNanos;
+    }
+
+    //-1 if the JVM can't tell, same as EvaluationStats
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getAllocatedBytesPerEvaluation() {
+        return allocatedBytes < 0 ? -1 : allocatedBytes / evaluations;
+    }
+}
@@ -0,0 +1,130 @@
+package com.smagellan.toyml;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Latest iteration and running totals of an optimizer run as a platform MBean,
+ * com.smagellan.toyml:type=Optimizer,name=<name>. Updated by the optimizer thread, read by JMX clients.
+ */
+public class JmxMetricsListener implements OptimizerListener, JmxMetricsListenerMBean, AutoCloseable {
+    private final ObjectName objectName;
+
+    private volatile int iteration;
+    private volatile double cost = Double.NaN;
+    private volatile double gradientNorm = Double.NaN;
+    private volatile double stepSize;
+    private volatile int lastLineSearchEvaluations;
+    private volatile long totalEvaluations;
+    private volatile long evaluationNanos;
+    private volatile long forwardNanos;
+    private volatile long backwardNanos;
+    private volatile long optimizerNanos;
+    private volatile long lastAllocatedBytesPerEvaluation;
+    private volatile boolean finished;
+
+    public JmxMetricsListener(String name) {
+        try {
+            this.objectName = new ObjectName("com.smagellan.toyml:type=Optimizer,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("can't register metrics MBean " + name, e);
+        }
+    }
+
+    @Override
+    public void onEvaluation(EvaluationStats stats) {
+        //single writer, so read-modify-write of the volatiles is fine
+        totalEvaluations = totalEvaluations + 1;
+    }
+
+    @Override
+    public void onIteration(IterationStats stats) {
+        iteration = stats.getIteration();
+        cost = stats.getCost();
+        gradientNorm = stats.getGradientNorm();
+        stepSize = stats.getStepSize();
+        lastLineSearchEvaluations = stats.getEvaluations();
+        evaluationNanos = evaluationNanos + stats.getEvaluationNanos();
+        optimizerNanos = optimizerNanos + stats.getOptimizerNanos();
+        forwardNanos = forwardNanos + stats.getForwardNanos();
+        backwardNanos = backwardNanos + stats.getBackwardNanos();
+        lastAllocatedBytesPerEvaluation = stats.getAllocatedBytesPerEvaluation();
+    }
+
+    @Override
+    public void onFinish(OptimizationResult result) {
+        finished = true;
+    }
+
+    @Override
+    public int getIteration() {
+        return iteration;
+    }
+
+    @Override
+    public double getCost() {
+        return cost;
+    }
+
+    @Override
+    public double getGradientNorm() {
+        return gradientNorm;
+    }
+
+    @Override
+    public double getStepSize() {
+        return stepSize;
+    }
+
+    @Override
+    public int getLastLineSearchEvaluations() {
+        return lastLineSearchEvaluations;
+    }
+
+    @Override
+    public long getTotalEvaluations() {
+        return totalEvaluations;
+    }
+
+    @Override
+    public long getEvaluationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(evaluationNanos);
+    }
+
+    @Override
+    public long getForwardMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(forwardNanos);
+    }
+
+    @Override
+    public long getBackwardMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(backwardNanos);
+    }
+
+    @Override
+    public long getOptimizerMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(optimizerNanos);
+    }
+
+    @Override
+    public long getLastAllocatedBytesPerEvaluation() {
+        return lastAllocatedBytesPerEvaluation;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public void close() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("can't unregister " + objectName, e);
+        }
+    }
+}
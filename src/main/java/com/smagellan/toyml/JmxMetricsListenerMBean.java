@@ -0,0 +1,28 @@
+package com.smagellan.toyml;
+
+public interface JmxMetricsListenerMBean {
+    int getIteration();
+
+    double getCost();
+
+    double getGradientNorm();
+
+    double getStepSize();
+
+    int getLastLineSearchEvaluations();
+
+    long getTotalEvaluations();
+
+    long getEvaluationMillis();
+
+    long getForwardMillis();
+
+    long getBackwardMillis();
+
+    long getOptimizerMillis();
+
+    //-1 if the JVM can't measure thread allocations
+    long getLastAllocatedBytesPerEvaluation();
+
+    boolean isFinished();
+}
@@ -0,0 +1,124 @@
+package com.smagellan.toyml;
+
+/*
+ * Matrix products over raw arrays with offsets and row strides, so layer weights are read straight out of
+ * the unrolled parameter vector and gradients are written straight into the unrolled gradient.
+ * Per-element summation order follows EJML's multTransB, mult_reorder and multTransA_reorder,
+ * so the results are identical to the CommonOps_DDRM calls in BackpropWorkspace.
+ */
+class LayerKernels {
+    private LayerKernels() {
+    }
+
+    //c[:, cCol..cCol+bRows) = a * b', a is rows x inner (contiguous), b is bRows x inner starting at bOffset;
+    //four rows of a per pass over b, independent sums that hide the add latency, each in its own order
+    static void multTransB(double[] a, int rows, int inner, double[] b, int bOffset, int bRows,
+                           double[] c, int cStride, int cCol) {
+        int i = 0;
+        for (; i + 4 <= rows; i += 4) {
+            int a0 = i * inner;
+            int a1 = a0 + inner;
+            int a2 = a1 + inner;
+            int a3 = a2 + inner;
+            int cIdx = i * cStride + cCol;
+            for (int j = 0; j < bRows; ++j) {
+                int bStart = bOffset + j * inner;
+                double total0 = 0;
+                double total1 = 0;
+                double total2 = 0;
+                double total3 = 0;
+                for (int k = 0; k < inner; ++k) {
+                    double valB = b[bStart + k];
+                    total0 += a[a0 + k] * valB;
+                    total1 += a[a1 + k] * valB;
+                    total2 += a[a2 + k] * valB;
+                    total3 += a[a3 + k] * valB;
+                }
+                c[cIdx + j] = total0;
+                c[cIdx + cStride + j] = total1;
+                c[cIdx + 2 * cStride + j] = total2;
+                c[cIdx + 3 * cStride + j] = total3;
+            }
+        }
+        for (; i < rows; ++i) {
+            int aStart = i * inner;
+            int cIdx = i * cStride + cCol;
+            int bIdx = bOffset;
+            for (int j = 0; j < bRows; ++j) {
+                double total = 0;
+                int aIdx = aStart;
+                int end = aIdx + inner;
+                while (aIdx < end) {
+                    total += a[aIdx++] * b[bIdx++];
+                }
+                c[cIdx++] = total;
+            }
+        }
+    }
+
+    /*
+     * c = (a * b)[:, 1..bCols) .* f'(act[:, 1..bCols)): the error of the previous layer, bias column dropped.
+     * a is rows x inner, b is inner x bCols starting at bOffset, act has bCols columns.
+     */
+    static void backpropError(double[] a, int rows, int inner, double[] b, int bOffset, int bCols,
+                              double[] act, HiddenActivation activation, double[] c) {
+        int cCols = bCols - 1;
+        for (int i = 0; i < rows; ++i) {
+            int cStart = i * cCols;
+            int aIdx = i * inner;
+            double valA = a[aIdx++];
+            int bIdx = bOffset + 1;
+            for (int j = 0; j < cCols; ++j) {
+                c[cStart + j] = valA * b[bIdx++];
+            }
+            for (int k = 1; k < inner; ++k) {
+                valA = a[aIdx++];
+                bIdx = bOffset + k * bCols + 1;
+                for (int j = 0; j < cCols; ++j) {
+                    c[cStart + j] += valA * b[bIdx++];
+                }
+            }
+            activation.multiplyByDerivative(c, cStart, act, i * bCols + 1, cCols);
+        }
+    }
+
+    /*
+     * c = a' * b, a is rows x aCols, b is rows x bCols, c is aCols x bCols starting at cOffset. Row-outer, so b,
+     * typically the input features, is streamed once while c stays in cache; two rows per pass over c. Every
+     * element still sums its terms in row order, same as multTransA_reorder.
+     */
+    static void multTransA(double[] a, int rows, int aCols, double[] b, int bCols, double[] c, int cOffset) {
+        for (int i = 0; i < aCols; ++i) {
+            int cStart = cOffset + i * bCols;
+            double valA = a[i];
+            for (int j = 0; j < bCols; ++j) {
+                c[cStart + j] = valA * b[j];
+            }
+        }
+        int k = 1;
+        for (; k + 2 <= rows; k += 2) {
+            int aStart = k * aCols;
+            int b0 = k * bCols;
+            int b1 = b0 + bCols;
+            for (int i = 0; i < aCols; ++i) {
+                int cStart = cOffset + i * bCols;
+                double valA0 = a[aStart + i];
+                double valA1 = a[aStart + aCols + i];
+                for (int j = 0; j < bCols; ++j) {
+                    c[cStart + j] = (c[cStart + j] + valA0 * b[b0 + j]) + valA1 * b[b1 + j];
+                }
+            }
+        }
+        for (; k < rows; ++k) {
+            int aStart = k * aCols;
+            int bStart = k * bCols;
+            for (int i = 0; i < aCols; ++i) {
+                int cStart = cOffset + i * bCols;
+                double valA = a[aStart + i];
+                for (int j = 0; j < bCols; ++j) {
+                    c[cStart + j] += valA * b[bStart + j];
+                }
+            }
+        }
+    }
+}
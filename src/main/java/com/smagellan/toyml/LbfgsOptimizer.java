@@ -0,0 +1,166 @@
+package com.smagellan.toyml;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/*
+ * Limited-memory BFGS with a backtracking (Armijo) line search. Works on the full Function contract,
+ * so it can be handed any cost function fmincg accepts, including BatchCostFunction's full-batch apply.
+ */
+public class LbfgsOptimizer implements Optimizer {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(LbfgsOptimizer.class);
+
+    public static final double ARMIJO_C1 = 1e-4;
+    public static final double BACKTRACK = 0.5;
+    public static final int MAX_LINE_SEARCH_STEPS = 20;
+    public static final double MIN_CURVATURE = 1e-10;
+
+    private final int maxIterations;
+    private final int historySize;
+    private final ConvergenceOptions convergence;
+
+    public LbfgsOptimizer(int maxIterations, int historySize) {
+        this(maxIterations, historySize, null);
+    }
+
+    public LbfgsOptimizer(int maxIterations, int historySize, ConvergenceOptions convergence) {
+        this.maxIterations = maxIterations;
+        this.historySize = historySize;
+        this.convergence = convergence;
+    }
+
+    @Override
+    public OptimizationResult minimize(Function<SimpleMatrix, OptimizedFunctionResult> fn, SimpleMatrix fnParams) {
+        StopWatch sw = StopWatch.createStarted();
+        int n = fnParams.getNumElements();
+        double[] x = Arrays.copyOf(fnParams.getDDRM().data, n);
+        double[] xNew = new double[n];
+        double[] direction = new double[n];
+        double[][] sHistory = new double[historySize][n];
+        double[][] yHistory = new double[historySize][n];
+        double[] rhoHistory = new double[historySize];
+        double[] alpha = new double[historySize];
+        int historyCount = 0;
+        int historyHead = 0;
+
+        ConvergenceMonitor monitor = new ConvergenceMonitor(convergence);
+        DMatrixRMaj xView = DMatrixRMaj.wrap(n, 1, x);
+        OptimizedFunctionResult fnResult = fn.apply(SimpleMatrix.wrap(xView));
+        monitor.evaluated();
+        double f = fnResult.getFnValue();
+        double[] g = Arrays.copyOf(fnResult.getGradientValue().getDDRM().data, n);
+
+        double[] costs = new double[maxIterations];
+        int i = 0;
+        OptimizationResult.StopReason stopReason = OptimizationResult.StopReason.MAX_ITERATIONS;
+        while (i < maxIterations) {
+            //two-loop recursion: direction = -H * g
+            for (int k = 0; k < n; ++k) {
+                direction[k] = -g[k];
+            }
+            for (int h = 0; h < historyCount; ++h) {
+                int idx = Math.floorMod(historyHead - 1 - h, historySize);
+                alpha[idx] = rhoHistory[idx] * dot(sHistory[idx], direction);
+                axpy(-alpha[idx], yHistory[idx], direction);
+            }
+            double gamma;
+            if (historyCount > 0) {
+                int last = Math.floorMod(historyHead - 1, historySize);
+                gamma = dot(sHistory[last], yHistory[last]) / dot(yHistory[last], yHistory[last]);
+            } else {
+                gamma = 1 / Math.max(1, Math.sqrt(dot(g, g)));
+            }
+            for (int k = 0; k < n; ++k) {
+                direction[k] *= gamma;
+            }
+            for (int h = historyCount - 1; h >= 0; --h) {
+                int idx = Math.floorMod(historyHead - 1 - h, historySize);
+                double beta = rhoHistory[idx] * dot(yHistory[idx], direction);
+                axpy(alpha[idx] - beta, sHistory[idx], direction);
+            }
+
+            double slope = dot(g, direction);
+            if (slope >= 0) {
+                //not a descent direction, fall back to steepest descent
+                historyCount = 0;
+                for (int k = 0; k < n; ++k) {
+                    direction[k] = -g[k];
+                }
+                slope = dot(g, direction);
+            }
+
+            double step = 1;
+            OptimizedFunctionResult newResult = null;
+            for (int ls = 0; ls < MAX_LINE_SEARCH_STEPS; ++ls) {
+                for (int k = 0; k < n; ++k) {
+                    xNew[k] = x[k] + step * direction[k];
+                }
+                newResult = fn.apply(SimpleMatrix.wrap(DMatrixRMaj.wrap(n, 1, xNew)));
+                monitor.evaluated();
+                if (newResult.getFnValue() <= f + ARMIJO_C1 * step * slope) {
+                    break;
+                }
+                newResult = null;
+                step *= BACKTRACK;
+            }
+            if (newResult == null) {
+                logger.debug("line search failed at iteration {}", i + 1);
+                stopReason = OptimizationResult.StopReason.LINE_SEARCH_FAILED;
+                break;
+            }
+
+            double[] gNew = newResult.getGradientValue().getDDRM().data;
+            double[] s = sHistory[historyHead];
+            double[] y = yHistory[historyHead];
+            for (int k = 0; k < n; ++k) {
+                s[k] = xNew[k] - x[k];
+                y[k] = gNew[k] - g[k];
+            }
+            double sy = dot(s, y);
+            if (sy > MIN_CURVATURE) {
+                rhoHistory[historyHead] = 1 / sy;
+                historyHead = (historyHead + 1) % historySize;
+                historyCount = Math.min(historyCount + 1, historySize);
+            } else if (historyCount == historySize) {
+                //the rejected pair overwrote the oldest one
+                --historyCount;
+            }
+
+            System.arraycopy(xNew, 0, x, 0, n);
+            System.arraycopy(gNew, 0, g, 0, n);
+            double previous = f;
+            f = newResult.getFnValue();
+            costs[i++] = f;
+            logger.debug("Iteration {} | Cost: {}", i, f);
+            OptimizationResult.StopReason converged = monitor.accepted(previous, f, g, xView);
+            if (converged != null) {
+                stopReason = converged;
+                break;
+            }
+        }
+        logger.debug("optimization took {} millis, {} iterations and {} evaluations, stopped on {}",
+                sw.getTime(TimeUnit.MILLISECONDS), i, monitor.getEvaluations(), stopReason);
+        return new OptimizationResult(SimpleMatrix.wrap(monitor.resultParams(xView)),
+                new SimpleMatrix(1, i, true, Arrays.copyOf(costs, i)), i, stopReason);
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int k = 0; k < a.length; ++k) {
+            sum += a[k] * b[k];
+        }
+        return sum;
+    }
+
+    private static void axpy(double alpha, double[] x, double[] y) {
+        for (int k = 0; k < x.length; ++k) {
+            y[k] += alpha * x[k];
+        }
+    }
+}
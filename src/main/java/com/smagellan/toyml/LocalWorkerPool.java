@@ -0,0 +1,104 @@
+package com.smagellan.toyml;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Starts CostWorker JVMs on this host with the current classpath, for DistributedCostFunction.
+ * Each worker binds a free loopback port and reports it on its first stdout line; the rest of its
+ * output is forwarded to this logger. close() kills the workers.
+ */
+public class LocalWorkerPool implements AutoCloseable {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(LocalWorkerPool.class);
+
+    private final List<Process> processes = new ArrayList<>();
+    private final List<InetSocketAddress> addresses = new ArrayList<>();
+
+    private LocalWorkerPool() {
+    }
+
+    //jvmArgs go before the main class, e.g. -Xmx or -XX:ActiveProcessorCount
+    public static LocalWorkerPool start(int numWorkers, String... jvmArgs) throws IOException {
+        LocalWorkerPool pool = new LocalWorkerPool();
+        try {
+            for (int workerIdx = 0; workerIdx < numWorkers; ++workerIdx) {
+                pool.startWorker(workerIdx, jvmArgs);
+            }
+        } catch (IOException | RuntimeException e) {
+            pool.close();
+            throw e;
+        }
+        return pool;
+    }
+
+    public List<InetSocketAddress> getAddresses() {
+        return Collections.unmodifiableList(addresses);
+    }
+
+    private void startWorker(int workerIdx, String[] jvmArgs) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        Collections.addAll(command, jvmArgs);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(CostWorker.class.getName());
+        command.add("0");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        processes.add(process);
+
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = output.readLine()) != null && !line.startsWith(CostWorker.LISTENING_PREFIX)) {
+            logger.debug("worker {}: {}", workerIdx, line);
+        }
+        if (line == null) {
+            throw new IOException("worker " + workerIdx + " exited before listening");
+        }
+        int port = Integer.parseInt(line.substring(CostWorker.LISTENING_PREFIX.length()).trim());
+        addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+
+        //keep draining, a full pipe would block the worker's logging
+        Thread drainer = new Thread(() -> {
+            try {
+                String next;
+                while ((next = output.readLine()) != null) {
+                    logger.debug("worker {}: {}", workerIdx, next);
+                }
+            } catch (IOException e) {
+                //worker killed
+            }
+        }, "worker-" + workerIdx + "-output");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    @Override
+    public void close() {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+            }
+        }
+        processes.clear();
+        addresses.clear();
+    }
+}
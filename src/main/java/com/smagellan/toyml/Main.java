@@ -1,10 +1,12 @@
 package com.smagellan.toyml;
 
 import org.apache.commons.lang3.tuple.ImmutableTriple;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.ejml.data.DMatrix;
 import org.ejml.data.DMatrixRMaj;
-import org.ejml.equation.Equation;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
 import org.ejml.simple.SimpleMatrix;
 import org.slf4j.LoggerFactory;
 import us.hebi.matlab.mat.ejml.Mat5Ejml;
@@ -16,64 +18,200 @@ import us.hebi.matlab.mat.types.Sources;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class Main {
     private static final org.slf4j.Logger logger = LoggerFactory.getLogger(Main.class);
 
     public static final File EX4_DATA1 = new File("/home/vladimir/projects/coursera/machine-learning/machine-learning-ex4/ex4/ex4data1.mat");
     public static final File EX4_WEIGHTS = new File("/home/vladimir/projects/coursera/machine-learning/machine-learning-ex4/ex4/ex4weights.mat");
+    public static final File EX4_DATA1_MAPPED = new File(EX4_DATA1.getParentFile(), "ex4data1.tmld");
+    public static final int MINI_BATCH_SIZE = 256;
+    public static final int MAX_ITERATIONS = 400;
+    public static final double HOLD_OUT_FRACTION = 0.1;
+
+    //the ex4 network doFit trains
+    private static final int INPUT_LAYER_SIZE    = 400;
+    private static final int HIDDEN_LAYER_SIZE   = 25;
+    private static final int NUM_LABELS          = 10;
+    private static final int THETA1_NUM_ELEMENTS = HIDDEN_LAYER_SIZE * (INPUT_LAYER_SIZE + 1);
+    private static final double LAMBDA           = 1;
 
 
     public void doFit(Triple<DMatrix, DMatrix, Long> params) {
         doFit(params.getLeft(), params.getMiddle(), params.getRight());
     }
 
-    public void doFit(DMatrix featuresMatrix, DMatrix yMatrix, long seed) {
-        int inputLayerSize  = 400;
-        int hiddenLayerSize = 25;
-        int numLabels       = 10;
-        double lambda       = 1;
+    public double doFit(Triple<DMatrix, DMatrix, Long> params, Optimizer optimizer) {
+        return doFit(params.getLeft(), params.getMiddle(), params.getRight(), optimizer);
+    }
 
-        SimpleMatrix theta1 = EjmlHelpers.randInitializeWeights(inputLayerSize, hiddenLayerSize, seed);
-        SimpleMatrix theta2 = EjmlHelpers.randInitializeWeights(hiddenLayerSize, numLabels, 2 * seed);
+    public double doFit(DMatrix featuresMatrix, DMatrix yMatrix, long seed) {
+        return doFit(featuresMatrix, yMatrix, seed, new FmincgOptimizer(50));
+    }
+
+    public double doFit(DMatrix featuresMatrix, DMatrix yMatrix, long seed, Optimizer optimizer) {
+        return doFit(featuresMatrix, yMatrix, seed, optimizer, Precision.DOUBLE);
+    }
 
+    public double doFit(DMatrix featuresMatrix, DMatrix yMatrix, long seed, Optimizer optimizer, Precision precision) {
+        if (precision == Precision.FLOAT) {
+            //straight into a float [ones, X], a double one would double the peak footprint
+            return doFitFloat(EjmlHelpers.toFloatWithOnes(featuresMatrix), createLabels(yMatrix), seed, optimizer);
+        }
+        PreparedDataset prepared = new FeaturePipeline(FeaturePipeline.Normalization.NONE, Runtime.getRuntime().availableProcessors())
+                .load(featuresMatrix, yMatrix);
+        return doFit(prepared, seed, optimizer, precision);
+    }
 
-        Equation nnParamsUnroller = new Equation();
-        nnParamsUnroller.alias(theta1, "Theta1");
-        nnParamsUnroller.alias(theta2, "Theta2");
-        SimpleMatrix nnParams = new SimpleMatrix(theta1.getNumElements() + theta2.getNumElements(), 1);
-        nnParamsUnroller.alias(nnParams, "nn_params");
-        nnParamsUnroller.process("nn_params = [Theta1(:), Theta2(:)]");
-        nnParams = nnParams.transpose();
+    //accuracy on the training rows; hold some out with PreparedDataset.split to validate on them
+    public double doFit(PreparedDataset prepared, long seed, Optimizer optimizer, Precision precision) {
+        if (precision == Precision.FLOAT) {
+            return doFitFloat(EjmlHelpers.toFloat(prepared.getFeaturesMatrixWithOnes()), prepared.getLabels(), seed, optimizer);
+        }
+        SimpleMatrix featuresMatrixWithOnes = SimpleMatrix.wrap(prepared.getFeaturesMatrixWithOnes());
+        Function<SimpleMatrix, OptimizedFunctionResult> cf = new MiniBatchCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                featuresMatrixWithOnes.getDDRM(), prepared.getLabels(), LAMBDA, MINI_BATCH_SIZE);
+        logger.debug("{} precision, features matrix takes {} bytes", Precision.DOUBLE,
+                Precision.DOUBLE.footprintBytes(featuresMatrixWithOnes.getNumElements()));
+
+        SimpleMatrix learnedParams = minimize(cf, seed, optimizer);
+        SimpleMatrix predicted = Predictor.predict(learnedTheta1(learnedParams), learnedTheta2(learnedParams), featuresMatrixWithOnes);
+        return accuracy(predicted, prepared.getLabels());
+    }
+
+    private double doFitFloat(FMatrixRMaj featuresMatrixWithOnes, int[] labels, long seed, Optimizer optimizer) {
+        Function<SimpleMatrix, OptimizedFunctionResult> cf = new FloatCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                featuresMatrixWithOnes, labels, LAMBDA);
+        logger.debug("{} precision, features matrix takes {} bytes", Precision.FLOAT,
+                Precision.FLOAT.footprintBytes(featuresMatrixWithOnes.getNumElements()));
 
+        SimpleMatrix learnedParams = minimize(cf, seed, optimizer);
+        SimpleMatrix predicted = FloatPredictor.predict(EjmlHelpers.toFloat(learnedTheta1(learnedParams).getDDRM()),
+                EjmlHelpers.toFloat(learnedTheta2(learnedParams).getDDRM()), featuresMatrixWithOnes);
+        return accuracy(predicted, labels);
+    }
+
+    private static SimpleMatrix minimize(Function<SimpleMatrix, OptimizedFunctionResult> cf, long seed, Optimizer optimizer) {
+        SimpleMatrix nnParams = initialNnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, seed);
+        OptimizationResult optimizationResult = optimizer.minimize(cf, nnParams);
+        logger.debug("stopped after {} iterations on {}", optimizationResult.getNumIterations(), optimizationResult.getStopReason());
+        return optimizationResult.getxVal();
+    }
+
+    private static SimpleMatrix learnedTheta1(SimpleMatrix nnParams) {
+        SimpleMatrix result = nnParams.rows(0, THETA1_NUM_ELEMENTS);
+        result.reshape(HIDDEN_LAYER_SIZE, INPUT_LAYER_SIZE + 1);
+        return result;
+    }
+
+    private static SimpleMatrix learnedTheta2(SimpleMatrix nnParams) {
+        SimpleMatrix result = nnParams.rows(THETA1_NUM_ELEMENTS, nnParams.numRows());
+        result.reshape(NUM_LABELS, HIDDEN_LAYER_SIZE + 1);
+        return result;
+    }
+
+    private static double accuracy(SimpleMatrix predicted, int[] labels) {
+        int predictedCount = 0;
+        for (int rowIdx = 0; rowIdx < labels.length; ++rowIdx) {
+            if ((int)predicted.get(rowIdx, 0) == labels[rowIdx]) {
+                ++predictedCount;
+            }
+        }
+        double accuracy = ((double)predictedCount) * 100 / labels.length;
+        logger.debug("accuracy: {}", accuracy);
+        return accuracy;
+    }
+
+    public double doFit(DMatrix featuresMatrix, DMatrix yMatrix, long seed, Network network, Optimizer optimizer) {
+        try {
+            return doFit(featuresMatrix, yMatrix, seed, network, optimizer, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        Equation featuresMatrixEnricher    = new Equation();
+    //modelFile, if not null, receives the learned params for InferenceEngine/ModelFile.read in a scoring process
+    public double doFit(DMatrix featuresMatrix, DMatrix yMatrix, long seed, Network network, Optimizer optimizer,
+                        File modelFile) throws IOException {
+        double lambda = 1;
+
+        SimpleMatrix nnParams = network.initialParams(seed);
         SimpleMatrix featuresMatrixWithOnes = new SimpleMatrix(featuresMatrix.getNumRows(), featuresMatrix.getNumCols() + 1);
-        featuresMatrixEnricher.alias(featuresMatrix, "X");
-        featuresMatrixEnricher.alias(featuresMatrixWithOnes, "Xw1");
-        featuresMatrixEnricher.alias(featuresMatrix.getNumRows(), "m");
-        featuresMatrixEnricher.process("Xw1 = [ones(m, 1), X]");
+        CommonOps_DDRM.insert(featuresMatrix, featuresMatrixWithOnes.getDDRM(), 0, 1);
+        for (int rowIdx = 0; rowIdx < featuresMatrix.getNumRows(); ++rowIdx) {
+            featuresMatrixWithOnes.set(rowIdx, 0, 1);
+        }
 
-        CostFunction cf = new CostFunction(inputLayerSize, hiddenLayerSize, numLabels,
-                featuresMatrixWithOnes, createYVec(yMatrix, 10), lambda);
-        cf.compute(nnParams);
+        NetworkCostFunction cf = new NetworkCostFunction(network, featuresMatrixWithOnes.getDDRM(), createLabels(yMatrix), lambda);
+        OptimizationResult optimizationResult = optimizer.minimize(cf, nnParams);
+        if (modelFile != null) {
+            ModelFile.write(modelFile, network, optimizationResult.getxVal());
+            logger.debug("model saved to {}", modelFile);
+        }
+
+        SimpleMatrix predicted = network.predict(optimizationResult.getxVal(), featuresMatrixWithOnes);
+        int predictedCount = predictionsMatchedCount(predicted, SimpleMatrix.wrap(yMatrix));
+        double accuracy = ((double)predictedCount) * 100 / yMatrix.getNumRows();
+        logger.debug("{} accuracy: {}", network.getLayers(), accuracy);
+        return accuracy;
+    }
+
+    //training streams features chunk by chunk out of the mapping, the dataset never lands on the heap as a whole
+    public double doFit(MappedDataset dataset, long seed, Optimizer optimizer) {
+        int inputLayerSize  = dataset.getNumCols();
+        int hiddenLayerSize = 25;
+        int numLabels       = dataset.getNumLabels();
+        double lambda       = 1;
+
+        SimpleMatrix nnParams = initialNnParams(inputLayerSize, hiddenLayerSize, numLabels, seed);
+        int theta1NumElements = hiddenLayerSize * (inputLayerSize + 1);
+        int theta2NumElements = numLabels * (hiddenLayerSize + 1);
 
-        OptimizationResult optimizationResult = OptimizationFunctions.fmincg(cf, nnParams, 50);
-        SimpleMatrix learnedTheta1 = optimizationResult.getxVal().rows(0, theta1.getNumElements());
+        OptimizationResult optimizationResult;
+        try (StreamingCostFunction cf = new StreamingCostFunction(hiddenLayerSize, dataset.chunks(), lambda, StreamingCostFunction.DEFAULT_CHUNK_SIZE)) {
+            optimizationResult = optimizer.minimize(cf, nnParams);
+        }
+        SimpleMatrix learnedTheta1 = optimizationResult.getxVal().rows(0, theta1NumElements);
         learnedTheta1.reshape(hiddenLayerSize, inputLayerSize + 1);
 
-        SimpleMatrix learnedTheta2 = optimizationResult.getxVal().rows(theta1.getNumElements(), theta1.getNumElements() + theta2.getNumElements());
+        SimpleMatrix learnedTheta2 = optimizationResult.getxVal().rows(theta1NumElements, theta1NumElements + theta2NumElements);
         learnedTheta2.reshape(numLabels, hiddenLayerSize + 1);
 
-        SimpleMatrix predicted = Predictor.predict(learnedTheta1, learnedTheta2, featuresMatrixWithOnes);
-        int predictedCount = predictionsMatchedCount(predicted, SimpleMatrix.wrap(yMatrix));
-        logger.debug("accuracy: {}", ((double)predictedCount) * 100 / yMatrix.getNumRows());
+        int[] predicted = new int[dataset.getNumRows()];
+        new InferenceEngine(learnedTheta1, learnedTheta2).predict(dataset, StreamingCostFunction.DEFAULT_CHUNK_SIZE, predicted);
+        int predictedCount = 0;
+        for (int rowIdx = 0; rowIdx < predicted.length; ++rowIdx) {
+            if (predicted[rowIdx] == dataset.getLabel(rowIdx)) {
+                ++predictedCount;
+            }
+        }
+        double accuracy = ((double)predictedCount) * 100 / dataset.getNumRows();
+        logger.debug("accuracy: {}", accuracy);
+        return accuracy;
+    }
+
+    public static SimpleMatrix initialNnParams(int inputLayerSize, int hiddenLayerSize, int numLabels, long seed) {
+        SimpleMatrix theta1 = EjmlHelpers.randInitializeWeights(inputLayerSize, hiddenLayerSize, seed);
+        SimpleMatrix theta2 = EjmlHelpers.randInitializeWeights(hiddenLayerSize, numLabels, 2 * seed);
+
+        //[Theta1(:); Theta2(:)] in row-major order, what the cost functions unroll
+        SimpleMatrix nnParams = new SimpleMatrix(theta1.getNumElements() + theta2.getNumElements(), 1);
+        System.arraycopy(theta1.getDDRM().data, 0, nnParams.getDDRM().data, 0, theta1.getNumElements());
+        System.arraycopy(theta2.getDDRM().data, 0, nnParams.getDDRM().data, theta1.getNumElements(), theta2.getNumElements());
+        return nnParams;
     }
 
     public static Triple<DMatrix, DMatrix, Long> loadParams(long seed) throws IOException {
+        return loadParams(EX4_DATA1, seed);
+    }
+
+    public static Triple<DMatrix, DMatrix, Long> loadParams(File matFile, long seed) throws IOException {
         DMatrix featuresMatrix;
         DMatrix yMatrix;
-        try(Source source  = Sources.openFile(EX4_DATA1); Mat5File file = Mat5.newReader(source).readMat()) {
+        try(Source source  = Sources.openFile(matFile); Mat5File file = Mat5.newReader(source).readMat()) {
             featuresMatrix = loadMatrix(file, "X");
             yMatrix        = loadMatrix(file, "y");
         }
@@ -81,8 +219,16 @@ public class Main {
     }
 
     public static void main(String[] args) throws IOException {
-        Triple<DMatrix, DMatrix, Long> params = loadParams(100);
-        new Main().doFit(params);
+        Precision precision = args.length > 0 ? Precision.valueOf(args[0].toUpperCase()) : Precision.DOUBLE;
+        PreparedDataset dataset = new FeaturePipeline(FeaturePipeline.Normalization.NONE, Runtime.getRuntime().availableProcessors())
+                .load(EX4_DATA1);
+        Pair<PreparedDataset, PreparedDataset> split = dataset.split(HOLD_OUT_FRACTION, 100);
+        //instead of a fixed 50 line searches: train until held-out accuracy stalls, the cost flattens or time runs out
+        ConvergenceOptions convergence = new ConvergenceOptions()
+                .costTolerance(1e-6)
+                .timeBudget(TimeUnit.MINUTES.toMillis(10))
+                .validation(new HoldOutValidator(25, 10, split.getRight()), 5, 4, 0);
+        new Main().doFit(split.getLeft(), 100, new FmincgOptimizer(MAX_ITERATIONS, 1, null, null, convergence), precision);
     }
 
     public static int predictionsMatchedCount(SimpleMatrix predicted, SimpleMatrix yMatrix) {
@@ -99,6 +245,7 @@ public class Main {
         return matchCount;
     }
 
+    //legacy one-hot form, for callers of the yVec constructors; training itself runs on createLabels
     public static SimpleMatrix createYVec(DMatrix yMatrix, int numClasses) {
         DMatrixRMaj result = new DMatrixRMaj(yMatrix.getNumRows(), numClasses);
         for (int rowIdx = 0; rowIdx < yMatrix.getNumRows(); ++rowIdx) {
@@ -110,6 +257,44 @@ public class Main {
         return SimpleMatrix.wrap(result);
     }
 
+    public static SimpleMatrix createYVec(int[] labels, int numClasses) {
+        DMatrixRMaj result = new DMatrixRMaj(labels.length, numClasses);
+        for (int rowIdx = 0; rowIdx < labels.length; ++rowIdx) {
+            result.set(rowIdx, labels[rowIdx], 1);
+        }
+        return SimpleMatrix.wrap(result);
+    }
+
+    //0-based class indices, what the cost functions take instead of the one-hot createYVec matrix
+    public static int[] createLabels(DMatrix yMatrix) {
+        int[] result = new int[yMatrix.getNumRows()];
+        for (int rowIdx = 0; rowIdx < result.length; ++rowIdx) {
+            result[rowIdx] = (int)yMatrix.get(rowIdx, 0) - 1;
+        }
+        return result;
+    }
+
+    //inverse of createYVec, for callers still holding a one-hot matrix
+    public static int[] labelsOf(DMatrix yVec) {
+        int[] result = new int[yVec.getNumRows()];
+        for (int rowIdx = 0; rowIdx < result.length; ++rowIdx) {
+            int label = -1;
+            for (int colIdx = 0; colIdx < yVec.getNumCols(); ++colIdx) {
+                double val = yVec.get(rowIdx, colIdx);
+                if (val == 1 && label == -1) {
+                    label = colIdx;
+                } else if (val != 0) {
+                    throw new IllegalArgumentException("row " + rowIdx + " of yVec is not one-hot");
+                }
+            }
+            if (label == -1) {
+                throw new IllegalArgumentException("row " + rowIdx + " of yVec is not one-hot");
+            }
+            result[rowIdx] = label;
+        }
+        return result;
+    }
+
     public static DMatrixRMaj loadMatrix(Mat5File file, String name) {
         Matrix matrix = file.getMatrix(name);
         return Mat5Ejml.convert(matrix, new DMatrixRMaj(matrix.getNumRows(), matrix.getNumCols()));
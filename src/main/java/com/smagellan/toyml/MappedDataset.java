@@ -0,0 +1,244 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrix;
+import org.ejml.data.DMatrixRMaj;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Read-only, memory-mapped feature/label file. Layout, little endian:
+ *   header  (32 bytes): magic, version, numRows, numCols, numLabels, 12 bytes reserved
+ *   labels  int32[numRows], 0-based class indices, padded to a multiple of 8 bytes
+ *   features float64[numRows * numCols], row-major, no bias column
+ * Features are mapped in segments of whole rows, since a single mapping is limited to 2GB.
+ * Nothing is copied to the heap at open; callers pull row blocks through readRows or chunks().
+ */
+public class MappedDataset implements AutoCloseable {
+    public static final int MAGIC = 0x544D4C44; //"TMLD"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final int numRows;
+    private final int numCols;
+    private final int numLabels;
+    private final IntBuffer labels;
+    private final List<DoubleBuffer> segments;
+    private final int rowsPerSegment;
+
+    private MappedDataset(FileChannel channel, int numRows, int numCols, int numLabels, IntBuffer labels,
+                          List<DoubleBuffer> segments, int rowsPerSegment) {
+        this.channel = channel;
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.numLabels = numLabels;
+        this.labels = labels;
+        this.segments = segments;
+        this.rowsPerSegment = rowsPerSegment;
+    }
+
+    public static MappedDataset open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                //read the whole header
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a dataset file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has version " + version + "; expect " + VERSION);
+            }
+            int numRows = header.getInt();
+            int numCols = header.getInt();
+            int numLabels = header.getInt();
+            if (channel.size() != fileSize(numRows, numCols)) {
+                throw new IOException(file + " has " + channel.size() + " bytes; expect " + fileSize(numRows, numCols));
+            }
+
+            IntBuffer labels = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) numRows * Integer.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            //the indexed kernels would silently drop the y = 1 term of a row with a bad label
+            for (int rowIdx = 0; rowIdx < numRows; ++rowIdx) {
+                int label = labels.get(rowIdx);
+                if (label < 0 || label >= numLabels) {
+                    throw new IOException(file + ": label " + label + " of row " + rowIdx + " is out of [0, " + numLabels + ")");
+                }
+            }
+
+            long rowBytes = (long) numCols * Double.BYTES;
+            int rowsPerSegment = (int) Math.max(1, MAX_SEGMENT_BYTES / rowBytes);
+            List<DoubleBuffer> segments = new ArrayList<>();
+            for (int rowStart = 0; rowStart < numRows; rowStart += rowsPerSegment) {
+                int segmentRows = Math.min(rowsPerSegment, numRows - rowStart);
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY,
+                        featuresOffset(numRows) + rowStart * rowBytes, segmentRows * rowBytes);
+                segments.add(segment.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer());
+            }
+            return new MappedDataset(channel, numRows, numCols, numLabels, labels, segments, rowsPerSegment);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    //yMatrix holds 1-based Matlab labels, same as Main.createLabels expects
+    public static void write(File file, DMatrix featuresMatrix, DMatrix yMatrix, int numLabels) throws IOException {
+        int numRows = featuresMatrix.getNumRows();
+        int numCols = featuresMatrix.getNumCols();
+        //checked up front, so a bad label leaves no half written file behind
+        for (int rowIdx = 0; rowIdx < numRows; ++rowIdx) {
+            int label = (int) yMatrix.get(rowIdx, 0) - 1;
+            if (label < 0 || label >= numLabels) {
+                throw new IllegalArgumentException("label " + label + " of row " + rowIdx + " is out of [0, " + numLabels + ")");
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(numRows).putInt(numCols).putInt(numLabels);
+            header.position(HEADER_SIZE).flip();
+            writeFully(channel, header);
+
+            ByteBuffer labels = ByteBuffer.allocate((int) (featuresOffset(numRows) - HEADER_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+            for (int rowIdx = 0; rowIdx < numRows; ++rowIdx) {
+                labels.putInt((int) yMatrix.get(rowIdx, 0) - 1);
+            }
+            labels.position(labels.capacity()).flip();
+            writeFully(channel, labels);
+
+            ByteBuffer row = ByteBuffer.allocate(numCols * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int rowIdx = 0; rowIdx < numRows; ++rowIdx) {
+                row.clear();
+                for (int colIdx = 0; colIdx < numCols; ++colIdx) {
+                    row.putDouble(featuresMatrix.get(rowIdx, colIdx));
+                }
+                row.flip();
+                writeFully(channel, row);
+            }
+        }
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public int getNumLabels() {
+        return numLabels;
+    }
+
+    public int getLabel(int row) {
+        return labels.get(row);
+    }
+
+    //copies rows [fromRow, toRow) into dst as [ones, X]; dst is reshaped, so a buffer sized for the largest block never reallocates
+    public void readRowsWithOnes(int fromRow, int toRow, DMatrixRMaj dst) {
+        dst.reshape(toRow - fromRow, numCols + 1);
+        DoubleBuffer view = null;
+        for (int row = fromRow; row < toRow; ++row) {
+            int dstOffset = (row - fromRow) * (numCols + 1);
+            dst.data[dstOffset] = 1;
+            view = readRow(view, row, dst.data, dstOffset + 1);
+        }
+    }
+
+    //copies rows [fromRow, toRow) without bias column into dst, row after row
+    public void readRows(int fromRow, int toRow, double[] dst) {
+        readRows(fromRow, toRow, dst, 0, numCols);
+    }
+
+    //same, row r lands at dstOffset + (r - fromRow) * dstStride, e.g. past the bias column of a preallocated [ones, X]
+    public void readRows(int fromRow, int toRow, double[] dst, int dstOffset, int dstStride) {
+        DoubleBuffer view = null;
+        for (int row = fromRow; row < toRow; ++row) {
+            view = readRow(view, row, dst, dstOffset + (row - fromRow) * dstStride);
+        }
+    }
+
+    public void readLabels(int fromRow, int toRow, int[] dst) {
+        for (int row = fromRow; row < toRow; ++row) {
+            dst[row - fromRow] = labels.get(row);
+        }
+    }
+
+    //sequential pass over the mapping, for StreamingCostFunction
+    public ChunkSource chunks() {
+        return new ChunkSource() {
+            private int nextRow;
+
+            @Override
+            public int getNumFeatures() {
+                return numCols;
+            }
+
+            @Override
+            public int getNumLabels() {
+                return numLabels;
+            }
+
+            @Override
+            public void reset() {
+                nextRow = 0;
+            }
+
+            @Override
+            public int nextChunk(DMatrixRMaj featuresWithOnes, int[] labels) {
+                int toRow = Math.min(nextRow + labels.length, numRows);
+                readRowsWithOnes(nextRow, toRow, featuresWithOnes);
+                readLabels(nextRow, toRow, labels);
+                int rows = toRow - nextRow;
+                nextRow = toRow;
+                return rows;
+            }
+        };
+    }
+
+    //absolute bulk gets need Java 13, so reads go through a per-block duplicate of the segment
+    private DoubleBuffer readRow(DoubleBuffer view, int row, double[] dst, int dstOffset) {
+        int rowInSegment = row % rowsPerSegment;
+        if (view == null || rowInSegment == 0) {
+            view = segments.get(row / rowsPerSegment).duplicate();
+        }
+        view.position(rowInSegment * numCols);
+        view.get(dst, dstOffset, numCols);
+        return view;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static long featuresOffset(int numRows) {
+        long labelsBytes = (long) numRows * Integer.BYTES;
+        return HEADER_SIZE + (labelsBytes + 7) / 8 * 8;
+    }
+
+    private static long fileSize(int numRows, int numCols) {
+        return featuresOffset(numRows) + (long) numRows * numCols * Double.BYTES;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+public class MiniBatchCostFunction implements BatchCostFunction, DifferentiableFunction, PhaseTimings {
+    private final int inputLayerSize;
+    private final int hiddenLayerSize;
+    private final int numLabels;
+    private final DMatrixRMaj featuresMatrixWithOnes;
+    private final int[] labels;
+    private final double lambda;
+
+    private final int theta1NumElements;
+    private final int theta2NumElements;
+
+    private final DMatrixRMaj theta1;
+    private final DMatrixRMaj theta2;
+    private final DMatrixRMaj batchFeatures;
+    private final int[] batchLabels;
+    private final BackpropWorkspace batchWorkspace;
+    private final SimpleMatrix batchGrad;
+    private WorkspaceCostFunction fullBatch;
+    private boolean phaseTimingEnabled;
+
+    public MiniBatchCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, DMatrixRMaj featuresMatrixWithOnes, DMatrixRMaj yVec,
+                                 double lambda, int maxBatchSize) {
+        this(inputLayerSize, hiddenLayerSize, numLabels, featuresMatrixWithOnes, Main.labelsOf(yVec), lambda, maxBatchSize);
+    }
+
+    //labels are 0-based class indices
+    public MiniBatchCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, DMatrixRMaj featuresMatrixWithOnes, int[] labels,
+                                 double lambda, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize: " + maxBatchSize + "; expect positive");
+        }
+        BackpropWorkspace.checkLabels(labels, featuresMatrixWithOnes.numRows, numLabels);
+        this.inputLayerSize = inputLayerSize;
+        this.hiddenLayerSize = hiddenLayerSize;
+        this.numLabels = numLabels;
+        this.featuresMatrixWithOnes = featuresMatrixWithOnes;
+        this.labels = labels;
+        this.lambda = lambda;
+
+        this.theta1NumElements = hiddenLayerSize * (inputLayerSize + 1);
+        this.theta2NumElements = numLabels * (hiddenLayerSize + 1);
+
+        this.theta1         = new DMatrixRMaj(hiddenLayerSize, inputLayerSize + 1);
+        this.theta2         = new DMatrixRMaj(numLabels, hiddenLayerSize + 1);
+        this.batchFeatures  = new DMatrixRMaj(maxBatchSize, featuresMatrixWithOnes.numCols);
+        this.batchLabels    = new int[maxBatchSize];
+        this.batchWorkspace = new BackpropWorkspace(inputLayerSize, hiddenLayerSize, numLabels, maxBatchSize);
+        this.batchGrad      = new SimpleMatrix(theta1NumElements + theta2NumElements, 1);
+    }
+
+    @Override
+    public int getNumExamples() {
+        return featuresMatrixWithOnes.numRows;
+    }
+
+    @Override
+    public int getNumParams() {
+        return theta1NumElements + theta2NumElements;
+    }
+
+    //data term averaged over the batch, L2 penalty over the whole training set, so that batch gradients estimate the full-batch one;
+    //the returned gradient is overwritten by the next batch
+    @Override
+    public OptimizedFunctionResult compute(SimpleMatrix nnParams, int[] rowIndices, int from, int to) {
+        int batchSize = to - from;
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("empty batch [" + from + ", " + to + ")");
+        }
+        if (batchSize > batchLabels.length) {
+            throw new IllegalArgumentException("batch [" + from + ", " + to + ") has " + batchSize + " rows; maxBatchSize is " + batchLabels.length);
+        }
+        gatherRows(featuresMatrixWithOnes, rowIndices, from, to, batchFeatures);
+        for (int i = from; i < to; ++i) {
+            batchLabels[i - from] = labels[rowIndices[i]];
+        }
+
+        DMatrixRMaj params = nnParams.getDDRM();
+        System.arraycopy(params.data, 0, theta1.data, 0, theta1NumElements);
+        System.arraycopy(params.data, theta1NumElements, theta2.data, 0, theta2NumElements);
+
+        int numExamples = getNumExamples();
+        double jValue = batchWorkspace.accumulate(batchFeatures, batchLabels, theta1, theta2) / batchSize;
+        double jValueReg = (BackpropWorkspace.regularizedSquaresSum(theta1) + BackpropWorkspace.regularizedSquaresSum(theta2))
+                * lambda / (2 * numExamples);
+        jValue += jValueReg;
+
+        double[] unrolledGrad = batchGrad.getDDRM().data;
+        BackpropWorkspace.regularizedGrad(batchWorkspace.getDelta1(), theta1, lambda, batchSize, numExamples, unrolledGrad, 0);
+        BackpropWorkspace.regularizedGrad(batchWorkspace.getDelta2(), theta2, lambda, batchSize, numExamples, unrolledGrad, theta1NumElements);
+        return new OptimizedFunctionResult(jValue, batchGrad);
+    }
+
+    @Override
+    public OptimizedFunctionResult apply(SimpleMatrix nnParams) {
+        return fullBatch().compute(nnParams);
+    }
+
+    @Override
+    public double compute(DMatrixRMaj nnParams, DMatrixRMaj unrolledGrad) {
+        return fullBatch().compute(nnParams, unrolledGrad);
+    }
+
+    //phase times cover full-batch evaluations, the ones full-batch optimizers make
+    @Override
+    public void setPhaseTimingEnabled(boolean enabled) {
+        phaseTimingEnabled = enabled;
+        if (fullBatch != null) {
+            fullBatch.setPhaseTimingEnabled(enabled);
+        }
+    }
+
+    @Override
+    public long getForwardNanos() {
+        return fullBatch != null ? fullBatch.getForwardNanos() : 0;
+    }
+
+    @Override
+    public long getBackwardNanos() {
+        return fullBatch != null ? fullBatch.getBackwardNanos() : 0;
+    }
+
+    //full-size workspaces are only needed by full-batch optimizers, so don't pay for them up front
+    private WorkspaceCostFunction fullBatch() {
+        if (fullBatch == null) {
+            fullBatch = new WorkspaceCostFunction(inputLayerSize, hiddenLayerSize, numLabels, featuresMatrixWithOnes, labels, lambda);
+            fullBatch.setPhaseTimingEnabled(phaseTimingEnabled);
+        }
+        return fullBatch;
+    }
+
+    private static void gatherRows(DMatrixRMaj src, int[] rowIndices, int from, int to, DMatrixRMaj dst) {
+        int cols = src.numCols;
+        dst.reshape(to - from, cols);
+        for (int i = from; i < to; ++i) {
+            System.arraycopy(src.data, rowIndices[i] * cols, dst.data, (i - from) * cols, cols);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.smagellan.toyml;
+
+import org.ejml.simple.SimpleMatrix;
+
+public class MiniBatchOptimizationResult extends OptimizationResult {
+    private final long[] epochMillis;
+
+    public MiniBatchOptimizationResult(SimpleMatrix xVal, SimpleMatrix fXVal, int numIterations, StopReason stopReason, long[] epochMillis) {
+        super(xVal, fXVal, numIterations, stopReason);
+        this.epochMillis = epochMillis;
+    }
+
+    public long[] getEpochMillis() {
+        return epochMillis;
+    }
+}
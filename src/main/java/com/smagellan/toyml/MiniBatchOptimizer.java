@@ -0,0 +1,102 @@
+package com.smagellan.toyml;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/*
+ * Epoch loop shared by the first-order mini-batch optimizers. A plain Function is treated as a single batch
+ * covering the whole training set, so every epoch is then one full-batch step.
+ * The reported epoch cost is the mean of the batch costs seen during that epoch.
+ */
+public abstract class MiniBatchOptimizer implements Optimizer {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(MiniBatchOptimizer.class);
+
+    private final MiniBatchOptions options;
+
+    protected MiniBatchOptimizer(MiniBatchOptions options) {
+        this.options = options;
+    }
+
+    protected interface StepRule {
+        void update(double[] params, double[] grad, int step);
+    }
+
+    protected abstract StepRule newStepRule(int numParams);
+
+    @Override
+    public MiniBatchOptimizationResult minimize(Function<SimpleMatrix, OptimizedFunctionResult> fn, SimpleMatrix fnParams) {
+        StopWatch sw = StopWatch.createStarted();
+        int numParams = fnParams.getNumElements();
+        DMatrixRMaj params = DMatrixRMaj.wrap(numParams, 1, Arrays.copyOf(fnParams.getDDRM().data, numParams));
+        SimpleMatrix paramsView = SimpleMatrix.wrap(params);
+        StepRule stepRule = newStepRule(numParams);
+
+        BatchCostFunction batchFn = fn instanceof BatchCostFunction ? (BatchCostFunction) fn : null;
+        int numExamples = batchFn != null ? batchFn.getNumExamples() : 1;
+        int batchSize = batchFn != null ? options.getBatchSize() : 1;
+        int[] rowIndices = new int[numExamples];
+        Arrays.setAll(rowIndices, idx -> idx);
+        Random random = new Random(options.getSeed());
+
+        double[] epochCosts = new double[options.getEpochs()];
+        long[] epochMillis = new long[options.getEpochs()];
+        double bestCost = Double.POSITIVE_INFINITY;
+        double[] bestParams = params.data.clone();
+        int epochsWithoutImprovement = 0;
+        int step = 0;
+        int epoch = 0;
+        OptimizationResult.StopReason stopReason = OptimizationResult.StopReason.MAX_ITERATIONS;
+        while (epoch < options.getEpochs()) {
+            StopWatch epochSw = StopWatch.createStarted();
+            if (batchFn != null && options.isShuffle()) {
+                shuffle(rowIndices, random);
+            }
+            double costSum = 0;
+            for (int from = 0; from < numExamples; from += batchSize) {
+                int to = Math.min(from + batchSize, numExamples);
+                OptimizedFunctionResult fnResult = batchFn != null ?
+                        batchFn.compute(paramsView, rowIndices, from, to) :
+                        fn.apply(paramsView);
+                costSum += fnResult.getFnValue() * (to - from);
+                stepRule.update(params.data, fnResult.getGradientValue().getDDRM().data, ++step);
+            }
+            double epochCost = costSum / numExamples;
+            epochCosts[epoch] = epochCost;
+            epochMillis[epoch] = epochSw.getTime(TimeUnit.MILLISECONDS);
+            ++epoch;
+            logger.debug("Epoch {} | Cost: {} | {} millis", epoch, epochCost, epochMillis[epoch - 1]);
+
+            if (epochCost < bestCost - options.getMinImprovement()) {
+                bestCost = epochCost;
+                System.arraycopy(params.data, 0, bestParams, 0, numParams);
+                epochsWithoutImprovement = 0;
+            } else if (++epochsWithoutImprovement >= options.getPatience()) {
+                logger.debug("no improvement for {} epochs, stopping early", epochsWithoutImprovement);
+                stopReason = OptimizationResult.StopReason.NO_IMPROVEMENT;
+                break;
+            }
+        }
+        logger.debug("optimization took {} millis and {} epochs", sw.getTime(TimeUnit.MILLISECONDS), epoch);
+        //without early stopping the last params win, same as fmincg
+        double[] resultParams = options.getPatience() == Integer.MAX_VALUE ? params.data : bestParams;
+        return new MiniBatchOptimizationResult(SimpleMatrix.wrap(DMatrixRMaj.wrap(numParams, 1, resultParams)),
+                new SimpleMatrix(1, epoch, true, Arrays.copyOf(epochCosts, epoch)), epoch, stopReason,
+                Arrays.copyOf(epochMillis, epoch));
+    }
+
+    private static void shuffle(int[] rowIndices, Random random) {
+        for (int i = rowIndices.length - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            int tmp = rowIndices[i];
+            rowIndices[i] = rowIndices[j];
+            rowIndices[j] = tmp;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.smagellan.toyml;
+
+public class MiniBatchOptions {
+    private final int epochs;
+    private final int batchSize;
+    private boolean shuffle = true;
+    private long seed = 100;
+    private int patience = Integer.MAX_VALUE;
+    private double minImprovement = 0;
+
+    public MiniBatchOptions(int epochs, int batchSize) {
+        if (epochs <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("epochs: " + epochs + ", batchSize: " + batchSize + "; expect positive");
+        }
+        this.epochs = epochs;
+        this.batchSize = batchSize;
+    }
+
+    public MiniBatchOptions shuffle(boolean shuffle) {
+        this.shuffle = shuffle;
+        return this;
+    }
+
+    public MiniBatchOptions seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    //stop after patience epochs in a row that didn't lower the epoch cost by more than minImprovement
+    public MiniBatchOptions earlyStopping(int patience, double minImprovement) {
+        this.patience = patience;
+        this.minImprovement = minImprovement;
+        return this;
+    }
+
+    public int getEpochs() {
+        return epochs;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getPatience() {
+        return patience;
+    }
+
+    public double getMinImprovement() {
+        return minImprovement;
+    }
+}
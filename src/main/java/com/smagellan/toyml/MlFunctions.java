@@ -1,17 +1,20 @@
 package com.smagellan.toyml;
 
-import org.ejml.data.DMatrixIterator;
+import org.ejml.data.DMatrixRMaj;
 import org.ejml.simple.SimpleMatrix;
 
 public class MlFunctions {
+    private static final double LOG2E = 1.4426950408889634;
+    private static final double LN2_HI = 0.6931471803691238;
+    private static final double LN2_LO = 1.9082149292705877e-10;
+    private static final double EXP_MAX_ARG = 709;
+    //ln(Double.MAX_VALUE), where Math.exp itself overflows
+    private static final double EXP_OVERFLOW_ARG = 709.782712893384;
+    private static final double EXP_MIN_ARG = -708;
 
     public static SimpleMatrix sigmoid(SimpleMatrix zMatrix) {
         SimpleMatrix result = zMatrix.copy();
-        DMatrixIterator iter = EjmlHelpers.iterator(result);
-        while (iter.hasNext()) {
-            Double val = iter.next();
-            iter.set(sigmoid(val));
-        }
+        sigmoid(result.getDDRM().data, 0, result.getNumElements());
         return result;
     }
 
@@ -20,12 +23,8 @@ public class MlFunctions {
     }
 
     public static SimpleMatrix sigmoidGradient(SimpleMatrix zMatrix) {
-        SimpleMatrix result  = zMatrix.copy();
-        DMatrixIterator iter = EjmlHelpers.iterator(result);
-        while (iter.hasNext()) {
-            Double val = iter.next();
-            iter.set(sigmoidGradient(val));
-        }
+        SimpleMatrix result = zMatrix.copy();
+        sigmoidGradient(result.getDDRM().data, 0, result.getNumElements());
         return result;
     }
 
@@ -33,4 +32,88 @@ public class MlFunctions {
         double g = sigmoid(z);
         return g * (1 - g);
     }
+
+    //derivative taken from an already computed activation g = sigmoid(z), no second exp
+    public static double sigmoidGradientFromActivation(double g) {
+        return g * (1 - g);
+    }
+
+    public static void sigmoid(double[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; ++i) {
+            data[i] = sigmoid(data[i]);
+        }
+    }
+
+    public static void sigmoidGradient(double[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; ++i) {
+            data[i] = sigmoidGradient(data[i]);
+        }
+    }
+
+    public static void sigmoidGradientFromActivation(double[] activations, int offset, int length, double[] result, int resultOffset) {
+        for (int i = 0; i < length; ++i) {
+            result[resultOffset + i] = sigmoidGradientFromActivation(activations[offset + i]);
+        }
+    }
+
+    //result = [ones(rows, 1), sigmoid(z)], written row by row in a single pass
+    public static void sigmoidWithOnes(DMatrixRMaj z, DMatrixRMaj result) {
+        int cols = z.numCols;
+        double[] src = z.data;
+        double[] dst = result.data;
+        for (int row = 0; row < z.numRows; ++row) {
+            int srcOffset = row * cols;
+            int dstOffset = row * (cols + 1);
+            dst[dstOffset] = 1;
+            for (int col = 0; col < cols; ++col) {
+                dst[dstOffset + col + 1] = sigmoid(src[srcOffset + col]);
+            }
+        }
+    }
+
+    /*
+     * exp(x) = 2^k * exp(r), |r| <= ln2/2, with exp(r) from a degree 7 Taylor polynomial.
+     * Relative error stays below 1e-8 (Math.exp is within 1 ulp) and the loop has no calls, so it unrolls well.
+     */
+    public static double fastExp(double x) {
+        if (x > EXP_MAX_ARG) {
+            //k reaches 1024 here and 2^k alone would overflow: scale by 2^(k - 1), then double
+            return x > EXP_OVERFLOW_ARG ? Double.POSITIVE_INFINITY : 2 * scaledExp(x, 1022);
+        }
+        if (x < EXP_MIN_ARG) {
+            return 0;
+        }
+        return scaledExp(x, 1023);
+    }
+
+    private static double scaledExp(double x, long exponentBias) {
+        double k = Math.rint(x * LOG2E);
+        double r = (x - k * LN2_HI) - k * LN2_LO;
+        double p = 1 + r * (1 + r * (1.0 / 2 + r * (1.0 / 6 + r * (1.0 / 24 + r * (1.0 / 120 + r * (1.0 / 720 + r * (1.0 / 5040)))))));
+        return p * Double.longBitsToDouble(((long) k + exponentBias) << 52);
+    }
+
+    public static double fastSigmoid(double z) {
+        return 1.0 / (1.0 + fastExp(-z));
+    }
+
+    public static void fastSigmoid(double[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; ++i) {
+            data[i] = fastSigmoid(data[i]);
+        }
+    }
+
+    public static void fastSigmoidWithOnes(DMatrixRMaj z, DMatrixRMaj result) {
+        int cols = z.numCols;
+        double[] src = z.data;
+        double[] dst = result.data;
+        for (int row = 0; row < z.numRows; ++row) {
+            int srcOffset = row * cols;
+            int dstOffset = row * (cols + 1);
+            dst[dstOffset] = 1;
+            for (int col = 0; col < cols; ++col) {
+                dst[dstOffset + col + 1] = fastSigmoid(src[srcOffset + col]);
+            }
+        }
+    }
 }
@@ -0,0 +1,35 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+//writes every n-th fmincg iteration to a ModelFile; resume with FmincgOptimizer.resume(fn, ModelFile.read(file))
+public class ModelCheckpointer implements Checkpointer {
+    private final File file;
+    private final Network network;
+    private final int everyIterations;
+
+    public ModelCheckpointer(File file, Network network, int everyIterations) {
+        if (everyIterations <= 0) {
+            throw new IllegalArgumentException("everyIterations: " + everyIterations + "; expect positive");
+        }
+        this.file = file;
+        this.network = network;
+        this.everyIterations = everyIterations;
+    }
+
+    @Override
+    public void checkpoint(DMatrixRMaj params, FmincgState state) {
+        if (state.getIteration() % everyIterations != 0) {
+            return;
+        }
+        try {
+            ModelFile.write(file, network, params, state);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Binary model file. Layout, little endian:
+ *   header (32 bytes): magic, version, inputSize, numLayers, iteration, flags, 8 bytes reserved
+ *   layers  numLayers x (int32 size, int32 activation ordinal)
+ *   params  float64[numParams], unrolled as in Network
+ *   if flags has HAS_FMINCG_STATE: float64 z1, float64 d1, float64[numParams] search direction
+ * Files are written to a temporary sibling and moved into place, so a crash mid-checkpoint keeps the previous one.
+ */
+public class ModelFile {
+    public static final int MAGIC = 0x4D4C4D54; //"TMLM"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int HAS_FMINCG_STATE = 1;
+
+    private ModelFile() {
+    }
+
+    public static void write(File file, Network network, SimpleMatrix params) throws IOException {
+        write(file, network, params.getDDRM(), null);
+    }
+
+    public static void write(File file, Network network, DMatrixRMaj params, FmincgState state) throws IOException {
+        int numParams = network.getNumParams();
+        if (params.getNumElements() != numParams) {
+            throw new IllegalArgumentException("network has " + numParams + " params; got " + params.getNumElements());
+        }
+        int numLayers = network.getNumLayers();
+        long size = paramsOffset(numLayers) + (long) numParams * Double.BYTES * (state != null ? 2 : 1)
+                + (state != null ? 2 * Double.BYTES : 0);
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(network.getInputSize()).putInt(numLayers)
+                .putInt(state != null ? state.getIteration() : 0).putInt(state != null ? HAS_FMINCG_STATE : 0);
+        buffer.position(HEADER_SIZE);
+        for (DenseLayer layer : network.getLayers()) {
+            buffer.putInt(layer.getSize()).putInt(layer.getActivation().ordinal());
+        }
+        buffer.asDoubleBuffer().put(params.data, 0, numParams);
+        if (state != null) {
+            buffer.position(buffer.position() + numParams * Double.BYTES);
+            buffer.putDouble(state.getZ1()).putDouble(state.getD1());
+            buffer.asDoubleBuffer().put(state.getDirection(), 0, numParams);
+        }
+        buffer.clear();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static SavedModel read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException(file + " is not a model file");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a model file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has version " + version + "; expect " + VERSION);
+            }
+            int inputSize = buffer.getInt();
+            int numLayers = buffer.getInt();
+            int iteration = buffer.getInt();
+            int flags = buffer.getInt();
+            if (numLayers <= 0 || channel.size() < paramsOffset(numLayers)) {
+                throw new IOException(file + " has " + numLayers + " layers in " + channel.size() + " bytes");
+            }
+
+            buffer.position(HEADER_SIZE);
+            Activation[] activations = Activation.values();
+            DenseLayer[] layers = new DenseLayer[numLayers];
+            for (int layerIdx = 0; layerIdx < numLayers; ++layerIdx) {
+                int layerSize = buffer.getInt();
+                int activation = buffer.getInt();
+                if (activation < 0 || activation >= activations.length) {
+                    throw new IOException(file + ": layer " + layerIdx + " has unknown activation " + activation);
+                }
+                layers[layerIdx] = new DenseLayer(layerSize, activations[activation]);
+            }
+            Network network = new Network(inputSize, layers);
+
+            int numParams = network.getNumParams();
+            boolean hasState = (flags & HAS_FMINCG_STATE) != 0;
+            long expectedSize = paramsOffset(numLayers) + (long) numParams * Double.BYTES * (hasState ? 2 : 1)
+                    + (hasState ? 2 * Double.BYTES : 0);
+            if (channel.size() != expectedSize) {
+                throw new IOException(file + " has " + channel.size() + " bytes; expect " + expectedSize);
+            }
+            DMatrixRMaj params = new DMatrixRMaj(numParams, 1);
+            buffer.asDoubleBuffer().get(params.data, 0, numParams);
+
+            FmincgState state = null;
+            if (hasState) {
+                buffer.position(buffer.position() + numParams * Double.BYTES);
+                double z1 = buffer.getDouble();
+                double d1 = buffer.getDouble();
+                double[] direction = new double[numParams];
+                buffer.asDoubleBuffer().get(direction);
+                state = new FmincgState(iteration, z1, d1, direction);
+            }
+            return new SavedModel(network, SimpleMatrix.wrap(params), state);
+        }
+    }
+
+    private static long paramsOffset(int numLayers) {
+        return HEADER_SIZE + (long) numLayers * 2 * Integer.BYTES;
+    }
+}
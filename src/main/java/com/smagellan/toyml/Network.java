@@ -0,0 +1,118 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Stack of dense layers over inputSize features. Parameters are unrolled layer after layer, each layer
+ * as a row-major [size x (previous size + 1)] matrix with the bias weights in column 0, the same layout
+ * CostFunction uses for Theta1/Theta2. A network of 25 and 10 sigmoid units is the ex4 model.
+ */
+public class Network {
+    private final int inputSize;
+    private final List<DenseLayer> layers;
+    private final int[] paramsOffsets;
+
+    public Network(int inputSize, DenseLayer... layers) {
+        if (layers.length == 0) {
+            throw new IllegalArgumentException("network needs at least one layer");
+        }
+        for (int layerIdx = 0; layerIdx < layers.length - 1; ++layerIdx) {
+            if (!layers[layerIdx].getActivation().isHiddenActivation()) {
+                throw new IllegalArgumentException("layer " + layerIdx + ": " + layers[layerIdx] + " can't be a hidden layer");
+            }
+        }
+        if (!layers[layers.length - 1].getActivation().isOutputActivation()) {
+            throw new IllegalArgumentException("output layer: " + layers[layers.length - 1] + " can't be an output layer");
+        }
+        this.inputSize = inputSize;
+        this.layers = Collections.unmodifiableList(Arrays.asList(layers.clone()));
+        this.paramsOffsets = new int[layers.length + 1];
+        for (int layerIdx = 0; layerIdx < layers.length; ++layerIdx) {
+            paramsOffsets[layerIdx + 1] = paramsOffsets[layerIdx] + layers[layerIdx].getSize() * (getLayerInputSize(layerIdx) + 1);
+        }
+    }
+
+    public static Network ex4(int inputLayerSize, int hiddenLayerSize, int numLabels) {
+        return new Network(inputLayerSize, new DenseLayer(hiddenLayerSize, Activation.SIGMOID), new DenseLayer(numLabels, Activation.SIGMOID));
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public List<DenseLayer> getLayers() {
+        return layers;
+    }
+
+    public int getNumLayers() {
+        return layers.size();
+    }
+
+    public int getNumLabels() {
+        return layers.get(layers.size() - 1).getSize();
+    }
+
+    //number of units feeding the layer, without the bias unit
+    public int getLayerInputSize(int layerIdx) {
+        return layerIdx == 0 ? inputSize : layers.get(layerIdx - 1).getSize();
+    }
+
+    public int getParamsOffset(int layerIdx) {
+        return paramsOffsets[layerIdx];
+    }
+
+    public int getNumParams() {
+        return paramsOffsets[layers.size()];
+    }
+
+    //copy of one layer's weights out of the unrolled vector
+    public SimpleMatrix theta(SimpleMatrix nnParams, int layerIdx) {
+        int rows = layers.get(layerIdx).getSize();
+        int cols = getLayerInputSize(layerIdx) + 1;
+        DMatrixRMaj result = new DMatrixRMaj(rows, cols);
+        System.arraycopy(nnParams.getDDRM().data, paramsOffsets[layerIdx], result.data, 0, rows * cols);
+        return SimpleMatrix.wrap(result);
+    }
+
+    //layer l gets seed * (l + 1), which reproduces Main.initialNnParams for the ex4 network
+    public SimpleMatrix initialParams(long seed) {
+        DMatrixRMaj result = new DMatrixRMaj(getNumParams(), 1);
+        for (int layerIdx = 0; layerIdx < layers.size(); ++layerIdx) {
+            DMatrixRMaj theta = EjmlHelpers.randInitializeWeights(getLayerInputSize(layerIdx), layers.get(layerIdx).getSize(),
+                    seed * (layerIdx + 1)).getDDRM();
+            System.arraycopy(theta.data, 0, result.data, paramsOffsets[layerIdx], theta.getNumElements());
+        }
+        return SimpleMatrix.wrap(result);
+    }
+
+    //predicted 0-based class per row, same contract as Predictor.predict
+    public SimpleMatrix predict(SimpleMatrix nnParams, SimpleMatrix featuresMatrixWithOnes) {
+        int m = featuresMatrixWithOnes.numRows();
+        double[] params = nnParams.getDDRM().data;
+        double[] input = featuresMatrixWithOnes.getDDRM().data;
+        int inputCols = inputSize + 1;
+        for (int layerIdx = 0; layerIdx < layers.size(); ++layerIdx) {
+            DenseLayer layer = layers.get(layerIdx);
+            boolean hidden = layerIdx < layers.size() - 1;
+            int outCols = hidden ? layer.getSize() + 1 : layer.getSize();
+            int outCol = hidden ? 1 : 0;
+            double[] output = new double[m * outCols];
+            LayerKernels.multTransB(input, m, inputCols, params, paramsOffsets[layerIdx], layer.getSize(), output, outCols, outCol);
+            if (hidden) {
+                layer.getActivation().apply(output, m, layer.getSize(), outCols, outCol);
+                for (int row = 0; row < m; ++row) {
+                    output[row * outCols] = 1;
+                }
+            }
+            input = output;
+            inputCols = outCols;
+        }
+        //output activations are monotonic per row, so argmax of z is the predicted class
+        return EjmlHelpers.maxPerRow(SimpleMatrix.wrap(DMatrixRMaj.wrap(m, inputCols, input)));
+    }
+}
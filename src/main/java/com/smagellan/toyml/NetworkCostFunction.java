@@ -0,0 +1,182 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.function.Function;
+
+/*
+ * Regularized cross-entropy cost and gradient of an arbitrary Network. Layer weights are read in place
+ * from the unrolled parameter vector and layer gradients are written in place into the unrolled gradient;
+ * activations and errors live in buffers allocated once. For Network.ex4 it takes the same indexed
+ * cross-entropy as WorkspaceCostFunction and matches it bit for bit, saturated outputs included.
+ * Not thread-safe: one instance per optimization thread.
+ */
+public class NetworkCostFunction implements Function<SimpleMatrix, OptimizedFunctionResult>, DifferentiableFunction, PhaseTimings {
+    private final Network network;
+    private final DMatrixRMaj featuresMatrixWithOnes;
+    //0-based class index per row
+    private final int[] labels;
+    private final double lambda;
+
+    //activations[l] is the output of layer l, hidden ones with a leading bias column
+    private final double[][] activations;
+    private final int[] activationCols;
+    //errors[l] is dJ/dz of hidden layer l; the output error overwrites the output activations
+    private final double[][] errors;
+    private boolean phaseTimingEnabled;
+    private long forwardNanos;
+    private long backwardNanos;
+
+    public NetworkCostFunction(Network network, DMatrixRMaj featuresMatrixWithOnes, DMatrixRMaj yVec, double lambda) {
+        this(network, featuresMatrixWithOnes, Main.labelsOf(yVec), lambda);
+        if (yVec.numCols != network.getNumLabels()) {
+            throw new IllegalArgumentException("labels " + yVec.numCols + " columns; expect " + network.getNumLabels());
+        }
+    }
+
+    public NetworkCostFunction(Network network, DMatrixRMaj featuresMatrixWithOnes, int[] labels, double lambda) {
+        if (featuresMatrixWithOnes.numCols != network.getInputSize() + 1) {
+            throw new IllegalArgumentException("features " + featuresMatrixWithOnes.numCols + " columns; expect "
+                    + (network.getInputSize() + 1));
+        }
+        BackpropWorkspace.checkLabels(labels, featuresMatrixWithOnes.numRows, network.getNumLabels());
+        this.network = network;
+        this.featuresMatrixWithOnes = featuresMatrixWithOnes;
+        this.labels = labels;
+        this.lambda = lambda;
+
+        int numLayers = network.getNumLayers();
+        int m = featuresMatrixWithOnes.numRows;
+        this.activations = new double[numLayers][];
+        this.activationCols = new int[numLayers];
+        this.errors = new double[numLayers - 1][];
+        for (int layerIdx = 0; layerIdx < numLayers; ++layerIdx) {
+            int size = network.getLayers().get(layerIdx).getSize();
+            boolean hidden = layerIdx < numLayers - 1;
+            activationCols[layerIdx] = hidden ? size + 1 : size;
+            activations[layerIdx] = new double[m * activationCols[layerIdx]];
+            if (hidden) {
+                errors[layerIdx] = new double[m * size];
+            }
+        }
+    }
+
+    public Network getNetwork() {
+        return network;
+    }
+
+    @Override
+    public int getNumParams() {
+        return network.getNumParams();
+    }
+
+    @Override
+    public double compute(DMatrixRMaj nnParams, DMatrixRMaj unrolledGrad) {
+        if (nnParams.getNumElements() != getNumParams() || unrolledGrad.getNumElements() != getNumParams()) {
+            throw new IllegalArgumentException("expect " + getNumParams() + " params and gradient elements; got "
+                    + nnParams.getNumElements() + " and " + unrolledGrad.getNumElements());
+        }
+        double[] params = nnParams.data;
+        double[] grad = unrolledGrad.data;
+        int m = featuresMatrixWithOnes.numRows;
+        int numLayers = network.getNumLayers();
+        int outputIdx = numLayers - 1;
+
+        long start = phaseTimingEnabled ? System.nanoTime() : 0;
+        for (int layerIdx = 0; layerIdx < numLayers; ++layerIdx) {
+            DenseLayer layer = network.getLayers().get(layerIdx);
+            int cols = activationCols[layerIdx];
+            int col = layerIdx < outputIdx ? 1 : 0;
+            double[] act = activations[layerIdx];
+            LayerKernels.multTransB(input(layerIdx), m, network.getLayerInputSize(layerIdx) + 1,
+                    params, network.getParamsOffset(layerIdx), layer.getSize(), act, cols, col);
+            if (col == 1) {
+                for (int row = 0; row < m; ++row) {
+                    act[row * cols] = 1;
+                }
+            }
+            layer.getActivation().apply(act, m, layer.getSize(), cols, col);
+        }
+
+        double[] output = activations[outputIdx];
+        int numLabels = network.getNumLabels();
+        double jSum = network.getLayers().get(outputIdx).getActivation().output().crossEntropySum(output, labels, numLabels);
+        long forwardEnd = phaseTimingEnabled ? System.nanoTime() : 0;
+
+        //output activations become the output error act - y, y being one at the label and zero elsewhere
+        for (int row = 0; row < m; ++row) {
+            output[row * numLabels + labels[row]] -= 1;
+        }
+        double[] error = output;
+        for (int layerIdx = outputIdx; layerIdx >= 0; --layerIdx) {
+            int size = network.getLayers().get(layerIdx).getSize();
+            int inputCols = network.getLayerInputSize(layerIdx) + 1;
+            int offset = network.getParamsOffset(layerIdx);
+            LayerKernels.multTransA(error, m, size, input(layerIdx), inputCols, grad, offset);
+            if (layerIdx > 0) {
+                double[] prevError = errors[layerIdx - 1];
+                LayerKernels.backpropError(error, m, size, params, offset, inputCols,
+                        activations[layerIdx - 1], network.getLayers().get(layerIdx - 1).getActivation().hidden(), prevError);
+                error = prevError;
+            }
+        }
+
+        double squaresSum = 0;
+        for (int layerIdx = 0; layerIdx < numLayers; ++layerIdx) {
+            squaresSum += regularize(params, grad, network.getParamsOffset(layerIdx),
+                    network.getLayers().get(layerIdx).getSize(), network.getLayerInputSize(layerIdx) + 1, m);
+        }
+        if (phaseTimingEnabled) {
+            forwardNanos = forwardEnd - start;
+            backwardNanos = System.nanoTime() - forwardEnd;
+        }
+        return jSum / m + squaresSum * lambda / (2 * m);
+    }
+
+    public OptimizedFunctionResult compute(SimpleMatrix nnParams) {
+        DMatrixRMaj unrolledGrad = new DMatrixRMaj(getNumParams(), 1);
+        double jValue = compute(nnParams.getDDRM(), unrolledGrad);
+        return new OptimizedFunctionResult(jValue, SimpleMatrix.wrap(unrolledGrad));
+    }
+
+    @Override
+    public void setPhaseTimingEnabled(boolean enabled) {
+        phaseTimingEnabled = enabled;
+    }
+
+    @Override
+    public long getForwardNanos() {
+        return forwardNanos;
+    }
+
+    @Override
+    public long getBackwardNanos() {
+        return backwardNanos;
+    }
+
+    @Override
+    public OptimizedFunctionResult apply(SimpleMatrix simpleMatrix) {
+        return compute(simpleMatrix);
+    }
+
+    private double[] input(int layerIdx) {
+        return layerIdx == 0 ? featuresMatrixWithOnes.data : activations[layerIdx - 1];
+    }
+
+    //turns the raw delta in grad into the regularized gradient, returns the sum of squared non-bias weights
+    private double regularize(double[] params, double[] grad, int offset, int rows, int cols, int m) {
+        double squaresSum = 0;
+        for (int row = 0; row < rows; ++row) {
+            int rowOffset = offset + row * cols;
+            grad[rowOffset] = (grad[rowOffset] + 0.0) / m;
+            for (int col = 1; col < cols; ++col) {
+                int idx = rowOffset + col;
+                double val = params[idx];
+                squaresSum += val * val;
+                grad[idx] = (grad[idx] + val * lambda) / m;
+            }
+        }
+        return squaresSum;
+    }
+}
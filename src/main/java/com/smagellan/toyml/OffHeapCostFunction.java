@@ -0,0 +1,90 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.function.Function;
+
+/*
+ * WorkspaceCostFunction over an OffHeapDataset. The fused kernel reads the dataset tile by tile into
+ * heap buffers of BackpropWorkspace.TILE_ROWS rows, so the heap footprint is the parameters, the
+ * gradient and a few tiles, whatever the number of examples. Results are identical to the on-heap path.
+ * Not thread-safe: one instance per optimization thread.
+ */
+public class OffHeapCostFunction implements Function<SimpleMatrix, OptimizedFunctionResult>, DifferentiableFunction, PhaseTimings {
+    private final OffHeapDataset dataset;
+    private final int trainExamplesCount;
+    private final double lambda;
+
+    private final int theta1NumElements;
+    private final int theta2NumElements;
+
+    private final DMatrixRMaj theta1;
+    private final DMatrixRMaj theta2;
+    private final BackpropWorkspace workspace;
+
+    public OffHeapCostFunction(int hiddenLayerSize, OffHeapDataset dataset, double lambda) {
+        int inputLayerSize = dataset.getNumCols();
+        int numLabels = dataset.getNumLabels();
+        this.dataset = dataset;
+        this.trainExamplesCount = dataset.getNumRows();
+        this.lambda = lambda;
+
+        this.theta1NumElements = hiddenLayerSize * (inputLayerSize + 1);
+        this.theta2NumElements = numLabels * (hiddenLayerSize + 1);
+
+        this.theta1    = new DMatrixRMaj(hiddenLayerSize, inputLayerSize + 1);
+        this.theta2    = new DMatrixRMaj(numLabels, hiddenLayerSize + 1);
+        this.workspace = new BackpropWorkspace(inputLayerSize, hiddenLayerSize, numLabels, BackpropWorkspace.TILE_ROWS);
+    }
+
+    @Override
+    public int getNumParams() {
+        return theta1NumElements + theta2NumElements;
+    }
+
+    @Override
+    public double compute(DMatrixRMaj nnParams, DMatrixRMaj unrolledGrad) {
+        if (nnParams.getNumElements() != getNumParams() || unrolledGrad.getNumElements() != getNumParams()) {
+            throw new IllegalArgumentException("expect " + getNumParams() + " params and gradient elements; got "
+                    + nnParams.getNumElements() + " and " + unrolledGrad.getNumElements());
+        }
+        System.arraycopy(nnParams.data, 0, theta1.data, 0, theta1NumElements);
+        System.arraycopy(nnParams.data, theta1NumElements, theta2.data, 0, theta2NumElements);
+
+        double jValue = workspace.accumulate(dataset, theta1, theta2) / trainExamplesCount;
+        double jValueReg = (BackpropWorkspace.regularizedSquaresSum(theta1) + BackpropWorkspace.regularizedSquaresSum(theta2))
+                * lambda / (2 * trainExamplesCount);
+        jValue += jValueReg;
+
+        BackpropWorkspace.regularizedGrad(workspace.getDelta1(), theta1, lambda, trainExamplesCount, unrolledGrad.data, 0);
+        BackpropWorkspace.regularizedGrad(workspace.getDelta2(), theta2, lambda, trainExamplesCount, unrolledGrad.data, theta1NumElements);
+        return jValue;
+    }
+
+    public OptimizedFunctionResult compute(SimpleMatrix nnParams) {
+        DMatrixRMaj unrolledGrad = new DMatrixRMaj(getNumParams(), 1);
+        double jValue = compute(nnParams.getDDRM(), unrolledGrad);
+        return new OptimizedFunctionResult(jValue, SimpleMatrix.wrap(unrolledGrad));
+    }
+
+    @Override
+    public void setPhaseTimingEnabled(boolean enabled) {
+        workspace.setPhaseTimingEnabled(enabled);
+    }
+
+    @Override
+    public long getForwardNanos() {
+        return workspace.getForwardNanos();
+    }
+
+    @Override
+    public long getBackwardNanos() {
+        return workspace.getBackwardNanos();
+    }
+
+    @Override
+    public OptimizedFunctionResult apply(SimpleMatrix simpleMatrix) {
+        return compute(simpleMatrix);
+    }
+}
@@ -0,0 +1,160 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrix;
+import org.ejml.data.DMatrixRMaj;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Feature matrix and labels in direct buffers, outside the Java heap: the collector never scans or copies
+ * them, so heap size and GC pauses no longer grow with the dataset. Features are stored row-major without
+ * the bias column, in segments of whole rows since a single buffer is limited to 2GB; labels are 0-based.
+ * Native memory is released once the dataset becomes unreachable and its buffers are collected, and it
+ * counts against -XX:MaxDirectMemorySize. Kernels pull row tiles into small heap buffers through readTile.
+ */
+public class OffHeapDataset {
+    public static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+
+    private final int numRows;
+    private final int numCols;
+    private final int numLabels;
+    private final IntBuffer labels;
+    private final List<DoubleBuffer> segments;
+    private final int rowsPerSegment;
+
+    private OffHeapDataset(int numRows, int numCols, int numLabels) {
+        if (numRows < 0 || numCols <= 0) {
+            throw new IllegalArgumentException(numRows + " x " + numCols + " dataset");
+        }
+        //labels live in one buffer and every row in one segment, both capped at MAX_SEGMENT_BYTES
+        if ((long) numRows * Integer.BYTES > MAX_SEGMENT_BYTES || (long) numCols * Double.BYTES > MAX_SEGMENT_BYTES) {
+            throw new IllegalArgumentException(numRows + " x " + numCols + " dataset exceeds " + MAX_SEGMENT_BYTES
+                    + " bytes of labels or of a single row");
+        }
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.numLabels = numLabels;
+        this.labels = ByteBuffer.allocateDirect(numRows * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        long rowBytes = (long) numCols * Double.BYTES;
+        this.rowsPerSegment = (int) Math.max(1, MAX_SEGMENT_BYTES / rowBytes);
+        this.segments = new ArrayList<>();
+        for (int rowStart = 0; rowStart < numRows; rowStart += rowsPerSegment) {
+            int segmentRows = Math.min(rowsPerSegment, numRows - rowStart);
+            segments.add(ByteBuffer.allocateDirect((int) (segmentRows * rowBytes)).order(ByteOrder.nativeOrder()).asDoubleBuffer());
+        }
+    }
+
+    //zero-filled dataset, to be filled through setRow
+    public static OffHeapDataset allocate(int numRows, int numCols, int numLabels) {
+        return new OffHeapDataset(numRows, numCols, numLabels);
+    }
+
+    //featuresMatrix without bias column; yMatrix holds 1-based Matlab labels, same as Main.createLabels expects
+    public static OffHeapDataset copyOf(DMatrix featuresMatrix, DMatrix yMatrix, int numLabels) {
+        int numRows = featuresMatrix.getNumRows();
+        int numCols = featuresMatrix.getNumCols();
+        OffHeapDataset result = new OffHeapDataset(numRows, numCols, numLabels);
+        double[] row = new double[numCols];
+        for (int rowIdx = 0; rowIdx < numRows; ++rowIdx) {
+            for (int colIdx = 0; colIdx < numCols; ++colIdx) {
+                row[colIdx] = featuresMatrix.get(rowIdx, colIdx);
+            }
+            result.setRow(rowIdx, row, 0, (int) yMatrix.get(rowIdx, 0) - 1);
+        }
+        return result;
+    }
+
+    //pulls a mapped file into direct memory, blockRows rows at a time, so the copy never goes through the heap in one piece
+    public static OffHeapDataset copyOf(MappedDataset dataset, int blockRows) {
+        OffHeapDataset result = new OffHeapDataset(dataset.getNumRows(), dataset.getNumCols(), dataset.getNumLabels());
+        double[] block = new double[blockRows * dataset.getNumCols()];
+        int[] blockLabels = new int[blockRows];
+        for (int fromRow = 0; fromRow < dataset.getNumRows(); fromRow += blockRows) {
+            int toRow = Math.min(fromRow + blockRows, dataset.getNumRows());
+            dataset.readRows(fromRow, toRow, block);
+            dataset.readLabels(fromRow, toRow, blockLabels);
+            for (int row = fromRow; row < toRow; ++row) {
+                result.setRow(row, block, (row - fromRow) * dataset.getNumCols(), blockLabels[row - fromRow]);
+            }
+        }
+        return result;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public int getNumLabels() {
+        return numLabels;
+    }
+
+    public int getLabel(int row) {
+        return labels.get(row);
+    }
+
+    public long getOffHeapBytes() {
+        return (long) numRows * Integer.BYTES + (long) numRows * numCols * Double.BYTES;
+    }
+
+    //features[offset, offset + numCols) become row; label is 0-based. Not safe to call concurrently with readers
+    public void setRow(int row, double[] features, int offset, int label) {
+        if (label < 0 || label >= numLabels) {
+            throw new IllegalArgumentException("label " + label + " of row " + row + " is out of [0, " + numLabels + ")");
+        }
+        labels.put(row, label);
+        DoubleBuffer view = segments.get(row / rowsPerSegment).duplicate();
+        view.position((row % rowsPerSegment) * numCols);
+        view.put(features, offset, numCols);
+    }
+
+    //copies rows [fromRow, toRow) into dst as [ones, X]; dst is reshaped, so a buffer sized for the largest block never reallocates
+    public void readRowsWithOnes(int fromRow, int toRow, DMatrixRMaj dst) {
+        dst.reshape(toRow - fromRow, numCols + 1);
+        DoubleBuffer view = null;
+        for (int row = fromRow; row < toRow; ++row) {
+            int dstOffset = (row - fromRow) * (numCols + 1);
+            dst.data[dstOffset] = 1;
+            view = readRow(view, row, dst.data, dstOffset + 1);
+        }
+    }
+
+    //copies rows [fromRow, toRow) without bias column into dst, row after row
+    public void readRows(int fromRow, int toRow, double[] dst) {
+        DoubleBuffer view = null;
+        for (int row = fromRow; row < toRow; ++row) {
+            view = readRow(view, row, dst, (row - fromRow) * numCols);
+        }
+    }
+
+    //one tile for the fused kernel: rows as [ones, X] into x, their labels into dstLabels
+    void readTile(int fromRow, int toRow, double[] x, int[] dstLabels) {
+        int cols = numCols + 1;
+        DoubleBuffer view = null;
+        for (int row = fromRow; row < toRow; ++row) {
+            int xOffset = (row - fromRow) * cols;
+            x[xOffset] = 1;
+            view = readRow(view, row, x, xOffset + 1);
+            dstLabels[row - fromRow] = labels.get(row);
+        }
+    }
+
+    //absolute bulk gets need Java 13, so reads go through a per-block duplicate of the segment
+    private DoubleBuffer readRow(DoubleBuffer view, int row, double[] dst, int dstOffset) {
+        int rowInSegment = row % rowsPerSegment;
+        if (view == null || rowInSegment == 0) {
+            view = segments.get(row / rowsPerSegment).duplicate();
+        }
+        view.position(rowInSegment * numCols);
+        view.get(dst, dstOffset, numCols);
+        return view;
+    }
+}
@@ -1,11 +1,13 @@
 package com.smagellan.toyml;
 
 import org.apache.commons.lang3.time.StopWatch;
+import org.ejml.data.DMatrixRMaj;
 import org.ejml.simple.SimpleMatrix;
 import org.slf4j.LoggerFactory;
 
 import static com.smagellan.toyml.EjmlHelpers.matrixAsScalar;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
@@ -89,6 +91,7 @@ public class OptimizationFunctions {
 
 
         SimpleMatrix fX = new SimpleMatrix(0, 0);
+        OptimizationResult.StopReason stopReason = OptimizationResult.StopReason.MAX_ITERATIONS;
         while (i < Math.abs(length)) {
             i += length > 0 ? 1 : 0;
             SimpleMatrix X0 = X.copy();
@@ -217,6 +220,7 @@ public class OptimizationFunctions {
                 f1 = f0;
                 df1 = df0; //restore point from before failed line search
                 if (lsFailed || i > Math.abs(length)) {
+                    stopReason = lsFailed ? OptimizationResult.StopReason.LINE_SEARCH_FAILED : stopReason;
                     break;
                 }
                 SimpleMatrix tmp = df1;
@@ -229,6 +233,313 @@ public class OptimizationFunctions {
             }
         }
         logger.debug("optimization took {} millis and {} iterations", sw.getTime(TimeUnit.MILLISECONDS), i);
-        return new OptimizationResult(X, fX, i);
+        return new OptimizationResult(X, fX, i, stopReason);
+    }
+
+    /*
+     * Same algorithm as fmincg, step for step and bit for bit, but on five preallocated parameter-length buffers:
+     * X, X0, s and two gradients. Steps are axpy in place, restarts swap buffers instead of copying,
+     * and fX grows by doubling. fn writes its gradient into the buffer it is given, so apart from the
+     * result nothing is allocated per iteration.
+     */
+    public static OptimizationResult fmincgInPlace(DifferentiableFunction fn, SimpleMatrix fnParams, int length, int red) {
+        return fmincgInPlace(fn, fnParams, length, red, null);
+    }
+
+    //listener may be null; without one nothing is timed or counted
+    public static OptimizationResult fmincgInPlace(DifferentiableFunction fn, SimpleMatrix fnParams, int length, int red,
+                                                   OptimizerListener listener) {
+        return fmincgInPlace(fn, fnParams, length, red, listener, null, null);
+    }
+
+    /*
+     * checkpointer, if not null, sees X and the line search state after every successful line search.
+     * resumeFrom, if not null, continues a run from such a checkpoint with fnParams as its X: only f1 and df1 are
+     * recomputed, so the remaining iterations match the uninterrupted run. fX then only holds the resumed part.
+     */
+    public static OptimizationResult fmincgInPlace(DifferentiableFunction fn, SimpleMatrix fnParams, int length, int red,
+                                                   OptimizerListener listener, Checkpointer checkpointer, FmincgState resumeFrom) {
+        return fmincgInPlace(fn, fnParams, length, red, listener, checkpointer, resumeFrom, null);
+    }
+
+    //convergence, if not null, may end the run before length is used up; the result says why it stopped
+    public static OptimizationResult fmincgInPlace(DifferentiableFunction fn, SimpleMatrix fnParams, int length, int red,
+                                                   OptimizerListener listener, Checkpointer checkpointer, FmincgState resumeFrom,
+                                                   ConvergenceOptions convergence) {
+        StopWatch sw = StopWatch.createStarted();
+        int n = fnParams.getNumElements();
+        if (fn.getNumParams() != n) {
+            throw new IllegalArgumentException("function takes " + fn.getNumParams() + " params; got " + n);
+        }
+        boolean lsFailed = false;
+        int i = 0;
+        DMatrixRMaj X = new DMatrixRMaj(n, 1);
+        System.arraycopy(fnParams.getDDRM().data, 0, X.data, 0, n);
+        DMatrixRMaj X0 = new DMatrixRMaj(n, 1);
+        DMatrixRMaj df1 = new DMatrixRMaj(n, 1);
+        DMatrixRMaj df2 = new DMatrixRMaj(n, 1);
+        DMatrixRMaj s = new DMatrixRMaj(n, 1);
+
+        EvaluationProbe probe = listener != null ? new EvaluationProbe(fn, listener) : null;
+        ConvergenceMonitor monitor = new ConvergenceMonitor(convergence);
+        double f1 = evaluate(fn, probe, monitor, X, df1);
+        if (probe != null) {
+            //the first evaluation belongs to no line search
+            probe.reset();
+        }
+
+        double d1;
+        double z1;
+        if (resumeFrom == null) {
+            i += length < 0 ? 1 : 0;
+            negate(df1.data, s.data);
+            d1 = negDot(s.data, s.data);
+            z1 = red / (1 - d1);
+        } else {
+            if (resumeFrom.getDirection().length != n) {
+                throw new IllegalArgumentException("checkpoint has " + resumeFrom.getDirection().length + " params; got " + n);
+            }
+            i = resumeFrom.getIteration();
+            System.arraycopy(resumeFrom.getDirection(), 0, s.data, 0, n);
+            d1 = resumeFrom.getD1();
+            z1 = resumeFrom.getZ1();
+        }
+
+        double[] fX = new double[Math.max(Math.abs(length), 1)];
+        int fXSize = 0;
+        OptimizationResult.StopReason stopReason = OptimizationResult.StopReason.MAX_ITERATIONS;
+        while (i < Math.abs(length)) {
+            i += length > 0 ? 1 : 0;
+            long iterationStart = probe != null ? System.nanoTime() : 0;
+            int evaluations = 1;
+            //X0 keeps the start point, X moves along s; df1 isn't touched by the line search, so it's its own backup
+            DMatrixRMaj tmpX = X0;
+            X0 = X;
+            X = tmpX;
+            double f0 = f1;
+            axpy(X0.data, s.data, z1, X.data);
+
+            double f2 = evaluate(fn, probe, monitor, X, df2);
+            i += (length < 0) ? 1 : 0;
+            double d2 = dot(df2.data, s.data);
+
+            double f3 = f1;
+            double d3 = d1;
+            double z3 = -z1;
+            int m = (length > 0) ? MAX : Math.min(MAX, -length - i);
+            boolean success = false;
+            double limit = -1;
+            while (true) {
+                while (((f2 > f1 + z1 * RHO * d1) || (d2 > -SIG * d1)) && (m > 0)) {
+                    limit = z1;
+                    double z2;
+                    if (f2 > f1) {
+                        z2 = z3 - (0.5 * d3 * z3 * z3) / (d3 * z3 + f2 - f3);
+                    } else {
+                        double A = 6 * (f2 - f3) / z3 + 3 * (d2 + d3);
+                        double B = 3 * (f3 - f2) - z3 * (d3 + 2 * d2);
+                        z2 = (Math.sqrt(B * B - A * d2 * z3 * z3) - B) / A;
+                    }
+                    if (Double.isNaN(z2) || Double.isInfinite(z2)) {
+                        z2 = z3 / 2;
+                    }
+
+                    z2 = Math.max(Math.min(z2, INT * z3), (1 - INT) * z3);
+                    z1 = z1 + z2;
+                    axpy(X.data, s.data, z2, X.data);
+
+                    f2 = evaluate(fn, probe, monitor, X, df2);
+                    ++evaluations;
+
+                    --m;
+                    i += (length < 0) ? 1 : 0;
+                    d2 = dot(df2.data, s.data);
+                    z3 = z3 - z2;
+                }
+
+                if (f2 > f1 + z1 * RHO * d1 || d2 > -SIG * d1) {
+                    break;
+                } else {
+                    if (d2 > SIG * d1) {
+                        success = true;
+                        break;
+                    } else {
+                        if (m == 0) {
+                            break;
+                        }
+                    }
+                }
+
+                double A = 6 * (f2 - f3) / z3 + 3 * (d2 + d3);
+                double B = 3 * (f3 - f2) - z3 * (d3 + 2 * d2);
+                double z2 = -d2 * z3 * z3 / (B + Math.sqrt(B * B - A * d2 * z3 * z3));
+
+                if (Double.isNaN(z2) || Double.isInfinite(z2) || z2 < 0) {
+                    z2 = (limit < -0.5) ?
+                            z1 * (EXT - 1) :
+                            (limit - z1) / 2;
+                } else {
+                    if ((limit > -0.5) && (z2 + z1 > limit)) {
+                        z2 = (limit - z1) / 2;
+                    } else {
+                        if ((limit < -0.5) && (z2 + z1 > z1 * EXT)) {
+                            z2 = z1 * (EXT - 1.0);
+                        } else {
+                            if (z2 < -z3 * INT) {
+                                z2 = -z3 * INT;
+                            } else {
+                                if ((limit > -0.5) && (z2 < (limit - z1) * (1.0 - INT))) {
+                                    z2 = (limit - z1) * (1.0 - INT);
+                                }
+                            }
+                        }
+                    }
+                }
+                f3 = f2;
+                d3 = d2;
+                z3 = -z2;
+                z1 = z1 + z2;
+                axpy(X.data, s.data, z2, X.data);
+
+                f2 = evaluate(fn, probe, monitor, X, df2);
+                ++evaluations;
+
+                --m;
+                i += (length < 0) ? 1 : 0;
+                d2 = dot(df2.data, s.data);
+            }
+
+            if (probe != null) {
+                //failed searches report the point the optimizer falls back to
+                double[] grad = success ? df2.data : df1.data;
+                probe.iterationDone(i, success, success ? f2 : f0, Math.sqrt(dot(grad, grad)), success ? z1 : 0, evaluations,
+                        System.nanoTime() - iterationStart);
+            }
+            if (success) {
+                f1 = f2;
+                if (fXSize == fX.length) {
+                    fX = Arrays.copyOf(fX, fX.length * 2);
+                }
+                fX[fXSize++] = f1;
+                logger.debug("Iteration {} | Cost: {}", i, f1);
+                double divisor = dot(df1.data, df1.data);
+                double numerator = dot(df2.data, df2.data) - dot(df1.data, df2.data);
+                scaleMinus(s.data, numerator / divisor, df2.data);
+                DMatrixRMaj tmp = df1;
+                df1 = df2;
+                df2 = tmp;
+                d2 = dot(df1.data, s.data);
+                if (d2 > 0) {
+                    negate(df1.data, s.data);
+                    d2 = negDot(s.data, s.data);
+                }
+                z1 = z1 * Math.min(RATIO, d1 / (d2 - REALMIN));
+                d1 = d2;
+                lsFailed = false;
+                if (checkpointer != null) {
+                    checkpointer.checkpoint(X, new FmincgState(i, z1, d1, s.data));
+                }
+                OptimizationResult.StopReason converged = monitor.accepted(f0, f1, df1.data, X);
+                if (converged != null) {
+                    stopReason = converged;
+                    break;
+                }
+            } else {
+                DMatrixRMaj tmpX2 = X;
+                X = X0;
+                X0 = tmpX2;
+                f1 = f0;
+                if (lsFailed || i > Math.abs(length)) {
+                    stopReason = lsFailed ? OptimizationResult.StopReason.LINE_SEARCH_FAILED : stopReason;
+                    break;
+                }
+                DMatrixRMaj tmp = df1;
+                df1 = df2;
+                df2 = tmp;
+                negate(df1.data, s.data);
+                d1 = negDot(s.data, s.data);
+                z1 = 1 / (1 - d1);
+                lsFailed = true;
+                OptimizationResult.StopReason exhausted = monitor.budgetExceeded();
+                if (exhausted != null) {
+                    stopReason = exhausted;
+                    break;
+                }
+            }
+        }
+        logger.debug("optimization took {} millis, {} iterations and {} evaluations, stopped on {}",
+                sw.getTime(TimeUnit.MILLISECONDS), i, monitor.getEvaluations(), stopReason);
+        SimpleMatrix fXVal = fXSize == 0 ? new SimpleMatrix(0, 0) : new SimpleMatrix(1, fXSize, true, Arrays.copyOf(fX, fXSize));
+        OptimizationResult result = new OptimizationResult(SimpleMatrix.wrap(monitor.resultParams(X)), fXVal, i, stopReason);
+        if (probe != null) {
+            probe.finish(result);
+        }
+        return result;
+    }
+
+    private static double evaluate(DifferentiableFunction fn, EvaluationProbe probe, ConvergenceMonitor monitor,
+                                   DMatrixRMaj params, DMatrixRMaj grad) {
+        monitor.evaluated();
+        return probe != null ? probe.compute(params, grad) : fn.compute(params, grad);
+    }
+
+    //plain Function seen as a DifferentiableFunction: the gradient it returns is copied into the caller's buffer
+    public static DifferentiableFunction differentiable(Function<SimpleMatrix, OptimizedFunctionResult> fn, int numParams) {
+        if (fn instanceof DifferentiableFunction) {
+            return (DifferentiableFunction) fn;
+        }
+        return new DifferentiableFunction() {
+            @Override
+            public int getNumParams() {
+                return numParams;
+            }
+
+            @Override
+            public double compute(DMatrixRMaj params, DMatrixRMaj grad) {
+                OptimizedFunctionResult result = fn.apply(SimpleMatrix.wrap(params));
+                System.arraycopy(result.getGradientValue().getDDRM().data, 0, grad.data, 0, numParams);
+                return result.getFnValue();
+            }
+        };
+    }
+
+    //the kernels below keep the element and summation order of the SimpleMatrix expressions in fmincg
+
+    //a' * b
+    private static double dot(double[] a, double[] b) {
+        double total = 0;
+        for (int k = 0; k < a.length; ++k) {
+            total += a[k] * b[k];
+        }
+        return total;
+    }
+
+    //(-a)' * b
+    private static double negDot(double[] a, double[] b) {
+        double total = 0;
+        for (int k = 0; k < a.length; ++k) {
+            total += -a[k] * b[k];
+        }
+        return total;
+    }
+
+    //dst = x + s * z
+    private static void axpy(double[] x, double[] s, double z, double[] dst) {
+        for (int k = 0; k < x.length; ++k) {
+            dst[k] = x[k] + s[k] * z;
+        }
+    }
+
+    //s = s * beta - g
+    private static void scaleMinus(double[] s, double beta, double[] g) {
+        for (int k = 0; k < s.length; ++k) {
+            s[k] = s[k] * beta - g[k];
+        }
+    }
+
+    private static void negate(double[] src, double[] dst) {
+        for (int k = 0; k < src.length; ++k) {
+            dst[k] = -src[k];
+        }
     }
 }
@@ -3,15 +3,39 @@ package com.smagellan.toyml;
 import org.ejml.simple.SimpleMatrix;
 
 public class OptimizationResult {
+    public enum StopReason {
+        //the iteration (or, for a negative fmincg length, evaluation) limit was used up
+        MAX_ITERATIONS,
+        //no acceptable step along the search direction, even after a restart
+        LINE_SEARCH_FAILED,
+        //relative cost decrease of the last iteration fell under ConvergenceOptions.costTolerance
+        COST_TOLERANCE,
+        //gradient norm fell under ConvergenceOptions.gradientTolerance
+        GRADIENT_TOLERANCE,
+        TIME_BUDGET,
+        EVALUATION_BUDGET,
+        //held-out score didn't improve for the configured number of validations
+        VALIDATION_PATIENCE,
+        //epoch cost didn't improve for MiniBatchOptions.patience epochs
+        NO_IMPROVEMENT
+    }
+
     private final SimpleMatrix xVal;
     private final SimpleMatrix fXVal;
     private final int numIterations;
+    private final StopReason stopReason;
 
 
+    //for optimizers that only stop on their iteration limit
     public OptimizationResult(SimpleMatrix xVal, SimpleMatrix fXVal, int numIterations) {
+        this(xVal, fXVal, numIterations, StopReason.MAX_ITERATIONS);
+    }
+
+    public OptimizationResult(SimpleMatrix xVal, SimpleMatrix fXVal, int numIterations, StopReason stopReason) {
         this.xVal = xVal;
         this.fXVal = fXVal;
         this.numIterations = numIterations;
+        this.stopReason = stopReason;
     }
 
     public SimpleMatrix getxVal() {
@@ -25,4 +49,8 @@ public class OptimizationResult {
     public int getNumIterations() {
         return numIterations;
     }
+
+    public StopReason getStopReason() {
+        return stopReason;
+    }
 }
@@ -0,0 +1,9 @@
+package com.smagellan.toyml;
+
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.function.Function;
+
+public interface Optimizer {
+    OptimizationResult minimize(Function<SimpleMatrix, OptimizedFunctionResult> fn, SimpleMatrix fnParams);
+}
@@ -0,0 +1,31 @@
+package com.smagellan.toyml;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.apache.commons.lang3.tuple.Triple;
+import org.ejml.data.DMatrix;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class OptimizerComparison {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(OptimizerComparison.class);
+
+    public static void main(String[] args) throws IOException {
+        Triple<DMatrix, DMatrix, Long> params = Main.loadParams(100);
+
+        Map<String, Optimizer> optimizers = new LinkedHashMap<>();
+        optimizers.put("fmincg", new FmincgOptimizer(50));
+        optimizers.put("lbfgs", new LbfgsOptimizer(50, 10));
+        optimizers.put("sgd", new SgdOptimizer(new MiniBatchOptions(20, Main.MINI_BATCH_SIZE).earlyStopping(3, 1e-4), 0.5, 0.9));
+        optimizers.put("adam", new AdamOptimizer(new MiniBatchOptions(20, Main.MINI_BATCH_SIZE).earlyStopping(3, 1e-4), 0.01));
+
+        for (Map.Entry<String, Optimizer> entry : optimizers.entrySet()) {
+            StopWatch sw = StopWatch.createStarted();
+            double accuracy = new Main().doFit(params, entry.getValue());
+            logger.info("{}: accuracy {} in {} millis", entry.getKey(), accuracy, sw.getTime(TimeUnit.MILLISECONDS));
+        }
+    }
+}
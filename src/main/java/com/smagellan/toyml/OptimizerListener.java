@@ -0,0 +1,18 @@
+package com.smagellan.toyml;
+
+/*
+ * Callbacks from an optimizer run. Optimizers only measure when a listener is attached,
+ * so an unobserved run pays nothing for this.
+ */
+public interface OptimizerListener {
+    //after every cost function evaluation
+    default void onEvaluation(EvaluationStats stats) {
+    }
+
+    //after every line search, successful or not
+    default void onIteration(IterationStats stats) {
+    }
+
+    default void onFinish(OptimizationResult result) {
+    }
+}
@@ -0,0 +1,30 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+
+/*
+ * Loss side of the activations that can close a network. Each pairs with its own cross-entropy, so the
+ * output error is always act - y, i.e. act with one subtracted at the label. The sums take the indexed
+ * form: only log(a) at the label and log(1 - a) elsewhere, so a saturated output never meets 0 * -Infinity.
+ */
+enum OutputActivation {
+    SIGMOID {
+        @Override
+        double crossEntropySum(double[] act, int[] labels, int cols) {
+            return BackpropWorkspace.crossEntropySum(DMatrixRMaj.wrap(labels.length, cols, act), labels);
+        }
+    },
+    SOFTMAX {
+        @Override
+        double crossEntropySum(double[] act, int[] labels, int cols) {
+            double sum = 0;
+            for (int row = 0; row < labels.length; ++row) {
+                sum -= Math.log(act[row * cols + labels[row]]);
+            }
+            return sum;
+        }
+    };
+
+    //act is labels.length x cols, labels are 0-based class indices
+    abstract double crossEntropySum(double[] act, int[] labels, int cols);
+}
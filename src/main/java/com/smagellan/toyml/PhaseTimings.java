@@ -0,0 +1,12 @@
+package com.smagellan.toyml;
+
+//cost function that can split its evaluation time between the forward and the backward pass
+public interface PhaseTimings {
+    //off by default, so the hot path doesn't read the clock
+    void setPhaseTimingEnabled(boolean enabled);
+
+    //of the last evaluation
+    long getForwardNanos();
+
+    long getBackwardNanos();
+}
@@ -0,0 +1,16 @@
+package com.smagellan.toyml;
+
+public enum Precision {
+    DOUBLE(Double.BYTES),
+    FLOAT(Float.BYTES);
+
+    private final int bytesPerElement;
+
+    Precision(int bytesPerElement) {
+        this.bytesPerElement = bytesPerElement;
+    }
+
+    public long footprintBytes(long numElements) {
+        return numElements * bytesPerElement;
+    }
+}
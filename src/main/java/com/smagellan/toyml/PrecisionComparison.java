@@ -0,0 +1,39 @@
+package com.smagellan.toyml;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.apache.commons.lang3.tuple.Triple;
+import org.ejml.data.DMatrix;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class PrecisionComparison {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(PrecisionComparison.class);
+
+    //percentage points of training accuracy between float and double runs on ex4. fmincg trajectories of the two
+    //precisions drift apart after a few line searches, so this bounds run to run noise plus precision loss
+    public static final double MAX_ACCURACY_DIFF = 2.0;
+
+    public static void main(String[] args) throws IOException {
+        Triple<DMatrix, DMatrix, Long> params = Main.loadParams(100);
+        long featureElements = (long) params.getLeft().getNumRows() * (params.getLeft().getNumCols() + 1);
+
+        Map<Precision, Double> accuracies = new EnumMap<>(Precision.class);
+        for (Precision precision : Precision.values()) {
+            StopWatch sw = StopWatch.createStarted();
+            double accuracy = new Main().doFit(params.getLeft(), params.getMiddle(), params.getRight(), new FmincgOptimizer(50), precision);
+            long millis = sw.getTime(TimeUnit.MILLISECONDS);
+            accuracies.put(precision, accuracy);
+            logger.info("{}: accuracy {}, {} millis, features matrix {} bytes", precision, accuracy, millis, precision.footprintBytes(featureElements));
+        }
+
+        double diff = Math.abs(accuracies.get(Precision.DOUBLE) - accuracies.get(Precision.FLOAT));
+        logger.info("accuracy difference: {}", diff);
+        if (diff > MAX_ACCURACY_DIFF) {
+            throw new IllegalStateException("float accuracy differs from double by " + diff + "; expect at most " + MAX_ACCURACY_DIFF);
+        }
+    }
+}
@@ -1,9 +1,21 @@
 package com.smagellan.toyml;
 
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
 import org.ejml.simple.SimpleMatrix;
 
 public class Predictor {
+    /*
+     * Sparse enough inputs go through the CSR kernel; the hidden layer sums are the same either way. The choice
+     * scans the whole matrix and builds a CSR copy on every call, so to score one dataset repeatedly, call
+     * CsrMatrix.sparseOrNull once and pass the result to the CsrMatrix overload, or the matrix to predictDense.
+     */
     public static SimpleMatrix predict(SimpleMatrix theta1, SimpleMatrix theta2, SimpleMatrix featuresMatrixWithOnes) {
+        CsrMatrix sparse = CsrMatrix.sparseOrNull(featuresMatrixWithOnes.getDDRM());
+        return sparse != null ? predict(theta1, theta2, sparse) : predictDense(theta1, theta2, featuresMatrixWithOnes);
+    }
+
+    public static SimpleMatrix predictDense(SimpleMatrix theta1, SimpleMatrix theta2, SimpleMatrix featuresMatrixWithOnes) {
         int m = featuresMatrixWithOnes.numRows();
 
         SimpleMatrix h1   = MlFunctions.sigmoid(featuresMatrixWithOnes.mult(theta1.transpose()));
@@ -12,4 +24,33 @@ public class Predictor {
 
         return EjmlHelpers.maxPerRow(h2);
     }
+
+    public static SimpleMatrix predict(SimpleMatrix theta1, SimpleMatrix theta2, CsrMatrix features) {
+        int m = features.getNumRows();
+
+        DMatrixRMaj z1 = new DMatrixRMaj(m, theta1.numRows());
+        features.multWithOnes(CommonOps_DDRM.transpose(theta1.getDDRM(), null), z1);
+        SimpleMatrix h1   = MlFunctions.sigmoid(SimpleMatrix.wrap(z1));
+        SimpleMatrix h1w1 = EjmlHelpers.ones(m, 1).concatColumns(h1);
+        SimpleMatrix h2   = h1w1.mult(theta2.transpose());
+
+        return EjmlHelpers.maxPerRow(h2);
+    }
+
+    //blockSize rows at a time out of direct memory; each row's sums are the same as in the whole-matrix product
+    public static SimpleMatrix predict(SimpleMatrix theta1, SimpleMatrix theta2, OffHeapDataset dataset, int blockSize) {
+        int m = dataset.getNumRows();
+        SimpleMatrix result = new SimpleMatrix(m, 1);
+        SimpleMatrix theta1T = theta1.transpose();
+        SimpleMatrix theta2T = theta2.transpose();
+        DMatrixRMaj block = new DMatrixRMaj(blockSize, dataset.getNumCols() + 1);
+        for (int fromRow = 0; fromRow < m; fromRow += blockSize) {
+            int toRow = Math.min(fromRow + blockSize, m);
+            dataset.readRowsWithOnes(fromRow, toRow, block);
+            SimpleMatrix h1   = MlFunctions.sigmoid(SimpleMatrix.wrap(block).mult(theta1T));
+            SimpleMatrix h1w1 = EjmlHelpers.ones(toRow - fromRow, 1).concatColumns(h1);
+            result.insertIntoThis(fromRow, 0, EjmlHelpers.maxPerRow(h1w1.mult(theta2T)));
+        }
+        return result;
+    }
 }
@@ -0,0 +1,85 @@
+package com.smagellan.toyml;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.ejml.data.DMatrixRMaj;
+
+import java.util.Random;
+
+//[ones, X] features and 0-based labels from FeaturePipeline, with the per-feature shift and scale it applied
+public class PreparedDataset {
+    private final DMatrixRMaj featuresMatrixWithOnes;
+    private final int[] labels;
+    private final double[] shift;
+    private final double[] scale;
+
+    public PreparedDataset(DMatrixRMaj featuresMatrixWithOnes, int[] labels, double[] shift, double[] scale) {
+        this.featuresMatrixWithOnes = featuresMatrixWithOnes;
+        this.labels = labels;
+        this.shift = shift;
+        this.scale = scale;
+    }
+
+    public DMatrixRMaj getFeaturesMatrixWithOnes() {
+        return featuresMatrixWithOnes;
+    }
+
+    public int[] getLabels() {
+        return labels;
+    }
+
+    public int getNumFeatures() {
+        return shift.length;
+    }
+
+    public double[] getShift() {
+        return shift;
+    }
+
+    public double[] getScale() {
+        return scale;
+    }
+
+    //rows scored later (held-out set, inference input) have to go through the training set's normalization
+    public void normalize(DMatrixRMaj featuresWithOnes) {
+        if (featuresWithOnes.numCols != shift.length + 1) {
+            throw new IllegalArgumentException("expect " + (shift.length + 1) + " columns; got " + featuresWithOnes.numCols);
+        }
+        FeaturePipeline.normalizeRows(featuresWithOnes.data, 0, featuresWithOnes.numRows, shift.length, shift, scale);
+    }
+
+    /*
+     * Random (training, held-out) split of the rows, e.g. for HoldOutValidator. Both keep this dataset's
+     * shift and scale, which were computed over all rows, held-out ones included.
+     */
+    public Pair<PreparedDataset, PreparedDataset> split(double holdOutFraction, long seed) {
+        int numRows = labels.length;
+        int holdOutRows = (int) Math.round(numRows * holdOutFraction);
+        if (holdOutRows <= 0 || holdOutRows >= numRows) {
+            throw new IllegalArgumentException("holdOutFraction " + holdOutFraction + " leaves " + holdOutRows + " of " + numRows + " rows held out");
+        }
+        int[] rowIndices = new int[numRows];
+        for (int rowIdx = 0; rowIdx < numRows; ++rowIdx) {
+            rowIndices[rowIdx] = rowIdx;
+        }
+        Random random = new Random(seed);
+        for (int i = numRows - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            int tmp = rowIndices[i];
+            rowIndices[i] = rowIndices[j];
+            rowIndices[j] = tmp;
+        }
+        return ImmutablePair.of(rows(rowIndices, holdOutRows, numRows), rows(rowIndices, 0, holdOutRows));
+    }
+
+    private PreparedDataset rows(int[] rowIndices, int from, int to) {
+        int cols = featuresMatrixWithOnes.numCols;
+        DMatrixRMaj features = new DMatrixRMaj(to - from, cols);
+        int[] subsetLabels = new int[to - from];
+        for (int i = from; i < to; ++i) {
+            System.arraycopy(featuresMatrixWithOnes.data, rowIndices[i] * cols, features.data, (i - from) * cols, cols);
+            subsetLabels[i - from] = labels[rowIndices[i]];
+        }
+        return new PreparedDataset(features, subsetLabels, shift, scale);
+    }
+}
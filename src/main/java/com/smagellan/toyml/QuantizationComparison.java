@@ -0,0 +1,93 @@
+package com.smagellan.toyml;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.ejml.simple.SimpleMatrix;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+//trains the ex4 network in double precision, then scores it with Predictor and QuantizedInferenceEngine side by side
+public class QuantizationComparison {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(QuantizationComparison.class);
+
+    //percentage points of training accuracy the int8 path may lose against Predictor
+    public static final double MAX_ACCURACY_LOSS = 1.0;
+    public static final int SCORING_PASSES = 20;
+
+    public static void main(String[] args) throws IOException {
+        File matFile = args.length > 0 ? new File(args[0]) : Main.EX4_DATA1;
+        PreparedDataset dataset = new FeaturePipeline(FeaturePipeline.Normalization.NONE, Runtime.getRuntime().availableProcessors())
+                .load(matFile);
+        int inputLayerSize  = dataset.getNumFeatures();
+        int hiddenLayerSize = 25;
+        int numLabels       = 10;
+
+        WorkspaceCostFunction cf = new WorkspaceCostFunction(inputLayerSize, hiddenLayerSize, numLabels,
+                dataset.getFeaturesMatrixWithOnes(), dataset.getLabels(), 1);
+        SimpleMatrix nnParams = new FmincgOptimizer(50).minimize(cf, Main.initialNnParams(inputLayerSize, hiddenLayerSize, numLabels, 100)).getxVal();
+        int theta1NumElements = hiddenLayerSize * (inputLayerSize + 1);
+        SimpleMatrix theta1 = nnParams.rows(0, theta1NumElements);
+        theta1.reshape(hiddenLayerSize, inputLayerSize + 1);
+        SimpleMatrix theta2 = nnParams.rows(theta1NumElements, nnParams.numRows());
+        theta2.reshape(numLabels, hiddenLayerSize + 1);
+        compare(theta1, theta2, dataset);
+    }
+
+    public static void compare(SimpleMatrix theta1, SimpleMatrix theta2, PreparedDataset dataset) {
+        int[] labels = dataset.getLabels();
+        int numRows = labels.length;
+        SimpleMatrix featuresMatrixWithOnes = SimpleMatrix.wrap(dataset.getFeaturesMatrixWithOnes());
+        SimpleMatrix predicted = Predictor.predict(theta1, theta2, featuresMatrixWithOnes);
+
+        QuantizedInferenceEngine quantized = new QuantizedInferenceEngine(theta1, theta2);
+        Int8Features int8Features = Int8Features.quantizeWithOnes(dataset.getFeaturesMatrixWithOnes());
+        int[] quantizedClasses = new int[numRows];
+        quantized.predict(int8Features, quantizedClasses);
+
+        int agreed = 0;
+        int doubleMatched = 0;
+        int quantizedMatched = 0;
+        for (int row = 0; row < numRows; ++row) {
+            int doubleClass = (int) predicted.get(row, 0);
+            agreed += doubleClass == quantizedClasses[row] ? 1 : 0;
+            doubleMatched += doubleClass == labels[row] ? 1 : 0;
+            quantizedMatched += quantizedClasses[row] == labels[row] ? 1 : 0;
+        }
+        double doubleAccuracy = ((double) doubleMatched) * 100 / numRows;
+        double quantizedAccuracy = ((double) quantizedMatched) * 100 / numRows;
+        logger.info("accuracy: double {}, int8 {}; int8 agrees with Predictor on {}% of rows",
+                doubleAccuracy, quantizedAccuracy, ((double) agreed) * 100 / numRows);
+
+        long doubleWeightBytes = (long) (theta1.getNumElements() + theta2.getNumElements()) * Double.BYTES;
+        long doubleFeatureBytes = (long) numRows * dataset.getNumFeatures() * Double.BYTES;
+        logger.info("weights: double {} bytes, int8 {} bytes; features: double {} bytes, int8 {} bytes",
+                doubleWeightBytes, quantized.getWeightBytes(), doubleFeatureBytes, int8Features.getBytes());
+
+        InferenceEngine engine = new InferenceEngine(theta1, theta2);
+        double[] features = featuresMatrixWithOnes.cols(1, featuresMatrixWithOnes.numCols()).getDDRM().data;
+        int[] classes = new int[numRows];
+        StopWatch sw = StopWatch.createStarted();
+        for (int pass = 0; pass < SCORING_PASSES; ++pass) {
+            engine.predict(features, numRows, classes);
+        }
+        long doubleNanos = sw.getNanoTime();
+        sw = StopWatch.createStarted();
+        for (int pass = 0; pass < SCORING_PASSES; ++pass) {
+            quantized.predict(int8Features, classes);
+        }
+        long quantizedNanos = sw.getNanoTime();
+        logger.info("rows per second: double {}, int8 {}",
+                rowsPerSecond(numRows, doubleNanos), rowsPerSecond(numRows, quantizedNanos));
+
+        double loss = doubleAccuracy - quantizedAccuracy;
+        if (loss > MAX_ACCURACY_LOSS) {
+            throw new IllegalStateException("int8 accuracy is " + loss + " points below double; expect at most " + MAX_ACCURACY_LOSS);
+        }
+    }
+
+    private static long rowsPerSecond(int numRows, long nanos) {
+        return (long) numRows * SCORING_PASSES * TimeUnit.SECONDS.toNanos(1) / Math.max(nanos, 1);
+    }
+}
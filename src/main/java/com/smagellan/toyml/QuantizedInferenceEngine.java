@@ -0,0 +1,180 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.Arrays;
+
+/*
+ * Post-training int8 quantization of the ex4 network for scoring. Every row of Theta1 and Theta2 (one hidden
+ * unit or class) gets its own scale, max |w| / 127, and int8 weights; biases stay double. Inputs are quantized
+ * per row (see Int8Features), sigmoid outputs to k / 127. Both layers read int8 weights and activations, accumulate
+ * the products in int32 and dequantize once per unit; only the quantized weights are kept. Predictions can differ from Predictor where
+ * the two best classes are close; QuantizationComparison measures how often. Thread-safe, like InferenceEngine.
+ */
+public class QuantizedInferenceEngine {
+    private static final int LEVELS = 127;
+
+    private final int inputLayerSize;
+    private final int hiddenLayerSize;
+    private final int numLabels;
+    //without the bias column: Theta1 transposed, inputLayerSize x hiddenLayerSize, so the hidden layer is an axpy
+    //per input; Theta2 row-major, numLabels x hiddenLayerSize
+    private final byte[] theta1QT;
+    private final byte[] theta2Q;
+    private final double[] scale1;
+    private final double[] scale2;
+    private final double[] bias1;
+    private final double[] bias2;
+    private final ThreadLocal<Scratch> scratch;
+
+    public QuantizedInferenceEngine(SimpleMatrix theta1, SimpleMatrix theta2) {
+        this(theta1.getDDRM(), theta2.getDDRM());
+    }
+
+    public QuantizedInferenceEngine(DMatrixRMaj theta1, DMatrixRMaj theta2) {
+        if (theta2.numCols != theta1.numRows + 1) {
+            throw new IllegalArgumentException("theta2 has " + theta2.numCols + " columns; expect " + (theta1.numRows + 1));
+        }
+        //worst case |acc| is LEVELS^2 per term
+        if ((long) Math.max(theta1.numCols, theta2.numCols) * LEVELS * LEVELS > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(theta1.numCols + " inputs overflow the int32 accumulator");
+        }
+        this.inputLayerSize = theta1.numCols - 1;
+        this.hiddenLayerSize = theta1.numRows;
+        this.numLabels = theta2.numRows;
+        byte[] theta1Q = new byte[hiddenLayerSize * inputLayerSize];
+        this.theta2Q = new byte[numLabels * hiddenLayerSize];
+        this.scale1 = new double[hiddenLayerSize];
+        this.scale2 = new double[numLabels];
+        this.bias1 = new double[hiddenLayerSize];
+        this.bias2 = new double[numLabels];
+        quantizeWeights(theta1, theta1Q, scale1, bias1);
+        quantizeWeights(theta2, theta2Q, scale2, bias2);
+        this.theta1QT = new byte[inputLayerSize * hiddenLayerSize];
+        for (int j = 0; j < hiddenLayerSize; ++j) {
+            for (int k = 0; k < inputLayerSize; ++k) {
+                theta1QT[k * hiddenLayerSize + j] = theta1Q[j * inputLayerSize + k];
+            }
+        }
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(inputLayerSize, hiddenLayerSize));
+    }
+
+    private static void quantizeWeights(DMatrixRMaj theta, byte[] quantized, double[] scales, double[] biases) {
+        int cols = theta.numCols - 1;
+        for (int row = 0; row < theta.numRows; ++row) {
+            biases[row] = theta.data[row * theta.numCols];
+            double maxAbs = 0;
+            for (int k = 0; k < cols; ++k) {
+                maxAbs = Math.max(maxAbs, Math.abs(theta.data[row * theta.numCols + 1 + k]));
+            }
+            scales[row] = maxAbs / LEVELS;
+            double inverse = maxAbs > 0 ? LEVELS / maxAbs : 0;
+            for (int k = 0; k < cols; ++k) {
+                long q = Math.round(theta.data[row * theta.numCols + 1 + k] * inverse);
+                quantized[row * cols + k] = (byte) Math.max(-LEVELS, Math.min(LEVELS, q));
+            }
+        }
+    }
+
+    public int getInputLayerSize() {
+        return inputLayerSize;
+    }
+
+    public int getNumLabels() {
+        return numLabels;
+    }
+
+    //quantized weights, scales and biases, all the kernel reads; the double Theta1 and Theta2 take 8 bytes per element
+    public long getWeightBytes() {
+        return theta1QT.length + theta2Q.length
+                + (long) (scale1.length + scale2.length + bias1.length + bias2.length) * Double.BYTES;
+    }
+
+    //the scoring path: rows quantized once, ahead of time
+    public void predict(Int8Features features, int[] classes) {
+        if (features.getNumCols() != inputLayerSize || classes.length < features.getNumRows()) {
+            throw new IllegalArgumentException("expect " + inputLayerSize + " features and " + features.getNumRows()
+                    + " classes; got " + features.getNumCols() + " and " + classes.length);
+        }
+        Scratch s = scratch.get();
+        byte[] values = features.getValues();
+        float[] scales = features.getScales();
+        for (int row = 0; row < features.getNumRows(); ++row) {
+            classes[row] = predictRow(values, row * inputLayerSize, scales[row], s);
+        }
+    }
+
+    //double rows quantized on the fly, one at a time; same classes as predict(Int8Features.quantize(...))
+    public void predict(double[] features, int numRows, int[] classes) {
+        if (features.length < numRows * inputLayerSize || classes.length < numRows) {
+            throw new IllegalArgumentException("buffers too small for " + numRows + " rows");
+        }
+        Scratch s = scratch.get();
+        for (int row = 0; row < numRows; ++row) {
+            float scale = Int8Features.quantizeRow(features, row * inputLayerSize, inputLayerSize, s.input, 0);
+            classes[row] = predictRow(s.input, 0, scale, s);
+        }
+    }
+
+    //drop-in for Predictor.predict
+    public SimpleMatrix predict(SimpleMatrix featuresMatrixWithOnes) {
+        int m = featuresMatrixWithOnes.numRows();
+        double[] features = CommonOps_DDRM.extract(featuresMatrixWithOnes.getDDRM(), 0, m, 1, inputLayerSize + 1).data;
+        int[] classes = new int[m];
+        predict(features, m, classes);
+        SimpleMatrix result = new SimpleMatrix(m, 1);
+        for (int row = 0; row < m; ++row) {
+            result.set(row, 0, classes[row]);
+        }
+        return result;
+    }
+
+    private int predictRow(byte[] x, int offset, float xScale, Scratch s) {
+        int[] acc1 = s.acc1;
+        Arrays.fill(acc1, 0);
+        for (int k = 0; k < inputLayerSize; ++k) {
+            int xq = x[offset + k];
+            if (xq != 0) {
+                int wOffset = k * hiddenLayerSize;
+                for (int j = 0; j < hiddenLayerSize; ++j) {
+                    acc1[j] += xq * theta1QT[wOffset + j];
+                }
+            }
+        }
+        byte[] hidden = s.hidden;
+        for (int j = 0; j < hiddenLayerSize; ++j) {
+            double h = MlFunctions.sigmoid(bias1[j] + scale1[j] * xScale * acc1[j]);
+            hidden[j] = (byte) Math.round(h * LEVELS);
+        }
+
+        int index = 0;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < numLabels; ++c) {
+            int wOffset = c * hiddenLayerSize;
+            int acc = 0;
+            for (int j = 0; j < hiddenLayerSize; ++j) {
+                acc += theta2Q[wOffset + j] * hidden[j];
+            }
+            double output = bias2[c] + scale2[c] * acc / LEVELS;
+            if (output > max) {
+                max = output;
+                index = c;
+            }
+        }
+        return index;
+    }
+
+    private static class Scratch {
+        private final byte[] input;
+        private final int[] acc1;
+        private final byte[] hidden;
+
+        private Scratch(int inputLayerSize, int hiddenLayerSize) {
+            this.input = new byte[inputLayerSize];
+            this.acc1 = new int[hiddenLayerSize];
+            this.hidden = new byte[hiddenLayerSize];
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+
+//selected rows of an in-memory [ones, X] matrix, copied chunk by chunk; the matrix itself is shared, never copied whole
+public class RowSubsetChunkSource implements ChunkSource {
+    private final DMatrixRMaj featuresMatrixWithOnes;
+    private final int[] labels;
+    private final int numLabels;
+    private final int[] rows;
+    private int nextIdx;
+
+    //labels are 0-based, one per row of the matrix
+    public RowSubsetChunkSource(DMatrixRMaj featuresMatrixWithOnes, int[] labels, int numLabels, int[] rows) {
+        BackpropWorkspace.checkLabels(labels, featuresMatrixWithOnes.numRows, numLabels);
+        for (int row : rows) {
+            if (row < 0 || row >= featuresMatrixWithOnes.numRows) {
+                throw new IllegalArgumentException("row " + row + " is out of [0, " + featuresMatrixWithOnes.numRows + ")");
+            }
+        }
+        this.featuresMatrixWithOnes = featuresMatrixWithOnes;
+        this.labels = labels;
+        this.numLabels = numLabels;
+        this.rows = rows;
+    }
+
+    @Override
+    public int getNumFeatures() {
+        return featuresMatrixWithOnes.numCols - 1;
+    }
+
+    @Override
+    public int getNumLabels() {
+        return numLabels;
+    }
+
+    @Override
+    public void reset() {
+        nextIdx = 0;
+    }
+
+    @Override
+    public int nextChunk(DMatrixRMaj featuresWithOnes, int[] chunkLabels) {
+        int count = Math.min(chunkLabels.length, rows.length - nextIdx);
+        int cols = featuresMatrixWithOnes.numCols;
+        featuresWithOnes.reshape(count, cols);
+        for (int i = 0; i < count; ++i) {
+            int row = rows[nextIdx + i];
+            System.arraycopy(featuresMatrixWithOnes.data, row * cols, featuresWithOnes.data, i * cols, cols);
+            chunkLabels[i] = labels[row];
+        }
+        nextIdx += count;
+        return count;
+    }
+}
@@ -0,0 +1,38 @@
+package com.smagellan.toyml;
+
+import org.ejml.simple.SimpleMatrix;
+
+public class SavedModel {
+    private final Network network;
+    private final SimpleMatrix params;
+    private final FmincgState fmincgState;
+
+    public SavedModel(Network network, SimpleMatrix params, FmincgState fmincgState) {
+        this.network = network;
+        this.params = params;
+        this.fmincgState = fmincgState;
+    }
+
+    public Network getNetwork() {
+        return network;
+    }
+
+    //unrolled, numParams x 1
+    public SimpleMatrix getParams() {
+        return params;
+    }
+
+    //null for a final model, set for a checkpoint written during training
+    public FmincgState getFmincgState() {
+        return fmincgState;
+    }
+
+    //single hidden layer models only, same as InferenceEngine; score deeper ones with getNetwork().predict(getParams(), X)
+    public InferenceEngine newInferenceEngine() {
+        if (network.getNumLayers() != 2) {
+            throw new IllegalStateException("InferenceEngine needs one hidden layer; model has " + (network.getNumLayers() - 1)
+                    + ", use Network.predict");
+        }
+        return new InferenceEngine(network.theta(params, 0), network.theta(params, 1));
+    }
+}
@@ -0,0 +1,23 @@
+package com.smagellan.toyml;
+
+public class SgdOptimizer extends MiniBatchOptimizer {
+    private final double learningRate;
+    private final double momentum;
+
+    public SgdOptimizer(MiniBatchOptions options, double learningRate, double momentum) {
+        super(options);
+        this.learningRate = learningRate;
+        this.momentum = momentum;
+    }
+
+    @Override
+    protected StepRule newStepRule(int numParams) {
+        double[] velocity = new double[numParams];
+        return (params, grad, step) -> {
+            for (int i = 0; i < params.length; ++i) {
+                velocity[i] = momentum * velocity[i] - learningRate * grad[i];
+                params[i] += velocity[i];
+            }
+        };
+    }
+}
@@ -0,0 +1,215 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/*
+ * Splits the training rows into fixed blocks of blockSize rows and runs the forward/backward pass of each
+ * block on the executor. Partial sums are reduced in block order, so the result depends on blockSize only,
+ * never on the number of threads. Shards are row ranges of the caller's matrix, which is read, not copied.
+ */
+public class ShardedCostFunction implements Function<SimpleMatrix, OptimizedFunctionResult>, DifferentiableFunction, AutoCloseable {
+    public static final int DEFAULT_BLOCK_SIZE = 512;
+
+    private final int inputLayerSize;
+    private final int hiddenLayerSize;
+    private final int numLabels;
+    private final int trainExamplesCount;
+    private final double lambda;
+
+    private final int theta1NumElements;
+    private final int theta2NumElements;
+
+    private final DMatrixRMaj featuresMatrixWithOnes;
+    private final int[] labels;
+    private final List<Shard> shards;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+
+    private final DMatrixRMaj theta1;
+    private final DMatrixRMaj theta2;
+    private final DMatrixRMaj delta1;
+    private final DMatrixRMaj delta2;
+
+    public ShardedCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, DMatrixRMaj featuresMatrixWithOnes, DMatrixRMaj yVec,
+                               double lambda, int blockSize, int parallelism) {
+        this(inputLayerSize, hiddenLayerSize, numLabels, featuresMatrixWithOnes, Main.labelsOf(yVec), lambda, blockSize, parallelism);
+    }
+
+    public ShardedCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, DMatrixRMaj featuresMatrixWithOnes, int[] labels,
+                               double lambda, int blockSize, int parallelism) {
+        this(inputLayerSize, hiddenLayerSize, numLabels, featuresMatrixWithOnes, labels, lambda, blockSize, new ForkJoinPool(parallelism), true);
+    }
+
+    public ShardedCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, DMatrixRMaj featuresMatrixWithOnes, DMatrixRMaj yVec,
+                               double lambda, int blockSize, ExecutorService executor) {
+        this(inputLayerSize, hiddenLayerSize, numLabels, featuresMatrixWithOnes, Main.labelsOf(yVec), lambda, blockSize, executor);
+    }
+
+    public ShardedCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, DMatrixRMaj featuresMatrixWithOnes, int[] labels,
+                               double lambda, int blockSize, ExecutorService executor) {
+        this(inputLayerSize, hiddenLayerSize, numLabels, featuresMatrixWithOnes, labels, lambda, blockSize, executor, false);
+    }
+
+    private ShardedCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, DMatrixRMaj featuresMatrixWithOnes, int[] labels,
+                                double lambda, int blockSize, ExecutorService executor, boolean ownsExecutor) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize: " + blockSize + "; expect positive");
+        }
+        BackpropWorkspace.checkLabels(labels, featuresMatrixWithOnes.numRows, numLabels);
+        this.inputLayerSize = inputLayerSize;
+        this.hiddenLayerSize = hiddenLayerSize;
+        this.numLabels = numLabels;
+        this.trainExamplesCount = featuresMatrixWithOnes.numRows;
+        this.lambda = lambda;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.featuresMatrixWithOnes = featuresMatrixWithOnes;
+        this.labels = labels;
+
+        this.theta1NumElements = hiddenLayerSize * (inputLayerSize + 1);
+        this.theta2NumElements = numLabels * (hiddenLayerSize + 1);
+
+        this.theta1 = new DMatrixRMaj(hiddenLayerSize, inputLayerSize + 1);
+        this.theta2 = new DMatrixRMaj(numLabels, hiddenLayerSize + 1);
+        this.delta1 = new DMatrixRMaj(hiddenLayerSize, inputLayerSize + 1);
+        this.delta2 = new DMatrixRMaj(numLabels, hiddenLayerSize + 1);
+
+        this.shards = new ArrayList<>();
+        for (int rowStart = 0; rowStart < trainExamplesCount; rowStart += blockSize) {
+            int rowEnd = Math.min(rowStart + blockSize, trainExamplesCount);
+            shards.add(new Shard(rowStart, rowEnd, new BackpropWorkspace(inputLayerSize, hiddenLayerSize, numLabels, rowEnd - rowStart)));
+        }
+    }
+
+    @Override
+    public int getNumParams() {
+        return theta1NumElements + theta2NumElements;
+    }
+
+    public int getNumShards() {
+        return shards.size();
+    }
+
+    @Override
+    public double compute(DMatrixRMaj nnParams, DMatrixRMaj unrolledGrad) {
+        if (nnParams.getNumElements() != getNumParams() || unrolledGrad.getNumElements() != getNumParams()) {
+            throw new IllegalArgumentException("expect " + getNumParams() + " params and gradient elements; got "
+                    + nnParams.getNumElements() + " and " + unrolledGrad.getNumElements());
+        }
+        System.arraycopy(nnParams.data, 0, theta1.data, 0, theta1NumElements);
+        System.arraycopy(nnParams.data, theta1NumElements, theta2.data, 0, theta2NumElements);
+
+        List<Future<Double>> partials = new ArrayList<>(shards.size());
+        AtomicBoolean abandoned = new AtomicBoolean();
+        CountDownLatch finished = new CountDownLatch(shards.size());
+        double jSum = 0;
+        delta1.zero();
+        delta2.zero();
+        try {
+            for (Shard shard : shards) {
+                partials.add(executor.submit(() -> {
+                    try {
+                        return abandoned.get() ? 0
+                                : shard.workspace.accumulate(featuresMatrixWithOnes, labels, shard.fromRow, shard.toRow, theta1, theta2);
+                    } finally {
+                        finished.countDown();
+                    }
+                }));
+            }
+            for (int shardIdx = 0; shardIdx < shards.size(); ++shardIdx) {
+                jSum += await(partials.get(shardIdx));
+                BackpropWorkspace workspace = shards.get(shardIdx).workspace;
+                CommonOps_DDRM.addEquals(delta1, workspace.getDelta1());
+                CommonOps_DDRM.addEquals(delta2, workspace.getDelta2());
+            }
+        } catch (RuntimeException e) {
+            //queued shards skip their work, running ones are waited for: none may write into theta or a workspace
+            //once the next evaluation has started
+            abandoned.set(true);
+            for (int shardIdx = partials.size(); shardIdx < shards.size(); ++shardIdx) {
+                finished.countDown();
+            }
+            awaitUninterruptibly(finished);
+            throw e;
+        }
+
+        double jValue = jSum / trainExamplesCount;
+        double jValueReg = (BackpropWorkspace.regularizedSquaresSum(theta1) + BackpropWorkspace.regularizedSquaresSum(theta2))
+                * lambda / (2 * trainExamplesCount);
+        jValue += jValueReg;
+
+        BackpropWorkspace.regularizedGrad(delta1, theta1, lambda, trainExamplesCount, unrolledGrad.data, 0);
+        BackpropWorkspace.regularizedGrad(delta2, theta2, lambda, trainExamplesCount, unrolledGrad.data, theta1NumElements);
+        return jValue;
+    }
+
+    public OptimizedFunctionResult compute(SimpleMatrix nnParams) {
+        DMatrixRMaj unrolledGrad = new DMatrixRMaj(getNumParams(), 1);
+        double jValue = compute(nnParams.getDDRM(), unrolledGrad);
+        return new OptimizedFunctionResult(jValue, SimpleMatrix.wrap(unrolledGrad));
+    }
+
+    @Override
+    public OptimizedFunctionResult apply(SimpleMatrix simpleMatrix) {
+        return compute(simpleMatrix);
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private static double await(Future<Double> partial) {
+        try {
+            return partial.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for shard", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("shard evaluation failed", e.getCause());
+        }
+    }
+
+    //keeps the caller's interrupt status, which is what typically got us here
+    private static void awaitUninterruptibly(CountDownLatch finished) {
+        boolean interrupted = Thread.interrupted();
+        while (true) {
+            try {
+                finished.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //rows [fromRow, toRow) of the shared features matrix
+    private static class Shard {
+        private final int fromRow;
+        private final int toRow;
+        private final BackpropWorkspace workspace;
+
+        private Shard(int fromRow, int toRow, BackpropWorkspace workspace) {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.workspace = workspace;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/*
+ * Out-of-core cost function: every evaluation makes one pass over the ChunkSource and folds each chunk
+ * into J and the deltas. Two chunk buffers alternate, the next chunk is read on a background
+ * thread while the current one is computed, so peak memory depends on chunkSize only.
+ */
+public class StreamingCostFunction implements Function<SimpleMatrix, OptimizedFunctionResult>, DifferentiableFunction, AutoCloseable {
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private final int inputLayerSize;
+    private final int hiddenLayerSize;
+    private final int numLabels;
+    private final ChunkSource source;
+    private final double lambda;
+
+    private final int theta1NumElements;
+    private final int theta2NumElements;
+
+    private final DMatrixRMaj theta1;
+    private final DMatrixRMaj theta2;
+    private final DMatrixRMaj delta1;
+    private final DMatrixRMaj delta2;
+    private final Chunk[] chunks;
+    private final BackpropWorkspace workspace;
+    private final ExecutorService prefetcher;
+
+    public StreamingCostFunction(int hiddenLayerSize, ChunkSource source, double lambda, int chunkSize) {
+        this.inputLayerSize = source.getNumFeatures();
+        this.hiddenLayerSize = hiddenLayerSize;
+        this.numLabels = source.getNumLabels();
+        this.source = source;
+        this.lambda = lambda;
+
+        this.theta1NumElements = hiddenLayerSize * (inputLayerSize + 1);
+        this.theta2NumElements = numLabels * (hiddenLayerSize + 1);
+
+        this.theta1    = new DMatrixRMaj(hiddenLayerSize, inputLayerSize + 1);
+        this.theta2    = new DMatrixRMaj(numLabels, hiddenLayerSize + 1);
+        this.delta1    = new DMatrixRMaj(hiddenLayerSize, inputLayerSize + 1);
+        this.delta2    = new DMatrixRMaj(numLabels, hiddenLayerSize + 1);
+        this.chunks    = new Chunk[] {new Chunk(chunkSize, inputLayerSize), new Chunk(chunkSize, inputLayerSize)};
+        this.workspace = new BackpropWorkspace(inputLayerSize, hiddenLayerSize, numLabels, chunkSize);
+        this.prefetcher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "chunk-prefetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public int getNumParams() {
+        return theta1NumElements + theta2NumElements;
+    }
+
+    @Override
+    public double compute(DMatrixRMaj nnParams, DMatrixRMaj unrolledGrad) {
+        if (nnParams.getNumElements() != getNumParams() || unrolledGrad.getNumElements() != getNumParams()) {
+            throw new IllegalArgumentException("expect " + getNumParams() + " params and gradient elements; got "
+                    + nnParams.getNumElements() + " and " + unrolledGrad.getNumElements());
+        }
+        System.arraycopy(nnParams.data, 0, theta1.data, 0, theta1NumElements);
+        System.arraycopy(nnParams.data, theta1NumElements, theta2.data, 0, theta2NumElements);
+
+        double jSum = 0;
+        int trainExamplesCount = 0;
+        delta1.zero();
+        delta2.zero();
+
+        int current = 0;
+        Future<Integer> pending = prefetcher.submit(() -> {
+            source.reset();
+            return chunks[0].fill(source);
+        });
+        while (true) {
+            int rows = await(pending);
+            if (rows == 0) {
+                break;
+            }
+            Chunk chunk = chunks[current];
+            Chunk next = chunks[1 - current];
+            pending = prefetcher.submit(() -> next.fill(source));
+            //a label past numLabels would index the next row of the workspace, a negative one the previous
+            for (int row = 0; row < rows; ++row) {
+                int label = chunk.labels[row];
+                if (label < 0 || label >= numLabels) {
+                    throw new IllegalArgumentException("label " + label + " of streamed row " + (trainExamplesCount + row)
+                            + " is out of [0, " + numLabels + ")");
+                }
+            }
+
+            jSum += workspace.accumulate(chunk.featuresWithOnes, chunk.labels, theta1, theta2);
+            CommonOps_DDRM.addEquals(delta1, workspace.getDelta1());
+            CommonOps_DDRM.addEquals(delta2, workspace.getDelta2());
+            trainExamplesCount += rows;
+            current = 1 - current;
+        }
+        if (trainExamplesCount == 0) {
+            throw new IllegalStateException("chunk source is empty");
+        }
+
+        double jValue = jSum / trainExamplesCount;
+        double jValueReg = (BackpropWorkspace.regularizedSquaresSum(theta1) + BackpropWorkspace.regularizedSquaresSum(theta2))
+                * lambda / (2 * trainExamplesCount);
+        jValue += jValueReg;
+
+        BackpropWorkspace.regularizedGrad(delta1, theta1, lambda, trainExamplesCount, unrolledGrad.data, 0);
+        BackpropWorkspace.regularizedGrad(delta2, theta2, lambda, trainExamplesCount, unrolledGrad.data, theta1NumElements);
+        return jValue;
+    }
+
+    public OptimizedFunctionResult compute(SimpleMatrix nnParams) {
+        DMatrixRMaj unrolledGrad = new DMatrixRMaj(getNumParams(), 1);
+        double jValue = compute(nnParams.getDDRM(), unrolledGrad);
+        return new OptimizedFunctionResult(jValue, SimpleMatrix.wrap(unrolledGrad));
+    }
+
+    @Override
+    public OptimizedFunctionResult apply(SimpleMatrix simpleMatrix) {
+        return compute(simpleMatrix);
+    }
+
+    @Override
+    public void close() {
+        prefetcher.shutdown();
+    }
+
+    private static int await(Future<Integer> pending) {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for chunk", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) e.getCause());
+            }
+            throw new IllegalStateException("chunk read failed", e.getCause());
+        }
+    }
+
+    private static class Chunk {
+        private final DMatrixRMaj featuresWithOnes;
+        private final int[] labels;
+
+        private Chunk(int chunkSize, int numFeatures) {
+            this.featuresWithOnes = new DMatrixRMaj(chunkSize, numFeatures + 1);
+            this.labels = new int[chunkSize];
+        }
+
+        private int fill(ChunkSource source) throws IOException {
+            return source.nextChunk(featuresWithOnes, labels);
+        }
+    }
+}
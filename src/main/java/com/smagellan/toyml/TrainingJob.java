@@ -0,0 +1,59 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrix;
+
+//one model for TrainingScheduler: ex4-shaped network, 1-based labels as in the Matlab dataset
+public class TrainingJob {
+    private final String name;
+    private final DMatrix featuresMatrix;
+    private final DMatrix yMatrix;
+    private final int numLabels;
+    private final HyperParameters params;
+    private final int maxParallelism;
+
+    public TrainingJob(String name, DMatrix featuresMatrix, DMatrix yMatrix, int numLabels, HyperParameters params) {
+        this(name, featuresMatrix, yMatrix, numLabels, params, 1);
+    }
+
+    //maxParallelism > 1 lets the job shard its cost function over cpus no other job is waiting for
+    public TrainingJob(String name, DMatrix featuresMatrix, DMatrix yMatrix, int numLabels, HyperParameters params, int maxParallelism) {
+        if (maxParallelism <= 0) {
+            throw new IllegalArgumentException("maxParallelism: " + maxParallelism + "; expect positive");
+        }
+        this.name = name;
+        this.featuresMatrix = featuresMatrix;
+        this.yMatrix = yMatrix;
+        this.numLabels = numLabels;
+        this.params = params;
+        this.maxParallelism = maxParallelism;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public DMatrix getFeaturesMatrix() {
+        return featuresMatrix;
+    }
+
+    public DMatrix getYMatrix() {
+        return yMatrix;
+    }
+
+    public int getNumLabels() {
+        return numLabels;
+    }
+
+    public HyperParameters getParams() {
+        return params;
+    }
+
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + params + ")";
+    }
+}
@@ -0,0 +1,134 @@
+package com.smagellan.toyml;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+//progress and outcome of a job submitted to TrainingScheduler
+public class TrainingJobHandle {
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    private final TrainingJob job;
+    private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+    private final CompletableFuture<OptimizationResult> result = new CompletableFuture<>();
+    private volatile int iteration;
+    private volatile double cost = Double.NaN;
+    private volatile int parallelism;
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    TrainingJobHandle(TrainingJob job) {
+        this.job = job;
+    }
+
+    public TrainingJob getJob() {
+        return job;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    //line searches done so far
+    public int getIteration() {
+        return iteration;
+    }
+
+    //cost after the last successful line search, NaN before the first
+    public double getCost() {
+        return cost;
+    }
+
+    //fraction of the iteration budget used, 1 once the job has finished
+    public double getProgress() {
+        return result.isDone() ? 1 : Math.min(1, (double) iteration / job.getParams().getIterations());
+    }
+
+    //cpus granted when the job started, 0 until then
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    //time spent running so far, 0 while queued
+    public long getRunningNanos() {
+        long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long end = endNanos;
+        return (end != 0 ? end : System.nanoTime()) - start;
+    }
+
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    //blocks until the job ends; throws CancellationException for cancelled jobs
+    public OptimizationResult getResult() throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(job.getName() + " failed", e.getCause());
+        }
+    }
+
+    //queued jobs never start, running ones stop at their next cost function evaluation
+    public boolean cancel() {
+        if (state.compareAndSet(State.QUEUED, State.CANCELLED)) {
+            result.cancel(false);
+            return true;
+        }
+        return state.compareAndSet(State.RUNNING, State.CANCELLED);
+    }
+
+    boolean isCancelled() {
+        return state.get() == State.CANCELLED;
+    }
+
+    boolean start() {
+        this.startNanos = System.nanoTime();
+        return state.compareAndSet(State.QUEUED, State.RUNNING);
+    }
+
+    void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    void progress(int iteration, double cost) {
+        this.iteration = iteration;
+        this.cost = cost;
+    }
+
+    void complete(OptimizationResult optimizationResult) {
+        endNanos = System.nanoTime();
+        if (state.compareAndSet(State.RUNNING, State.DONE)) {
+            result.complete(optimizationResult);
+        } else {
+            result.cancel(false);
+        }
+    }
+
+    void fail(Throwable t) {
+        endNanos = System.nanoTime();
+        if (t instanceof CancellationException || isCancelled()) {
+            state.set(State.CANCELLED);
+            result.cancel(false);
+        } else {
+            state.set(State.FAILED);
+            result.completeExceptionally(t);
+        }
+    }
+
+    CompletableFuture<OptimizationResult> future() {
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return job.getName() + ": " + getState() + ", iteration " + iteration + "/" + job.getParams().getIterations()
+                + ", cost " + cost + ", " + parallelism + " cpus";
+    }
+}
@@ -0,0 +1,243 @@
+package com.smagellan.toyml;
+
+import org.apache.commons.lang3.tuple.Triple;
+import org.ejml.data.DMatrix;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Runs many TrainingJobs under a budget of cpuBudget busy threads. A job holds one cpu permit while it trains;
+ * when nothing is queued it also takes up to maxParallelism - 1 idle permits and shards its cost function
+ * over a shared work-stealing pool. Permits are granted at start and kept until the job ends.
+ *
+ * Limitation: a job never gives idle permits back mid-run. Its cost function is already sharded for that many
+ * threads, so releasing permits alone would oversubscribe the cpus. A job submitted later waits for those permits
+ * until the wide job ends; give long jobs a low maxParallelism when more submissions are expected.
+ */
+public class TrainingScheduler implements AutoCloseable {
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(TrainingScheduler.class);
+
+    private final int cpuBudget;
+    private final Semaphore cpus;
+    private final ExecutorService runners;
+    private final ForkJoinPool shardPool;
+    private final Queue<TrainingJobHandle> active = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger cancelled = new AtomicInteger();
+    private final long startNanos = System.nanoTime();
+
+    public TrainingScheduler(int cpuBudget) {
+        if (cpuBudget <= 0) {
+            throw new IllegalArgumentException("cpuBudget: " + cpuBudget + "; expect positive");
+        }
+        this.cpuBudget = cpuBudget;
+        this.cpus = new Semaphore(cpuBudget, true);
+        AtomicInteger runnerCount = new AtomicInteger();
+        this.runners = Executors.newFixedThreadPool(cpuBudget, r -> {
+            Thread thread = new Thread(r, "training-job-" + runnerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.shardPool = new ForkJoinPool(cpuBudget);
+    }
+
+    public TrainingJobHandle submit(TrainingJob job) {
+        TrainingJobHandle handle = new TrainingJobHandle(job);
+        active.add(handle);
+        handle.future().whenComplete((result, t) -> {
+            active.remove(handle);
+            if (handle.getState() == TrainingJobHandle.State.DONE) {
+                completed.incrementAndGet();
+            } else if (handle.getState() == TrainingJobHandle.State.FAILED) {
+                failed.incrementAndGet();
+            } else {
+                cancelled.incrementAndGet();
+            }
+            logger.debug("{}", handle);
+        });
+        runners.execute(() -> run(handle));
+        return handle;
+    }
+
+    public List<TrainingJobHandle> submitAll(List<TrainingJob> jobs) {
+        List<TrainingJobHandle> handles = new ArrayList<>(jobs.size());
+        for (TrainingJob job : jobs) {
+            handles.add(submit(job));
+        }
+        return handles;
+    }
+
+    public int getCpuBudget() {
+        return cpuBudget;
+    }
+
+    //jobs waiting for a cpu
+    public int getQueueDepth() {
+        return count(TrainingJobHandle.State.QUEUED);
+    }
+
+    public int getRunningJobs() {
+        return count(TrainingJobHandle.State.RUNNING);
+    }
+
+    public int getIdleCpus() {
+        return cpus.availablePermits();
+    }
+
+    public int getCompletedJobs() {
+        return completed.get();
+    }
+
+    public int getFailedJobs() {
+        return failed.get();
+    }
+
+    public int getCancelledJobs() {
+        return cancelled.get();
+    }
+
+    //successfully trained jobs per minute since the scheduler was created
+    public double getJobsPerMinute() {
+        double minutes = (System.nanoTime() - startNanos) / (double) TimeUnit.MINUTES.toNanos(1);
+        return minutes > 0 ? completed.get() / minutes : 0;
+    }
+
+    //queued and running jobs, in submission order
+    public List<TrainingJobHandle> getActiveJobs() {
+        return new ArrayList<>(active);
+    }
+
+    private int count(TrainingJobHandle.State state) {
+        int count = 0;
+        for (TrainingJobHandle handle : active) {
+            if (handle.getState() == state) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private void run(TrainingJobHandle handle) {
+        if (handle.isCancelled()) {
+            return;
+        }
+        try {
+            cpus.acquire();
+        } catch (InterruptedException e) {
+            handle.cancel();
+            return;
+        }
+        int granted = 1;
+        try {
+            if (!handle.start()) {
+                return;
+            }
+            //extra cpus only go to a job nobody is waiting behind
+            int wanted = handle.getJob().getMaxParallelism();
+            while (granted < wanted && getQueueDepth() == 0 && cpus.tryAcquire()) {
+                ++granted;
+            }
+            handle.setParallelism(granted);
+            handle.complete(train(handle, granted));
+        } catch (Throwable t) {
+            handle.fail(t);
+        } finally {
+            cpus.release(granted);
+        }
+    }
+
+    private OptimizationResult train(TrainingJobHandle handle, int parallelism) {
+        TrainingJob job = handle.getJob();
+        HyperParameters params = job.getParams();
+        int inputLayerSize = job.getFeaturesMatrix().getNumCols();
+        int m = job.getFeaturesMatrix().getNumRows();
+        DMatrixRMaj featuresMatrixWithOnes = new DMatrixRMaj(m, inputLayerSize + 1);
+        CommonOps_DDRM.insert(job.getFeaturesMatrix(), featuresMatrixWithOnes, 0, 1);
+        for (int row = 0; row < m; ++row) {
+            featuresMatrixWithOnes.set(row, 0, 1);
+        }
+        int[] labels = Main.createLabels(job.getYMatrix());
+        SimpleMatrix nnParams = Main.initialNnParams(inputLayerSize, params.getHiddenLayerSize(), job.getNumLabels(), params.getSeed());
+
+        OptimizerListener listener = new OptimizerListener() {
+            @Override
+            public void onEvaluation(EvaluationStats stats) {
+                if (handle.isCancelled()) {
+                    throw new CancellationException(job.getName() + " cancelled");
+                }
+            }
+
+            @Override
+            public void onIteration(IterationStats stats) {
+                if (stats.isSuccess()) {
+                    handle.progress(stats.getIteration(), stats.getCost());
+                }
+            }
+        };
+        FmincgOptimizer optimizer = new FmincgOptimizer(params.getIterations(), 1, listener);
+        if (parallelism == 1) {
+            return optimizer.minimize(new WorkspaceCostFunction(inputLayerSize, params.getHiddenLayerSize(), job.getNumLabels(),
+                    featuresMatrixWithOnes, labels, params.getLambda()), nnParams);
+        }
+        int blockSize = (m + parallelism - 1) / parallelism;
+        try (ShardedCostFunction cf = new ShardedCostFunction(inputLayerSize, params.getHiddenLayerSize(), job.getNumLabels(),
+                featuresMatrixWithOnes, labels, params.getLambda(), blockSize, shardPool)) {
+            return optimizer.minimize(cf, nnParams);
+        }
+    }
+
+    //cancels queued and running jobs and waits up to a minute for the runners to stop; an interrupt cuts the wait short
+    @Override
+    public void close() {
+        for (TrainingJobHandle handle : active) {
+            handle.cancel();
+        }
+        runners.shutdownNow();
+        try {
+            runners.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            shardPool.shutdownNow();
+        }
+    }
+
+    //trains ex4 models from different seeds under the machine's cpu count and reports progress every second
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int numJobs = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int cpuBudget = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Triple<DMatrix, DMatrix, Long> params = Main.loadParams(100);
+        List<TrainingJob> jobs = new ArrayList<>(numJobs);
+        for (int idx = 0; idx < numJobs; ++idx) {
+            jobs.add(new TrainingJob("customer-" + idx, params.getLeft(), params.getMiddle(), 10,
+                    new HyperParameters(1, 25, 30, idx), cpuBudget));
+        }
+        try (TrainingScheduler scheduler = new TrainingScheduler(cpuBudget)) {
+            List<TrainingJobHandle> handles = scheduler.submitAll(jobs);
+            while (scheduler.getCompletedJobs() + scheduler.getFailedJobs() + scheduler.getCancelledJobs() < numJobs) {
+                Thread.sleep(1000);
+                logger.info("queued {}, running {}, done {}, {} jobs/min", scheduler.getQueueDepth(), scheduler.getRunningJobs(),
+                        scheduler.getCompletedJobs(), scheduler.getJobsPerMinute());
+            }
+            for (TrainingJobHandle handle : handles) {
+                logger.info("{}", handle);
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+
+//scores unrolled params on data the optimizer doesn't see, higher is better; see ConvergenceOptions.validation
+public interface Validator {
+    double score(DMatrixRMaj params);
+}
@@ -0,0 +1,110 @@
+package com.smagellan.toyml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/*
+ * Wire format between DistributedCostFunction and CostWorker, big endian, over one TCP connection:
+ *   handshake  coordinator -> worker: magic, version
+ *   LOAD       hiddenLayerSize, numLabels, numRows, numCols, float64[numRows * numCols] [ones, X], int32[numRows] labels
+ *   EVALUATE   float64[numParams] unrolled params
+ *   CLOSE      no payload, the worker goes back to accepting connections
+ * Every LOAD and EVALUATE is answered with a status byte: OK followed by the payload (nothing for LOAD;
+ * jSum, delta1 and delta2 for EVALUATE), or ERROR followed by a UTF message.
+ * Arrays travel as raw 8-byte doubles through a reusable buffer, so no per-element stream calls.
+ */
+class WorkerConnection implements AutoCloseable {
+    static final int MAGIC = 0x544D4C57; //"TMLW"
+    static final int VERSION = 1;
+
+    static final byte LOAD = 1;
+    static final byte EVALUATE = 2;
+    static final byte CLOSE = 3;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer view = ByteBuffer.wrap(buffer);
+
+    WorkerConnection(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+    }
+
+    DataInputStream in() {
+        return in;
+    }
+
+    DataOutputStream out() {
+        return out;
+    }
+
+    void writeDoubles(double[] src, int offset, int length) throws IOException {
+        int perChunk = BUFFER_SIZE / Double.BYTES;
+        for (int done = 0; done < length; done += perChunk) {
+            int count = Math.min(perChunk, length - done);
+            view.clear();
+            view.asDoubleBuffer().put(src, offset + done, count);
+            out.write(buffer, 0, count * Double.BYTES);
+        }
+    }
+
+    void readDoubles(double[] dst, int offset, int length) throws IOException {
+        int perChunk = BUFFER_SIZE / Double.BYTES;
+        for (int done = 0; done < length; done += perChunk) {
+            int count = Math.min(perChunk, length - done);
+            in.readFully(buffer, 0, count * Double.BYTES);
+            view.clear();
+            view.asDoubleBuffer().get(dst, offset + done, count);
+        }
+    }
+
+    void writeInts(int[] src, int offset, int length) throws IOException {
+        int perChunk = BUFFER_SIZE / Integer.BYTES;
+        for (int done = 0; done < length; done += perChunk) {
+            int count = Math.min(perChunk, length - done);
+            view.clear();
+            view.asIntBuffer().put(src, offset + done, count);
+            out.write(buffer, 0, count * Integer.BYTES);
+        }
+    }
+
+    void readInts(int[] dst, int offset, int length) throws IOException {
+        int perChunk = BUFFER_SIZE / Integer.BYTES;
+        for (int done = 0; done < length; done += perChunk) {
+            int count = Math.min(perChunk, length - done);
+            in.readFully(buffer, 0, count * Integer.BYTES);
+            view.clear();
+            view.asIntBuffer().get(dst, offset + done, count);
+        }
+    }
+
+    //status byte of a reply; an ERROR reply becomes an IOException with the worker's message
+    void readStatus() throws IOException {
+        byte status = in.readByte();
+        if (status == ERROR) {
+            throw new IOException("worker " + socket.getRemoteSocketAddress() + " failed: " + in.readUTF());
+        }
+        if (status != OK) {
+            throw new IOException("worker " + socket.getRemoteSocketAddress() + " sent status " + status);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
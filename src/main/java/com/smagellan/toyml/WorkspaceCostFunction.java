@@ -0,0 +1,132 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.function.Function;
+
+/*
+ * Same cost and gradient as CostFunction, but every intermediate lives in a workspace allocated once
+ * in the constructor and filled in place. Not thread-safe: one instance per optimization thread.
+ * Features sparse enough (see CsrMatrix.MAX_SPARSE_DENSITY) run the first layer on a CSR copy.
+ * Labels are 0-based class indices; the one-hot yVec constructors convert once and keep only the indices.
+ */
+public class WorkspaceCostFunction implements Function<SimpleMatrix, OptimizedFunctionResult>, DifferentiableFunction, PhaseTimings {
+    private final int inputLayerSize;
+    private final int hiddenLayerSize;
+    private final int numLabels;
+    private final DMatrixRMaj featuresMatrixWithOnes;
+    private final CsrMatrix sparseFeatures;
+    private final int trainExamplesCount;
+    private final int[] labels;
+    private final double lambda;
+
+    private final int theta1NumElements;
+    private final int theta2NumElements;
+
+    private final DMatrixRMaj theta1;
+    private final DMatrixRMaj theta2;
+    private final BackpropWorkspace workspace;
+
+    public WorkspaceCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, DMatrixRMaj featuresMatrixWithOnes, DMatrixRMaj yVec, double lambda) {
+        this(inputLayerSize, hiddenLayerSize, numLabels, featuresMatrixWithOnes, Main.labelsOf(yVec), lambda);
+    }
+
+    public WorkspaceCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, DMatrixRMaj featuresMatrixWithOnes, int[] labels, double lambda) {
+        this(inputLayerSize, hiddenLayerSize, numLabels, featuresMatrixWithOnes, CsrMatrix.sparseOrNull(featuresMatrixWithOnes), labels, lambda);
+    }
+
+    //features without the bias column, always on the sparse path
+    public WorkspaceCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, CsrMatrix features, DMatrixRMaj yVec, double lambda) {
+        this(inputLayerSize, hiddenLayerSize, numLabels, null, features, Main.labelsOf(yVec), lambda);
+    }
+
+    public WorkspaceCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, CsrMatrix features, int[] labels, double lambda) {
+        this(inputLayerSize, hiddenLayerSize, numLabels, null, features, labels, lambda);
+    }
+
+    //exactly one of featuresMatrixWithOnes and sparseFeatures is used: the sparse one if it is not null
+    WorkspaceCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, DMatrixRMaj featuresMatrixWithOnes,
+                          CsrMatrix sparseFeatures, DMatrixRMaj yVec, double lambda) {
+        this(inputLayerSize, hiddenLayerSize, numLabels, featuresMatrixWithOnes, sparseFeatures, Main.labelsOf(yVec), lambda);
+    }
+
+    WorkspaceCostFunction(int inputLayerSize, int hiddenLayerSize, int numLabels, DMatrixRMaj featuresMatrixWithOnes,
+                          CsrMatrix sparseFeatures, int[] labels, double lambda) {
+        this.inputLayerSize = inputLayerSize;
+        this.hiddenLayerSize = hiddenLayerSize;
+        this.numLabels = numLabels;
+        this.featuresMatrixWithOnes = featuresMatrixWithOnes;
+        this.sparseFeatures = sparseFeatures;
+        this.trainExamplesCount = sparseFeatures != null ? sparseFeatures.getNumRows() : featuresMatrixWithOnes.numRows;
+        this.labels = labels;
+        this.lambda = lambda;
+        if (sparseFeatures != null && sparseFeatures.getNumCols() != inputLayerSize) {
+            throw new IllegalArgumentException("features have " + sparseFeatures.getNumCols() + " columns; expect " + inputLayerSize);
+        }
+        BackpropWorkspace.checkLabels(labels, trainExamplesCount, numLabels);
+
+        this.theta1NumElements = hiddenLayerSize * (inputLayerSize + 1);
+        this.theta2NumElements = numLabels * (hiddenLayerSize + 1);
+
+        this.theta1    = new DMatrixRMaj(hiddenLayerSize, inputLayerSize + 1);
+        this.theta2    = new DMatrixRMaj(numLabels, hiddenLayerSize + 1);
+        this.workspace = new BackpropWorkspace(inputLayerSize, hiddenLayerSize, numLabels, trainExamplesCount);
+    }
+
+    public boolean isSparse() {
+        return sparseFeatures != null;
+    }
+
+    @Override
+    public int getNumParams() {
+        return theta1NumElements + theta2NumElements;
+    }
+
+    @Override
+    public double compute(DMatrixRMaj nnParams, DMatrixRMaj unrolledGrad) {
+        if (nnParams.getNumElements() != getNumParams() || unrolledGrad.getNumElements() != getNumParams()) {
+            throw new IllegalArgumentException("expect " + getNumParams() + " params and gradient elements; got "
+                    + nnParams.getNumElements() + " and " + unrolledGrad.getNumElements());
+        }
+        System.arraycopy(nnParams.data, 0, theta1.data, 0, theta1NumElements);
+        System.arraycopy(nnParams.data, theta1NumElements, theta2.data, 0, theta2NumElements);
+
+        double jValue = (sparseFeatures != null ?
+                workspace.accumulate(sparseFeatures, labels, theta1, theta2) :
+                workspace.accumulate(featuresMatrixWithOnes, labels, theta1, theta2)) / trainExamplesCount;
+        double jValueReg = (BackpropWorkspace.regularizedSquaresSum(theta1) + BackpropWorkspace.regularizedSquaresSum(theta2))
+                * lambda / (2 * trainExamplesCount);
+        jValue += jValueReg;
+
+        BackpropWorkspace.regularizedGrad(workspace.getDelta1(), theta1, lambda, trainExamplesCount, unrolledGrad.data, 0);
+        BackpropWorkspace.regularizedGrad(workspace.getDelta2(), theta2, lambda, trainExamplesCount, unrolledGrad.data, theta1NumElements);
+        return jValue;
+    }
+
+    public OptimizedFunctionResult compute(SimpleMatrix nnParams) {
+        DMatrixRMaj unrolledGrad = new DMatrixRMaj(getNumParams(), 1);
+        double jValue = compute(nnParams.getDDRM(), unrolledGrad);
+        return new OptimizedFunctionResult(jValue, SimpleMatrix.wrap(unrolledGrad));
+    }
+
+    @Override
+    public void setPhaseTimingEnabled(boolean enabled) {
+        workspace.setPhaseTimingEnabled(enabled);
+    }
+
+    @Override
+    public long getForwardNanos() {
+        return workspace.getForwardNanos();
+    }
+
+    @Override
+    public long getBackwardNanos() {
+        return workspace.getBackwardNanos();
+    }
+
+    @Override
+    public OptimizedFunctionResult apply(SimpleMatrix simpleMatrix) {
+        return compute(simpleMatrix);
+    }
+}
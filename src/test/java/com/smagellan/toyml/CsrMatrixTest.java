@@ -0,0 +1,48 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class CsrMatrixTest {
+    private static final int INPUT_LAYER_SIZE  = 40;
+    private static final int HIDDEN_LAYER_SIZE = 10;
+    private static final int NUM_LABELS        = 4;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsColumnIndexPastNumCols() {
+        new CsrMatrix(2, 3, new int[] {0, 1, 2}, new int[] {0, 3}, new double[] {1, 2});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDecreasingRowPointers() {
+        new CsrMatrix(3, 3, new int[] {0, 2, 1, 2}, new int[] {0, 1}, new double[] {1, 2});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDescendingColumnsInARow() {
+        new CsrMatrix(1, 3, new int[] {0, 2}, new int[] {2, 1}, new double[] {1, 2});
+    }
+
+    //one CSR copy serves every call, with the same classes as the dense product
+    @Test
+    public void precomputedCsrPredictsLikeDense() {
+        DMatrixRMaj featuresMatrixWithOnes = SyntheticData.sparseFeaturesMatrixWithOnes(200, INPUT_LAYER_SIZE, 0.2, 100);
+        CsrMatrix csr = CsrMatrix.sparseOrNull(featuresMatrixWithOnes);
+        assertNotNull(csr);
+        assertArrayEquals(featuresMatrixWithOnes.data, csr.toDenseWithOnes().data, 0);
+
+        Network network = Network.ex4(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS);
+        for (long seed = 100; seed < 103; ++seed) {
+            SimpleMatrix nnParams = network.initialParams(seed);
+            SimpleMatrix theta1 = network.theta(nnParams, 0);
+            SimpleMatrix theta2 = network.theta(nnParams, 1);
+            SimpleMatrix expected = Predictor.predictDense(theta1, theta2, SimpleMatrix.wrap(featuresMatrixWithOnes));
+            assertTrue(expected.isIdentical(Predictor.predict(theta1, theta2, csr), 0));
+        }
+    }
+}
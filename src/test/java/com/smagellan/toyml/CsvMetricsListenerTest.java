@@ -0,0 +1,25 @@
+package com.smagellan.toyml;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CsvMetricsListenerTest {
+    @Test
+    public void unknownAllocationIsAnEmptyField() {
+        StringWriter out = new StringWriter();
+        CsvMetricsListener listener = new CsvMetricsListener(out);
+        listener.onIteration(new IterationStats(1, true, 0.5, 0.25, 1, 2, 2000000, 1000000, 600000, 400000, -1));
+        listener.onIteration(new IterationStats(2, true, 0.5, 0.25, 1, 2, 2000000, 1000000, 600000, 400000, 4096));
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(CsvMetricsListener.HEADER, lines[0]);
+        int columns = CsvMetricsListener.HEADER.split(",").length;
+        assertTrue(lines[1], lines[1].endsWith(","));
+        assertEquals(columns, lines[1].split(",", -1).length);
+        assertTrue(lines[2], lines[2].endsWith(",2048"));
+    }
+}
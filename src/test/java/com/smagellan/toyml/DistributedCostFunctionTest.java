@@ -0,0 +1,157 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+//in-process CostWorkers on loopback sockets
+public class DistributedCostFunctionTest {
+    private static final int INPUT_LAYER_SIZE  = 20;
+    private static final int HIDDEN_LAYER_SIZE = 5;
+    private static final int NUM_LABELS        = 3;
+    private static final int M                 = 60;
+    private static final double LAMBDA         = 1;
+
+    private final DMatrixRMaj featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(M, INPUT_LAYER_SIZE, 100);
+    private final int[] labels = Main.createLabels(SyntheticData.yMatrix(M, NUM_LABELS, 100));
+    private final SimpleMatrix nnParams = Main.initialNnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100);
+
+    private ServerSocket worker;
+    private ServerSocket otherWorker;
+    private ServerSocket failingWorker;
+
+    @Before
+    public void startWorkers() throws IOException {
+        worker = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        otherWorker = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        failingWorker = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        daemon(() -> new CostWorker(worker).serve());
+        daemon(() -> new CostWorker(otherWorker).serve());
+        daemon(() -> serveOneLoadThenFail(failingWorker));
+    }
+
+    @After
+    public void stopWorkers() throws IOException {
+        worker.close();
+        otherWorker.close();
+        failingWorker.close();
+    }
+
+    @Test(timeout = 60000)
+    public void matchesShardedCostFunction() throws IOException {
+        OptimizedFunctionResult expected;
+        try (ShardedCostFunction sharded = new ShardedCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                featuresMatrixWithOnes, labels, LAMBDA, M / 2, 1)) {
+            expected = sharded.apply(nnParams);
+        }
+        try (DistributedCostFunction cf = new DistributedCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                featuresMatrixWithOnes, labels, LAMBDA, Arrays.asList(address(worker), address(otherWorker)))) {
+            for (int evaluation = 0; evaluation < 2; ++evaluation) {
+                OptimizedFunctionResult actual = cf.apply(nnParams);
+                assertEquals(expected.getFnValue(), actual.getFnValue(), 0);
+                assertTrue(expected.getGradientValue().isIdentical(actual.getGradientValue(), 0));
+            }
+        }
+    }
+
+    //the healthy worker's reply is never read; the instance must not parse it as the next evaluation's
+    @Test(timeout = 60000)
+    public void workerErrorDisconnectsAll() throws IOException {
+        DistributedCostFunction cf = new DistributedCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                featuresMatrixWithOnes, labels, LAMBDA, Arrays.asList(address(failingWorker), address(worker)));
+        try {
+            cf.apply(nnParams);
+            fail("worker error was not reported");
+        } catch (UncheckedIOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("boom"));
+        }
+        try {
+            cf.apply(nnParams);
+            fail("evaluated after a worker error");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(0, cf.getNumWorkers());
+        cf.close();
+
+        //and the healthy worker is free for the next coordinator
+        try (DistributedCostFunction next = new DistributedCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                featuresMatrixWithOnes, labels, LAMBDA, Arrays.asList(address(worker)))) {
+            assertTrue(Double.isFinite(next.apply(nnParams).getFnValue()));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void workerRejectsOversizedShard() throws IOException {
+        try (WorkerConnection connection = new WorkerConnection(new Socket(InetAddress.getLoopbackAddress(), worker.getLocalPort()))) {
+            connection.out().writeInt(WorkerConnection.MAGIC);
+            connection.out().writeInt(WorkerConnection.VERSION);
+            connection.out().writeByte(WorkerConnection.LOAD);
+            connection.out().writeInt(HIDDEN_LAYER_SIZE);
+            connection.out().writeInt(NUM_LABELS);
+            connection.out().writeInt(1 << 20);
+            connection.out().writeInt(1 << 12);
+            connection.out().flush();
+            connection.readStatus();
+            fail("worker accepted a 2^32 element shard");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("bad shard"));
+        }
+    }
+
+    //answers LOAD, then replies ERROR to the first EVALUATE
+    private static void serveOneLoadThenFail(ServerSocket serverSocket) throws IOException {
+        try (WorkerConnection connection = new WorkerConnection(serverSocket.accept())) {
+            connection.in().readInt();
+            connection.in().readInt();
+            connection.in().readByte();
+            connection.in().readInt();
+            connection.in().readInt();
+            int numRows = connection.in().readInt();
+            int numCols = connection.in().readInt();
+            connection.readDoubles(new double[numRows * numCols], 0, numRows * numCols);
+            connection.readInts(new int[numRows], 0, numRows);
+            connection.out().writeByte(WorkerConnection.OK);
+            connection.out().flush();
+            connection.in().readByte();
+            connection.out().writeByte(WorkerConnection.ERROR);
+            connection.out().writeUTF("boom");
+            connection.out().flush();
+            connection.in().read();
+        }
+    }
+
+    private static InetSocketAddress address(ServerSocket serverSocket) {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+    }
+
+    private static void daemon(IoTask task) {
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                //server socket closed by the test
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private interface IoTask {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,141 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.Test;
+
+import java.util.function.Function;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class EvaluationCacheTest {
+    private static final int NUM_PARAMS = 4;
+    //what the store charges per entry: params, gradient and the fixed overhead
+    private static final long ENTRY_BYTES = 2L * NUM_PARAMS * Double.BYTES + 128;
+
+    @Test
+    public void exactHitReturnsStoredGradient() {
+        CountingFunction fn = new CountingFunction();
+        EvaluationCache cache = new EvaluationCache(fn, NUM_PARAMS, 10 * ENTRY_BYTES);
+        DMatrixRMaj expectedGrad = new DMatrixRMaj(NUM_PARAMS, 1);
+        double expected = cache.compute(params(0.1), expectedGrad);
+
+        DMatrixRMaj grad = new DMatrixRMaj(NUM_PARAMS, 1);
+        double actual = cache.compute(params(0.1), grad);
+        assertEquals(1, fn.calls);
+        assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual));
+        for (int i = 0; i < NUM_PARAMS; ++i) {
+            assertEquals(Double.doubleToRawLongBits(expectedGrad.data[i]), Double.doubleToRawLongBits(grad.data[i]));
+        }
+
+        //equal as doubles but not bit for bit: a different point as far as the cache goes
+        DMatrixRMaj negativeZero = params(0.1);
+        negativeZero.data[0] = -0.0;
+        DMatrixRMaj positiveZero = params(0.1);
+        positiveZero.data[0] = 0.0;
+        cache.compute(negativeZero, grad);
+        cache.compute(positiveZero, grad);
+        assertEquals(3, fn.calls);
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedByBytes() {
+        CountingFunction fn = new CountingFunction();
+        EvaluationCache cache = new EvaluationCache(fn, NUM_PARAMS, 3 * ENTRY_BYTES + ENTRY_BYTES / 2);
+        DMatrixRMaj grad = new DMatrixRMaj(NUM_PARAMS, 1);
+        cache.compute(params(1), grad);
+        cache.compute(params(2), grad);
+        cache.compute(params(3), grad);
+        assertEquals(3 * ENTRY_BYTES, cache.getBytes());
+        assertEquals(0, cache.getEvictions());
+
+        //1 is used again, so 2 is the least recently used one when 4 comes in
+        cache.compute(params(1), grad);
+        cache.compute(params(4), grad);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getSize());
+        cache.compute(params(3), grad);
+        cache.compute(params(1), grad);
+        assertEquals(4, fn.calls);
+        cache.compute(params(2), grad);
+        assertEquals(5, fn.calls);
+        //2 pushed out 4
+        cache.compute(params(4), grad);
+        assertEquals(6, fn.calls);
+
+        assertEquals(3, cache.getHits());
+        assertEquals(6, cache.getMisses());
+        assertEquals(3, cache.getEvictions());
+        assertEquals(3 * ENTRY_BYTES, cache.getBytes());
+    }
+
+    @Test
+    public void entryLargerThanMaxBytesIsNotStored() {
+        CountingFunction fn = new CountingFunction();
+        EvaluationCache cache = new EvaluationCache(fn, NUM_PARAMS, ENTRY_BYTES - 1);
+        DMatrixRMaj grad = new DMatrixRMaj(NUM_PARAMS, 1);
+        double first = cache.compute(params(1), grad);
+        double second = cache.compute(params(1), grad);
+        assertEquals(first, second, 0);
+        assertEquals(2, fn.calls);
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getBytes());
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void sharedStoreServesOtherInstance() {
+        CountingFunction fn = new CountingFunction();
+        EvaluationCache cache = new EvaluationCache(fn, NUM_PARAMS, 10 * ENTRY_BYTES);
+        CountingFunction otherFn = new CountingFunction();
+        EvaluationCache other = new EvaluationCache(otherFn, cache);
+        SimpleMatrix params = SimpleMatrix.wrap(params(2));
+        OptimizedFunctionResult expected = cache.apply(params);
+        OptimizedFunctionResult actual = other.apply(params);
+        assertEquals(0, otherFn.calls);
+        assertEquals(expected.getFnValue(), actual.getFnValue(), 0);
+        assertArrayEquals(expected.getGradientValue().getDDRM().data, actual.getGradientValue().getDDRM().data, 0);
+        assertEquals(1, other.getHits());
+    }
+
+    private static DMatrixRMaj params(double seed) {
+        DMatrixRMaj result = new DMatrixRMaj(NUM_PARAMS, 1);
+        for (int i = 0; i < NUM_PARAMS; ++i) {
+            result.data[i] = seed / (i + 3);
+        }
+        return result;
+    }
+
+    //sum of sines; a gradient full of rounding, so a copy that isn't exact shows
+    private static class CountingFunction implements Function<SimpleMatrix, OptimizedFunctionResult>, DifferentiableFunction {
+        private int calls;
+
+        @Override
+        public int getNumParams() {
+            return NUM_PARAMS;
+        }
+
+        @Override
+        public double compute(DMatrixRMaj params, DMatrixRMaj grad) {
+            ++calls;
+            double sum = 0;
+            for (int i = 0; i < NUM_PARAMS; ++i) {
+                sum += Math.sin(params.data[i]);
+                grad.data[i] = Math.cos(params.data[i]);
+            }
+            return sum;
+        }
+
+        @Override
+        public OptimizedFunctionResult apply(SimpleMatrix params) {
+            DMatrixRMaj grad = new DMatrixRMaj(NUM_PARAMS, 1);
+            double fnValue = compute(params.getDDRM(), grad);
+            return new OptimizedFunctionResult(fnValue, SimpleMatrix.wrap(grad));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FmincgInPlaceTest {
+    private static final int INPUT_LAYER_SIZE  = 400;
+    private static final int HIDDEN_LAYER_SIZE = 25;
+    private static final int NUM_LABELS        = 10;
+    private static final int MAX_LENGTH        = 100;
+
+    @Test
+    public void lineSearchesMatchFmincg() {
+        assertIdentical(costFunction(300, 1, 100), 30);
+    }
+
+    @Test
+    public void evaluationBudgetMatchesFmincg() {
+        assertIdentical(costFunction(300, 1, 101), -40);
+    }
+
+    //ten rows and no regularization: the cost reaches 0 and the run ends on a failed line search
+    @Test
+    public void failedLineSearchMatchesFmincg() {
+        OptimizationResult actual = assertIdentical(costFunction(10, 0, 102), 200);
+        assertEquals(OptimizationResult.StopReason.LINE_SEARCH_FAILED, actual.getStopReason());
+    }
+
+    //ConvergenceOptions with everything off must not change a single bit of the run
+    @Test
+    public void defaultConvergenceOptionsMatchFmincg() {
+        WorkspaceCostFunction costFunction = costFunction(300, 1, 100);
+        SimpleMatrix nnParams = nnParams();
+        OptimizationResult expected = OptimizationFunctions.fmincg(costFunction, nnParams, 30);
+        OptimizationResult actual = OptimizationFunctions.fmincgInPlace(costFunction, nnParams, 30, 1, null, null, null,
+                new ConvergenceOptions());
+        assertEquals(OptimizationResult.StopReason.MAX_ITERATIONS, actual.getStopReason());
+        assertEquals(expected.getNumIterations(), actual.getNumIterations());
+        assertTrue("X differs", expected.getxVal().isIdentical(actual.getxVal(), 0));
+        assertTrue("fX differs", expected.getfXVal().isIdentical(actual.getfXVal(), 0));
+    }
+
+    @Test
+    public void stopsOnCostTolerance() {
+        OptimizationResult result = minimize(costFunction(300, 1, 100), new ConvergenceOptions().costTolerance(1e-2));
+        assertEquals(OptimizationResult.StopReason.COST_TOLERANCE, result.getStopReason());
+        double[] fX = result.getfXVal().getDDRM().data;
+        int last = result.getfXVal().getNumElements() - 1;
+        assertTrue(last > 0 && last + 1 < MAX_LENGTH);
+        double scale = Math.max(Math.max(Math.abs(fX[last - 1]), Math.abs(fX[last])), 1);
+        assertTrue((fX[last - 1] - fX[last]) / scale <= 1e-2);
+    }
+
+    //any accepted point of the first line search is within a huge tolerance
+    @Test
+    public void stopsOnGradientTolerance() {
+        OptimizationResult result = minimize(costFunction(300, 1, 100), new ConvergenceOptions().gradientTolerance(1e9));
+        assertEquals(OptimizationResult.StopReason.GRADIENT_TOLERANCE, result.getStopReason());
+        assertEquals(1, result.getNumIterations());
+    }
+
+    //checked between iterations, so the run may overshoot by one line search
+    @Test
+    public void stopsOnEvaluationBudget() {
+        CountingFunction counting = new CountingFunction(costFunction(300, 1, 100), 0);
+        OptimizationResult result = minimize(counting, new ConvergenceOptions().evaluationBudget(10));
+        assertEquals(OptimizationResult.StopReason.EVALUATION_BUDGET, result.getStopReason());
+        assertTrue(counting.evaluations + " evaluations", counting.evaluations >= 10 && counting.evaluations < 10 + OptimizationFunctions.MAX);
+    }
+
+    @Test
+    public void stopsOnTimeBudget() {
+        CountingFunction slow = new CountingFunction(costFunction(300, 1, 100), 20);
+        OptimizationResult result = minimize(slow, new ConvergenceOptions().timeBudget(100));
+        assertEquals(OptimizationResult.StopReason.TIME_BUDGET, result.getStopReason());
+        assertTrue(result.getNumIterations() + " iterations", result.getNumIterations() < MAX_LENGTH);
+    }
+
+    //scores only get worse, so the run stops after patience validations and returns the first validated point
+    @Test
+    public void stopsOnValidationPatienceWithBestParams() {
+        List<double[]> scored = new ArrayList<>();
+        Validator validator = params -> {
+            scored.add(Arrays.copyOf(params.data, params.getNumElements()));
+            return -scored.size();
+        };
+        OptimizationResult result = minimize(costFunction(300, 1, 100), new ConvergenceOptions().validation(validator, 2, 3, 0));
+        assertEquals(OptimizationResult.StopReason.VALIDATION_PATIENCE, result.getStopReason());
+        assertEquals(4, scored.size());
+        assertEquals(8, result.getNumIterations());
+        assertArrayEquals(scored.get(0), result.getxVal().getDDRM().data, 0);
+    }
+
+    private static OptimizationResult minimize(DifferentiableFunction costFunction, ConvergenceOptions convergence) {
+        return OptimizationFunctions.fmincgInPlace(costFunction, nnParams(), MAX_LENGTH, 1, null, null, null, convergence);
+    }
+
+    private static SimpleMatrix nnParams() {
+        return SimpleMatrix.wrap(SyntheticData.nnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100));
+    }
+
+    private static OptimizationResult assertIdentical(WorkspaceCostFunction costFunction, int length) {
+        SimpleMatrix nnParams = SimpleMatrix.wrap(SyntheticData.nnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100));
+        OptimizationResult expected = OptimizationFunctions.fmincg(costFunction, nnParams, length);
+        OptimizationResult actual = OptimizationFunctions.fmincgInPlace(costFunction, nnParams, length, 1);
+        assertEquals(expected.getNumIterations(), actual.getNumIterations());
+        assertEquals(expected.getStopReason(), actual.getStopReason());
+        assertTrue("X differs", expected.getxVal().isIdentical(actual.getxVal(), 0));
+        assertTrue("fX differs", expected.getfXVal().isIdentical(actual.getfXVal(), 0));
+        return actual;
+    }
+
+    private static WorkspaceCostFunction costFunction(int trainExamples, double lambda, long seed) {
+        DMatrixRMaj featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(trainExamples, INPUT_LAYER_SIZE, seed);
+        int[] labels = Main.createLabels(SyntheticData.yMatrix(trainExamples, NUM_LABELS, seed));
+        return new WorkspaceCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, featuresMatrixWithOnes, labels, lambda);
+    }
+
+    private static class CountingFunction implements DifferentiableFunction {
+        private final DifferentiableFunction fn;
+        private final long sleepMillis;
+        private int evaluations;
+
+        private CountingFunction(DifferentiableFunction fn, long sleepMillis) {
+            this.fn = fn;
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public int getNumParams() {
+            return fn.getNumParams();
+        }
+
+        @Override
+        public double compute(DMatrixRMaj params, DMatrixRMaj grad) {
+            ++evaluations;
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return fn.compute(params, grad);
+        }
+    }
+}
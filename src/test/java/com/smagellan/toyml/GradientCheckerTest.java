@@ -0,0 +1,127 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+//every cost function implementation against central differences, on a small ex4-shaped problem
+public class GradientCheckerTest {
+    private static final int INPUT_LAYER_SIZE  = 20;
+    private static final int HIDDEN_LAYER_SIZE = 5;
+    private static final int NUM_LABELS        = 3;
+    private static final int M                 = 50;
+    private static final int BATCH_SIZE        = 16;
+    private static final double LAMBDA         = 1;
+    private static final int PARALLELISM       = 2;
+
+    private final DMatrixRMaj featuresMatrixWithOnes = SyntheticData.sparseFeaturesMatrixWithOnes(M, INPUT_LAYER_SIZE, 0.3, 100);
+    private final DMatrixRMaj yMatrix = SyntheticData.yMatrix(M, NUM_LABELS, 100);
+    private final int[] labels = Main.createLabels(yMatrix);
+    private final Network ex4 = Network.ex4(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS);
+    private final SimpleMatrix nnParams = ex4.initialParams(100);
+
+    @Test
+    public void costFunction() {
+        check(() -> new CostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, SimpleMatrix.wrap(featuresMatrixWithOnes), labels, LAMBDA),
+                nnParams, ex4);
+    }
+
+    @Test
+    public void workspaceCostFunction() {
+        check(() -> new WorkspaceCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, featuresMatrixWithOnes, labels, LAMBDA),
+                nnParams, ex4);
+    }
+
+    @Test
+    public void sparseWorkspaceCostFunction() {
+        check(() -> new WorkspaceCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, CsrMatrix.fromDense(featuresMatrixWithOnes, 1),
+                labels, LAMBDA), nnParams, ex4);
+    }
+
+    @Test
+    public void miniBatchCostFunctionFullBatch() {
+        check(() -> new MiniBatchCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, featuresMatrixWithOnes, labels, LAMBDA, BATCH_SIZE),
+                nnParams, ex4);
+    }
+
+    //the path SGD and Adam take: one shuffled batch through compute(params, rowIndices, from, to)
+    @Test
+    public void miniBatchCostFunctionBatch() {
+        int[] rowIndices = shuffledRows(101);
+        check(() -> {
+            MiniBatchCostFunction cf = new MiniBatchCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                    featuresMatrixWithOnes, labels, LAMBDA, BATCH_SIZE);
+            return params -> cf.compute(params, rowIndices, BATCH_SIZE, 2 * BATCH_SIZE);
+        }, nnParams, ex4);
+    }
+
+    //batch costs and gradients must average to the full-batch ones, or mini-batch optimizers minimize another objective
+    @Test
+    public void miniBatchesAverageToFullBatch() {
+        int[] rowIndices = shuffledRows(102);
+        int batchSize = M / 5;
+        MiniBatchCostFunction cf = new MiniBatchCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                featuresMatrixWithOnes, labels, LAMBDA, batchSize);
+        double meanCost = 0;
+        SimpleMatrix meanGrad = new SimpleMatrix(nnParams.getNumElements(), 1);
+        for (int from = 0; from < M; from += batchSize) {
+            OptimizedFunctionResult batch = cf.compute(nnParams, rowIndices, from, from + batchSize);
+            meanCost += batch.getFnValue() / 5;
+            meanGrad = meanGrad.plus(batch.getGradientValue().divide(5));
+        }
+        OptimizedFunctionResult full = cf.apply(nnParams);
+        assertEquals(full.getFnValue(), meanCost, 1e-12);
+        double maxError = full.getGradientValue().minus(meanGrad).elementMaxAbs();
+        assertTrue("mean batch gradient differs by " + maxError, maxError < 1e-12);
+    }
+
+    @Test
+    public void shardedCostFunction() {
+        check(() -> new ShardedCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, featuresMatrixWithOnes, labels, LAMBDA,
+                BATCH_SIZE, 2), nnParams, ex4);
+    }
+
+    @Test
+    public void streamingCostFunction() {
+        int[] rows = new int[M];
+        for (int row = 0; row < M; ++row) {
+            rows[row] = row;
+        }
+        check(() -> new StreamingCostFunction(HIDDEN_LAYER_SIZE, new RowSubsetChunkSource(featuresMatrixWithOnes, labels, NUM_LABELS, rows),
+                LAMBDA, BATCH_SIZE), nnParams, ex4);
+    }
+
+    @Test
+    public void networkCostFunction() {
+        for (Activation hidden : new Activation[] {Activation.TANH, Activation.RELU}) {
+            for (Activation output : new Activation[] {Activation.SIGMOID, Activation.SOFTMAX}) {
+                Network network = new Network(INPUT_LAYER_SIZE, new DenseLayer(HIDDEN_LAYER_SIZE, hidden),
+                        new DenseLayer(HIDDEN_LAYER_SIZE, hidden), new DenseLayer(NUM_LABELS, output));
+                check(() -> new NetworkCostFunction(network, featuresMatrixWithOnes, labels, LAMBDA), network.initialParams(100), network);
+            }
+        }
+    }
+
+    private static void check(Supplier<? extends Function<SimpleMatrix, OptimizedFunctionResult>> functions, SimpleMatrix params,
+                              Network network) {
+        new GradientChecker(functions, PARALLELISM).check(params, network, 0, 0).assertMaxRelativeError(GradientChecker.TOLERANCE);
+    }
+
+    private static int[] shuffledRows(long seed) {
+        Random random = new Random(seed);
+        int[] result = new int[M];
+        for (int row = 0; row < M; ++row) {
+            int j = random.nextInt(row + 1);
+            result[row] = result[j];
+            result[j] = row;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,32 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class HyperParameterSearchTest {
+    private static final int NUM_LABELS = 3;
+
+    //grid order interleaves the groups; shared caches must neither change a result nor reorder the results
+    @Test
+    public void sharedCachesMatchSeparateRuns() {
+        DMatrixRMaj featuresMatrix = SyntheticData.featuresMatrix(120, 20, 100);
+        DMatrixRMaj yMatrix = SyntheticData.yMatrix(120, NUM_LABELS, 100);
+        List<HyperParameters> candidates = HyperParameters.grid(new double[] {0.3, 1}, new int[] {5},
+                new int[] {5, 10}, new long[] {100, 200});
+        HyperParameterSearch search = new HyperParameterSearch(featuresMatrix, yMatrix, NUM_LABELS, 3, 100);
+        List<HyperParameterResult> results = search.run(candidates, 3);
+        assertEquals(candidates.size(), results.size());
+        for (int idx = 0; idx < candidates.size(); ++idx) {
+            HyperParameterResult alone = search.run(Collections.singletonList(candidates.get(idx)), 1).get(0);
+            assertSame(candidates.get(idx), results.get(idx).getParams());
+            assertEquals(alone.getAccuracy(), results.get(idx).getAccuracy(), 0);
+            assertEquals(alone.getCost(), results.get(idx).getCost(), 0);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.junit.Test;
+import us.hebi.matlab.mat.ejml.Mat5Ejml;
+import us.hebi.matlab.mat.format.Mat5;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+//out-of-range labels would index a neighbouring row of the workspaces instead of failing
+public class LabelValidationTest {
+    private static final int NUM_FEATURES = 20;
+    private static final int NUM_LABELS   = 3;
+    private static final int M            = 50;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rowSubsetRejectsOutOfRangeLabel() {
+        int[] labels = Main.createLabels(SyntheticData.yMatrix(M, NUM_LABELS, 100));
+        labels[7] = NUM_LABELS;
+        new RowSubsetChunkSource(SyntheticData.featuresMatrixWithOnes(M, NUM_FEATURES, 100), labels, NUM_LABELS, new int[] {0, 7});
+    }
+
+    @Test
+    public void streamingRejectsOutOfRangeChunkLabel() {
+        GeneratedChunkSource source = new GeneratedChunkSource(M, NUM_FEATURES, NUM_LABELS, (rowIdx, features, offset) -> {
+            features[offset] = rowIdx;
+            return rowIdx == 37 ? -1 : (int) (rowIdx % NUM_LABELS);
+        });
+        try (StreamingCostFunction cf = new StreamingCostFunction(5, source, 1, 16)) {
+            cf.apply(Main.initialNnParams(NUM_FEATURES, 5, NUM_LABELS, 100));
+            fail("label -1 was accepted");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("row 37"));
+        }
+    }
+
+    @Test
+    public void matFileRejectsZeroLabel() throws IOException {
+        DMatrixRMaj yMatrix = SyntheticData.yMatrix(M, NUM_LABELS, 100);
+        yMatrix.set(11, 0, 0);
+        File file = File.createTempFile("labels", ".mat");
+        try {
+            Mat5.writeToFile(Mat5.newMatFile()
+                    .addArray("X", Mat5Ejml.asArray(SyntheticData.featuresMatrix(M, NUM_FEATURES, 100)))
+                    .addArray("y", Mat5Ejml.asArray(yMatrix)), file);
+            new FeaturePipeline(FeaturePipeline.Normalization.NONE, 1).load(file);
+            fail("label 0 was accepted");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("row 11"));
+        } finally {
+            file.delete();
+        }
+    }
+}
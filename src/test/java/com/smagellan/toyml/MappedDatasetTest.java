@@ -0,0 +1,69 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedDatasetTest {
+    private static final int NUM_LABELS = 10;
+    //magic, version, numRows, numCols, numLabels, 12 bytes reserved
+    private static final int HEADER_SIZE = 32;
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("mapped", ".tmld");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        DMatrixRMaj featuresMatrix = SyntheticData.featuresMatrix(100, 20, 100);
+        DMatrixRMaj yMatrix = SyntheticData.yMatrix(100, NUM_LABELS, 100);
+        MappedDataset.write(file, featuresMatrix, yMatrix, NUM_LABELS);
+        try (MappedDataset dataset = MappedDataset.open(file)) {
+            int[] labels = new int[100];
+            dataset.readLabels(0, 100, labels);
+            assertArrayEquals(Main.createLabels(yMatrix), labels);
+            double[] rows = new double[100 * 20];
+            dataset.readRows(0, 100, rows);
+            assertArrayEquals(featuresMatrix.data, rows, 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writeRejectsLabelOutOfRange() throws IOException {
+        DMatrixRMaj yMatrix = SyntheticData.yMatrix(100, NUM_LABELS, 101);
+        yMatrix.set(42, 0, NUM_LABELS + 1);
+        MappedDataset.write(file, SyntheticData.featuresMatrix(100, 20, 101), yMatrix, NUM_LABELS);
+    }
+
+    @Test
+    public void openRejectsLabelOutOfRange() throws IOException {
+        MappedDataset.write(file, SyntheticData.featuresMatrix(100, 20, 102), SyntheticData.yMatrix(100, NUM_LABELS, 102), NUM_LABELS);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(HEADER_SIZE + 42 * Integer.BYTES);
+            raw.writeInt(-1);
+        }
+        try {
+            MappedDataset.open(file).close();
+            fail("opened a dataset with label -1");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("row 42"));
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.smagellan.toyml;
+
+import org.ejml.simple.SimpleMatrix;
+import org.junit.Test;
+
+public class MiniBatchCostFunctionTest {
+    private static final int INPUT_LAYER_SIZE  = 20;
+    private static final int HIDDEN_LAYER_SIZE = 5;
+    private static final int NUM_LABELS        = 3;
+    private static final int M                 = 40;
+
+    //the batch buffers hold maxBatchSize rows; a larger batch must not reach gatherRows
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBatchLargerThanMaxBatchSize() {
+        MiniBatchCostFunction cf = new MiniBatchCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                SyntheticData.featuresMatrixWithOnes(M, INPUT_LAYER_SIZE, 100), Main.createLabels(SyntheticData.yMatrix(M, NUM_LABELS, 100)),
+                1, 10);
+        int[] rowIndices = new int[M];
+        for (int row = 0; row < M; ++row) {
+            rowIndices[row] = row;
+        }
+        SimpleMatrix nnParams = Main.initialNnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100);
+        cf.compute(nnParams, rowIndices, 5, 16);
+    }
+}
@@ -0,0 +1,105 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MlFunctionsTest {
+    private static final double FAST_EXP_MAX_REL_ERROR = 1e-8;
+    private static final double FAST_SIGMOID_MAX_ABS_ERROR = 1e-8;
+
+    @Test
+    public void rawKernelsMatchScalarSigmoid() {
+        DMatrixRMaj z = gaussian(300, 25, 8, 100);
+        double[] sigmoid = z.data.clone();
+        MlFunctions.sigmoid(sigmoid, 0, sigmoid.length);
+        double[] gradient = z.data.clone();
+        MlFunctions.sigmoidGradient(gradient, 0, gradient.length);
+        double[] fromActivation = new double[sigmoid.length];
+        MlFunctions.sigmoidGradientFromActivation(sigmoid, 0, sigmoid.length, fromActivation, 0);
+        for (int i = 0; i < z.data.length; ++i) {
+            double expected = MlFunctions.sigmoid(z.data[i]);
+            assertEquals(expected, sigmoid[i], 0);
+            assertEquals(MlFunctions.sigmoidGradient(z.data[i]), gradient[i], 0);
+            assertEquals(expected * (1 - expected), fromActivation[i], 0);
+        }
+        SimpleMatrix wrapped = MlFunctions.sigmoid(SimpleMatrix.wrap(z));
+        assertTrue(wrapped.isIdentical(SimpleMatrix.wrap(new DMatrixRMaj(z.numRows, z.numCols, true, sigmoid)), 0));
+    }
+
+    @Test
+    public void withOnesKernelsMatchScalarSigmoid() {
+        DMatrixRMaj z = gaussian(300, 25, 8, 101);
+        DMatrixRMaj exact = new DMatrixRMaj(z.numRows, z.numCols + 1);
+        DMatrixRMaj fast = new DMatrixRMaj(z.numRows, z.numCols + 1);
+        MlFunctions.sigmoidWithOnes(z, exact);
+        MlFunctions.fastSigmoidWithOnes(z, fast);
+        for (int row = 0; row < z.numRows; ++row) {
+            assertEquals(1, exact.get(row, 0), 0);
+            assertEquals(1, fast.get(row, 0), 0);
+            for (int col = 0; col < z.numCols; ++col) {
+                double expected = MlFunctions.sigmoid(z.get(row, col));
+                assertEquals(expected, exact.get(row, col + 1), 0);
+                assertEquals(expected, fast.get(row, col + 1), FAST_SIGMOID_MAX_ABS_ERROR);
+            }
+        }
+    }
+
+    @Test
+    public void fastSigmoidIsCloseToSigmoid() {
+        DMatrixRMaj z = gaussian(1000, 25, 8, 102);
+        double[] fast = z.data.clone();
+        MlFunctions.fastSigmoid(fast, 0, fast.length);
+        for (int i = 0; i < z.data.length; ++i) {
+            assertEquals(MlFunctions.sigmoid(z.data[i]), fast[i], FAST_SIGMOID_MAX_ABS_ERROR);
+        }
+        for (double arg : new double[]{-800, -745, -709.5, -40, 0, 40, 709.5, 745, 800}) {
+            assertEquals("sigmoid(" + arg + ")", MlFunctions.sigmoid(arg), MlFunctions.fastSigmoid(arg), FAST_SIGMOID_MAX_ABS_ERROR);
+        }
+    }
+
+    @Test
+    public void fastExpIsCloseToExp() {
+        for (double x = -708; x <= 709; x += 0.173) {
+            assertRelativelyClose(x);
+        }
+    }
+
+    //between 709 and ln(Double.MAX_VALUE) exp is still finite, though 2^k alone is not
+    @Test
+    public void fastExpIsFiniteUpToExpOverflow() {
+        for (double x = 709; x <= 709.78; x += 0.01) {
+            assertRelativelyClose(x);
+        }
+        assertRelativelyClose(709.782712893384);
+        assertEquals(Double.POSITIVE_INFINITY, MlFunctions.fastExp(709.79), 0);
+        assertEquals(Double.POSITIVE_INFINITY, MlFunctions.fastExp(1000), 0);
+    }
+
+    @Test
+    public void fastExpUnderflowsToZero() {
+        assertEquals(0, MlFunctions.fastExp(-709), Double.MIN_NORMAL);
+        assertEquals(0, MlFunctions.fastExp(-1000), 0);
+    }
+
+    private static void assertRelativelyClose(double x) {
+        double expected = Math.exp(x);
+        double actual = MlFunctions.fastExp(x);
+        assertTrue("fastExp(" + x + ") = " + actual + ", exp = " + expected,
+                Math.abs(actual - expected) <= FAST_EXP_MAX_REL_ERROR * expected);
+    }
+
+    private static DMatrixRMaj gaussian(int rows, int cols, double stdDev, long seed) {
+        Random r = new Random(seed);
+        DMatrixRMaj result = new DMatrixRMaj(rows, cols);
+        for (int i = 0; i < result.data.length; ++i) {
+            result.data[i] = r.nextGaussian() * stdDev;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,138 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModelFileTest {
+    private static final int INPUT_LAYER_SIZE  = 20;
+    private static final int HIDDEN_LAYER_SIZE = 5;
+    private static final int NUM_LABELS        = 3;
+    private static final int M                 = 60;
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("model", ".tmlm");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void writeThenRead() throws IOException {
+        Network network = new Network(INPUT_LAYER_SIZE, new DenseLayer(HIDDEN_LAYER_SIZE, Activation.RELU),
+                new DenseLayer(HIDDEN_LAYER_SIZE, Activation.TANH), new DenseLayer(NUM_LABELS, Activation.SOFTMAX));
+        SimpleMatrix params = network.initialParams(100);
+        double[] direction = network.initialParams(101).getDDRM().data;
+        ModelFile.write(file, network, params.getDDRM(), new FmincgState(7, 0.25, -3.5, direction));
+
+        SavedModel model = ModelFile.read(file);
+        assertEquals(INPUT_LAYER_SIZE, model.getNetwork().getInputSize());
+        assertEquals(network.getLayers().toString(), model.getNetwork().getLayers().toString());
+        assertArrayEquals(params.getDDRM().data, model.getParams().getDDRM().data, 0);
+        FmincgState state = model.getFmincgState();
+        assertEquals(7, state.getIteration());
+        assertEquals(0.25, state.getZ1(), 0);
+        assertEquals(-3.5, state.getD1(), 0);
+        assertArrayEquals(direction, state.getDirection(), 0);
+
+        ModelFile.write(file, network, params);
+        assertNull(ModelFile.read(file).getFmincgState());
+    }
+
+    @Test
+    public void rejectsBadMagic() throws IOException {
+        writeModel();
+        overwriteInt(0, 0x12345678);
+        assertRejected("not a model file");
+    }
+
+    @Test
+    public void rejectsBadVersion() throws IOException {
+        writeModel();
+        overwriteInt(Integer.BYTES, ModelFile.VERSION + 1);
+        assertRejected("version");
+    }
+
+    @Test
+    public void rejectsTruncatedFile() throws IOException {
+        writeModel();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - Double.BYTES);
+        }
+        assertRejected("bytes");
+    }
+
+    //deeper models have no InferenceEngine; that is the model's state, not a missing feature
+    @Test(expected = IllegalStateException.class)
+    public void deepModelHasNoInferenceEngine() {
+        Network network = new Network(INPUT_LAYER_SIZE, new DenseLayer(HIDDEN_LAYER_SIZE, Activation.RELU),
+                new DenseLayer(HIDDEN_LAYER_SIZE, Activation.TANH), new DenseLayer(NUM_LABELS, Activation.SOFTMAX));
+        new SavedModel(network, network.initialParams(100), null).newInferenceEngine();
+    }
+
+    //a run stopped after iteration k and resumed from its checkpoint ends exactly where the uninterrupted run does
+    @Test
+    public void resumeMatchesUninterruptedRun() throws IOException {
+        int length = 12;
+        int k = 5;
+        Network network = Network.ex4(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS);
+        DMatrixRMaj featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(M, INPUT_LAYER_SIZE, 100);
+        int[] labels = Main.createLabels(SyntheticData.yMatrix(M, NUM_LABELS, 100));
+        WorkspaceCostFunction cf = new WorkspaceCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                featuresMatrixWithOnes, labels, 1);
+        SimpleMatrix nnParams = network.initialParams(100);
+
+        OptimizationResult expected = new FmincgOptimizer(length).minimize(cf, nnParams);
+        OptimizationResult interrupted = new FmincgOptimizer(k, 1, null, new ModelCheckpointer(file, network, 1))
+                .minimize(cf, nnParams);
+        SavedModel checkpoint = ModelFile.read(file);
+        assertEquals(k, checkpoint.getFmincgState().getIteration());
+        OptimizationResult resumed = new FmincgOptimizer(length).resume(cf, checkpoint);
+
+        assertEquals(expected.getNumIterations(), resumed.getNumIterations());
+        assertTrue("X differs", expected.getxVal().isIdentical(resumed.getxVal(), 0));
+        double[] expectedFx = expected.getfXVal().getDDRM().data;
+        int done = interrupted.getfXVal().getNumElements();
+        assertArrayEquals(Arrays.copyOfRange(expectedFx, done, expected.getfXVal().getNumElements()),
+                Arrays.copyOf(resumed.getfXVal().getDDRM().data, resumed.getfXVal().getNumElements()), 0);
+    }
+
+    private void writeModel() throws IOException {
+        Network network = Network.ex4(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS);
+        ModelFile.write(file, network, network.initialParams(100));
+    }
+
+    private void overwriteInt(long pos, int value) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(pos);
+            raf.writeInt(Integer.reverseBytes(value));
+        }
+    }
+
+    private void assertRejected(String reason) {
+        try {
+            ModelFile.read(file);
+            fail("read a damaged model file");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(reason));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NetworkCostFunctionTest {
+    private static final int INPUT_LAYER_SIZE  = 400;
+    private static final int HIDDEN_LAYER_SIZE = 25;
+    private static final int NUM_LABELS        = 10;
+
+    //odd row count, so the blocked kernels run their remainder loops too
+    @Test
+    public void ex4NetworkIsIdenticalToWorkspaceCostFunction() {
+        DMatrixRMaj featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(103, INPUT_LAYER_SIZE, 100);
+        int[] labels = Main.createLabels(SyntheticData.yMatrix(103, NUM_LABELS, 100));
+        DMatrixRMaj nnParams = SyntheticData.nnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100);
+
+        DMatrixRMaj expectedGrad = new DMatrixRMaj(nnParams.numRows, 1);
+        double expected = new WorkspaceCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, featuresMatrixWithOnes, labels, 1)
+                .compute(nnParams, expectedGrad);
+        DMatrixRMaj actualGrad = new DMatrixRMaj(nnParams.numRows, 1);
+        double actual = new NetworkCostFunction(Network.ex4(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS), featuresMatrixWithOnes, labels, 1)
+                .compute(nnParams, actualGrad);
+        assertEquals(expected, actual, 0);
+        assertArrayEquals(expectedGrad.data, actualGrad.data, 0);
+    }
+
+    //sigmoid rounds to exactly 1 at the true class; a one-hot product form gives 0 * log(0) = NaN there
+    @Test
+    public void saturatedOutputsMatchWorkspaceCostFunction() {
+        DMatrixRMaj featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(103, INPUT_LAYER_SIZE, 101);
+        int[] labels = new int[103];
+        DMatrixRMaj nnParams = SyntheticData.nnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 101);
+        int theta1NumElements = HIDDEN_LAYER_SIZE * (INPUT_LAYER_SIZE + 1);
+        for (int label = 0; label < NUM_LABELS; ++label) {
+            nnParams.data[theta1NumElements + label * (HIDDEN_LAYER_SIZE + 1)] = label == 0 ? 45 : -45;
+        }
+
+        DMatrixRMaj expectedGrad = new DMatrixRMaj(nnParams.numRows, 1);
+        double expected = new WorkspaceCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, featuresMatrixWithOnes, labels, 1)
+                .compute(nnParams, expectedGrad);
+        DMatrixRMaj actualGrad = new DMatrixRMaj(nnParams.numRows, 1);
+        NetworkCostFunction cf = new NetworkCostFunction(Network.ex4(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS),
+                featuresMatrixWithOnes, labels, 1);
+        double actual = cf.compute(nnParams, actualGrad);
+        assertTrue("cost is not finite: " + actual, Double.isFinite(actual));
+        assertEquals(expected, actual, 0);
+        assertArrayEquals(expectedGrad.data, actualGrad.data, 0);
+    }
+
+    @Test
+    public void activationsMultiplyByTheirDerivative() {
+        double[] act = {-0.5, 0, 0.25, 0.75, 1};
+        for (HiddenActivation activation : HiddenActivation.values()) {
+            double[] data = {1, 2, 3, 4, 5, 6, 7};
+            activation.multiplyByDerivative(data, 2, act, 0, act.length);
+            assertEquals(1, data[0], 0);
+            assertEquals(2, data[1], 0);
+            for (int i = 0; i < act.length; ++i) {
+                assertEquals(activation + " at " + act[i], (i + 3) * activation.derivativeFromActivation(act[i]), data[i + 2], 0);
+            }
+        }
+    }
+}
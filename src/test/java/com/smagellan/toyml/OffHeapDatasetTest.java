@@ -0,0 +1,52 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapDatasetTest {
+    private static final int INPUT_LAYER_SIZE  = 40;
+    private static final int HIDDEN_LAYER_SIZE = 10;
+    private static final int NUM_LABELS        = 4;
+    //the last tile is partial
+    private static final int M                 = 3 * BackpropWorkspace.TILE_ROWS + 5;
+
+    private final DMatrixRMaj featuresMatrix = SyntheticData.featuresMatrix(M, INPUT_LAYER_SIZE, 100);
+    private final DMatrixRMaj featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(M, INPUT_LAYER_SIZE, 100);
+    private final DMatrixRMaj yMatrix = SyntheticData.yMatrix(M, NUM_LABELS, 100);
+    private final OffHeapDataset dataset = OffHeapDataset.copyOf(featuresMatrix, yMatrix, NUM_LABELS);
+
+    @Test
+    public void costFunctionIsIdenticalToWorkspaceCostFunction() {
+        DMatrixRMaj nnParams = SyntheticData.nnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100);
+        DMatrixRMaj expectedGrad = new DMatrixRMaj(nnParams.numRows, 1);
+        double expected = new WorkspaceCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                featuresMatrixWithOnes, Main.createLabels(yMatrix), 1).compute(nnParams, expectedGrad);
+        DMatrixRMaj actualGrad = new DMatrixRMaj(nnParams.numRows, 1);
+        double actual = new OffHeapCostFunction(HIDDEN_LAYER_SIZE, dataset, 1).compute(nnParams, actualGrad);
+        assertEquals(expected, actual, 0);
+        assertArrayEquals(expectedGrad.data, actualGrad.data, 0);
+    }
+
+    @Test
+    public void blockedPredictMatchesDense() {
+        SimpleMatrix nnParams = SimpleMatrix.wrap(SyntheticData.nnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100));
+        Network network = Network.ex4(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS);
+        SimpleMatrix theta1 = network.theta(nnParams, 0);
+        SimpleMatrix theta2 = network.theta(nnParams, 1);
+        SimpleMatrix expected = Predictor.predict(theta1, theta2, SimpleMatrix.wrap(featuresMatrixWithOnes));
+        SimpleMatrix actual = Predictor.predict(theta1, theta2, dataset, 50);
+        assertTrue(M % 50 != 0);
+        assertTrue(expected.isIdentical(actual, 0));
+    }
+
+    //the label buffer would need more than 2GB; its size must not wrap around in int
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLabelBufferOverflow() {
+        OffHeapDataset.allocate(Integer.MAX_VALUE / 2, 1, NUM_LABELS);
+    }
+}
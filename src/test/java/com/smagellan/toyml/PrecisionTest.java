@@ -0,0 +1,56 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PrecisionTest {
+    private static final int INPUT_LAYER_SIZE  = 400;
+    private static final int HIDDEN_LAYER_SIZE = 25;
+    private static final int NUM_LABELS        = 10;
+    private static final int THETA1_NUM_ELEMENTS = HIDDEN_LAYER_SIZE * (INPUT_LAYER_SIZE + 1);
+
+    @Test
+    public void floatCostIsCloseToDouble() {
+        DMatrixRMaj featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(500, INPUT_LAYER_SIZE, 100);
+        int[] labels = Main.createLabels(SyntheticData.yMatrix(500, NUM_LABELS, 100));
+        SimpleMatrix nnParams = SimpleMatrix.wrap(SyntheticData.nnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100));
+        assertClose(featuresMatrixWithOnes, labels, nnParams);
+    }
+
+    //float sigmoid rounds to exactly 1 past z ~ 17, the cost must still come out finite and match double
+    @Test
+    public void floatCostIsFiniteWithSaturatedOutputs() {
+        DMatrixRMaj featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(100, INPUT_LAYER_SIZE, 101);
+        int[] labels = Main.createLabels(SyntheticData.yMatrix(100, NUM_LABELS, 101));
+        SimpleMatrix nnParams = SimpleMatrix.wrap(SyntheticData.nnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 101));
+        for (int label = 0; label < NUM_LABELS; ++label) {
+            nnParams.set(THETA1_NUM_ELEMENTS + label * (HIDDEN_LAYER_SIZE + 1), label % 2 == 0 ? 30 : -30);
+        }
+        assertClose(featuresMatrixWithOnes, labels, nnParams);
+    }
+
+    @Test
+    public void floatTrainingAccuracyIsCloseToDouble() {
+        DMatrixRMaj yMatrix = SyntheticData.yMatrix(1000, NUM_LABELS, 102);
+        DMatrixRMaj featuresMatrix = SyntheticData.clusteredFeaturesMatrix(yMatrix, NUM_LABELS, INPUT_LAYER_SIZE, 3.0, 102);
+        double doubleAccuracy = new Main().doFit(featuresMatrix, yMatrix, 100, new FmincgOptimizer(10), Precision.DOUBLE);
+        double floatAccuracy = new Main().doFit(featuresMatrix, yMatrix, 100, new FmincgOptimizer(10), Precision.FLOAT);
+        assertTrue("double run did not learn: " + doubleAccuracy, doubleAccuracy > 80);
+        assertEquals(doubleAccuracy, floatAccuracy, PrecisionComparison.MAX_ACCURACY_DIFF);
+    }
+
+    private static void assertClose(DMatrixRMaj featuresMatrixWithOnes, int[] labels, SimpleMatrix nnParams) {
+        OptimizedFunctionResult expected = new WorkspaceCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                featuresMatrixWithOnes, labels, 1).apply(nnParams);
+        OptimizedFunctionResult actual = new FloatCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                EjmlHelpers.toFloat(featuresMatrixWithOnes), labels, 1).apply(nnParams);
+        assertTrue("float cost is not finite: " + actual.getFnValue(), Double.isFinite(actual.getFnValue()));
+        assertEquals(expected.getFnValue(), actual.getFnValue(), 1e-5 * expected.getFnValue());
+        double maxError = expected.getGradientValue().minus(actual.getGradientValue()).elementMaxAbs();
+        assertTrue("gradient differs by " + maxError, maxError < 1e-4);
+    }
+}
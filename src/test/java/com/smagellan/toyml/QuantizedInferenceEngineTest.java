@@ -0,0 +1,69 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuantizedInferenceEngineTest {
+    private static final int INPUT_LAYER_SIZE  = 400;
+    private static final int HIDDEN_LAYER_SIZE = 25;
+    private static final int NUM_LABELS        = 10;
+    private static final int TRAIN_EXAMPLES    = 1000;
+    private static final int SCORED_ROWS       = 2000;
+    //points of accuracy the int8 engine may lose against Predictor
+    private static final double MAX_ACCURACY_LOSS = 1.0;
+
+    //trained weights: random ones leave the classes too close for an accuracy comparison to mean anything
+    @Test
+    public void int8AccuracyIsCloseToDouble() {
+        DMatrixRMaj yMatrix = SyntheticData.yMatrix(TRAIN_EXAMPLES + SCORED_ROWS, NUM_LABELS, 100);
+        DMatrixRMaj featuresMatrix = SyntheticData.clusteredFeaturesMatrix(yMatrix, NUM_LABELS, INPUT_LAYER_SIZE, 2.5, 100);
+        PreparedDataset dataset = new FeaturePipeline(FeaturePipeline.Normalization.NONE, 1).load(featuresMatrix, yMatrix);
+        DMatrixRMaj all = dataset.getFeaturesMatrixWithOnes();
+        DMatrixRMaj train = CommonOps_DDRM.extract(all, 0, TRAIN_EXAMPLES, 0, all.numCols);
+        int[] trainLabels = Arrays.copyOf(dataset.getLabels(), TRAIN_EXAMPLES);
+        SimpleMatrix nnParams = new FmincgOptimizer(30).minimize(new WorkspaceCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE,
+                NUM_LABELS, train, trainLabels, 1), Main.initialNnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100)).getxVal();
+        Network network = Network.ex4(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS);
+        SimpleMatrix theta1 = network.theta(nnParams, 0);
+        SimpleMatrix theta2 = network.theta(nnParams, 1);
+
+        DMatrixRMaj scored = CommonOps_DDRM.extract(all, TRAIN_EXAMPLES, all.numRows, 0, all.numCols);
+        int[] labels = Arrays.copyOfRange(dataset.getLabels(), TRAIN_EXAMPLES, all.numRows);
+        QuantizedInferenceEngine quantized = new QuantizedInferenceEngine(theta1, theta2);
+        int[] classes = new int[SCORED_ROWS];
+        quantized.predict(Int8Features.quantizeWithOnes(scored), classes);
+        int[] onTheFly = new int[SCORED_ROWS];
+        quantized.predict(CommonOps_DDRM.extract(scored, 0, SCORED_ROWS, 1, INPUT_LAYER_SIZE + 1).data, SCORED_ROWS, onTheFly);
+        assertArrayEquals(classes, onTheFly);
+
+        SimpleMatrix expected = Predictor.predict(theta1, theta2, SimpleMatrix.wrap(scored));
+        int doubleMatched = 0;
+        int int8Matched = 0;
+        for (int row = 0; row < SCORED_ROWS; ++row) {
+            doubleMatched += (int) expected.get(row, 0) == labels[row] ? 1 : 0;
+            int8Matched += classes[row] == labels[row] ? 1 : 0;
+        }
+        double doubleAccuracy = doubleMatched * 100.0 / SCORED_ROWS;
+        double int8Accuracy = int8Matched * 100.0 / SCORED_ROWS;
+        assertTrue("double run did not learn: " + doubleAccuracy, doubleAccuracy > 30);
+        assertTrue("int8 " + int8Accuracy + " vs double " + doubleAccuracy, doubleAccuracy - int8Accuracy <= MAX_ACCURACY_LOSS);
+    }
+
+    //one byte per weight, no other copy of Theta1
+    @Test
+    public void weightBytes() {
+        Network network = Network.ex4(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS);
+        SimpleMatrix nnParams = network.initialParams(100);
+        QuantizedInferenceEngine quantized = new QuantizedInferenceEngine(network.theta(nnParams, 0), network.theta(nnParams, 1));
+        assertEquals(HIDDEN_LAYER_SIZE * INPUT_LAYER_SIZE + NUM_LABELS * HIDDEN_LAYER_SIZE
+                + 2 * (HIDDEN_LAYER_SIZE + NUM_LABELS) * Double.BYTES, quantized.getWeightBytes());
+    }
+}
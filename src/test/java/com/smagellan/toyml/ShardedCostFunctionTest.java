@@ -0,0 +1,50 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrixRMaj;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShardedCostFunctionTest {
+    private static final int INPUT_LAYER_SIZE  = 100;
+    private static final int HIDDEN_LAYER_SIZE = 25;
+    private static final int NUM_LABELS        = 10;
+    private static final int M                 = 2000;
+
+    //shards of the abandoned evaluation must be done before it throws, or they would write into the next one
+    @Test(timeout = 60000)
+    public void interruptedEvaluationLeavesNoShardRunning() {
+        DMatrixRMaj featuresMatrixWithOnes = SyntheticData.featuresMatrixWithOnes(M, INPUT_LAYER_SIZE, 100);
+        int[] labels = Main.createLabels(SyntheticData.yMatrix(M, NUM_LABELS, 100));
+        DMatrixRMaj nnParams = SyntheticData.nnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 100);
+        DMatrixRMaj otherParams = SyntheticData.nnParams(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, 101);
+
+        DMatrixRMaj expectedGrad = new DMatrixRMaj(nnParams.numRows, 1);
+        double expected = new WorkspaceCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS, featuresMatrixWithOnes, labels, 1)
+                .compute(nnParams, expectedGrad);
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+        try (ShardedCostFunction cf = new ShardedCostFunction(INPUT_LAYER_SIZE, HIDDEN_LAYER_SIZE, NUM_LABELS,
+                featuresMatrixWithOnes, labels, 1, 50, executor)) {
+            DMatrixRMaj grad = new DMatrixRMaj(nnParams.numRows, 1);
+            Thread.currentThread().interrupt();
+            try {
+                cf.compute(otherParams, grad);
+                fail("interrupted evaluation returned");
+            } catch (IllegalStateException e) {
+                assertTrue(Thread.interrupted());
+            }
+            assertTrue(executor.getQueue().size() + " shards still queued", executor.getQueue().isEmpty());
+            double actual = cf.compute(nnParams, grad);
+            assertEquals(expected, actual, 1e-12);
+            assertArrayEquals(expectedGrad.data, grad.data, 1e-12);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
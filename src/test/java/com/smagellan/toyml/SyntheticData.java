@@ -0,0 +1,83 @@
+package com.smagellan.toyml;
+
+import org.ejml.data.DMatrix;
+import org.ejml.data.DMatrixRMaj;
+
+import java.util.Random;
+
+public class SyntheticData {
+    public static DMatrixRMaj featuresMatrixWithOnes(int numRows, int inputLayerSize, long seed) {
+        Random r = new Random(seed);
+        DMatrixRMaj result = new DMatrixRMaj(numRows, inputLayerSize + 1);
+        for (int rowIdx = 0; rowIdx < numRows; ++rowIdx) {
+            result.set(rowIdx, 0, 1);
+            for (int colIdx = 1; colIdx <= inputLayerSize; ++colIdx) {
+                result.set(rowIdx, colIdx, r.nextDouble());
+            }
+        }
+        return result;
+    }
+
+    //each feature is non-zero with the given probability, like the blank background of the ex4 digits
+    public static DMatrixRMaj sparseFeaturesMatrixWithOnes(int numRows, int inputLayerSize, double density, long seed) {
+        Random r = new Random(seed);
+        DMatrixRMaj result = new DMatrixRMaj(numRows, inputLayerSize + 1);
+        for (int rowIdx = 0; rowIdx < numRows; ++rowIdx) {
+            result.set(rowIdx, 0, 1);
+            for (int colIdx = 1; colIdx <= inputLayerSize; ++colIdx) {
+                if (r.nextDouble() < density) {
+                    result.set(rowIdx, colIdx, r.nextDouble());
+                }
+            }
+        }
+        return result;
+    }
+
+    //same values as featuresMatrixWithOnes, without the bias column
+    public static DMatrixRMaj featuresMatrix(int numRows, int inputLayerSize, long seed) {
+        Random r = new Random(seed);
+        DMatrixRMaj result = new DMatrixRMaj(numRows, inputLayerSize);
+        for (int i = 0; i < result.getNumElements(); ++i) {
+            result.data[i] = r.nextDouble();
+        }
+        return result;
+    }
+
+    //labels are 1-based, same as in the Matlab dataset
+    public static DMatrixRMaj yMatrix(int numRows, int numLabels, long seed) {
+        Random r = new Random(seed);
+        DMatrixRMaj result = new DMatrixRMaj(numRows, 1);
+        for (int rowIdx = 0; rowIdx < numRows; ++rowIdx) {
+            result.set(rowIdx, 0, r.nextInt(numLabels) + 1);
+        }
+        return result;
+    }
+
+    //learnable features for the 1-based labels of yMatrix: a sparse prototype per class plus gaussian noise
+    public static DMatrixRMaj clusteredFeaturesMatrix(DMatrix yMatrix, int numLabels, int inputLayerSize, double noise, long seed) {
+        Random r = new Random(seed);
+        double[][] prototypes = new double[numLabels][inputLayerSize];
+        for (double[] prototype : prototypes) {
+            for (int colIdx = 0; colIdx < inputLayerSize; ++colIdx) {
+                prototype[colIdx] = r.nextDouble() < 0.3 ? r.nextDouble() : 0;
+            }
+        }
+        DMatrixRMaj result = new DMatrixRMaj(yMatrix.getNumRows(), inputLayerSize);
+        for (int rowIdx = 0; rowIdx < yMatrix.getNumRows(); ++rowIdx) {
+            double[] prototype = prototypes[(int) yMatrix.get(rowIdx, 0) - 1];
+            for (int colIdx = 0; colIdx < inputLayerSize; ++colIdx) {
+                result.set(rowIdx, colIdx, prototype[colIdx] + noise * r.nextGaussian());
+            }
+        }
+        return result;
+    }
+
+    public static DMatrixRMaj nnParams(int inputLayerSize, int hiddenLayerSize, int numLabels, long seed) {
+        DMatrixRMaj theta1 = EjmlHelpers.randInitializeWeights(inputLayerSize, hiddenLayerSize, seed).getDDRM();
+        DMatrixRMaj theta2 = EjmlHelpers.randInitializeWeights(hiddenLayerSize, numLabels, 2 * seed).getDDRM();
+        DMatrixRMaj result = new DMatrixRMaj(theta1.getNumElements() + theta2.getNumElements(), 1);
+        System.arraycopy(theta1.data, 0, result.data, 0, theta1.getNumElements());
+        System.arraycopy(theta2.data, 0, result.data, theta1.getNumElements(), theta2.getNumElements());
+        return result;
+    }
+}
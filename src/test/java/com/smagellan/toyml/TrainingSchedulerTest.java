@@ -0,0 +1,34 @@
+package com.smagellan.toyml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrainingSchedulerTest {
+    @Test(timeout = 60000)
+    public void wideJobTakesIdleCpus() throws InterruptedException {
+        try (TrainingScheduler scheduler = new TrainingScheduler(2)) {
+            TrainingJobHandle handle = scheduler.submit(job("wide", 2));
+            OptimizationResult result = handle.getResult();
+            assertEquals(TrainingJobHandle.State.DONE, handle.getState());
+            assertEquals(2, handle.getParallelism());
+            assertEquals(10, result.getNumIterations());
+        }
+    }
+
+    //close() declares no checked exception; an interrupt during the wait must survive it
+    @Test(timeout = 60000)
+    public void closeKeepsInterruptStatus() {
+        TrainingScheduler scheduler = new TrainingScheduler(1);
+        scheduler.submit(job("cancelled", 1));
+        Thread.currentThread().interrupt();
+        scheduler.close();
+        assertTrue(Thread.interrupted());
+    }
+
+    private static TrainingJob job(String name, int maxParallelism) {
+        return new TrainingJob(name, SyntheticData.featuresMatrix(200, 20, 100), SyntheticData.yMatrix(200, 3, 100), 3,
+                new HyperParameters(1, 5, 10, 100), maxParallelism);
+    }
+}